@@ -27,6 +27,8 @@ import time
 import threading
 import urllib2
 import pprint
+import gzip
+from StringIO import StringIO
 from random import randint
 
 from AgentConfig import AgentConfig
@@ -41,6 +43,10 @@ logger = logging.getLogger()
 
 AGENT_AUTO_RESTART_EXIT_CODE = 77
 
+# Request bodies at least this size are sent gzip-compressed; smaller
+# ones are not worth the CPU
+COMPRESS_REQUEST_MIN_SIZE = 1024
+
 
 class Controller(threading.Thread):
   def __init__(self, config, range=30):
@@ -69,6 +75,9 @@ class Controller(threading.Thread):
     self.heartbeat_wait_event = threading.Event()
     # List of callbacks that are called at agent registration
     self.registration_listeners = []
+    # Configurations sent by the server, by hash. Commands carrying
+    # configurations already sent carry only the hash.
+    self.configurations = {}
 
 
   def __del__(self):
@@ -104,6 +113,8 @@ class Controller(threading.Thread):
         print("Registered with the server")
         self.responseId = int(ret['responseId'])
         self.isRegistered = True
+        # the server resends configurations after a registration
+        self.configurations = {}
         if 'statusCommands' in ret.keys():
           logger.info("Got status commands on registration " + pprint.pformat(
             ret['statusCommands']))
@@ -155,6 +166,8 @@ class Controller(threading.Thread):
     #TODO make sure the response id is monotonically increasing
     id = 0
     while not self.DEBUG_STOP_HEARTBEATING:
+      # delay before the next heartbeat requested by the server, in seconds
+      serverDelay = 0
       try:
         if not retry:
           data = json.dumps(
@@ -171,6 +184,10 @@ class Controller(threading.Thread):
 
         serverId = int(response['responseId'])
 
+        if 'nextHeartbeatDelay' in response.keys():
+          serverDelay = min(int(response['nextHeartbeatDelay']) / 1000.0,
+                            self.netutil.MAXIMUM_HEARTBEAT_DELAY_SEC)
+
         if 'hasMappedComponents' in response.keys():
           self.hasMappedComponents = response['hasMappedComponents'] != False
 
@@ -189,6 +206,14 @@ class Controller(threading.Thread):
         else:
           self.responseId = serverId
 
+        for commands in ('executionCommands', 'statusCommands'):
+          if commands in response.keys() and \
+              not self.resolveConfigurations(response[commands]):
+            logger.error("Unknown configurations - repeat agent registration")
+            self.isRegistered = False
+            self.repeatRegistration = True
+            return
+
         if 'executionCommands' in response.keys():
           self.addToQueue(response['executionCommands'])
           pass
@@ -234,8 +259,12 @@ class Controller(threading.Thread):
         self.cachedconnect = None # Previous connection is broken now
         retry = True
         # Sleep for some time
-      timeout = self.netutil.HEARTBEAT_IDDLE_INTERVAL_SEC \
-                - self.netutil.MINIMUM_INTERVAL_BETWEEN_HEARTBEATS
+      if serverDelay > 0:
+        timeout = max(serverDelay
+                      - self.netutil.MINIMUM_INTERVAL_BETWEEN_HEARTBEATS, 0)
+      else:
+        timeout = self.netutil.HEARTBEAT_IDDLE_INTERVAL_SEC \
+                  - self.netutil.MINIMUM_INTERVAL_BETWEEN_HEARTBEATS
       self.heartbeat_wait_event.wait(timeout=timeout)
       # Sleep a bit more to allow STATUS_COMMAND results to be collected
       # and sent in one heartbeat. Also avoid server overload with heartbeats
@@ -274,14 +303,50 @@ class Controller(threading.Thread):
     os._exit(AGENT_AUTO_RESTART_EXIT_CODE)
     pass
 
+  def resolveConfigurations(self, commands):
+    """
+    Fill in the configurations of commands which carry only their hash,
+    and remember those of commands which carry them in full.
+    Returns False if a command refers to unknown configurations.
+    """
+    for command in commands:
+      if not isinstance(command, dict):
+        continue
+      hash = command.get('configurationsHash')
+      if hash is None:
+        continue
+      if 'configurations' in command:
+        self.configurations[hash] = command['configurations']
+      elif hash in self.configurations:
+        command['configurations'] = self.configurations[hash]
+      else:
+        return False
+    return True
+
+
   def sendRequest(self, url, data):
-    req = urllib2.Request(url, data, {'Content-Type': 'application/json'})
+    headers = {'Content-Type': 'application/json',
+               'Accept-Encoding': 'gzip'}
+    if data is not None and len(data) >= COMPRESS_REQUEST_MIN_SIZE:
+      data = self.compress(data)
+      headers['Content-Encoding'] = 'gzip'
+    req = urllib2.Request(url, data, headers)
     f = urllib2.urlopen(req)
     response = f.read()
+    if f.info().get('Content-Encoding') == 'gzip':
+      response = gzip.GzipFile(fileobj=StringIO(response)).read()
     f.close()
     return response
 
 
+  def compress(self, data):
+    buf = StringIO()
+    f = gzip.GzipFile(fileobj=buf, mode='wb')
+    f.write(data)
+    f.close()
+    return buf.getvalue()
+
+
 def main(argv=None):
   # Allow Ctrl-C
   signal.signal(signal.SIGINT, signal.SIG_DFL)
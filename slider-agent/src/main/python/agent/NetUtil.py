@@ -26,6 +26,8 @@ class NetUtil:
   CONNECT_SERVER_RETRY_INTERVAL_SEC = 10
   HEARTBEAT_IDDLE_INTERVAL_SEC = 10
   MINIMUM_INTERVAL_BETWEEN_HEARTBEATS = 0.1
+  # Longest heartbeat delay the server may ask for
+  MAXIMUM_HEARTBEAT_DELAY_SEC = 300
 
   # For testing purposes
   DEBUG_STOP_RETRIES_FLAG = False
@@ -427,6 +427,89 @@ class TestController(unittest.TestCase):
     #Conroller thread and the agent stop if the repeatRegistration flag is False
     self.assertFalse(self.controller.repeatRegistration)
 
+  @patch.object(threading._Event, "wait")
+  @patch("time.sleep")
+  @patch("json.loads")
+  @patch("json.dumps")
+  def test_heartbeatWithServer_serverDelay(self, dumpsMock, loadsMock,
+                                           sleepMock, event_mock):
+    self.controller.heartbeat = MagicMock()
+    self.controller.actionQueue = MagicMock()
+    dumpsMock.return_value = "data"
+    self.controller.netutil.HEARTBEAT_IDDLE_INTERVAL_SEC = 10
+    self.controller.netutil.MINIMUM_INTERVAL_BETWEEN_HEARTBEATS = 0.1
+    self.controller.netutil.MAXIMUM_HEARTBEAT_DELAY_SEC = 60
+
+    def one_heartbeat(*args, **kwargs):
+      self.controller.DEBUG_STOP_HEARTBEATING = True
+      return "data"
+
+    self.controller.sendRequest = MagicMock(side_effect=one_heartbeat)
+
+    # the server asks for the next heartbeat in 2.5s
+    self.controller.responseId = 1
+    loadsMock.return_value = {"responseId": "2", "restartAgent": "false",
+                              "nextHeartbeatDelay": 2500}
+    self.controller.DEBUG_STOP_HEARTBEATING = False
+    self.controller.heartbeatWithServer()
+    self.assertAlmostEqual(2.4, event_mock.call_args[1]['timeout'])
+
+    # no delay: the agent's own interval
+    loadsMock.return_value = {"responseId": "3", "restartAgent": "false",
+                              "nextHeartbeatDelay": 0}
+    self.controller.DEBUG_STOP_HEARTBEATING = False
+    self.controller.heartbeatWithServer()
+    self.assertAlmostEqual(9.9, event_mock.call_args[1]['timeout'])
+
+    # an excessive delay is capped
+    loadsMock.return_value = {"responseId": "4", "restartAgent": "false",
+                              "nextHeartbeatDelay": 3600000}
+    self.controller.DEBUG_STOP_HEARTBEATING = False
+    self.controller.heartbeatWithServer()
+    self.assertAlmostEqual(59.9, event_mock.call_args[1]['timeout'])
+
+
+  def test_resolveConfigurations(self):
+    self.controller.configurations = {}
+    configs = {"global": {"a": "b"}}
+    full = {"configurationsHash": "h1", "configurations": configs}
+    self.assertTrue(self.controller.resolveConfigurations([full]))
+    self.assertEqual(configs, self.controller.configurations["h1"])
+
+    byHash = {"configurationsHash": "h1"}
+    plain = {"commandId": "1-1"}
+    self.assertTrue(self.controller.resolveConfigurations([byHash, plain]))
+    self.assertEqual(configs, byHash["configurations"])
+    self.assertFalse("configurations" in plain)
+
+    unknown = {"configurationsHash": "h2"}
+    self.assertFalse(self.controller.resolveConfigurations([unknown]))
+
+
+  @patch("urllib2.urlopen")
+  def test_sendRequest_gzip(self, urlopenMock):
+    response = MagicMock()
+    response.read.return_value = self.controller.compress('{"responseId":1}')
+    response.info.return_value = {'Content-Encoding': 'gzip'}
+    urlopenMock.return_value = response
+
+    data = '{"reports":"' + ('x' * Controller.COMPRESS_REQUEST_MIN_SIZE) + '"}'
+    self.assertEqual('{"responseId":1}',
+                     self.controller.sendRequest("url", data))
+    request = urlopenMock.call_args[0][0]
+    self.assertEqual('gzip', request.get_header('Accept-encoding'))
+    self.assertEqual('gzip', request.get_header('Content-encoding'))
+    self.assertTrue(len(request.get_data()) < len(data))
+
+    response.read.return_value = '{"responseId":2}'
+    response.info.return_value = {}
+    self.assertEqual('{"responseId":2}',
+                     self.controller.sendRequest("url", '{}'))
+    request = urlopenMock.call_args[0][0]
+    self.assertEqual('{}', request.get_data())
+    self.assertEqual(None, request.get_header('Content-encoding'))
+
+
 if __name__ == "__main__":
   unittest.main()
 
@@ -104,6 +104,12 @@ public interface HoyaKeys extends HoyaXmlConfKeys {
    */
   String HISTORY_FILENAME_GLOB_PATTERN = HISTORY_FILENAME_PREFIX +"*."+
                                     HISTORY_FILENAME_SUFFIX;
+
+  /**
+   * Suffix of the journal of changes made after a history snapshot;
+   * the rest of the filename matches that of the snapshot: {@value}
+   */
+  String HISTORY_JOURNAL_SUFFIX = "journal";
   /**
    * XML resource listing the standard Hoya providers
    * {@value}
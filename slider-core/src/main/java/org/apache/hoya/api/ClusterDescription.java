@@ -23,6 +23,7 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hoya.core.persist.JsonMappers;
 import org.apache.hoya.exceptions.BadConfigException;
 import org.apache.hoya.providers.HoyaProviderFactory;
 import org.apache.hoya.tools.HoyaUtils;
@@ -31,13 +32,12 @@ import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -231,15 +231,52 @@ public class ClusterDescription implements Cloneable {
   }
 
   /**
-   * A deep clone of the spec. This is done inefficiently with a ser/derser
+   * A deep clone of the spec. All maps and lists are copied; the values
+   * of the <code>status</code> map are copied as JSON values, so
+   * any objects in it are converted to maps, just as they would be
+   * in a round trip through JSON.
    * @return the cluster description
    */
   public ClusterDescription deepClone() {
-    try {
-      return fromJson(toJsonString());
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    ClusterDescription copy = new ClusterDescription();
+    copy.version = version;
+    copy.name = name;
+    copy.type = type;
+    copy.state = state;
+    copy.createTime = createTime;
+    copy.updateTime = updateTime;
+    copy.originConfigurationPath = originConfigurationPath;
+    copy.generatedConfigurationPath = generatedConfigurationPath;
+    copy.dataPath = dataPath;
+    copy.options = options == null ? null : HoyaUtils.stringMapClone(options);
+    copy.info = info == null ? null : HoyaUtils.stringMapClone(info);
+    if (statistics != null) {
+      copy.statistics = new HashMap<String, Map<String, Integer>>(
+        statistics.size());
+      for (Map.Entry<String, Map<String, Integer>> entry :
+        statistics.entrySet()) {
+        Map<String, Integer> stats = entry.getValue();
+        copy.statistics.put(entry.getKey(), stats == null ? null
+                                 : new HashMap<String, Integer>(stats));
+      }
+    } else {
+      copy.statistics = null;
+    }
+    if (instances != null) {
+      copy.instances = new HashMap<String, List<String>>(instances.size());
+      for (Map.Entry<String, List<String>> entry : instances.entrySet()) {
+        List<String> list = entry.getValue();
+        copy.instances.put(entry.getKey(), list == null ? null
+                                 : new ArrayList<String>(list));
+      }
+    } else {
+      copy.instances = null;
     }
+    copy.roles = roles == null ? null : HoyaUtils.deepClone(roles);
+    copy.clientProperties = clientProperties == null ? null
+                            : HoyaUtils.stringMapClone(clientProperties);
+    copy.status = JsonMappers.copyMap(status);
+    return copy;
   }
 
 
@@ -309,13 +346,7 @@ public class ClusterDescription implements Cloneable {
    * @return the copy
    */
   public static ClusterDescription copy(ClusterDescription source) {
-    //currently the copy is done by a generate/save. Inefficient but it goes
-    //down the tree nicely
-    try {
-      return fromJson(source.toJsonString());
-    } catch (IOException e) {
-      throw new RuntimeException("ClusterDescription copy failed " + e, e);
-    }
+    return source.deepClone();
   }
 
   /**
@@ -326,9 +357,7 @@ public class ClusterDescription implements Cloneable {
   public String toJsonString() throws IOException,
                                       JsonGenerationException,
                                       JsonMappingException {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
-    return mapper.writeValueAsString(this);
+    return JsonMappers.toIndentedJson(this);
   }
 
   /**
@@ -340,9 +369,8 @@ public class ClusterDescription implements Cloneable {
    */
   public static ClusterDescription fromJson(String json)
     throws IOException, JsonParseException, JsonMappingException {
-    ObjectMapper mapper = new ObjectMapper();
     try {
-      return mapper.readValue(json, ClusterDescription.class);
+      return JsonMappers.fromJson(json, ClusterDescription.class);
     } catch (IOException e) {
       log.error("Exception while parsing json : " + e + "\n" + json, e);
       throw e;
@@ -358,9 +386,9 @@ public class ClusterDescription implements Cloneable {
      */
     public static ClusterDescription fromStream(InputStream is)
             throws IOException, JsonParseException, JsonMappingException {
-        ObjectMapper mapper = new ObjectMapper();
         try {
-            return mapper.readValue(is, ClusterDescription.class);
+            return JsonMappers.getMapper().readValue(is,
+                                                     ClusterDescription.class);
         } catch (IOException e) {
             log.error("Exception while parsing input stream : " + e, e);
       throw e;
@@ -376,9 +404,9 @@ public class ClusterDescription implements Cloneable {
    */
   public static ClusterDescription fromFile(File jsonFile)
     throws IOException, JsonParseException, JsonMappingException {
-    ObjectMapper mapper = new ObjectMapper();
     try {
-      return mapper.readValue(jsonFile, ClusterDescription.class);
+      return JsonMappers.getMapper().readValue(jsonFile,
+                                               ClusterDescription.class);
     } catch (IOException e) {
       log.error("Exception while parsing json file {}: {}" , jsonFile, e);
       throw e;
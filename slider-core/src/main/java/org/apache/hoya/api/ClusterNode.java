@@ -20,12 +20,12 @@ package org.apache.hoya.api;
 
 import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hoya.api.proto.Messages;
+import org.apache.hoya.core.persist.JsonMappers;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 import org.codehaus.jackson.map.JsonMappingException;
-import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -146,8 +146,7 @@ public class ClusterNode {
    * @throws IOException Problems mapping/writing the object
    */
   public String toJsonString() throws IOException {
-    ObjectMapper mapper = new ObjectMapper();
-    return mapper.writeValueAsString(this);
+    return JsonMappers.toJson(this);
   }
 
 
@@ -159,9 +158,8 @@ public class ClusterNode {
    */
   public static ClusterNode fromJson(String json)
     throws IOException, JsonParseException, JsonMappingException {
-    ObjectMapper mapper = new ObjectMapper();
     try {
-      return mapper.readValue(json, ClusterNode.class);
+      return JsonMappers.fromJson(json, ClusterNode.class);
     } catch (IOException e) {
       LOG.error("Exception while parsing json : " + e + "\n" + json, e);
       throw e;
@@ -96,6 +96,111 @@ public interface OptionKeys {
    */
   int DEFAULT_CONTAINER_STARTUP_DELAY = 5000;
 
+  /**
+   * Number of threads in the AM used to launch containers: {@value}
+   */
+  String INTERNAL_CONTAINER_LAUNCHER_THREADS =
+      "internal.container.launcher.threads";
+
+  /**
+   * Default number of container launcher threads: {@value}
+   */
+  int DEFAULT_CONTAINER_LAUNCHER_THREADS = 8;
+
+  /**
+   * Maximum number of container launches which may be queued or
+   * in progress before allocation callbacks block: {@value}
+   */
+  String INTERNAL_CONTAINER_LAUNCHER_QUEUE_SIZE =
+      "internal.container.launcher.queue.size";
+
+  /**
+   * Default size of the container launch queue: {@value}
+   */
+  int DEFAULT_CONTAINER_LAUNCHER_QUEUE_SIZE = 1024;
+
+  /**
+   * Encoding of saved role history files: one of
+   * "json", "binary" or "compressed". All can be read back,
+   * whatever the setting: {@value}
+   */
+  String INTERNAL_HISTORY_ENCODING = "internal.history.encoding";
+
+  /**
+   * Default role history encoding: {@value}
+   */
+  String DEFAULT_HISTORY_ENCODING = "json";
+
+  /**
+   * Number of changes to append to the role history journal before
+   * a new snapshot is saved. 0 disables the journal, so every
+   * change saves a new snapshot: {@value}
+   */
+  String INTERNAL_HISTORY_JOURNAL_COMPACTION =
+      "internal.history.journal.compaction";
+
+  /**
+   * Default number of journalled changes between snapshots: {@value}
+   */
+  int DEFAULT_HISTORY_JOURNAL_COMPACTION = 1000;
+
+  /**
+   * Maximum age in milliseconds of a cached cluster status snapshot.
+   * A snapshot is rebuilt when the application state changes, or when
+   * it is older than this, so that provider status is picked up.
+   * 0 disables the cache: {@value}
+   */
+  String INTERNAL_STATUS_SNAPSHOT_MAX_AGE =
+      "internal.status.snapshot.max.age";
+
+  /**
+   * Default maximum age of a status snapshot: {@value}
+   */
+  int DEFAULT_STATUS_SNAPSHOT_MAX_AGE = 5000;
+
+  /**
+   * Minimum interval in milliseconds between the AM's heartbeats to
+   * the RM, used while containers are being requested or released: {@value}
+   */
+  String INTERNAL_AM_HEARTBEAT_INTERVAL_MIN =
+      "internal.am.heartbeat.interval.min";
+
+  /**
+   * Default minimum AM heartbeat interval: {@value}
+   */
+  int DEFAULT_AM_HEARTBEAT_INTERVAL_MIN = 200;
+
+  /**
+   * Maximum interval in milliseconds between the AM's heartbeats to
+   * the RM, backed off to while there is nothing outstanding: {@value}
+   * <p>
+   * A new interval only takes effect once the current wait ends, so
+   * requests and releases made while the AM is idle can wait up to
+   * this long to reach the RM. Raising it above the default trades
+   * that latency for fewer idle heartbeats.
+   */
+  String INTERNAL_AM_HEARTBEAT_INTERVAL_MAX =
+      "internal.am.heartbeat.interval.max";
+
+  /**
+   * Default maximum AM heartbeat interval, the same as the fixed
+   * interval the AM used before it adapted, so backing off is opt-in:
+   * {@value}
+   */
+  int DEFAULT_AM_HEARTBEAT_INTERVAL_MAX = 1000;
+
+  /**
+   * Time in milliseconds the AM waits after an event which needs a
+   * review of the cluster, collecting further events into the same
+   * review: {@value}
+   */
+  String INTERNAL_REVIEW_DEBOUNCE = "internal.review.debounce";
+
+  /**
+   * Default review debounce window: {@value}
+   */
+  int DEFAULT_REVIEW_DEBOUNCE = 100;
+
   /**
    * Version of the app: {@value}
    */
@@ -69,4 +69,16 @@ public interface ResourceKeys {
    * placement policy
    */
   String COMPONENT_PLACEMENT_POLICY = "component.placement.policy";
+
+  /**
+   * Seconds a request for a container on a specific node may be
+   * outstanding before it is reissued without a location; 0 means
+   * wait indefinitely. Escalation is off unless a role sets this,
+   * so strict placement is kept by default.
+   */
+  String COMPONENT_PLACEMENT_ESCALATE_DELAY =
+    "component.placement.escalate.seconds";
+
+  /** {@value} */
+  int DEF_COMPONENT_PLACEMENT_ESCALATE_DELAY = 0;
 }
@@ -46,10 +46,58 @@ public interface StatusKeys {
   String STATISTICS_CONTAINERS_STARTED = "containers.start.started";
   String STATISTICS_CONTAINERS_START_FAILED =
       "containers.start.failed";
+  /**
+   * Containers whose component last reported itself healthy
+   */
+  String STATISTICS_CONTAINERS_HEALTHY = "containers.healthy";
+  /**
+   * Containers whose component last reported itself unhealthy
+   */
+  String STATISTICS_CONTAINERS_UNHEALTHY = "containers.unhealthy";
+  /**
+   * Containers allocated by the RM, including any surplus ones
+   */
+  String STATISTICS_CONTAINERS_ALLOCATED = "containers.allocated";
+  /**
+   * Outstanding requests cancelled as the desired count fell
+   */
+  String STATISTICS_CONTAINERS_REQUESTS_CANCELLED =
+      "containers.requests.cancelled";
+  /**
+   * Placed requests reissued without a location after waiting too long
+   */
+  String STATISTICS_CONTAINERS_PLACEMENT_ESCALATED =
+      "containers.placement.escalated";
+  /**
+   * Prefix of the statistics of the time from first asking for a
+   * container to its allocation
+   */
+  String STATISTICS_CONTAINERS_ALLOCATION_LATENCY =
+      "containers.allocation.latency.ms";
   String STATISTICS_CONTAINERS_SURPLUS =
       "containers.surplus";
   String STATISTICS_CONTAINERS_UNKNOWN_COMPLETED =
       "containers.unknown.completed";
+  String STATISTICS_LAUNCHER_QUEUED = "launcher.queued";
+  /**
+   * Current interval between the AM's heartbeats to the RM, in milliseconds
+   */
+  String STATISTICS_AM_HEARTBEAT_INTERVAL = "am.heartbeat.interval.ms";
+  /**
+   * Reviews of the cluster run, and the events which triggered them
+   */
+  String STATISTICS_REVIEWS = "reviews";
+  String STATISTICS_REVIEW_EVENTS = "review.events";
+  /**
+   * Distinct events waiting for the next review
+   */
+  String STATISTICS_REVIEW_QUEUE_DEPTH = "review.queue.depth";
+  /**
+   * Time taken by reviews, in milliseconds; the mean and 99th
+   * percentile are published, with these suffixes
+   */
+  String STATISTICS_REVIEW_DURATION = "review.duration.ms";
+  String STATISTICS_LAUNCHER_ACTIVE = "launcher.active";
   /**
    * No of containers provided on AM restart
    */
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.avro;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hoya.tools.HoyaUtils;
+import org.apache.hoya.yarn.appmaster.state.NodeEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An append-only journal of node entry changes made since a role
+ * history snapshot was saved.
+ * <p>
+ * The journal is a binary-encoded header followed by one
+ * node entry record per change; there is no footer, as
+ * the file is never completed. Each batch of records is flushed
+ * with <code>hflush()</code>, so that it is visible to a reader even if
+ * the AM fails before the file is closed.
+ * <p>
+ * Unlike the snapshot, the <code>last_used</code> field of an active
+ * entry is the time the change was journalled.
+ */
+public class RoleHistoryJournal implements Closeable {
+  protected static final Logger log =
+    LoggerFactory.getLogger(RoleHistoryJournal.class);
+
+  private final Path path;
+  private final FSDataOutputStream out;
+  private final BinaryEncoder encoder;
+  private final DatumWriter<RoleHistoryRecord> writer =
+    new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class);
+  private int recordCount;
+
+  /**
+   * Create a journal; any existing file at the path is overwritten
+   * @param fs filesystem
+   * @param path path of the journal
+   * @param snapshotTime save time of the snapshot this journal follows
+   * @param roles number of roles
+   * @throws IOException IO problems
+   */
+  public RoleHistoryJournal(FileSystem fs, Path path, long snapshotTime,
+                            int roles) throws IOException {
+    this.path = path;
+    out = fs.create(path, true);
+    encoder = EncoderFactory.get().binaryEncoder(out, null);
+    RoleHistoryHeader header = new RoleHistoryHeader();
+    header.setVersion(RoleHistoryWriter.ROLE_HISTORY_VERSION_BINARY);
+    header.setSaved(snapshotTime);
+    header.setSavedx(Long.toHexString(snapshotTime));
+    header.setSavedate(HoyaUtils.toGMTString(snapshotTime));
+    header.setRoles(roles);
+    writer.write(new RoleHistoryRecord(header), encoder);
+    flush();
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Get the number of change records appended
+   * @return the record count
+   */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * Append the current state of a node entry. This is buffered until
+   * the next {@link #flush()}
+   * @param hostname host of the entry
+   * @param role role ID
+   * @param entry node entry
+   * @param now current time, used as the last used time of active entries
+   * @throws IOException IO problems
+   */
+  public void append(String hostname, int role, NodeEntry entry, long now)
+    throws IOException {
+    boolean active = entry.getLive() > 0;
+    NodeEntryRecord record = new NodeEntryRecord(hostname, role, active,
+                                                 active ? now
+                                                        : entry.getLastUsed());
+    writer.write(new RoleHistoryRecord(record), encoder);
+    recordCount++;
+  }
+
+  /**
+   * Flush all appended records through to the filesystem
+   * @throws IOException IO problems
+   */
+  public void flush() throws IOException {
+    encoder.flush();
+    out.hflush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      encoder.flush();
+    } finally {
+      out.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RoleHistoryJournal{" + path + ", records=" + recordCount + '}';
+  }
+}
@@ -19,8 +19,14 @@
 package org.apache.hoya.avro;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.AvroTypeException;
 import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileConstants;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.io.BinaryDecoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
@@ -46,6 +52,7 @@ import org.apache.hoya.yarn.appmaster.state.RoleHistory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -55,6 +62,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -74,9 +82,98 @@ public class RoleHistoryWriter {
    * marker in the file to catch changes that are fundamentally incompatible
    * at the semantic level -changes that require either a different
    * parser or get rejected outright.
+   *
+   * This is the version of JSON-encoded history files.
    */
   public static final int ROLE_HISTORY_VERSION = 0x01;
-  
+
+  /**
+   * Version marker of binary-encoded history files, both raw and
+   * compressed: {@value}
+   */
+  public static final int ROLE_HISTORY_VERSION_BINARY = 0x02;
+
+  /**
+   * Deflate level used for compressed history files: {@value}
+   */
+  public static final int DEFLATE_LEVEL = 6;
+
+  /**
+   * Size of the input buffer used when reading history files: {@value}
+   */
+  public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The encodings of history files
+   */
+  public enum Encoding {
+    /** JSON text, the original format */
+    JSON("json", ROLE_HISTORY_VERSION),
+    /** Avro binary encoding */
+    BINARY("binary", ROLE_HISTORY_VERSION_BINARY),
+    /** Avro binary in a block-compressed Avro data file */
+    COMPRESSED("compressed", ROLE_HISTORY_VERSION_BINARY);
+
+    private final String name;
+    private final int version;
+
+    Encoding(String name, int version) {
+      this.name = name;
+      this.version = version;
+    }
+
+    /**
+     * Get the version marker to write in the header
+     * @return the version
+     */
+    public int getVersion() {
+      return version;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+
+    /**
+     * Map from an option value to an encoding
+     * @param option option value; case insensitive
+     * @return the encoding
+     * @throws BadConfigException if the value is not recognised
+     */
+    public static Encoding fromOption(String option) throws BadConfigException {
+      for (Encoding encoding : values()) {
+        if (encoding.name.equalsIgnoreCase(option.trim())) {
+          return encoding;
+        }
+      }
+      throw new BadConfigException("Unknown role history encoding \"%s\"",
+                                   option);
+    }
+  }
+
+  private final Encoding encoding;
+
+  /**
+   * Create a writer using the JSON encoding
+   */
+  public RoleHistoryWriter() {
+    this(Encoding.JSON);
+  }
+
+  /**
+   * Create a writer which saves in the given encoding. 
+   * All encodings can be read, whatever the save encoding.
+   * @param encoding encoding to use when saving
+   */
+  public RoleHistoryWriter(Encoding encoding) {
+    this.encoding = encoding;
+  }
+
+  public Encoding getEncoding() {
+    return encoding;
+  }
+
   /**
    * Write out the history.
    * This does not update the history's dirty/savetime fields
@@ -90,20 +187,15 @@ public class RoleHistoryWriter {
   public long write(OutputStream out, RoleHistory history, long savetime)
     throws IOException {
     try {
-      DatumWriter<RoleHistoryRecord> writer =
-        new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class);
-
       int roles = history.getRoleSize();
       RoleHistoryHeader header = new RoleHistoryHeader();
-      header.setVersion(ROLE_HISTORY_VERSION);
+      header.setVersion(encoding.getVersion());
       header.setSaved(savetime);
       header.setSavedx(Long.toHexString(savetime));
       header.setSavedate(HoyaUtils.toGMTString(savetime));
       header.setRoles(roles);
-      RoleHistoryRecord record = new RoleHistoryRecord(header);
-      Schema schema = record.getSchema();
-      Encoder encoder = EncoderFactory.get().jsonEncoder(schema, out);
-      writer.write(record, encoder);
+      RecordSink sink = createSink(out);
+      sink.append(new RoleHistoryRecord(header));
       long count = 0;
       //now for every role history entry, write out its record
       Collection<NodeInstance> instances = history.cloneNodemap().values();
@@ -113,8 +205,7 @@ public class RoleHistoryWriter {
 
           if (nodeEntry != null) {
             NodeEntryRecord ner = build(nodeEntry, role, instance.hostname);
-            record = new RoleHistoryRecord(ner);
-            writer.write(record, encoder);
+            sink.append(new RoleHistoryRecord(ner));
             count++;
           }
         }
@@ -122,8 +213,8 @@ public class RoleHistoryWriter {
       // footer
       RoleHistoryFooter footer = new RoleHistoryFooter();
       footer.setCount(count);
-      writer.write(new RoleHistoryRecord(footer), encoder);
-      encoder.flush();
+      sink.append(new RoleHistoryRecord(footer));
+      sink.close();
       out.close();
       return count;
     } finally {
@@ -131,6 +222,32 @@ public class RoleHistoryWriter {
     }
   }
 
+  /**
+   * Create the sink for records in the current encoding
+   * @param out output stream
+   * @return a sink
+   * @throws IOException IO problems
+   */
+  private RecordSink createSink(OutputStream out) throws IOException {
+    DatumWriter<RoleHistoryRecord> writer =
+      new SpecificDatumWriter<RoleHistoryRecord>(RoleHistoryRecord.class);
+    Schema schema = RoleHistoryRecord.getClassSchema();
+    switch (encoding) {
+      case COMPRESSED:
+        DataFileWriter<RoleHistoryRecord> fileWriter =
+          new DataFileWriter<RoleHistoryRecord>(writer);
+        fileWriter.setCodec(CodecFactory.deflateCodec(DEFLATE_LEVEL));
+        fileWriter.create(schema, out);
+        return new DataFileSink(fileWriter);
+      case BINARY:
+        return new EncoderSink(writer,
+                               EncoderFactory.get().binaryEncoder(out, null));
+      default:
+        return new EncoderSink(writer,
+                               EncoderFactory.get().jsonEncoder(schema, out));
+    }
+  }
+
   /**
    * Write write the file
    *
@@ -163,6 +280,108 @@ public class RoleHistoryWriter {
     return path;
   }
   
+  /**
+   * Get the path of the journal following a history snapshot
+   * @param snapshot path of the snapshot
+   * @return the path of its journal
+   */
+  public Path createJournalFilename(Path snapshot) {
+    String name = snapshot.getName();
+    String suffix = "." + HoyaKeys.HISTORY_FILENAME_SUFFIX;
+    if (name.endsWith(suffix)) {
+      name = name.substring(0, name.length() - suffix.length());
+    }
+    return new Path(snapshot.getParent(),
+                    name + "." + HoyaKeys.HISTORY_JOURNAL_SUFFIX);
+  }
+
+  /**
+   * Open a new journal to follow a snapshot
+   * @param fs filesystem
+   * @param snapshot path of the snapshot
+   * @param snapshotTime save time of the snapshot
+   * @param roles number of roles
+   * @return the new journal
+   * @throws IOException IO problems
+   */
+  public RoleHistoryJournal createJournal(FileSystem fs,
+                                          Path snapshot,
+                                          long snapshotTime,
+                                          int roles) throws IOException {
+    return new RoleHistoryJournal(fs, createJournalFilename(snapshot),
+                                  snapshotTime, roles);
+  }
+
+  /**
+   * Replay the journal of a snapshot into a history which has just
+   * been loaded from that snapshot.
+   * A truncated final record -as left if the AM failed mid-write- ends
+   * the replay without failing it; every complete record before it
+   * is applied.
+   * @param fs filesystem
+   * @param journal path to the journal
+   * @param history history to update
+   * @return the number of records replayed
+   * @throws IOException IO problems, or a journal which does not match
+   * the loaded snapshot
+   */
+  public int replayJournal(FileSystem fs, Path journal, RoleHistory history)
+    throws IOException {
+    DatumReader<RoleHistoryRecord> reader =
+      new SpecificDatumReader<RoleHistoryRecord>(RoleHistoryRecord.class);
+    InputStream in = new BufferedInputStream(fs.open(journal), READ_BUFFER_SIZE);
+    try {
+      BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(in, null);
+      BinaryDecoderSource source = new BinaryDecoderSource(reader, decoder);
+      if (source.atEnd()) {
+        // nothing was ever written
+        return 0;
+      }
+      RoleHistoryRecord record = source.next(null);
+      Object entry = record.getEntry();
+      if (!(entry instanceof RoleHistoryHeader)) {
+        throw new IOException("Role History Header not found at start of "
+                              + journal);
+      }
+      RoleHistoryHeader header = (RoleHistoryHeader) entry;
+      if (header.getSaved() != history.getThawedDataTime()) {
+        throw new HoyaIOException(
+          "Journal %s follows a snapshot saved at %s, not that loaded, %s",
+          journal,
+          header.getSavedx(),
+          Long.toHexString(history.getThawedDataTime()));
+      }
+      if (header.getRoles() != history.getRoleSize()) {
+        throw new HoyaIOException(
+          "Number of roles in journal %d does not match the expected %d",
+          header.getRoles(), history.getRoleSize());
+      }
+      int records = 0;
+      try {
+        while (!source.atEnd()) {
+          record = source.next(record);
+          entry = record.getEntry();
+          if (!(entry instanceof NodeEntryRecord)) {
+            throw new HoyaIOException("Unexpected record in journal %s: %s",
+                                      journal, entry);
+          }
+          NodeEntryRecord nodeEntryRecord = (NodeEntryRecord) entry;
+          String hostname =
+            HoyaUtils.sequenceToString(nodeEntryRecord.getHost());
+          NodeInstance instance = history.getOrCreateNodeInstance(hostname);
+          instance.getOrCreate(nodeEntryRecord.getRole())
+                  .setLastUsed(nodeEntryRecord.getLastUsed());
+          records++;
+        }
+      } catch (EOFException e) {
+        log.info("Journal {} truncated after {} records", journal, records);
+      }
+      return records;
+    } finally {
+      in.close();
+    }
+  }
+
   private NodeEntryRecord build(NodeEntry entry, int role, String hostname) {
     NodeEntryRecord record = new NodeEntryRecord(
       hostname, role, entry.getLive() > 0, entry.getLastUsed()
@@ -184,33 +403,33 @@ public class RoleHistoryWriter {
                                                        IOException,
                                                        BadConfigException {
     try {
-      DatumReader<RoleHistoryRecord> reader =
-        new SpecificDatumReader<RoleHistoryRecord>(RoleHistoryRecord.class);
-      Decoder decoder =
-        DecoderFactory.get().jsonDecoder(RoleHistoryRecord.getClassSchema(),
-                                         in);
+      BufferedInputStream bufferedIn =
+        new BufferedInputStream(in, READ_BUFFER_SIZE);
+      Encoding fileEncoding = detectEncoding(bufferedIn);
+      RecordSource source = createSource(bufferedIn, fileEncoding);
 
       //read header : no entry -> EOF
-      RoleHistoryRecord record = reader.read(null, decoder);
+      RoleHistoryRecord record = source.next(null);
       Object entry = record.getEntry();
       if (!(entry instanceof RoleHistoryHeader)) {
         throw new IOException("Role History Header not found at start of file");
       }
       RoleHistoryHeader header = (RoleHistoryHeader) entry;
       Long saved = header.getSaved();
-      if (header.getVersion() != ROLE_HISTORY_VERSION) {
+      if (header.getVersion() != fileEncoding.getVersion()) {
         throw new HoyaIOException(
-          "Can't read role file version %04x -need %04x",
+          "Can't read %s role file version %04x -need %04x",
+          fileEncoding,
           header.getVersion(),
-          ROLE_HISTORY_VERSION);
+          fileEncoding.getVersion());
       }
       history.prepareForReading(header);
       RoleHistoryFooter footer = null;
       int records = 0;
-      //go through reading data
+      //go through reading data; the record is reused
       try {
         while (true) {
-          record = reader.read(null, decoder);
+          record = source.next(record);
           entry = record.getEntry();
 
           if (entry instanceof RoleHistoryHeader) {
@@ -243,7 +462,7 @@ public class RoleHistoryWriter {
         throw ex;
       }
       //at this point there should be no data left. 
-      if (in.read() > 0) {
+      if (!source.atEnd()) {
         // footer is in stream before the last record
         throw new EOFException(
           "File footer reached before end of file -after " + records +
@@ -260,6 +479,66 @@ public class RoleHistoryWriter {
 
   }
 
+  /**
+   * Look at the start of a stream to determine its encoding. The stream
+   * is reset to the start afterwards.
+   * <ol>
+   *   <li>Avro data files begin with the data file magic number</li>
+   *   <li>JSON files begin with an opening brace</li>
+   *   <li>Anything else is treated as binary</li>
+   * </ol>
+   * @param in input stream, which must support mark/reset
+   * @return the encoding of the stream
+   * @throws IOException IO problems
+   */
+  @VisibleForTesting
+  public static Encoding detectEncoding(InputStream in) throws IOException {
+    byte[] magic = DataFileConstants.MAGIC;
+    byte[] start = new byte[magic.length];
+    in.mark(magic.length);
+    int len = 0;
+    int r;
+    while (len < start.length &&
+           (r = in.read(start, len, start.length - len)) > 0) {
+      len += r;
+    }
+    in.reset();
+    if (len == magic.length && Arrays.equals(magic, start)) {
+      return Encoding.COMPRESSED;
+    }
+    if (len > 0 && start[0] == '{') {
+      return Encoding.JSON;
+    }
+    return Encoding.BINARY;
+  }
+
+  /**
+   * Create a record source for a stream
+   * @param in input stream
+   * @param fileEncoding the encoding of the stream
+   * @return a source of records
+   * @throws IOException IO problems
+   */
+  private RecordSource createSource(InputStream in, Encoding fileEncoding)
+    throws IOException {
+    DatumReader<RoleHistoryRecord> reader =
+      new SpecificDatumReader<RoleHistoryRecord>(RoleHistoryRecord.class);
+    switch (fileEncoding) {
+      case COMPRESSED:
+        return new DataFileSource(
+          new DataFileStream<RoleHistoryRecord>(in, reader));
+      case BINARY:
+        return new BinaryDecoderSource(reader,
+                                       DecoderFactory.get()
+                                                     .binaryDecoder(in, null));
+      default:
+        return new JsonDecoderSource(reader,
+            DecoderFactory.get().jsonDecoder(RoleHistoryRecord.getClassSchema(),
+                                             in),
+            in);
+    }
+  }
+
   /**
    * Read a role history from a path in a filesystem
    * @param fs filesystem
@@ -375,6 +654,8 @@ public class RoleHistoryWriter {
         log.info("Failed to read {}", path, e);
       } catch (AvroTypeException e) {
         log.warn("Failed to parse {}", path, e);
+      } catch (AvroRuntimeException e) {
+        log.warn("Failed to decode {}", path, e);
       }
     }
     return success ? path : null;
@@ -382,7 +663,8 @@ public class RoleHistoryWriter {
 
   /**
    * Try to load the history from a directory -a failure to load a specific
-   * file is downgraded to a log and the next older path attempted instead
+   * file is downgraded to a log and the next older path attempted instead.
+   * Any journal of the loaded snapshot is then replayed
    * @param fs filesystem
    * @param dir dir to load from
    * @param roleHistory role history to build up
@@ -395,7 +677,22 @@ public class RoleHistoryWriter {
                                                           BadConfigException {
     assert fs != null: "null filesystem";
     List<Path> entries = findAllHistoryEntries(fs, dir, false);
-    return attemptToReadHistory(roleHistory, fs, entries);
+    Path loaded = attemptToReadHistory(roleHistory, fs, entries);
+    if (loaded != null) {
+      Path journal = createJournalFilename(loaded);
+      if (fs.exists(journal)) {
+        try {
+          int count = replayJournal(fs, journal, roleHistory);
+          log.debug("Replayed {} changes from {}", count, journal);
+        } catch (IOException e) {
+          // the snapshot is still valid; only the later changes are lost
+          log.warn("Failed to replay {}", journal, e);
+        } catch (AvroRuntimeException e) {
+          log.warn("Failed to decode {}", journal, e);
+        }
+      }
+    }
+    return loaded;
   }
 
   /**
@@ -426,6 +723,8 @@ public class RoleHistoryWriter {
         log.debug("Deleting {}", path);
         deleteCount++;
         fileSystem.delete(path, false);
+        // and any journal which followed it
+        fileSystem.delete(createJournalFilename(path), false);
       }
     }
     return deleteCount;
@@ -469,5 +768,167 @@ public class RoleHistoryWriter {
       return (o1.getName().compareTo(o2.getName()));
     }
   }
-  
+
+  /**
+   * Destination of history records
+   */
+  private interface RecordSink {
+    void append(RoleHistoryRecord record) throws IOException;
+
+    /**
+     * Flush and close the sink. This may not close the underlying stream.
+     */
+    void close() throws IOException;
+  }
+
+  /**
+   * Sink writing through an encoder
+   */
+  private static class EncoderSink implements RecordSink {
+    private final DatumWriter<RoleHistoryRecord> writer;
+    private final Encoder encoder;
+
+    private EncoderSink(DatumWriter<RoleHistoryRecord> writer,
+                        Encoder encoder) {
+      this.writer = writer;
+      this.encoder = encoder;
+    }
+
+    @Override
+    public void append(RoleHistoryRecord record) throws IOException {
+      writer.write(record, encoder);
+    }
+
+    @Override
+    public void close() throws IOException {
+      encoder.flush();
+    }
+  }
+
+  /**
+   * Sink writing to an Avro data file
+   */
+  private static class DataFileSink implements RecordSink {
+    private final DataFileWriter<RoleHistoryRecord> fileWriter;
+
+    private DataFileSink(DataFileWriter<RoleHistoryRecord> fileWriter) {
+      this.fileWriter = fileWriter;
+    }
+
+    @Override
+    public void append(RoleHistoryRecord record) throws IOException {
+      fileWriter.append(record);
+    }
+
+    @Override
+    public void close() throws IOException {
+      fileWriter.close();
+    }
+  }
+
+  /**
+   * Source of history records, read one at a time
+   */
+  private interface RecordSource {
+    /**
+     * Read the next record
+     * @param reuse any record to reuse; may be null
+     * @return the record
+     * @throws EOFException at the end of the data
+     * @throws IOException other IO problems
+     */
+    RoleHistoryRecord next(RoleHistoryRecord reuse) throws IOException;
+
+    /**
+     * Probe for the end of the data
+     * @return true if there is no more data
+     * @throws IOException IO problems
+     */
+    boolean atEnd() throws IOException;
+  }
+
+  /**
+   * Source reading JSON
+   */
+  private static class JsonDecoderSource implements RecordSource {
+    private final DatumReader<RoleHistoryRecord> reader;
+    private final Decoder decoder;
+    private final InputStream in;
+
+    private JsonDecoderSource(DatumReader<RoleHistoryRecord> reader,
+                              Decoder decoder, InputStream in) {
+      this.reader = reader;
+      this.decoder = decoder;
+      this.in = in;
+    }
+
+    @Override
+    public RoleHistoryRecord next(RoleHistoryRecord reuse) throws IOException {
+      return reader.read(reuse, decoder);
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+      return in.read() <= 0;
+    }
+  }
+
+  /**
+   * Source reading Avro binary
+   */
+  private static class BinaryDecoderSource implements RecordSource {
+    private final DatumReader<RoleHistoryRecord> reader;
+    private final BinaryDecoder decoder;
+
+    private BinaryDecoderSource(DatumReader<RoleHistoryRecord> reader,
+                                BinaryDecoder decoder) {
+      this.reader = reader;
+      this.decoder = decoder;
+    }
+
+    /**
+     * {@inheritDoc}
+     * There is no structure in binary data to catch corruption, so
+     * any failure to decode is converted to an IOException
+     */
+    @Override
+    public RoleHistoryRecord next(RoleHistoryRecord reuse) throws IOException {
+      try {
+        return reader.read(reuse, decoder);
+      } catch (IndexOutOfBoundsException e) {
+        throw new IOException("Malformed role history data: " + e, e);
+      } catch (ClassCastException e) {
+        throw new IOException("Malformed role history data: " + e, e);
+      }
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+      return decoder.isEnd();
+    }
+  }
+
+  /**
+   * Source reading an Avro data file, one block at a time
+   */
+  private static class DataFileSource implements RecordSource {
+    private final DataFileStream<RoleHistoryRecord> stream;
+
+    private DataFileSource(DataFileStream<RoleHistoryRecord> stream) {
+      this.stream = stream;
+    }
+
+    @Override
+    public RoleHistoryRecord next(RoleHistoryRecord reuse) throws IOException {
+      if (!stream.hasNext()) {
+        throw new EOFException("End of data file");
+      }
+      return stream.next(reuse);
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+      return !stream.hasNext();
+    }
+  }
 }
@@ -58,6 +58,22 @@ public final class AggregateConf {
     setInternal(internal);
   }
 
+  /**
+   * Deep clone: the conf trees are cloned
+   * @return a deep clone
+   */
+  public AggregateConf deepClone() {
+    AggregateConf copy = new AggregateConf(deepClone(resources),
+                                           deepClone(appConf),
+                                           deepClone(internal));
+    copy.name = name;
+    return copy;
+  }
+
+  private static ConfTree deepClone(ConfTree tree) {
+    return tree == null ? null : tree.deepClone();
+  }
+
   public void setResources(ConfTree resources) {
     this.resources = resources;
     resourceOperations = new ConfTreeOperations(resources);
@@ -20,7 +20,9 @@ package org.apache.hoya.core.conf;
 
 import org.apache.hoya.core.CoreKeys;
 import org.apache.hoya.core.persist.ConfTreeSerDeser;
+import org.apache.hoya.core.persist.JsonMappers;
 import org.apache.hoya.core.persist.JsonSerDeser;
+import org.apache.hoya.tools.HoyaUtils;
 import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.map.JsonMappingException;
@@ -85,6 +87,20 @@ public final class ConfTree {
     return super.clone();
   }
 
+  /**
+   * Deep clone: all the maps are copied
+   * @return a deep clone
+   */
+  public ConfTree deepClone() {
+    ConfTree copy = new ConfTree();
+    copy.schema = schema;
+    copy.metadata = JsonMappers.copyMap(metadata);
+    copy.global = global == null ? null : HoyaUtils.stringMapClone(global);
+    copy.components = components == null ? null
+                                          : HoyaUtils.deepClone(components);
+    return copy;
+  }
+
   @Override
   public String toString() {
     try {
@@ -316,17 +316,14 @@ public class ConfTreeOperations {
   }
   
   /**
-   * Build from an existing instance -which is cloned via JSON ser/deser
+   * Build from an existing instance -which is deep cloned
    * @param instance the source instance
    * @return loaded value
    * @throws IOException load failure
    */
   public static ConfTreeOperations fromInstance(ConfTree instance) throws
                                                                  IOException {
-    ConfTreeSerDeser confTreeSerDeser = new ConfTreeSerDeser();
-    ConfTreeOperations ops = new ConfTreeOperations(
-       confTreeSerDeser.fromJson(confTreeSerDeser.toJson(instance)) );
-    return ops;
+    return new ConfTreeOperations(instance.deepClone());
   }
 
   /**
@@ -37,7 +37,7 @@ public class ConfTreeSerDeser extends JsonSerDeser<ConfTree> {
   private static final ConfTreeSerDeser staticinstance = new ConfTreeSerDeser();
 
   /**
-   * Convert a tree instance to a JSON string -sync access to a shared ser/deser
+   * Convert a tree instance to a JSON string using a shared ser/deser
    * object instance
    * @param instance object to convert
    * @return a JSON string description
@@ -47,8 +47,6 @@ public class ConfTreeSerDeser extends JsonSerDeser<ConfTree> {
   public static String toString(ConfTree instance) throws IOException,
                                                           JsonGenerationException,
                                                           JsonMappingException {
-    synchronized (staticinstance) {
-      return staticinstance.toJson(instance);
-    }
+    return staticinstance.toJson(instance);
   }
 }
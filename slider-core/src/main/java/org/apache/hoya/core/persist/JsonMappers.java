@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.core.persist;
+
+import org.codehaus.jackson.map.AnnotationIntrospector;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.map.introspect.JacksonAnnotationIntrospector;
+import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The shared Jackson object mappers.
+ * <p>
+ * An <code>ObjectMapper</code> is expensive to create, as it builds
+ * and caches the serializers of every type it sees; it is thread safe
+ * once configured. These mappers are configured when the class is loaded
+ * and must not be reconfigured by their users; code needing a different
+ * configuration must create its own mapper.
+ */
+public final class JsonMappers {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final ObjectMapper INDENTING_MAPPER = new ObjectMapper();
+
+  private static final ObjectMapper JAXB_MAPPER = new ObjectMapper();
+
+  static {
+    INDENTING_MAPPER.configure(SerializationConfig.Feature.INDENT_OUTPUT,
+                               true);
+    JAXB_MAPPER.setAnnotationIntrospector(new AnnotationIntrospector.Pair(
+        new JaxbAnnotationIntrospector(),
+        new JacksonAnnotationIntrospector()));
+  }
+
+  private JsonMappers() {
+  }
+
+  /**
+   * Get the shared mapper, which generates compact JSON
+   * @return the mapper
+   */
+  public static ObjectMapper getMapper() {
+    return MAPPER;
+  }
+
+  /**
+   * Get the shared mapper which generates indented JSON
+   * @return the mapper
+   */
+  public static ObjectMapper getIndentingMapper() {
+    return INDENTING_MAPPER;
+  }
+
+  /**
+   * Get the shared mapper which honours JAXB annotations as well as
+   * Jackson ones, as used by the REST providers
+   * @return the mapper
+   */
+  public static ObjectMapper getJaxbMapper() {
+    return JAXB_MAPPER;
+  }
+
+  /**
+   * Convert an object to compact JSON
+   * @param instance object to convert
+   * @return a JSON string
+   * @throws IOException mapping problems
+   */
+  public static String toJson(Object instance) throws IOException {
+    return MAPPER.writeValueAsString(instance);
+  }
+
+  /**
+   * Convert an object to indented JSON
+   * @param instance object to convert
+   * @return a JSON string
+   * @throws IOException mapping problems
+   */
+  public static String toIndentedJson(Object instance) throws IOException {
+    return INDENTING_MAPPER.writeValueAsString(instance);
+  }
+
+  /**
+   * Parse JSON
+   * @param json JSON text
+   * @param type type to create
+   * @param <T> type to create
+   * @return the parsed object
+   * @throws IOException parse or mapping problems
+   */
+  public static <T> T fromJson(String json, Class<T> type) throws
+                                                          IOException {
+    return MAPPER.readValue(json, type);
+  }
+
+  /**
+   * Deep copy a value of a JSON tree: maps, lists and scalars.
+   * Maps and lists are copied; strings, numbers and booleans are immutable
+   * and shared. Any other object is converted into its map form, as it
+   * would be by a round trip through JSON.
+   * @param value value to copy
+   * @return the copy
+   */
+  public static Object copyValue(Object value) {
+    if (value == null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean) {
+      return value;
+    }
+    if (value instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) value;
+      Map<Object, Object> copy = new LinkedHashMap<Object, Object>(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        copy.put(entry.getKey(), copyValue(entry.getValue()));
+      }
+      return copy;
+    }
+    if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      List<Object> copy = new ArrayList<Object>(list.size());
+      for (Object element : list) {
+        copy.add(copyValue(element));
+      }
+      return copy;
+    }
+    return MAPPER.convertValue(value, Object.class);
+  }
+
+  /**
+   * Deep copy a map of JSON values
+   * @param map map to copy; may be null
+   * @return the copy, or null if the source was null
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> copyMap(Map<String, Object> map) {
+    return map == null ? null : (Map<String, Object>) copyValue(map);
+  }
+}
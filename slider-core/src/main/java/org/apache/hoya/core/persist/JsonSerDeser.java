@@ -28,7 +28,6 @@ import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,8 +39,8 @@ import java.io.InputStream;
 
 /**
  * Support for marshalling objects to and from JSON.
- * This class is NOT thread safe; it constructs an object mapper
- * as an instance field.
+ * This class is thread safe: it uses the shared mappers
+ * of {@link JsonMappers}.
  * @param <T>
  */
 public class JsonSerDeser<T> {
@@ -50,7 +49,7 @@ public class JsonSerDeser<T> {
   private static final String UTF_8 = "UTF-8";
 
   private final Class classType;
-  private final ObjectMapper mapper = new ObjectMapper();
+  private final ObjectMapper mapper = JsonMappers.getMapper();
 
   /**
    * Create an instance bound to a specific type
@@ -192,7 +191,6 @@ public class JsonSerDeser<T> {
   public String toJson(T instance) throws IOException,
                                                JsonGenerationException,
                                                JsonMappingException {
-    mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
-    return mapper.writeValueAsString(instance);
+    return JsonMappers.getIndentingMapper().writeValueAsString(instance);
   }
 }
@@ -20,6 +20,7 @@ package org.apache.hoya.providers;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.service.Service;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.service.launcher.ExitCodeProvider;
 import org.apache.hoya.HoyaKeys;
 import org.apache.hoya.api.ClusterDescription;
@@ -62,6 +63,12 @@ public abstract class AbstractProviderService
   protected StateAccessForProviders stateAccessor;
   protected AgentRestOperations restOps;
 
+  /**
+   * Cache of per-role launch context templates
+   */
+  protected final LaunchTemplateCache launchTemplates =
+    new LaunchTemplateCache();
+
   public AbstractProviderService(String name) {
     super(name);
   }
@@ -93,6 +100,45 @@ public abstract class AbstractProviderService
     this.restOps = agentRestOperations;
   }
 
+  /**
+   * No-op implementation of this method.
+   *
+   * {@inheritDoc}
+   */
+  @Override
+  public void notifyContainerCompleted(ContainerId containerId) {
+  }
+
+  /**
+   * No statistics by default
+   * @return an empty map
+   */
+  @Override
+  public Map<String, Integer> buildProviderStatistics() {
+    return new HashMap<String, Integer>();
+  }
+
+  /**
+   * No metrics by default
+   * @return an empty map
+   */
+  @Override
+  public Map<String, Object> buildMetrics() {
+    return new HashMap<String, Object>();
+  }
+
+  /**
+   * Get the version of the instance definition, as used to
+   * validate the launch templates
+   * @return the version, or {@link LaunchTemplateCache#UNVERSIONED}
+   * if the provider is not yet bound to the application state
+   */
+  protected long getInstanceDefinitionVersion() {
+    StateAccessForProviders accessor = getStateAccessor();
+    return accessor != null ? accessor.getInstanceDefinitionVersion()
+                            : LaunchTemplateCache.UNVERSIONED;
+  }
+
   /**
    * Load a specific XML configuration file for the provider config
    * @param confDir configuration directory
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers;
+
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cache of the per-role parts of a container launch context which only
+ * change when the instance definition does: the local resources
+ * and the environment.
+ * <p>
+ * Building the local resources means a stat of every file in the
+ * filesystem; doing that for every container in a large flex
+ * is a lot of namenode load for identical results.
+ * <p>
+ * Templates are tagged with the instance definition version they were
+ * built against; a lookup with any other version discards the whole cache.
+ */
+public class LaunchTemplateCache {
+  protected static final Logger log =
+    LoggerFactory.getLogger(LaunchTemplateCache.class);
+
+  /**
+   * Version to use when the definition version is unknown; nothing
+   * is cached against it: {@value}
+   */
+  public static final long UNVERSIONED = -1;
+
+  private final Map<String, Template> templates =
+    new HashMap<String, Template>();
+
+  /**
+   * Version of the definition the cached entries were built against
+   */
+  private long version = UNVERSIONED;
+
+  /**
+   * Look up the template of a role
+   * @param role role name
+   * @param definitionVersion current version of the instance definition
+   * @return the template or null if there is no valid one
+   */
+  public synchronized Template lookup(String role, long definitionVersion) {
+    if (definitionVersion == UNVERSIONED) {
+      return null;
+    }
+    if (definitionVersion != version) {
+      if (!templates.isEmpty()) {
+        log.debug("Instance definition now at version {}: discarding {}" +
+                  " launch templates", definitionVersion, templates.size());
+      }
+      invalidate();
+      version = definitionVersion;
+    }
+    return templates.get(role);
+  }
+
+  /**
+   * Add a template for a role. If the version is not the current one,
+   * the template is returned but not cached.
+   * @param role role name
+   * @param definitionVersion version of the definition used to build it
+   * @param localResources local resources
+   * @param environment environment variables
+   * @return the new template
+   */
+  public synchronized Template put(String role,
+                                   long definitionVersion,
+                                   Map<String, LocalResource> localResources,
+                                   Map<String, String> environment) {
+    Template template = new Template(localResources, environment);
+    if (definitionVersion != UNVERSIONED && definitionVersion == version) {
+      templates.put(role, template);
+    }
+    return template;
+  }
+
+  /**
+   * Discard all cached templates
+   */
+  public synchronized void invalidate() {
+    templates.clear();
+    version = UNVERSIONED;
+  }
+
+  /**
+   * Get the number of cached templates
+   * @return the cache size
+   */
+  public synchronized int size() {
+    return templates.size();
+  }
+
+  /**
+   * A launch template. The maps are copied in and out, so callers
+   * may modify what they get back.
+   */
+  public static final class Template {
+    private final Map<String, LocalResource> localResources;
+    private final Map<String, String> environment;
+
+    public Template(Map<String, LocalResource> localResources,
+                    Map<String, String> environment) {
+      this.localResources = new HashMap<String, LocalResource>(localResources);
+      this.environment = new HashMap<String, String>(environment);
+    }
+
+    /**
+     * Get a copy of the local resources
+     * @return a new map of the local resources
+     */
+    public Map<String, LocalResource> getLocalResources() {
+      return new HashMap<String, LocalResource>(localResources);
+    }
+
+    /**
+     * Get a copy of the environment
+     * @return a new map of the environment
+     */
+    public Map<String, String> getEnvironment() {
+      return new HashMap<String, String>(environment);
+    }
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.service.Service;
 import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
 import org.apache.hadoop.yarn.service.launcher.ExitCodeProvider;
 import org.apache.hoya.api.ClusterDescription;
@@ -121,6 +122,19 @@ public interface ProviderService extends ProviderCore, Service,
      * @return the provider status - map of entries to add to the info section
      */
   Map<String, String> buildProviderStatus();
+
+  /**
+   * Build the provider statistics, to add to the statistics of the AM
+   * in the cluster status; can be empty
+   * @return a map of statistic to value
+   */
+  Map<String, Integer> buildProviderStatistics();
+
+  /**
+   * Build the provider metrics, for the management API; can be empty
+   * @return a map of metric name to value or nested map
+   */
+  Map<String, Object> buildMetrics();
   
   /**
    * Build a map of data intended for the AM webapp that is specific
@@ -143,4 +157,11 @@ public interface ProviderService extends ProviderCore, Service,
    * @return  the interface if available, null otherwise.
    */
   AgentRestOperations getAgentRestOperations();
+
+  /**
+   * Notification that a container has completed; invoked after the
+   * application state has been updated
+   * @param containerId the container
+   */
+  void notifyContainerCompleted(ContainerId containerId);
 }
@@ -40,6 +40,7 @@ import org.apache.hoya.exceptions.BadCommandArgumentsException;
 import org.apache.hoya.exceptions.BadConfigException;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.providers.AbstractProviderService;
+import org.apache.hoya.providers.LaunchTemplateCache;
 import org.apache.hoya.providers.ProviderCore;
 import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderUtils;
@@ -132,62 +133,70 @@ public class AccumuloProviderService extends AbstractProviderService implements
     this.hoyaFileSystem = hoyaFileSystem;
     this.instanceDefinition = instanceDefinition;
     
-    // Set the environment
-    Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
-    env.put(ACCUMULO_LOG_DIR, ApplicationConstants.LOG_DIR_EXPANSION_VAR);
-    ConfTreeOperations appConf =
-      instanceDefinition.getAppConfOperations();
-    String hadoop_home =
-      ApplicationConstants.Environment.HADOOP_COMMON_HOME.$();
-    MapOperations appConfGlobal = appConf.getGlobalOptions();
-    hadoop_home = appConfGlobal.getOption(OPTION_HADOOP_HOME, hadoop_home);
-    env.put(HADOOP_HOME, hadoop_home);
-    env.put(HADOOP_PREFIX, hadoop_home);
-    
-    // By not setting ACCUMULO_HOME, this will cause the Accumulo script to
-    // compute it on its own to an absolute path.
-
-    env.put(ACCUMULO_CONF_DIR,
-            ProviderUtils.convertToAppRelativePath(
-              HoyaKeys.PROPAGATED_CONF_DIR_NAME));
-    env.put(ZOOKEEPER_HOME, appConfGlobal.getMandatoryOption(OPTION_ZK_HOME));
-
-    //local resources
-    Map<String, LocalResource> localResources =
-      new HashMap<String, LocalResource>();
-
-    //add the configuration resources
-    Map<String, LocalResource> confResources;
-    confResources = hoyaFileSystem.submitDirectory(
-            generatedConfPath,
-            HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-    localResources.putAll(confResources);
-
-    //Add binaries
-    //now add the image if it was set
-    String imageURI = instanceDefinition.getInternalOperations()
-                                        .get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
-    hoyaFileSystem.maybeAddImagePath(localResources, imageURI);
+    // the environment and resources only change with the definition,
+    // so are built once per role and then reused
+    long version = getInstanceDefinitionVersion();
+    LaunchTemplateCache.Template template =
+      launchTemplates.lookup(role, version);
+    if (template == null) {
+      // Set the environment
+      Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
+      env.put(ACCUMULO_LOG_DIR, ApplicationConstants.LOG_DIR_EXPANSION_VAR);
+      ConfTreeOperations appConf =
+        instanceDefinition.getAppConfOperations();
+      String hadoop_home =
+        ApplicationConstants.Environment.HADOOP_COMMON_HOME.$();
+      MapOperations appConfGlobal = appConf.getGlobalOptions();
+      hadoop_home = appConfGlobal.getOption(OPTION_HADOOP_HOME, hadoop_home);
+      env.put(HADOOP_HOME, hadoop_home);
+      env.put(HADOOP_PREFIX, hadoop_home);
+
+      // By not setting ACCUMULO_HOME, this will cause the Accumulo script to
+      // compute it on its own to an absolute path.
+
+      env.put(ACCUMULO_CONF_DIR,
+              ProviderUtils.convertToAppRelativePath(
+                HoyaKeys.PROPAGATED_CONF_DIR_NAME));
+      env.put(ZOOKEEPER_HOME, appConfGlobal.getMandatoryOption(OPTION_ZK_HOME));
+
+      String heap = "-Xmx" + appComponent.getOption(RoleKeys.JVM_HEAP, DEFAULT_JVM_HEAP);
+      String opt = "ACCUMULO_OTHER_OPTS";
+      if (HoyaUtils.isSet(heap)) {
+        if (AccumuloKeys.ROLE_MASTER.equals(role)) {
+          opt = "ACCUMULO_MASTER_OPTS";
+        } else if (AccumuloKeys.ROLE_TABLET.equals(role)) {
+          opt = "ACCUMULO_TSERVER_OPTS";
+        } else if (AccumuloKeys.ROLE_MONITOR.equals(role)) {
+          opt = "ACCUMULO_MONITOR_OPTS";
+        } else if (AccumuloKeys.ROLE_GARBAGE_COLLECTOR.equals(role)) {
+          opt = "ACCUMULO_GC_OPTS";
+        }
+        env.put(opt, heap);
+      }
 
-    ctx.setLocalResources(localResources);
+      //local resources
+      Map<String, LocalResource> localResources =
+        new HashMap<String, LocalResource>();
+
+      //add the configuration resources
+      Map<String, LocalResource> confResources;
+      confResources = hoyaFileSystem.submitDirectory(
+              generatedConfPath,
+              HoyaKeys.PROPAGATED_CONF_DIR_NAME);
+      localResources.putAll(confResources);
+
+      //Add binaries
+      //now add the image if it was set
+      String imageURI = instanceDefinition.getInternalOperations()
+                                          .get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
+      hoyaFileSystem.maybeAddImagePath(localResources, imageURI);
+      template = launchTemplates.put(role, version, localResources, env);
+    }
+    Map<String, String> env = template.getEnvironment();
+    ctx.setLocalResources(template.getLocalResources());
 
     List<String> commands = new ArrayList<String>();
     CommandLineBuilder commandLine = new CommandLineBuilder();
-    
-    String heap = "-Xmx" + appComponent.getOption(RoleKeys.JVM_HEAP, DEFAULT_JVM_HEAP);
-    String opt = "ACCUMULO_OTHER_OPTS";
-    if (HoyaUtils.isSet(heap)) {
-      if (AccumuloKeys.ROLE_MASTER.equals(role)) {
-        opt = "ACCUMULO_MASTER_OPTS";
-      } else if (AccumuloKeys.ROLE_TABLET.equals(role)) {
-        opt = "ACCUMULO_TSERVER_OPTS";
-      } else if (AccumuloKeys.ROLE_MONITOR.equals(role)) {
-        opt = "ACCUMULO_MONITOR_OPTS";
-      } else if (AccumuloKeys.ROLE_GARBAGE_COLLECTOR.equals(role)) {
-        opt = "ACCUMULO_GC_OPTS";
-      }
-      env.put(opt, heap);
-    }
 
     //this must stay relative if it is an image
     commandLine.add(providerUtils.buildPathToScript(instanceDefinition,
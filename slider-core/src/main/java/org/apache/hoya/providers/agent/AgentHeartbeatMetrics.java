@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import org.apache.hoya.tools.DurationHistogram;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics of the agent heartbeat and registration traffic handled by
+ * the AM: arrival counts and rate, processing time, the gaps between
+ * heartbeats of an agent, and the time from issuing a command to the
+ * agent reporting its outcome.
+ * <p>
+ * All updates are lock-free; they are made on the web server threads.
+ */
+public class AgentHeartbeatMetrics {
+
+  /**
+   * Window over which the arrival rate is measured, in seconds: {@value}
+   */
+  public static final int RATE_WINDOW = 60;
+
+  public static final String HEARTBEATS = "agent.heartbeats";
+  public static final String HEARTBEAT_RATE = "agent.heartbeats.per.minute";
+  public static final String HEARTBEATS_UNKNOWN = "agent.heartbeats.unknown";
+  public static final String REGISTRATIONS = "agent.registrations";
+  public static final String REGISTRATIONS_FAILED =
+    "agent.registrations.failed";
+  public static final String COMMANDS_THROTTLED = "agent.commands.throttled";
+  public static final String STATUS_COMMANDS = "agent.status.commands";
+  public static final String HEARTBEAT_PROCESSING =
+    "agent.heartbeat.processing.ms";
+  public static final String HEARTBEAT_GAP = "agent.heartbeat.gap.ms";
+  public static final String COMMAND_LATENCY = "agent.command.latency.ms";
+
+  private final AtomicLong heartbeats = new AtomicLong();
+  private final AtomicLong unknownHeartbeats = new AtomicLong();
+  private final AtomicLong registrations = new AtomicLong();
+  private final AtomicLong failedRegistrations = new AtomicLong();
+  private final AtomicLong throttledCommands = new AtomicLong();
+  private final AtomicLong statusCommands = new AtomicLong();
+
+  /**
+   * Bits of an arrival slot holding the count; the rest hold the second
+   */
+  private static final int SLOT_COUNT_BITS = 24;
+  private static final long SLOT_COUNT_MASK = (1L << SLOT_COUNT_BITS) - 1;
+
+  /**
+   * Arrivals per second, over the window. Each slot packs the second it
+   * is counting with the count, so moving a slot on to a new second and
+   * counting in it are one compare-and-set: an arrival counted as the
+   * slot moves on cannot be lost.
+   */
+  private final AtomicLongArray arrivals = new AtomicLongArray(RATE_WINDOW);
+
+  private final DurationHistogram processing = new DurationHistogram();
+  private final DurationHistogram gaps = new DurationHistogram();
+  private final Map<Command, DurationHistogram> commandLatencies =
+    new EnumMap<Command, DurationHistogram>(Command.class);
+
+  public AgentHeartbeatMetrics() {
+    for (Command command : Command.values()) {
+      if (command != Command.NOP) {
+        commandLatencies.put(command, new DurationHistogram());
+      }
+    }
+  }
+
+  /**
+   * Note a heartbeat arriving
+   * @param now current time
+   */
+  public void heartbeatReceived(long now) {
+    heartbeats.incrementAndGet();
+    long second = now / 1000;
+    int slot = (int) (second % RATE_WINDOW);
+    while (true) {
+      long current = arrivals.get(slot);
+      long next;
+      if (current >>> SLOT_COUNT_BITS == second) {
+        if ((current & SLOT_COUNT_MASK) == SLOT_COUNT_MASK) {
+          // saturated
+          return;
+        }
+        next = current + 1;
+      } else if (current >>> SLOT_COUNT_BITS > second) {
+        // the slot has moved on to a later second
+        return;
+      } else {
+        next = (second << SLOT_COUNT_BITS) | 1;
+      }
+      if (arrivals.compareAndSet(slot, current, next)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Note a heartbeat from an agent that is not registered
+   */
+  public void unknownHeartbeat() {
+    unknownHeartbeats.incrementAndGet();
+  }
+
+  /**
+   * Note a registration
+   * @param accepted was the agent recognized?
+   */
+  public void registration(boolean accepted) {
+    registrations.incrementAndGet();
+    if (!accepted) {
+      failedRegistrations.incrementAndGet();
+    }
+  }
+
+  /**
+   * Note a command held back by the rate limit of its role
+   */
+  public void commandThrottled() {
+    throttledCommands.incrementAndGet();
+  }
+
+  /**
+   * Note a status command being issued
+   */
+  public void statusCommandIssued() {
+    statusCommands.incrementAndGet();
+  }
+
+  /**
+   * Record the time taken to process a heartbeat
+   * @param millis duration
+   */
+  public void heartbeatProcessed(long millis) {
+    processing.add(millis);
+  }
+
+  /**
+   * Record the gap between two heartbeats of an agent
+   * @param millis gap
+   */
+  public void heartbeatGap(long millis) {
+    gaps.add(millis);
+  }
+
+  /**
+   * Record the time from a command being issued to its outcome
+   * being reported
+   * @param command command
+   * @param millis latency
+   */
+  public void commandCompleted(Command command, long millis) {
+    DurationHistogram histogram = commandLatencies.get(command);
+    if (histogram != null) {
+      histogram.add(millis);
+    }
+  }
+
+  public long getHeartbeatCount() {
+    return heartbeats.get();
+  }
+
+  public long getUnknownHeartbeatCount() {
+    return unknownHeartbeats.get();
+  }
+
+  public long getThrottledCommandCount() {
+    return throttledCommands.get();
+  }
+
+  public long getStatusCommandCount() {
+    return statusCommands.get();
+  }
+
+  public DurationHistogram getProcessingHistogram() {
+    return processing;
+  }
+
+  public DurationHistogram getGapHistogram() {
+    return gaps;
+  }
+
+  public DurationHistogram getCommandLatencyHistogram(Command command) {
+    return commandLatencies.get(command);
+  }
+
+  /**
+   * Get the number of heartbeats in the last {@link #RATE_WINDOW} seconds
+   * @param now current time
+   * @return the count of heartbeats in the window
+   */
+  public long getRecentHeartbeatCount(long now) {
+    long second = now / 1000;
+    long total = 0;
+    for (int slot = 0; slot < RATE_WINDOW; slot++) {
+      long value = arrivals.get(slot);
+      long age = second - (value >>> SLOT_COUNT_BITS);
+      if (age >= 0 && age < RATE_WINDOW) {
+        total += value & SLOT_COUNT_MASK;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Build the summary statistics, for the cluster status
+   * @param now current time
+   * @return a map of statistic to value
+   */
+  public Map<String, Integer> buildStatistics(long now) {
+    Map<String, Integer> stats = new TreeMap<String, Integer>();
+    stats.put(HEARTBEATS, (int) heartbeats.get());
+    stats.put(HEARTBEAT_RATE, (int) getRecentHeartbeatCount(now));
+    stats.put(HEARTBEATS_UNKNOWN, (int) unknownHeartbeats.get());
+    stats.put(REGISTRATIONS, (int) registrations.get());
+    stats.put(REGISTRATIONS_FAILED, (int) failedRegistrations.get());
+    stats.put(COMMANDS_THROTTLED, (int) throttledCommands.get());
+    stats.put(STATUS_COMMANDS, (int) statusCommands.get());
+    stats.put(HEARTBEAT_PROCESSING + ".mean", (int) processing.getMean());
+    stats.put(HEARTBEAT_PROCESSING + ".p99",
+              (int) processing.getPercentile(99));
+    stats.put(HEARTBEAT_GAP + ".mean", (int) gaps.getMean());
+    stats.put(HEARTBEAT_GAP + ".max", (int) gaps.getMax());
+    for (Map.Entry<Command, DurationHistogram> entry :
+        commandLatencies.entrySet()) {
+      stats.put(COMMAND_LATENCY + "." + entry.getKey() + ".mean",
+                (int) entry.getValue().getMean());
+    }
+    return stats;
+  }
+
+  /**
+   * Build the full metrics, including the histograms and the
+   * per-agent heartbeat gaps
+   * @param now current time
+   * @param instances the registered component instances
+   * @return a map for the management API
+   */
+  public Map<String, Object> buildMetrics(long now,
+                                          List<ComponentInstanceState> instances) {
+    Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+    metrics.put(HEARTBEATS, heartbeats.get());
+    metrics.put(HEARTBEAT_RATE, getRecentHeartbeatCount(now));
+    metrics.put(HEARTBEATS_UNKNOWN, unknownHeartbeats.get());
+    metrics.put(REGISTRATIONS, registrations.get());
+    metrics.put(REGISTRATIONS_FAILED, failedRegistrations.get());
+    metrics.put(COMMANDS_THROTTLED, throttledCommands.get());
+    metrics.put(STATUS_COMMANDS, statusCommands.get());
+    metrics.put(HEARTBEAT_PROCESSING, processing.toMap());
+    metrics.put(HEARTBEAT_GAP, gaps.toMap());
+    Map<String, Object> latencies = new LinkedHashMap<String, Object>();
+    for (Map.Entry<Command, DurationHistogram> entry :
+        commandLatencies.entrySet()) {
+      latencies.put(entry.getKey().toString(), entry.getValue().toMap());
+    }
+    metrics.put(COMMAND_LATENCY, latencies);
+
+    Map<String, Object> agents = new TreeMap<String, Object>();
+    for (ComponentInstanceState instance : instances) {
+      Map<String, Object> agent = new LinkedHashMap<String, Object>();
+      agent.put("role", instance.getCompName());
+      agent.put("state", instance.getState().toString());
+      long last = instance.getLastHeartbeat();
+      agent.put("since.last.heartbeat.ms", last > 0 ? now - last : -1);
+      agent.put("last.gap.ms", instance.getLastHeartbeatGap());
+      agent.put("max.gap.ms", instance.getMaxHeartbeatGap());
+      agents.put(instance.getContainerId(), agent);
+    }
+    metrics.put("agents", agents);
+    return metrics;
+  }
+}
@@ -87,6 +87,52 @@ public interface AgentKeys {
   String PACKAGE_LIST = "package_list";
   String COMPONENT_SCRIPT = "role.script";
   String WAIT_HEARTBEAT = "wait.heartbeat";
+  /**
+   * Longest time in milliseconds a long-poll heartbeat is held
+   * waiting for a command: {@value}. Only heartbeats from instances
+   * still working towards their target state are held; this throttles
+   * idle agents rather than delivering commands sooner.
+   */
+  String HEARTBEAT_LONG_POLL_MAX_WAIT = "heartbeat.longpoll.max.wait";
+  int DEFAULT_HEARTBEAT_LONG_POLL_MAX_WAIT = 30000;
+  /**
+   * Maximum number of long-poll heartbeats held at any one time. Each
+   * holds a web server thread; beyond this, they are answered
+   * immediately: {@value}
+   */
+  String HEARTBEAT_LONG_POLL_MAX_HELD = "heartbeat.longpoll.max.held";
+  int DEFAULT_HEARTBEAT_LONG_POLL_MAX_HELD = 32;
+  /**
+   * Heartbeat interval in milliseconds asked of agents with a command
+   * pending or in progress; 0 leaves it to the agent: {@value}
+   */
+  String HEARTBEAT_INTERVAL_ACTIVE = "heartbeat.interval.active";
+  int DEFAULT_HEARTBEAT_INTERVAL_ACTIVE = 2000;
+  /**
+   * Heartbeat interval in milliseconds asked of agents with nothing to
+   * do, such as those whose component has started; 0 leaves it to the
+   * agent: {@value}
+   */
+  String HEARTBEAT_INTERVAL_IDLE = "heartbeat.interval.idle";
+  int DEFAULT_HEARTBEAT_INTERVAL_IDLE = 30000;
+  /**
+   * Interval in milliseconds between status commands to each started
+   * component; 0 disables them: {@value}
+   */
+  String STATUS_COMMAND_INTERVAL = "status.command.interval";
+  int DEFAULT_STATUS_COMMAND_INTERVAL = 60000;
+  /**
+   * Component option: the rate at which INSTALL and START commands are
+   * issued to the instances of the component, per second. 0 means
+   * no limit: {@value}
+   */
+  String COMMAND_RATE = "command.rate";
+  int DEFAULT_COMMAND_RATE = 0;
+  /**
+   * Component option: the number of commands which may be issued at
+   * once before the rate limit applies. Defaults to the rate: {@value}
+   */
+  String COMMAND_BURST = "command.burst";
   String PYTHON_EXE = "python";
 }
 
@@ -18,13 +18,16 @@
 
 package org.apache.hoya.providers.agent;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.api.ApplicationConstants;
 import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
 import org.apache.hadoop.yarn.api.records.LocalResource;
 import org.apache.hadoop.yarn.api.records.LocalResourceType;
+import org.apache.hadoop.yarn.exceptions.YarnRuntimeException;
 import org.apache.hoya.HoyaKeys;
 import org.apache.hoya.api.ClusterDescription;
 import org.apache.hoya.api.OptionKeys;
@@ -37,21 +40,29 @@ import org.apache.hoya.exceptions.BadCommandArgumentsException;
 import org.apache.hoya.exceptions.BadConfigException;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.providers.AbstractProviderService;
+import org.apache.hoya.providers.LaunchTemplateCache;
 import org.apache.hoya.providers.ProviderCore;
 import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderUtils;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
+import org.apache.hoya.yarn.appmaster.state.ComponentHealth;
+import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 import org.apache.hoya.yarn.appmaster.state.StateAccessForProviders;
-import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentCommandType;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentRestOperations;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.CommandReport;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.ComponentStatus;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.ExecutionCommand;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.Register;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegisterBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationStatus;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.StatusCommand;
 import org.apache.hoya.yarn.service.EventCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +76,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -80,7 +93,16 @@ public class AgentProviderService extends AbstractProviderService implements
   private static final ProviderUtils providerUtils = new ProviderUtils(log);
   private static String LABEL_MAKER = "___";
   private AgentClientProvider clientProvider;
-  private Map<String, ComponentInstanceState> componentStatuses = new HashMap<String, ComponentInstanceState>();
+  private final ComponentInstanceRegistry componentStatuses =
+      new ComponentInstanceRegistry();
+  private final CommandTemplateCache commandTemplates =
+      new CommandTemplateCache();
+  private final AtomicInteger heldHeartBeats = new AtomicInteger(0);
+  private final AgentHeartbeatMetrics heartbeatMetrics =
+      new AgentHeartbeatMetrics();
+  private final CommandRateLimiter commandRateLimiter =
+      new CommandRateLimiter();
+  private final Random heartbeatJitter = new Random();
   private AtomicInteger taskId = new AtomicInteger(0);
 
   public AgentProviderService() {
@@ -99,6 +121,13 @@ public class AgentProviderService extends AbstractProviderService implements
     clientProvider = new AgentClientProvider(conf);
   }
 
+  @Override
+  protected void serviceStop() throws Exception {
+    // release any held heartbeats
+    componentStatuses.wakeAll();
+    super.serviceStop();
+  }
+
   @Override
   public Configuration loadProviderConfigurationInformation(File confDir) throws
       BadCommandArgumentsException,
@@ -130,20 +159,6 @@ public class AgentProviderService extends AbstractProviderService implements
     log.info("Build launch context for Agent");
     log.debug(instanceDefinition.toString());
 
-    // Set the environment
-    Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
-
-    String workDir = ApplicationConstants.Environment.PWD.$();
-    env.put("AGENT_WORK_ROOT", workDir);
-    log.info("AGENT_WORK_ROOT set to " + workDir);
-    String logDir = ApplicationConstants.Environment.LOG_DIRS.$();
-    env.put("AGENT_LOG_ROOT", logDir);
-    log.info("AGENT_LOG_ROOT set to " + logDir);
-
-    //local resources
-    Map<String, LocalResource> localResources =
-        new HashMap<String, LocalResource>();
-
     // TODO: Should agent need to support App Home
     String scriptPath = new File(AgentKeys.AGENT_MAIN_SCRIPT_ROOT, AgentKeys.AGENT_MAIN_SCRIPT).getPath();
     String appHome = instanceDefinition.getAppConfOperations().
@@ -151,34 +166,56 @@ public class AgentProviderService extends AbstractProviderService implements
     if (appHome != null && !appHome.equals("")) {
       scriptPath = new File(appHome, AgentKeys.AGENT_MAIN_SCRIPT).getPath();
     }
+    log.info("Using " + scriptPath + " for agent.");
 
-    String agentImage = instanceDefinition.getInternalOperations().
-        get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
-    if (agentImage != null) {
-      LocalResource agentImageRes = hoyaFileSystem.createAmResource(new Path(agentImage), LocalResourceType.ARCHIVE);
-      localResources.put(AgentKeys.AGENT_INSTALL_DIR, agentImageRes);
-    }
+    // the environment and resources only change with the definition,
+    // so are built once per role and then reused
+    long version = getInstanceDefinitionVersion();
+    LaunchTemplateCache.Template template =
+        launchTemplates.lookup(role, version);
+    if (template == null) {
+      // Set the environment
+      Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
+
+      String workDir = ApplicationConstants.Environment.PWD.$();
+      env.put("AGENT_WORK_ROOT", workDir);
+      log.info("AGENT_WORK_ROOT set to " + workDir);
+      String logDir = ApplicationConstants.Environment.LOG_DIRS.$();
+      env.put("AGENT_LOG_ROOT", logDir);
+      log.info("AGENT_LOG_ROOT set to " + logDir);
+
+      //local resources
+      Map<String, LocalResource> localResources =
+          new HashMap<String, LocalResource>();
+
+      String agentImage = instanceDefinition.getInternalOperations().
+          get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
+      if (agentImage != null) {
+        LocalResource agentImageRes = hoyaFileSystem.createAmResource(new Path(agentImage), LocalResourceType.ARCHIVE);
+        localResources.put(AgentKeys.AGENT_INSTALL_DIR, agentImageRes);
+      }
 
-    log.info("Using " + scriptPath + " for agent.");
-    String appDef = instanceDefinition.getAppConfOperations().
-        getGlobalOptions().getMandatoryOption(AgentKeys.APP_DEF);
-    LocalResource appDefRes = hoyaFileSystem.createAmResource(new Path(appDef),
-                                                              LocalResourceType.ARCHIVE);
-    localResources.put(AgentKeys.APP_DEFINITION_DIR, appDefRes);
-
-    String agentConf = instanceDefinition.getAppConfOperations().
-        getGlobalOptions().getMandatoryOption(AgentKeys.AGENT_CONF);
-    LocalResource agentConfRes = hoyaFileSystem.createAmResource(new Path(agentConf),
-                                                                 LocalResourceType.FILE);
-    localResources.put(AgentKeys.AGENT_CONFIG_FILE, agentConfRes);
-
-    String agentVer = instanceDefinition.getAppConfOperations().
-        getGlobalOptions().getMandatoryOption(AgentKeys.AGENT_VERSION);
-    LocalResource agentVerRes = hoyaFileSystem.createAmResource(new Path(agentVer),
-                                                                LocalResourceType.FILE);
-    localResources.put(AgentKeys.AGENT_VERSION_FILE, agentVerRes);
-
-    ctx.setLocalResources(localResources);
+      String appDef = instanceDefinition.getAppConfOperations().
+          getGlobalOptions().getMandatoryOption(AgentKeys.APP_DEF);
+      LocalResource appDefRes = hoyaFileSystem.createAmResource(new Path(appDef),
+                                                                LocalResourceType.ARCHIVE);
+      localResources.put(AgentKeys.APP_DEFINITION_DIR, appDefRes);
+
+      String agentConf = instanceDefinition.getAppConfOperations().
+          getGlobalOptions().getMandatoryOption(AgentKeys.AGENT_CONF);
+      LocalResource agentConfRes = hoyaFileSystem.createAmResource(new Path(agentConf),
+                                                                   LocalResourceType.FILE);
+      localResources.put(AgentKeys.AGENT_CONFIG_FILE, agentConfRes);
+
+      String agentVer = instanceDefinition.getAppConfOperations().
+          getGlobalOptions().getMandatoryOption(AgentKeys.AGENT_VERSION);
+      LocalResource agentVerRes = hoyaFileSystem.createAmResource(new Path(agentVer),
+                                                                  LocalResourceType.FILE);
+      localResources.put(AgentKeys.AGENT_VERSION_FILE, agentVerRes);
+      template = launchTemplates.put(role, version, localResources, env);
+    }
+    Map<String, String> env = template.getEnvironment();
+    ctx.setLocalResources(template.getLocalResources());
 
     List<String> commandList = new ArrayList<String>();
     String label = getContainerLabel(container, role);
@@ -199,17 +236,54 @@ public class AgentProviderService extends AbstractProviderService implements
     ctx.setEnvironment(env);
 
     // initialize the component instance state
-    componentStatuses.put(label,
-                          new ComponentInstanceState(
-                              role,
-                              container.getId().toString(),
-                              getClusterInfoPropertyValue(OptionKeys.APPLICATION_NAME)));
+    registerComponentInstance(label, role, container.getId().toString());
+  }
+
+  /**
+   * Register the component instance an agent will report on
+   * @param label label the agent will use
+   * @param role role name
+   * @param containerId container of the instance
+   */
+  @VisibleForTesting
+  void registerComponentInstance(String label, String role, String containerId) {
+    componentStatuses.register(label,
+                               new ComponentInstanceState(
+                                   role,
+                                   containerId,
+                                   getClusterInfoPropertyValue(OptionKeys.APPLICATION_NAME)));
+  }
+
+  /**
+   * Get the state of the instance in a container
+   * @param containerId container ID
+   * @return the state, or null if there is no instance in the container
+   */
+  @VisibleForTesting
+  ComponentInstanceState getComponentInstance(String containerId) {
+    return componentStatuses.get(containerId);
   }
 
   private String getContainerLabel(Container container, String role) {
     return container.getId().toString() + LABEL_MAKER + role;
   }
 
+  /**
+   * Forget the component instance in a completed container
+   * @param containerId the container
+   */
+  @Override
+  public void notifyContainerCompleted(ContainerId containerId) {
+    ComponentInstanceState removed =
+        componentStatuses.remove(containerId.toString());
+    if (removed != null) {
+      log.debug("Removed component instance in {}", containerId);
+      removed.markRemoved(getStateAccessor() != null
+                          ? lookupRoleStatus(removed.getCompName())
+                          : null);
+    }
+  }
+
   protected String getClusterInfoPropertyValue(String name) {
     StateAccessForProviders accessor = getStateAccessor();
     assert accessor.isApplicationLive();
@@ -249,6 +323,21 @@ public class AgentProviderService extends AbstractProviderService implements
     return stats;
   }
 
+  @Override
+  public Map<String, Integer> buildProviderStatistics() {
+    return heartbeatMetrics.buildStatistics(System.currentTimeMillis());
+  }
+
+  @Override
+  public Map<String, Object> buildMetrics() {
+    return heartbeatMetrics.buildMetrics(System.currentTimeMillis(),
+                                         componentStatuses.cloneInstanceList());
+  }
+
+  public AgentHeartbeatMetrics getHeartbeatMetrics() {
+    return heartbeatMetrics;
+  }
+
   @Override
   public boolean isSupportedRole(String role) {
     return true;
@@ -259,7 +348,12 @@ public class AgentProviderService extends AbstractProviderService implements
     // dummy impl
     RegistrationResponse response = new RegistrationResponse();
     String label = registration.getHostname();
-    if (componentStatuses.containsKey(label)) {
+    ComponentInstanceState componentStatus = componentStatuses.lookup(label);
+    boolean known = componentStatus != null;
+    heartbeatMetrics.registration(known);
+    if (known) {
+      // a (re)registering agent has no configurations cached
+      componentStatus.resetSentConfigurations();
       response.setResponseStatus(RegistrationStatus.OK);
     } else {
       response.setResponseStatus(RegistrationStatus.FAILED);
@@ -295,34 +389,119 @@ public class AgentProviderService extends AbstractProviderService implements
 
   @Override
   public HeartBeatResponse handleHeartBeat(HeartBeat heartBeat) {
+    return handleHeartBeat(heartBeat, 0);
+  }
+
+  @Override
+  public HeartBeatResponse handleHeartBeat(HeartBeat heartBeat, long timeout) {
+    long start = System.currentTimeMillis();
+    heartbeatMetrics.heartbeatReceived(start);
     // dummy impl
     HeartBeatResponse response = new HeartBeatResponse();
-    long id = heartBeat.getResponseId();
-    response.setResponseId(id + 1L);
+    response.setResponseId(heartBeat.getResponseId() + 1L);
 
     String label = heartBeat.getHostname();
-    String roleName = getRoleName(label);
-    StateAccessForProviders accessor = getStateAccessor();
+    ComponentInstanceState componentStatus = componentStatuses.lookup(label);
+    if (componentStatus == null) {
+      heartbeatMetrics.unknownHeartbeat();
+      return response;
+    }
+    long gap = componentStatus.heartbeatReceived(start);
+    if (gap >= 0) {
+      heartbeatMetrics.heartbeatGap(gap);
+    }
+    componentStatus.responseAcknowledged(heartBeat.getResponseId());
+
     String scriptPath;
     try {
-      scriptPath = accessor.getClusterStatus().getMandatoryRoleOpt(roleName, AgentKeys.COMPONENT_SCRIPT);
-    } catch (BadConfigException bce) {
-      log.error("role.script is unavailable for " + roleName + ". Commands will not be sent.");
-      return response;
+      scriptPath = processHeartBeat(heartBeat, componentStatus, response);
+    } finally {
+      heartbeatMetrics.heartbeatProcessed(System.currentTimeMillis() - start);
     }
 
-    if (!componentStatuses.containsKey(label)) {
-      return response;
+    if (scriptPath != null && timeout > 0
+        && response.getExecutionCommands().isEmpty()
+        && response.getStatusCommands().isEmpty()
+        && response.getNextHeartbeatDelay() == 0
+        && !componentStatus.isCommandInProgress()
+        && componentStatus.canAwaitCommand()) {
+      holdHeartBeat(label, componentStatus, response, scriptPath, timeout);
+    }
+    if (scriptPath != null && response.getNextHeartbeatDelay() == 0) {
+      response.setNextHeartbeatDelay(recommendHeartbeatDelay(componentStatus));
+    }
+    return response;
+  }
+
+  /**
+   * Work out when an agent should next heartbeat: soon if it has a
+   * command pending or in progress, so the outcome is seen quickly;
+   * otherwise at the idle interval, with some jitter so that agents
+   * started together do not stay in step.
+   * An agent still heartbeats at once when a command it is running
+   * completes.
+   * @param componentStatus the instance of the agent
+   * @return the delay in milliseconds, or 0 to leave it to the agent
+   */
+  @VisibleForTesting
+  long recommendHeartbeatDelay(ComponentInstanceState componentStatus) {
+    MapOperations options = getStateAccessor().getAppConfSnapshot()
+                                              .getGlobalOptions();
+    if (componentStatus.isCommandInProgress()
+        || componentStatus.getNextCommand() != Command.NOP) {
+      return options.getOptionInt(HEARTBEAT_INTERVAL_ACTIVE,
+                                  DEFAULT_HEARTBEAT_INTERVAL_ACTIVE);
+    }
+    int idle = options.getOptionInt(HEARTBEAT_INTERVAL_IDLE,
+                                    DEFAULT_HEARTBEAT_INTERVAL_IDLE);
+    if (idle <= 0) {
+      return 0;
+    }
+    // +/- 10%
+    return idle - idle / 10 + (long) (heartbeatJitter.nextDouble() * idle / 5);
+  }
+
+  /**
+   * Process a heartbeat from a registered agent: apply its reports
+   * and issue any command
+   * @param heartBeat heartbeat
+   * @param componentStatus the instance of the agent
+   * @param response response to add commands to
+   * @return the role script, or null if commands cannot yet be
+   * issued to the agent
+   */
+  private String processHeartBeat(HeartBeat heartBeat,
+                                  ComponentInstanceState componentStatus,
+                                  HeartBeatResponse response) {
+    long id = heartBeat.getResponseId();
+    String roleName = componentStatus.getCompName();
+    StateAccessForProviders accessor = getStateAccessor();
+    // read the version before the status: the version only moves on
+    // once the status roles are published, so the script read is never
+    // older than the version it is cached under
+    long version = getInstanceDefinitionVersion();
+    String scriptPath = commandTemplates.lookupScript(roleName, version);
+    if (scriptPath == null) {
+      try {
+        scriptPath = accessor.getClusterStatus().getMandatoryRoleOpt(roleName, AgentKeys.COMPONENT_SCRIPT);
+      } catch (BadConfigException bce) {
+        log.error("role.script is unavailable for " + roleName + ". Commands will not be sent.");
+        return null;
+      }
+      commandTemplates.putScript(roleName, version, scriptPath);
     }
-    ComponentInstanceState componentStatus = componentStatuses.get(label);
 
     List<CommandReport> reports = heartBeat.getReports();
-    if (reports != null && reports.size() > 0) {
-      CommandReport report = reports.get(0);
-      CommandResult result = getCommandResult(report.getStatus());
-      Command command = getCommand(report.getRoleCommand());
-      componentStatus.applyCommandResult(result, command);
-      log.info("Component operation. Status: " + result);
+    if (reports != null) {
+      for (CommandReport report : reports) {
+        applyCommandReport(componentStatus, report);
+      }
+    }
+    List<ComponentStatus> statuses = heartBeat.getComponentStatus();
+    if (statuses != null) {
+      for (ComponentStatus status : statuses) {
+        applyComponentStatus(componentStatus, status);
+      }
     }
 
     int waitForCount = accessor.getInstanceDefinitionSnapshot().
@@ -330,14 +509,193 @@ public class AgentProviderService extends AbstractProviderService implements
 
     if (id < waitForCount) {
       log.info("Waiting until heartbeat count " + waitForCount + ". Current val: " + id);
-      componentStatuses.put(roleName, componentStatus);
-      return response;
+      return null;
+    }
+
+    issueNextCommand(componentStatus, response, scriptPath);
+    if (response.getExecutionCommands().isEmpty()) {
+      issueStatusCommand(componentStatus, response, scriptPath);
+    }
+    return scriptPath;
+  }
+
+  /**
+   * Apply the result of a status command: the health of the instance,
+   * and so the health counters of its role
+   * @param componentStatus the instance
+   * @param status the status reported
+   */
+  private void applyComponentStatus(ComponentInstanceState componentStatus,
+                                    ComponentStatus status) {
+    ComponentHealth health = State.STARTED.toString().equals(status.getStatus())
+                             ? ComponentHealth.HEALTHY
+                             : ComponentHealth.UNHEALTHY;
+    ComponentHealth previous = componentStatus.reportHealth(health,
+        lookupRoleStatus(componentStatus.getCompName()));
+    if (previous != health) {
+      log.info("Component {} in {} is now {}", componentStatus.getCompName(),
+               componentStatus.getContainerId(), health);
+    }
+  }
+
+  /**
+   * Add a status command to a response if one is due
+   * @param componentStatus the instance
+   * @param response response
+   * @param scriptPath role script
+   */
+  private void issueStatusCommand(ComponentInstanceState componentStatus,
+                                  HeartBeatResponse response,
+                                  String scriptPath) {
+    int interval = getStateAccessor().getAppConfSnapshot().getGlobalOptions()
+        .getOptionInt(STATUS_COMMAND_INTERVAL, DEFAULT_STATUS_COMMAND_INTERVAL);
+    if (!componentStatus.issueStatusCommand(System.currentTimeMillis(),
+                                            interval)) {
+      return;
     }
+    String roleName = componentStatus.getCompName();
+    long version = getInstanceDefinitionVersion();
+    // the status command is run with the parameters and
+    // configurations the component was started with
+    CommandTemplateCache.Template template =
+        commandTemplates.lookup(roleName, Command.START, version);
+    try {
+      if (template == null) {
+        template = commandTemplates.put(
+            buildStartCommandTemplate(roleName, scriptPath), version);
+      }
+    } catch (HoyaException e) {
+      log.warn("Cannot build status command for {}: {}", roleName, e.toString());
+      return;
+    }
+    StatusCommand cmd = template.newStatusCommand();
+    if (componentStatus.configurationsSent(cmd.getConfigurationsHash(),
+                                           response.getResponseId())) {
+      cmd.setConfigurations(null);
+    }
+    response.addStatusCommand(cmd);
+    heartbeatMetrics.statusCommandIssued();
+  }
 
-    Command command = componentStatus.getNextCommand();
+  /**
+   * Look up the status of a role
+   * @param roleName role
+   * @return the role status, or null if the role is not known
+   */
+  private RoleStatus lookupRoleStatus(String roleName) {
+    try {
+      return getStateAccessor().lookupRoleStatus(roleName);
+    } catch (YarnRuntimeException e) {
+      log.debug("No status for role {}", roleName);
+      return null;
+    }
+  }
+
+  /**
+   * Apply a command report to a component instance. A report which is
+   * not valid for the current state of the instance is logged and
+   * skipped, so it does not stop the processing of the others.
+   * @param componentStatus the instance
+   * @param report the report
+   */
+  private void applyCommandReport(ComponentInstanceState componentStatus,
+                                  CommandReport report) {
+    try {
+      CommandResult result = getCommandResult(report.getStatus());
+      Command command = getCommand(report.getRoleCommand());
+      long issued = componentStatus.getCommandIssuedTime();
+      componentStatus.applyCommandResult(result, command);
+      if (result != CommandResult.IN_PROGRESS && issued > 0) {
+        heartbeatMetrics.commandCompleted(command,
+            System.currentTimeMillis() - issued);
+      }
+      log.info("Component operation. Status: " + result);
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring report {} for {}: {}", report,
+               componentStatus.getContainerId(), e.toString());
+    } catch (IllegalStateException e) {
+      log.warn("Ignoring report {} for {}: {}", report,
+               componentStatus.getContainerId(), e.toString());
+    }
+  }
+
+  @Override
+  public RegistrationBatchResponse handleRegistrationBatch(
+      RegisterBatch registrations) {
+    if (registrations == null || registrations.getRegistrations() == null) {
+      throw new IllegalArgumentException("No registrations in batch");
+    }
+    Set<String> labels = new HashSet<String>();
+    for (Register registration : registrations.getRegistrations()) {
+      checkBatchLabel(labels, registration == null ? null
+                                                   : registration.getHostname());
+    }
+    RegistrationBatchResponse response = new RegistrationBatchResponse();
+    for (Register registration : registrations.getRegistrations()) {
+      response.addResponse(registration.getHostname(),
+                           handleRegistration(registration));
+    }
+    return response;
+  }
+
+  @Override
+  public HeartBeatBatchResponse handleHeartBeatBatch(HeartBeatBatch heartBeats) {
+    if (heartBeats == null || heartBeats.getHeartBeats() == null) {
+      throw new IllegalArgumentException("No heartbeats in batch");
+    }
+    Set<String> labels = new HashSet<String>();
+    for (HeartBeat heartBeat : heartBeats.getHeartBeats()) {
+      checkBatchLabel(labels, heartBeat == null ? null
+                                                : heartBeat.getHostname());
+    }
+    HeartBeatBatchResponse response = new HeartBeatBatchResponse();
+    for (HeartBeat heartBeat : heartBeats.getHeartBeats()) {
+      response.addResponse(heartBeat.getHostname(),
+                           handleHeartBeat(heartBeat));
+    }
+    return response;
+  }
+
+  /**
+   * Check the label of an entry in a batch before any of the batch is
+   * processed: the responses are keyed by label, so one repeated in a
+   * batch would have its first response overwritten
+   * @param labels labels seen so far in the batch; the label is added
+   * @param label label of the entry
+   * @throws IllegalArgumentException if the label is missing or repeated
+   */
+  private static void checkBatchLabel(Set<String> labels, String label) {
+    if (label == null) {
+      throw new IllegalArgumentException("Batch entry without a label");
+    }
+    if (!labels.add(label)) {
+      throw new IllegalArgumentException("Duplicate label in batch: " + label);
+    }
+  }
+
+  /**
+   * Issue the next command of a component instance, if it has one
+   * @param componentStatus the instance
+   * @param response response to add the command to
+   * @param scriptPath role script
+   */
+  private void issueNextCommand(ComponentInstanceState componentStatus,
+                                HeartBeatResponse response,
+                                String scriptPath) {
+    String roleName = componentStatus.getCompName();
+    if (Command.NOP != componentStatus.getNextCommand()) {
+      long delay = acquireCommandToken(roleName);
+      if (delay > 0) {
+        // come back when the role can be sent another command
+        heartbeatMetrics.commandThrottled();
+        response.setNextHeartbeatDelay(delay);
+        return;
+      }
+    }
+    Command command = componentStatus.issueNextCommand();
     if (Command.NOP != command) {
       try {
-        componentStatus.commandIssued(command);
+        int issued = response.getExecutionCommands().size();
         if (command == Command.INSTALL) {
           log.info("Installing component ...");
           addInstallCommand(roleName, response, scriptPath);
@@ -345,94 +703,178 @@ public class AgentProviderService extends AbstractProviderService implements
           log.info("Starting component ...");
           addStartCommand(roleName, response, scriptPath);
         }
+        List<ExecutionCommand> commands = response.getExecutionCommands();
+        for (ExecutionCommand cmd : commands.subList(issued, commands.size())) {
+          omitSentConfigurations(componentStatus, cmd,
+                                 response.getResponseId());
+        }
       } catch (HoyaException e) {
         componentStatus.applyCommandResult(CommandResult.FAILED, command);
         log.warn("Component instance failed operation.", e);
       }
     }
+  }
 
-    return response;
+  /**
+   * Take a token to issue a command to an instance of a role, under
+   * the role's rate limit
+   * @param roleName role
+   * @return 0 if a command can be issued, otherwise the time in
+   * milliseconds until one can
+   */
+  private long acquireCommandToken(String roleName) {
+    ConfTreeOperations appConf = getStateAccessor().getAppConfSnapshot();
+    int rate = appConf.getComponentOptInt(roleName, COMMAND_RATE,
+                                          DEFAULT_COMMAND_RATE);
+    int burst = appConf.getComponentOptInt(roleName, COMMAND_BURST, rate);
+    return commandRateLimiter.acquire(roleName, rate, burst,
+                                      System.currentTimeMillis());
+  }
+
+  /**
+   * Drop the configurations from a command if the agent has already
+   * received them; it resolves them from the hash
+   * @param componentStatus the instance
+   * @param cmd command
+   * @param responseId ID of the response carrying the command
+   */
+  private void omitSentConfigurations(ComponentInstanceState componentStatus,
+                                      ExecutionCommand cmd,
+                                      long responseId) {
+    String hash = cmd.getConfigurationsHash();
+    if (hash != null
+        && componentStatus.configurationsSent(hash, responseId)) {
+      cmd.setConfigurations(null);
+    }
+  }
+
+  /**
+   * Hold a heartbeat until there is a command for the instance or the
+   * timeout expires. This is an idle throttle rather than a true
+   * long-poll: it is only applied to instances which have not reached
+   * their target state, and a command for an instance normally follows
+   * a report from its own agent, so most holds run to the timeout.
+   * Instances in a steady state are answered at once with the
+   * recommended heartbeat delay instead.
+   * The web server has no asynchronous request support, so a held
+   * heartbeat keeps its thread; the number held at any one time is
+   * limited, and beyond that heartbeats are answered immediately.
+   * @param label agent label
+   * @param componentStatus the instance
+   * @param response response to add any command to
+   * @param scriptPath role script
+   * @param timeout requested timeout in milliseconds
+   */
+  private void holdHeartBeat(String label,
+                             ComponentInstanceState componentStatus,
+                             HeartBeatResponse response,
+                             String scriptPath,
+                             long timeout) {
+    MapOperations options = getStateAccessor().getAppConfSnapshot()
+                                              .getGlobalOptions();
+    long maxWait = options.getOptionInt(HEARTBEAT_LONG_POLL_MAX_WAIT,
+                                        DEFAULT_HEARTBEAT_LONG_POLL_MAX_WAIT);
+    int maxHeld = options.getOptionInt(HEARTBEAT_LONG_POLL_MAX_HELD,
+                                       DEFAULT_HEARTBEAT_LONG_POLL_MAX_HELD);
+    if (heldHeartBeats.incrementAndGet() > maxHeld) {
+      heldHeartBeats.decrementAndGet();
+      return;
+    }
+    try {
+      if (componentStatus.awaitPendingCommand(Math.min(timeout, maxWait))
+          && componentStatuses.lookup(label) == componentStatus) {
+        issueNextCommand(componentStatus, response, scriptPath);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      heldHeartBeats.decrementAndGet();
+    }
   }
 
-  private String getRoleName(String label) {
-    return label.substring(label.indexOf(LABEL_MAKER) + LABEL_MAKER.length());
+  /**
+   * Get the number of heartbeats currently held
+   * @return the count of held heartbeats
+   */
+  public int getHeldHeartBeatCount() {
+    return heldHeartBeats.get();
   }
 
   protected void addInstallCommand(String roleName, HeartBeatResponse response, String scriptPath)
       throws HoyaException {
     assert getStateAccessor().isApplicationLive();
+    long version = getInstanceDefinitionVersion();
+    CommandTemplateCache.Template template =
+        commandTemplates.lookup(roleName, Command.INSTALL, version);
+    if (template == null) {
+      template = commandTemplates.put(
+          buildInstallCommandTemplate(roleName, scriptPath), version);
+    }
+    response.addExecutionCommand(issueCommand(template));
+  }
+
+  protected void addStartCommand(String roleName, HeartBeatResponse response, String scriptPath)
+      throws HoyaException {
+    assert getStateAccessor().isApplicationLive();
+    long version = getInstanceDefinitionVersion();
+    CommandTemplateCache.Template template =
+        commandTemplates.lookup(roleName, Command.START, version);
+    if (template == null) {
+      template = commandTemplates.put(
+          buildStartCommandTemplate(roleName, scriptPath), version);
+    }
+    response.addExecutionCommand(issueCommand(template));
+  }
+
+  private ExecutionCommand issueCommand(CommandTemplateCache.Template template) {
+    return template.newCommand(taskId.incrementAndGet(),
+        getClusterInfoPropertyValue(StatusKeys.INFO_AM_HOSTNAME));
+  }
+
+  private CommandTemplateCache.Template buildInstallCommandTemplate(
+      String roleName, String scriptPath) throws HoyaException {
     ConfTreeOperations appConf = getStateAccessor().getAppConfSnapshot();
-    ConfTreeOperations resourcesConf = getStateAccessor().getResourcesSnapshot();
     ConfTreeOperations internalsConf = getStateAccessor().getInternalsSnapshot();
 
-    ExecutionCommand cmd = new ExecutionCommand(AgentCommandType.EXECUTION_COMMAND);
-    prepareExecutionCommand(cmd);
     String clusterName = internalsConf.get(OptionKeys.APPLICATION_NAME);
-    cmd.setClusterName(clusterName);
-    cmd.setRoleCommand(Command.INSTALL.toString());
-    cmd.setServiceName(clusterName);
-    cmd.setComponentName(roleName);
-    cmd.setRole(roleName);
     Map<String, String> hostLevelParams = new TreeMap<String, String>();
     hostLevelParams.put(JAVA_HOME, appConf.getGlobalOptions().getMandatoryOption(JAVA_HOME));
     hostLevelParams.put(PACKAGE_LIST, "[{\"type\":\"tarball\",\"name\":\"" +
                                       appConf.getGlobalOptions().getMandatoryOption(
                                           PACKAGE_LIST) + "\"}]");
-    cmd.setHostLevelParams(hostLevelParams);
-
-    setInstallCommandConfigurations(cmd);
-
-    setCommandParameters(scriptPath, cmd);
 
-    cmd.setHostname(getClusterInfoPropertyValue(StatusKeys.INFO_AM_HOSTNAME));
-    response.addExecutionCommand(cmd);
-  }
+    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
+    Map<String, String> config = new HashMap<String, String>();
+    addDefaultGlobalConfig(config);
+    config.put("app_install_dir", "${AGENT_WORK_ROOT}/app/install");
+    configurations.put("global", config);
 
-  private void prepareExecutionCommand(ExecutionCommand cmd) {
-    cmd.setTaskId(taskId.incrementAndGet());
-    cmd.setCommandId(cmd.getTaskId() + "-1");
+    return new CommandTemplateCache.Template(Command.INSTALL,
+                                             roleName,
+                                             clusterName,
+                                             hostLevelParams,
+                                             getCommandParameters(scriptPath),
+                                             configurations);
   }
 
-  private void setCommandParameters(String scriptPath, ExecutionCommand cmd) {
+  private Map<String, String> getCommandParameters(String scriptPath) {
     Map<String, String> cmdParams = new TreeMap<String, String>();
     cmdParams.put("service_package_folder", "${AGENT_WORK_ROOT}/work/app/definition/package");
     cmdParams.put("script", scriptPath);
     cmdParams.put("schema_version", "2.0");
     cmdParams.put("command_timeout", "300");
     cmdParams.put("script_type", "PYTHON");
-    cmd.setCommandParams(cmdParams);
-  }
-
-  private void setInstallCommandConfigurations(ExecutionCommand cmd) {
-    Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
-    Map<String, String> config = new HashMap<String, String>();
-    addDefaultGlobalConfig(config);
-    config.put("app_install_dir", "${AGENT_WORK_ROOT}/app/install");
-    configurations.put("global", config);
-    cmd.setConfigurations(configurations);
+    return cmdParams;
   }
 
-  protected void addStartCommand(String roleName, HeartBeatResponse response, String scriptPath) throws HoyaException {
-    assert getStateAccessor().isApplicationLive();
+  private CommandTemplateCache.Template buildStartCommandTemplate(
+      String roleName, String scriptPath) throws HoyaException {
     ConfTreeOperations appConf = getStateAccessor().getAppConfSnapshot();
-    ConfTreeOperations resourcesConf = getStateAccessor().getResourcesSnapshot();
     ConfTreeOperations internalsConf = getStateAccessor().getInternalsSnapshot();
 
-    ExecutionCommand cmd = new ExecutionCommand(AgentCommandType.EXECUTION_COMMAND);
-    prepareExecutionCommand(cmd);
     String clusterName = internalsConf.get(OptionKeys.APPLICATION_NAME);
-    String hostName = getClusterInfoPropertyValue(StatusKeys.INFO_AM_HOSTNAME);
-    cmd.setHostname(hostName);
-    cmd.setClusterName(clusterName);
-    cmd.setRoleCommand(Command.START.toString());
-    cmd.setServiceName(clusterName);
-    cmd.setComponentName(roleName);
-    cmd.setRole(roleName);
     Map<String, String> hostLevelParams = new TreeMap<String, String>();
     hostLevelParams.put(JAVA_HOME, appConf.getGlobalOptions().getMandatoryOption(JAVA_HOME));
-    cmd.setHostLevelParams(hostLevelParams);
-
-    setCommandParameters(scriptPath, cmd);
 
     Map<String, Map<String, String>> configurations = new TreeMap<String, Map<String, String>>();
 
@@ -450,8 +892,12 @@ public class AgentProviderService extends AbstractProviderService implements
                             configurations, tokens);
     }
 
-    cmd.setConfigurations(configurations);
-    response.addExecutionCommand(cmd);
+    return new CommandTemplateCache.Template(Command.START,
+                                             roleName,
+                                             clusterName,
+                                             hostLevelParams,
+                                             getCommandParameters(scriptPath),
+                                             configurations);
   }
 
   private List<String> getApplicationConfigurationTypes(ConfTreeOperations appConf) {
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits the rate at which INSTALL and START commands are issued to the
+ * instances of each role, so that when many containers come up at once
+ * -on a thaw, or a large flex- their agents do not all fetch packages
+ * and start together.
+ * <p>
+ * Each role has a token bucket, refilled at the role's rate up to its
+ * burst size; issuing a command takes a token. An agent which is
+ * refused is told how long to wait until the next token is due.
+ * <p>
+ * Thread safe: buckets are created on demand and updated under their
+ * own lock.
+ */
+public class CommandRateLimiter {
+
+  private final ConcurrentMap<String, Bucket> buckets =
+    new ConcurrentHashMap<String, Bucket>();
+
+  /**
+   * Try to take a token for a command to an instance of a role
+   * @param role role name
+   * @param rate commands per second; 0 or less means no limit
+   * @param burst bucket size; if 0 or less, the rate is used
+   * @param now current time in milliseconds
+   * @return 0 if the command can be issued, otherwise the time in
+   * milliseconds until a token is due
+   */
+  public long acquire(String role, int rate, int burst, long now) {
+    if (rate <= 0) {
+      return 0;
+    }
+    if (burst <= 0) {
+      burst = rate;
+    }
+    Bucket bucket = buckets.get(role);
+    if (bucket == null) {
+      Bucket created = new Bucket(now, burst);
+      bucket = buckets.putIfAbsent(role, created);
+      if (bucket == null) {
+        bucket = created;
+      }
+    }
+    return bucket.acquire(rate, burst, now);
+  }
+
+  /**
+   * Forget the state of a role's bucket
+   * @param role role name
+   */
+  public void reset(String role) {
+    buckets.remove(role);
+  }
+
+  private static final class Bucket {
+    private double tokens;
+    private long updated;
+
+    private Bucket(long now, int burst) {
+      this.updated = now;
+      this.tokens = burst;
+    }
+
+    private synchronized long acquire(int rate, int burst, long now) {
+      if (now > updated) {
+        tokens = Math.min(burst, tokens + (now - updated) * rate / 1000.0);
+        updated = now;
+      } else if (tokens > burst) {
+        // the burst size has been reduced
+        tokens = burst;
+      }
+      if (tokens >= 1) {
+        tokens -= 1;
+        return 0;
+      }
+      return (long) Math.ceil((1 - tokens) * 1000.0 / rate);
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import org.apache.hoya.providers.LaunchTemplateCache;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentCommandType;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.ExecutionCommand;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.StatusCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cache of the agent commands of each role, compiled from the
+ * instance definition snapshot, and of the role scripts.
+ * <p>
+ * Everything in a command other than its IDs and the target hostname
+ * is fixed by the instance definition, so it is built once per role
+ * and command; issuing a command is then just a matter of stamping
+ * the IDs onto a copy of the template.
+ * <p>
+ * As with {@link LaunchTemplateCache}, entries are tagged with the
+ * instance definition version they were built against; a lookup with
+ * any other version discards the whole cache.
+ */
+public class CommandTemplateCache {
+  protected static final Logger log =
+    LoggerFactory.getLogger(CommandTemplateCache.class);
+
+  private final Map<String, Template> templates =
+    new HashMap<String, Template>();
+
+  private final Map<String, String> scripts = new HashMap<String, String>();
+
+  /**
+   * Version of the definition the cached entries were built against
+   */
+  private long version = LaunchTemplateCache.UNVERSIONED;
+
+  /**
+   * Move the cache on to a definition version, discarding the entries
+   * if it has changed
+   * @param definitionVersion current version of the instance definition
+   * @return true if entries for this version can be cached
+   */
+  private boolean validate(long definitionVersion) {
+    if (definitionVersion == LaunchTemplateCache.UNVERSIONED) {
+      return false;
+    }
+    if (definitionVersion != version) {
+      if (!templates.isEmpty() || !scripts.isEmpty()) {
+        log.debug("Instance definition now at version {}: discarding {}" +
+                  " command templates", definitionVersion, templates.size());
+      }
+      invalidate();
+      version = definitionVersion;
+    }
+    return true;
+  }
+
+  /**
+   * Look up the template of a command
+   * @param role role name
+   * @param command command
+   * @param definitionVersion current version of the instance definition
+   * @return the template or null if there is no valid one
+   */
+  public synchronized Template lookup(String role,
+                                      Command command,
+                                      long definitionVersion) {
+    if (!validate(definitionVersion)) {
+      return null;
+    }
+    return templates.get(key(role, command));
+  }
+
+  /**
+   * Add a template. If the version is not the current one,
+   * the template is not cached.
+   * @param template template
+   * @param definitionVersion version of the definition used to build it
+   * @return the template
+   */
+  public synchronized Template put(Template template, long definitionVersion) {
+    if (definitionVersion != LaunchTemplateCache.UNVERSIONED
+        && definitionVersion == version) {
+      templates.put(key(template.getRole(), template.getCommand()), template);
+    }
+    return template;
+  }
+
+  /**
+   * Look up the script of a role
+   * @param role role name
+   * @param definitionVersion current version of the instance definition
+   * @return the script path or null if there is no valid one
+   */
+  public synchronized String lookupScript(String role, long definitionVersion) {
+    if (!validate(definitionVersion)) {
+      return null;
+    }
+    return scripts.get(role);
+  }
+
+  /**
+   * Add the script of a role. If the version is not the current one,
+   * the script is not cached.
+   * @param role role name
+   * @param definitionVersion version of the definition it came from
+   * @param scriptPath script path
+   */
+  public synchronized void putScript(String role,
+                                     long definitionVersion,
+                                     String scriptPath) {
+    if (definitionVersion != LaunchTemplateCache.UNVERSIONED
+        && definitionVersion == version) {
+      scripts.put(role, scriptPath);
+    }
+  }
+
+  /**
+   * Discard all cached entries
+   */
+  public synchronized void invalidate() {
+    templates.clear();
+    scripts.clear();
+    version = LaunchTemplateCache.UNVERSIONED;
+  }
+
+  /**
+   * Get the number of cached templates
+   * @return the number of templates
+   */
+  public synchronized int size() {
+    return templates.size();
+  }
+
+  private static String key(String role, Command command) {
+    return role + "/" + command;
+  }
+
+  /**
+   * A command template. It is immutable: the maps are copied in and
+   * shared read-only by the commands issued from it.
+   */
+  public static final class Template {
+    private final Command command;
+    private final String role;
+    private final String clusterName;
+    private final Map<String, String> hostLevelParams;
+    private final Map<String, String> commandParams;
+    private final Map<String, Map<String, String>> configurations;
+    private final String configurationsHash;
+
+    public Template(Command command,
+                    String role,
+                    String clusterName,
+                    Map<String, String> hostLevelParams,
+                    Map<String, String> commandParams,
+                    Map<String, Map<String, String>> configurations) {
+      this.command = command;
+      this.role = role;
+      this.clusterName = clusterName;
+      this.hostLevelParams = Collections.unmodifiableMap(
+        new TreeMap<String, String>(hostLevelParams));
+      this.commandParams = Collections.unmodifiableMap(
+        new TreeMap<String, String>(commandParams));
+      Map<String, Map<String, String>> configs =
+        new TreeMap<String, Map<String, String>>();
+      for (Map.Entry<String, Map<String, String>> entry :
+          configurations.entrySet()) {
+        configs.put(entry.getKey(), Collections.unmodifiableMap(
+          new HashMap<String, String>(entry.getValue())));
+      }
+      this.configurations = Collections.unmodifiableMap(configs);
+      this.configurationsHash = hashOf(this.configurations);
+    }
+
+    public Command getCommand() {
+      return command;
+    }
+
+    public String getRole() {
+      return role;
+    }
+
+    /**
+     * Get the hash of the configurations, which agents use to refer to
+     * configurations they have already been sent
+     * @return a hex digest of the configurations
+     */
+    public String getConfigurationsHash() {
+      return configurationsHash;
+    }
+
+    /**
+     * Issue a command from this template
+     * @param taskId task ID
+     * @param hostname hostname to set
+     * @return a new command, sharing the template's maps
+     */
+    public ExecutionCommand newCommand(long taskId, String hostname) {
+      ExecutionCommand cmd =
+        new ExecutionCommand(AgentCommandType.EXECUTION_COMMAND);
+      cmd.setTaskId(taskId);
+      cmd.setCommandId(taskId + "-1");
+      cmd.setHostname(hostname);
+      cmd.setClusterName(clusterName);
+      cmd.setServiceName(clusterName);
+      cmd.setRoleCommand(command.toString());
+      cmd.setComponentName(role);
+      cmd.setRole(role);
+      cmd.setHostLevelParams(hostLevelParams);
+      cmd.setCommandParams(commandParams);
+      cmd.setConfigurations(configurations);
+      cmd.setConfigurationsHash(configurationsHash);
+      return cmd;
+    }
+
+    /**
+     * Build a status command for the component, from the same
+     * parameters and configurations
+     * @return a new status command, sharing the template's maps
+     */
+    public StatusCommand newStatusCommand() {
+      StatusCommand cmd = new StatusCommand();
+      cmd.setClusterName(clusterName);
+      cmd.setServiceName(clusterName);
+      cmd.setComponentName(role);
+      cmd.setHostLevelParams(hostLevelParams);
+      cmd.setCommandParams(commandParams);
+      cmd.setConfigurations(configurations);
+      cmd.setConfigurationsHash(configurationsHash);
+      return cmd;
+    }
+  }
+
+  /**
+   * Hash a set of configurations: an MD5 digest of the entries in
+   * key order, so it is independent of the map implementations
+   * @param configurations configurations
+   * @return the digest as hex
+   */
+  static String hashOf(Map<String, Map<String, String>> configurations) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      for (Map.Entry<String, Map<String, String>> config :
+          new TreeMap<String, Map<String, String>>(configurations).entrySet()) {
+        update(digest, config.getKey());
+        for (Map.Entry<String, String> entry :
+            new TreeMap<String, String>(config.getValue()).entrySet()) {
+          update(digest, entry.getKey());
+          update(digest, entry.getValue());
+        }
+        digest.update((byte) 0);
+      }
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest.digest()) {
+        hex.append(String.format("%02x", b & 0xff));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void update(MessageDigest digest, String value)
+      throws UnsupportedEncodingException {
+    if (value != null) {
+      digest.update(value.getBytes("UTF-8"));
+    }
+    digest.update((byte) 1);
+  }
+}
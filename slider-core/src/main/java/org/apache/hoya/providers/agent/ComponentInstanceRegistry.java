@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The state of every component instance the agent provider has launched,
+ * keyed by container ID.
+ * <p>
+ * Agents identify themselves by their label, so the instances are also
+ * indexed by label; a heartbeat is a single lookup, with the role and
+ * container taken from the state rather than parsed out of the label.
+ * <p>
+ * Thread safe: launcher threads add entries, the web threads look them
+ * up and the AM removes them when containers complete.
+ * Transitions of an instance are atomic on the instance itself.
+ */
+public class ComponentInstanceRegistry {
+
+  private final ConcurrentMap<String, Entry> instances =
+    new ConcurrentHashMap<String, Entry>();
+
+  private final ConcurrentMap<String, ComponentInstanceState> labels =
+    new ConcurrentHashMap<String, ComponentInstanceState>();
+
+  /**
+   * Register an instance, replacing any previous instance in
+   * the same container
+   * @param label label the agent will use
+   * @param state the instance state
+   */
+  public void register(String label, ComponentInstanceState state) {
+    Entry previous = instances.put(state.getContainerId(),
+                                   new Entry(label, state));
+    if (previous != null) {
+      labels.remove(previous.label, previous.state);
+    }
+    labels.put(label, state);
+  }
+
+  /**
+   * Look up an instance by the label of its agent
+   * @param label agent label
+   * @return the instance or null
+   */
+  public ComponentInstanceState lookup(String label) {
+    return labels.get(label);
+  }
+
+  /**
+   * Get the instance in a container
+   * @param containerId container ID
+   * @return the instance or null
+   */
+  public ComponentInstanceState get(String containerId) {
+    Entry entry = instances.get(containerId);
+    return entry != null ? entry.state : null;
+  }
+
+  /**
+   * Remove the instance in a container
+   * @param containerId container ID
+   * @return the instance removed, or null if there was none
+   */
+  public ComponentInstanceState remove(String containerId) {
+    Entry entry = instances.remove(containerId);
+    if (entry == null) {
+      return null;
+    }
+    labels.remove(entry.label, entry.state);
+    // release any heartbeat held waiting for a command
+    entry.state.wakeUp();
+    return entry.state;
+  }
+
+  /**
+   * Wake everything waiting for a command
+   */
+  public void wakeAll() {
+    for (Entry entry : instances.values()) {
+      entry.state.wakeUp();
+    }
+  }
+
+  public boolean containsLabel(String label) {
+    return labels.containsKey(label);
+  }
+
+  public int size() {
+    return instances.size();
+  }
+
+  /**
+   * List the instances
+   * @return a new list
+   */
+  public List<ComponentInstanceState> cloneInstanceList() {
+    List<ComponentInstanceState> states =
+      new ArrayList<ComponentInstanceState>(instances.size());
+    for (Entry entry : instances.values()) {
+      states.add(entry.state);
+    }
+    return states;
+  }
+
+  private static final class Entry {
+    final String label;
+    final ComponentInstanceState state;
+
+    private Entry(String label, ComponentInstanceState state) {
+      this.label = label;
+      this.state = state;
+    }
+  }
+}
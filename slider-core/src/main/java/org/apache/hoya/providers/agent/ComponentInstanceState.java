@@ -19,10 +19,21 @@
 package org.apache.hoya.providers.agent;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.apache.hoya.yarn.appmaster.state.ComponentHealth;
+import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** This class implements a simple state machine for component instances. */
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class implements a simple state machine for component instances.
+ * Transitions are synchronized, so concurrent heartbeats from the same
+ * agent cannot interleave within one.
+ */
 public class ComponentInstanceState {
   public static final Logger log =
       LoggerFactory.getLogger(ComponentInstanceState.class);
@@ -32,9 +43,30 @@ public class ComponentInstanceState {
   private State state = State.INIT;
   private State targetState = State.STARTED;
   private int failuresSeen = 0;
-  private String compName;
-  private String containerId;
-  private String applicationId;
+  /**
+   * Count of explicit wakeups, so waiters can tell they were woken
+   */
+  private long wakeups = 0;
+  private long commandIssuedTime = 0;
+  private long lastHeartbeat = 0;
+  private long lastHeartbeatGap = 0;
+  private long maxHeartbeatGap = 0;
+  /**
+   * Hashes of the configurations the agent is known to have received
+   */
+  private final Set<String> sentConfigurations = new HashSet<String>();
+  /**
+   * Hashes of the configurations sent in full in responses the agent
+   * has not yet acknowledged, by response ID
+   */
+  private final Map<Long, Set<String>> unacknowledgedConfigurations =
+    new HashMap<Long, Set<String>>();
+  private ComponentHealth health = ComponentHealth.UNKNOWN;
+  private boolean removed = false;
+  private long statusCommandTime = 0;
+  private final String compName;
+  private final String containerId;
+  private final String applicationId;
 
 
   public ComponentInstanceState(String compName,
@@ -45,15 +77,16 @@ public class ComponentInstanceState {
     this.applicationId = applicationId;
   }
 
-  public void commandIssued(Command command) {
+  public synchronized void commandIssued(Command command) {
     Command expected = getNextCommand();
     if (expected != command) {
       throw new IllegalArgumentException("Command " + command + " is not allowed is state " + state);
     }
     this.state = this.state.getNextState(command);
+    this.commandIssuedTime = System.currentTimeMillis();
   }
 
-  public void applyCommandResult(CommandResult result, Command command) {
+  public synchronized void applyCommandResult(CommandResult result, Command command) {
     if (!this.state.couldHaveIssued(command)) {
       throw new IllegalStateException("Invalid command " + command + " for state " + this.state);
     }
@@ -65,6 +98,7 @@ public class ComponentInstanceState {
         failuresSeen = 0;
       }
       this.state = this.state.getNextState(result);
+      notifyAll();
     } catch (IllegalArgumentException e) {
       String message = String.format(INVALID_TRANSITION_ERROR,
                                      result.toString(),
@@ -76,7 +110,7 @@ public class ComponentInstanceState {
     }
   }
 
-  public boolean hasPendingCommand() {
+  public synchronized boolean hasPendingCommand() {
     if (this.state.canIssueCommands() &&
         this.state != this.targetState &&
         failuresSeen < MAX_FAILURE_TOLERATED) {
@@ -86,7 +120,7 @@ public class ComponentInstanceState {
     return false;
   }
 
-  public Command getNextCommand() {
+  public synchronized Command getNextCommand() {
     if (!hasPendingCommand()) {
       return Command.NOP;
     }
@@ -94,13 +128,225 @@ public class ComponentInstanceState {
     return this.state.getSupportedCommand();
   }
 
-  public State getState() {
+  /**
+   * Get the next command and mark it as issued, as one transition
+   * @return the command issued, or {@link Command#NOP} if there is none
+   */
+  public synchronized Command issueNextCommand() {
+    Command command = getNextCommand();
+    if (command != Command.NOP) {
+      commandIssued(command);
+    }
+    return command;
+  }
+
+  /**
+   * Is a command in progress on the agent?
+   * @return true if the agent has a command to report on
+   */
+  public synchronized boolean isCommandInProgress() {
+    return state == State.INSTALLING || state == State.STARTING;
+  }
+
+  /**
+   * Could a command still become pending for this instance? Not once
+   * it has reached its target state or given up after repeated
+   * failures; a heartbeat held for such an instance would only be
+   * released by its timeout.
+   * @return true if the instance is still working towards its target
+   */
+  public synchronized boolean canAwaitCommand() {
+    return state != targetState && failuresSeen < MAX_FAILURE_TOLERATED;
+  }
+
+  /**
+   * Wait until there is a command pending for this instance, the
+   * instance is woken, or the timeout expires
+   * @param timeout timeout in milliseconds
+   * @return true if there is a command pending
+   * @throws InterruptedException if interrupted
+   */
+  public synchronized boolean awaitPendingCommand(long timeout) throws
+      InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    long woken = wakeups;
+    while (!hasPendingCommand() && woken == wakeups) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        break;
+      }
+      wait(remaining);
+    }
+    return hasPendingCommand();
+  }
+
+  /**
+   * Wake anything waiting for a command for this instance
+   */
+  public synchronized void wakeUp() {
+    wakeups++;
+    notifyAll();
+  }
+
+  /**
+   * Note a heartbeat from the agent
+   * @param now time of the heartbeat
+   * @return the time since the previous heartbeat, or -1 if this
+   * is the first
+   */
+  public synchronized long heartbeatReceived(long now) {
+    long gap = lastHeartbeat > 0 ? now - lastHeartbeat : -1;
+    lastHeartbeat = now;
+    if (gap >= 0) {
+      lastHeartbeatGap = gap;
+      maxHeartbeatGap = Math.max(maxHeartbeatGap, gap);
+    }
+    return gap;
+  }
+
+  /**
+   * Get the time the last command was issued
+   * @return the time, or 0 if no command has been issued
+   */
+  public synchronized long getCommandIssuedTime() {
+    return commandIssuedTime;
+  }
+
+  public synchronized long getLastHeartbeat() {
+    return lastHeartbeat;
+  }
+
+  public synchronized long getLastHeartbeatGap() {
+    return lastHeartbeatGap;
+  }
+
+  public synchronized long getMaxHeartbeatGap() {
+    return maxHeartbeatGap;
+  }
+
+  /**
+   * Decide whether to issue a status command: one is due if the
+   * component has started and none has been issued within the interval.
+   * If one is due, it is noted as issued.
+   * @param now current time
+   * @param interval interval between status commands; 0 or less
+   * disables them
+   * @return true if a status command should be issued
+   */
+  public synchronized boolean issueStatusCommand(long now, long interval) {
+    if (interval <= 0 || state != State.STARTED
+        || now - statusCommandTime < interval) {
+      return false;
+    }
+    statusCommandTime = now;
+    return true;
+  }
+
+  /**
+   * Record the health reported by the agent, updating the health
+   * counters of its role under this instance's lock, so that they
+   * stay consistent with concurrent reports and removal
+   * @param reported the health reported
+   * @param roleStatus status of the role, or null
+   * @return the previous health
+   */
+  public synchronized ComponentHealth reportHealth(ComponentHealth reported,
+                                                   RoleStatus roleStatus) {
+    ComponentHealth previous = health;
+    if (!removed) {
+      health = reported;
+      if (roleStatus != null) {
+        roleStatus.healthChanged(previous, reported);
+      }
+    }
+    return previous;
+  }
+
+  /**
+   * Note that the instance has been removed: its health no longer
+   * counts towards that of the role, and later reports are ignored
+   * @param roleStatus status of the role, or null
+   */
+  public synchronized void markRemoved(RoleStatus roleStatus) {
+    if (!removed && roleStatus != null) {
+      roleStatus.healthChanged(health, ComponentHealth.UNKNOWN);
+    }
+    removed = true;
+    health = ComponentHealth.UNKNOWN;
+  }
+
+  public synchronized ComponentHealth getHealth() {
+    return health;
+  }
+
+  /**
+   * Note that configurations are being sent to the agent in a response.
+   * They only count as received once the agent acknowledges the
+   * response; until then they are sent in full, other than to later
+   * commands of the same response.
+   * @param hash hash of the configurations
+   * @param responseId ID of the response carrying them
+   * @return true if the agent will already have them, in which
+   * case they can be referred to by the hash alone
+   */
+  public synchronized boolean configurationsSent(String hash, long responseId) {
+    if (sentConfigurations.contains(hash)) {
+      return true;
+    }
+    Set<String> inResponse = unacknowledgedConfigurations.get(responseId);
+    if (inResponse == null) {
+      inResponse = new HashSet<String>();
+      unacknowledgedConfigurations.put(responseId, inResponse);
+    }
+    return !inResponse.add(hash);
+  }
+
+  /**
+   * Note the response ID a heartbeat carries: the ID of the last
+   * response the agent received. Configurations sent up to that
+   * response have been received; any sent in later responses were lost,
+   * and will be sent again in full.
+   * @param responseId the ID from the heartbeat
+   */
+  public synchronized void responseAcknowledged(long responseId) {
+    for (Map.Entry<Long, Set<String>> entry :
+        unacknowledgedConfigurations.entrySet()) {
+      if (entry.getKey() <= responseId) {
+        sentConfigurations.addAll(entry.getValue());
+      }
+    }
+    unacknowledgedConfigurations.clear();
+  }
+
+  /**
+   * Forget the configurations sent; called when the agent registers,
+   * as it may have been restarted
+   */
+  public synchronized void resetSentConfigurations() {
+    sentConfigurations.clear();
+    unacknowledgedConfigurations.clear();
+  }
+
+  public synchronized State getState() {
     return state;
   }
 
+  public String getCompName() {
+    return compName;
+  }
+
+  public String getContainerId() {
+    return containerId;
+  }
+
+  public String getApplicationId() {
+    return applicationId;
+  }
+
   @VisibleForTesting
-  protected void setState(State state) {
+  protected synchronized void setState(State state) {
     this.state = state;
+    notifyAll();
   }
 
   @Override
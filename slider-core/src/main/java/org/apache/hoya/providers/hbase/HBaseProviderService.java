@@ -37,6 +37,7 @@ import org.apache.hoya.exceptions.BadCommandArgumentsException;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.exceptions.HoyaInternalStateException;
 import org.apache.hoya.providers.AbstractProviderService;
+import org.apache.hoya.providers.LaunchTemplateCache;
 import org.apache.hoya.providers.ProviderCore;
 import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderUtils;
@@ -130,45 +131,54 @@ public class HBaseProviderService extends AbstractProviderService implements
 
     this.hoyaFileSystem = hoyaFileSystem;
     this.instanceDefinition = instanceDefinition;
-    // Set the environment
-    Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
 
-    env.put(HBASE_LOG_DIR, providerUtils.getLogdir());
-
-    env.put("PROPAGATED_CONFDIR", ApplicationConstants.Environment.PWD.$()+"/"+
-                                  HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-
-
-    //local resources
-    Map<String, LocalResource> localResources =
-      new HashMap<String, LocalResource>();
-
-    //add the configuration resources
-    Map<String, LocalResource> confResources;
-    confResources = hoyaFileSystem.submitDirectory(
-            generatedConfPath,
-            HoyaKeys.PROPAGATED_CONF_DIR_NAME);
-    localResources.putAll(confResources);
-    //Add binaries
-    //now add the image if it was set
-    String imageURI = instanceDefinition.getInternalOperations().get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
+    // the environment and resources only change with the definition,
+    // so are built once per role and then reused
+    long version = getInstanceDefinitionVersion();
+    LaunchTemplateCache.Template template =
+      launchTemplates.lookup(role, version);
+    if (template == null) {
+      // Set the environment
+      Map<String, String> env = HoyaUtils.buildEnvMap(appComponent);
+
+      env.put(HBASE_LOG_DIR, providerUtils.getLogdir());
+
+      env.put("PROPAGATED_CONFDIR", ApplicationConstants.Environment.PWD.$()+"/"+
+                                    HoyaKeys.PROPAGATED_CONF_DIR_NAME);
+
+      String heap = appComponent.getOption(RoleKeys.JVM_HEAP, DEFAULT_JVM_HEAP);
+      if (HoyaUtils.isSet(heap)) {
+        String adjustedHeap = HoyaUtils.translateTrailingHeapUnit(heap);
+        env.put("HBASE_HEAPSIZE", adjustedHeap);
+      }
+
+      String gcOpts = appComponent.getOption(RoleKeys.GC_OPTS, DEFAULT_GC_OPTS);
+      if (HoyaUtils.isSet(gcOpts)) {
+        env.put("SERVER_GC_OPTS", gcOpts);
+      }
+
+      //local resources
+      Map<String, LocalResource> localResources =
+        new HashMap<String, LocalResource>();
+
+      //add the configuration resources
+      Map<String, LocalResource> confResources;
+      confResources = hoyaFileSystem.submitDirectory(
+              generatedConfPath,
+              HoyaKeys.PROPAGATED_CONF_DIR_NAME);
+      localResources.putAll(confResources);
+      //Add binaries
+      //now add the image if it was set
+      String imageURI = instanceDefinition.getInternalOperations().get(OptionKeys.INTERNAL_APPLICATION_IMAGE_PATH);
       hoyaFileSystem.maybeAddImagePath(localResources, imageURI);
-    ctx.setLocalResources(localResources);
+      template = launchTemplates.put(role, version, localResources, env);
+    }
+    Map<String, String> env = template.getEnvironment();
+    ctx.setLocalResources(template.getLocalResources());
     List<String> commands = new ArrayList<String>();
 
     CommandLineBuilder command = new CommandLineBuilder();
 
-    String heap = appComponent.getOption(RoleKeys.JVM_HEAP, DEFAULT_JVM_HEAP);
-    if (HoyaUtils.isSet(heap)) {
-      String adjustedHeap = HoyaUtils.translateTrailingHeapUnit(heap);
-      env.put("HBASE_HEAPSIZE", adjustedHeap);
-    }
-    
-    String gcOpts = appComponent.getOption(RoleKeys.GC_OPTS, DEFAULT_GC_OPTS);
-    if (HoyaUtils.isSet(gcOpts)) {
-      env.put("SERVER_GC_OPTS", gcOpts);
-    }
-    
     //this must stay relative if it is an image
     command.add(providerUtils.buildPathToScript(
       instanceDefinition,
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.tools;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in milliseconds, in fixed buckets
+ * rising roughly exponentially from 1 ms to 100 s.
+ * <p>
+ * Recording is lock-free, so it can be done on every request; reads
+ * are not atomic across buckets, which is fine for reporting.
+ * Percentiles are the upper bound of the bucket they fall in.
+ */
+public class DurationHistogram {
+
+  /**
+   * Upper bounds of the buckets; there is a final bucket for
+   * anything longer
+   */
+  private static final long[] BOUNDS = {
+    1, 2, 5, 10, 20, 50, 100, 200, 500,
+    1000, 2000, 5000, 10000, 20000, 50000, 100000
+  };
+
+  private final AtomicLongArray buckets =
+    new AtomicLongArray(BOUNDS.length + 1);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Record a duration
+   * @param millis duration in milliseconds; negative values count as 0
+   */
+  public void add(long millis) {
+    if (millis < 0) {
+      millis = 0;
+    }
+    buckets.incrementAndGet(bucketOf(millis));
+    count.incrementAndGet();
+    total.addAndGet(millis);
+    long current = max.get();
+    while (millis > current && !max.compareAndSet(current, millis)) {
+      current = max.get();
+    }
+  }
+
+  private static int bucketOf(long millis) {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      if (millis <= BOUNDS[i]) {
+        return i;
+      }
+    }
+    return BOUNDS.length;
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotal() {
+    return total.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Get the mean
+   * @return the mean, or 0 if nothing has been recorded
+   */
+  public long getMean() {
+    long n = count.get();
+    return n > 0 ? total.get() / n : 0;
+  }
+
+  /**
+   * Get a percentile
+   * @param percentile percentile, from 0 to 100
+   * @return the upper bound of the bucket holding the percentile, the
+   * maximum if it is in the last bucket, or 0 if nothing has been recorded
+   */
+  public long getPercentile(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(n * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < BOUNDS.length; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return BOUNDS[i];
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Build a map of the summary values and the bucket counts,
+   * for reporting
+   * @return an ordered map
+   */
+  public Map<String, Long> toMap() {
+    Map<String, Long> map = new LinkedHashMap<String, Long>();
+    map.put("count", getCount());
+    map.put("mean", getMean());
+    map.put("max", getMax());
+    map.put("p50", getPercentile(50));
+    map.put("p90", getPercentile(90));
+    map.put("p99", getPercentile(99));
+    for (int i = 0; i < BOUNDS.length; i++) {
+      map.put("le." + BOUNDS[i], buckets.get(i));
+    }
+    map.put("gt." + BOUNDS[BOUNDS.length - 1], buckets.get(BOUNDS.length));
+    return map;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The interval between the AM's heartbeats to the RM, adapted to the
+ * work in hand.
+ * <p>
+ * While containers are being asked for or released the AM heartbeats
+ * at the minimum interval, so allocations and completions are picked up
+ * promptly; once idle, the interval doubles on each heartbeat up to
+ * the maximum. A shorter interval only applies after the current wait,
+ * so the maximum bounds how long new work can sit before reaching the RM.
+ * <p>
+ * Thread safe: it is updated on the AMRM heartbeat thread and by
+ * events which create work.
+ */
+public class AdaptiveHeartbeat {
+
+  private final int minInterval;
+  private final int maxInterval;
+  private final AtomicInteger interval;
+
+  /**
+   * Create an instance, starting at the minimum interval
+   * @param minInterval minimum interval in milliseconds
+   * @param maxInterval maximum interval in milliseconds; raised to the
+   * minimum if it is below it
+   * @throws IllegalArgumentException if the minimum is not positive
+   */
+  public AdaptiveHeartbeat(int minInterval, int maxInterval) {
+    if (minInterval <= 0) {
+      throw new IllegalArgumentException(
+        "Heartbeat interval must be positive: " + minInterval);
+    }
+    this.minInterval = minInterval;
+    this.maxInterval = Math.max(minInterval, maxInterval);
+    this.interval = new AtomicInteger(minInterval);
+  }
+
+  /**
+   * Update the interval
+   * @param busy is there outstanding work?
+   * @return the new interval
+   */
+  public int update(boolean busy) {
+    while (true) {
+      int current = interval.get();
+      int next = busy ? minInterval
+                      : (int) Math.min((long) current * 2, maxInterval);
+      if (next == current || interval.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  public int getInterval() {
+    return interval.get();
+  }
+
+  public int getMinInterval() {
+    return minInterval;
+  }
+
+  public int getMaxInterval() {
+    return maxInterval;
+  }
+}
@@ -82,6 +82,7 @@ import org.apache.hoya.providers.ProviderRole;
 import org.apache.hoya.providers.ProviderService;
 import org.apache.hoya.providers.hoyaam.HoyaAMClientProvider;
 import org.apache.hoya.tools.ConfigHelper;
+import org.apache.hoya.tools.DurationHistogram;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.tools.HoyaUtils;
 import org.apache.hoya.tools.HoyaVersionInfo;
@@ -91,6 +92,7 @@ import org.apache.hoya.yarn.appmaster.rpc.HoyaClusterProtocolPBImpl;
 import org.apache.hoya.yarn.appmaster.rpc.RpcBinder;
 import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation;
 import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot;
 import org.apache.hoya.yarn.appmaster.state.ContainerAssignment;
 import org.apache.hoya.yarn.appmaster.state.ContainerReleaseOperation;
 import org.apache.hoya.yarn.appmaster.state.RMOperationHandler;
@@ -121,6 +123,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -154,6 +157,12 @@ public class HoyaAppMaster extends CompoundLaunchedService
   public static final int TERMINATION_SIGNAL_PROPAGATION_DELAY = 1000;
 
   public static final int HEARTBEAT_INTERVAL = 1000;
+
+  /**
+   * Interval in milliseconds between checks for placed requests
+   * which have waited too long: {@value}
+   */
+  public static final int PLACEMENT_ESCALATION_CHECK_INTERVAL = 5000;
   public static final int NUM_RPC_HANDLERS = 5;
   public static final String SERVICE_CLASSNAME =
     "org.apache.hoya.yarn.appmaster.HoyaAppMaster";
@@ -166,6 +175,9 @@ public class HoyaAppMaster extends CompoundLaunchedService
   
   private RMOperationHandler rmOperationHandler;
 
+  /** Interval between heartbeats to the RM */
+  private AdaptiveHeartbeat heartbeat;
+
   /** Handle to communicate with the Node Manager*/
   public NMClientAsync nmClientAsync;
   
@@ -256,6 +268,23 @@ public class HoyaAppMaster extends CompoundLaunchedService
   private String amCompletionReason;
 
   private RoleLaunchService launchService;
+
+  /**
+   * Runs the reviews of the cluster, and the periodic check for
+   * placed requests to escalate
+   */
+  private ReviewService reviewService;
+
+  /**
+   * Cached status, served to status queries while it is current
+   */
+  private volatile ClusterStatusSnapshot statusSnapshot;
+
+  /**
+   * Maximum age of the status snapshot in millis
+   */
+  private long statusSnapshotMaxAge =
+    OptionKeys.DEFAULT_STATUS_SNAPSHOT_MAX_AGE;
   
   //username -null if it is not known/not to be set
   private String hoyaUsername;
@@ -476,11 +505,30 @@ public class HoyaAppMaster extends CompoundLaunchedService
      * arriving while registering a restarting AM.
      */
     synchronized (appState) {
-      int heartbeatInterval = HEARTBEAT_INTERVAL;
+      heartbeat = new AdaptiveHeartbeat(
+        globalOptions.getOptionInt(
+          OptionKeys.INTERNAL_AM_HEARTBEAT_INTERVAL_MIN,
+          OptionKeys.DEFAULT_AM_HEARTBEAT_INTERVAL_MIN),
+        globalOptions.getOptionInt(
+          OptionKeys.INTERNAL_AM_HEARTBEAT_INTERVAL_MAX,
+          OptionKeys.DEFAULT_AM_HEARTBEAT_INTERVAL_MAX));
+      log.info("AM heartbeat interval {}-{} ms", heartbeat.getMinInterval(),
+               heartbeat.getMaxInterval());
+
+      //callbacks post review events; they queue until the service starts
+      reviewService = new ReviewService(new ReviewService.Reviewer() {
+        @Override
+        public void review(Set<ReviewService.Event> events) {
+          onReview(events);
+        }
+      }, globalOptions.getOptionInt(OptionKeys.INTERNAL_REVIEW_DEBOUNCE,
+                                    OptionKeys.DEFAULT_REVIEW_DEBOUNCE),
+        PLACEMENT_ESCALATION_CHECK_INTERVAL);
+      addService(reviewService);
 
       //add the RM client -this brings the callbacks in
-      asyncRMClient = AMRMClientAsync.createAMRMClientAsync(heartbeatInterval,
-                                                            this);
+      asyncRMClient = AMRMClientAsync.createAMRMClientAsync(
+        heartbeat.getInterval(), this);
       addService(asyncRMClient);
       //wrap it for the app state model
       rmOperationHandler = new AsyncRMOperationHandler(asyncRMClient);
@@ -610,10 +658,23 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                           fs,
                                           new Path(getGeneratedConfDir()),
                                           envVars,
-                                          launcherTmpDirPath);
+                                          launcherTmpDirPath,
+                                          globalOptions.getOptionInt(
+                                            OptionKeys.INTERNAL_CONTAINER_LAUNCHER_THREADS,
+                                            OptionKeys.DEFAULT_CONTAINER_LAUNCHER_THREADS),
+                                          globalOptions.getOptionInt(
+                                            OptionKeys.INTERNAL_CONTAINER_LAUNCHER_QUEUE_SIZE,
+                                            OptionKeys.DEFAULT_CONTAINER_LAUNCHER_QUEUE_SIZE));
 
     runChildService(launchService);
 
+    //events posted by the callbacks so far are reviewed from here on
+    runChildService(reviewService);
+
+    statusSnapshotMaxAge = globalOptions.getOptionInt(
+      OptionKeys.INTERNAL_STATUS_SNAPSHOT_MAX_AGE,
+      OptionKeys.DEFAULT_STATUS_SNAPSHOT_MAX_AGE);
+
     appState.noteAMLaunched();
 
 
@@ -746,6 +807,11 @@ public class HoyaAppMaster extends CompoundLaunchedService
       log.debug("Stopped forked process: exit code={}", exitCode);
     }
 
+    //stop reviewing; no more requests are to be made
+    if (reviewService != null) {
+      reviewService.stop();
+    }
+
     //stop any launches in progress
     launchService.stop();
 
@@ -832,9 +898,13 @@ public class HoyaAppMaster extends CompoundLaunchedService
     LOG_YARN.info("onContainersAllocated({})", allocatedContainers.size());
     List<ContainerAssignment> assignments = new ArrayList<ContainerAssignment>();
     List<AbstractRMOperation> operations = new ArrayList<AbstractRMOperation>();
+    List<AbstractRMOperation> satisfied = new ArrayList<AbstractRMOperation>();
     
     //app state makes all the decisions
-    appState.onContainersAllocated(allocatedContainers, assignments, operations);
+    appState.onContainersAllocated(allocatedContainers, assignments, operations,
+                                   satisfied);
+    //drop the satisfied requests, so they are not asked for again
+    rmOperationHandler.execute(satisfied);
 
     //for each assignment: instantiate that role
     for (ContainerAssignment assignment : assignments) {
@@ -869,6 +939,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
         RoleInstance ri = result.roleInstance;
         log.error("Role instance {} failed ", ri);
       }
+      providerService.notifyContainerCompleted(containerId);
     }
 
     // ask for more containers if any failed
@@ -878,27 +949,45 @@ public class HoyaAppMaster extends CompoundLaunchedService
     // TODO: this needs to be better thought about (and maybe something to
     // better handle in Yarn for long running apps)
 
-    try {
-      reviewRequestAndReleaseNodes();
-    } catch (HoyaInternalStateException e) {
-      log.warn("Exception while flexing nodes", e);
-    }
+    reviewService.post(ReviewService.Event.CONTAINERS_COMPLETED);
   }
 
   /**
    * Implementation of cluster flexing.
    * It should be the only way that anything -even the AM itself on startup-
    * asks for nodes. 
-   * @return true if the any requests were made
+   * The resources are updated at once; the review which acts on
+   * them runs on the review thread.
+   * @return true if the review is expected to request or release
+   * containers; advisory, as the state may change before it runs
    * @throws IOException
    */
   private boolean flexCluster(ConfTree updated)
     throws IOException, HoyaInternalStateException, BadConfigException {
 
     appState.updateResourceDefinitions(updated);
+    boolean flexPending = appState.isFlexPending();
 
     // ask for more containers if needed
-    return reviewRequestAndReleaseNodes();
+    reviewService.post(ReviewService.Event.FLEX);
+    return flexPending;
+  }
+
+  /**
+   * Callback from the review service: review the cluster if anything
+   * has happened, then check for placed requests to escalate
+   * @param events events since the last review
+   */
+  private void onReview(Set<ReviewService.Event> events) {
+    if (!events.isEmpty()) {
+      log.debug("Reviewing after {}", events);
+      try {
+        reviewRequestAndReleaseNodes();
+      } catch (HoyaInternalStateException e) {
+        log.warn("Exception while flexing nodes", e);
+      }
+    }
+    escalateOutstandingRequests();
   }
 
   /**
@@ -915,6 +1004,9 @@ public class HoyaAppMaster extends CompoundLaunchedService
       List<AbstractRMOperation> allOperations = appState.reviewRequestAndReleaseNodes();
       //now apply the operations
       rmOperationHandler.execute(allOperations);
+      if (!allOperations.isEmpty()) {
+        adjustHeartbeat(true);
+      }
       return !allOperations.isEmpty();
     } catch (TriggerClusterTeardownException e) {
 
@@ -925,6 +1017,26 @@ public class HoyaAppMaster extends CompoundLaunchedService
     }
   }
   
+  /**
+   * Reissue without a location any placed requests which have
+   * been outstanding for too long
+   */
+  private synchronized void escalateOutstandingRequests() {
+    if (amCompletionFlag.get()) {
+      return;
+    }
+    try {
+      List<AbstractRMOperation> operations =
+        appState.escalateOutstandingRequests();
+      rmOperationHandler.execute(operations);
+      if (!operations.isEmpty()) {
+        adjustHeartbeat(true);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Failed to escalate outstanding requests", e);
+    }
+  }
+
   /**
    * Shutdown operation: release all containers
    */
@@ -949,18 +1061,37 @@ public class HoyaAppMaster extends CompoundLaunchedService
   @Override //AMRMClientAsync
   public void onNodesUpdated(List<NodeReport> updatedNodes) {
     LOG_YARN.info("Nodes updated");
+    reviewService.post(ReviewService.Event.NODES_UPDATED);
   }
 
   /**
    * heartbeat operation; return the ratio of requested
-   * to actual
+   * to actual. As this is called on every heartbeat, it also
+   * adapts the interval to the next one.
    * @return progress
    */
   @Override //AMRMClientAsync
   public float getProgress() {
+    adjustHeartbeat(appState.hasOutstandingWork());
     return appState.getApplicationProgressPercentage();
   }
 
+  /**
+   * Update the heartbeat interval, passing any change on to the
+   * RM client; it takes effect from the next heartbeat
+   * @param busy is there outstanding work?
+   */
+  private void adjustHeartbeat(boolean busy) {
+    synchronized (heartbeat) {
+      int previous = heartbeat.getInterval();
+      int next = heartbeat.update(busy);
+      if (next != previous) {
+        log.debug("AM heartbeat interval now {} ms", next);
+        asyncRMClient.setHeartbeatInterval(next);
+      }
+    }
+  }
+
   @Override //AMRMClientAsync
   public void onError(Throwable e) {
     //callback says it's time to finish
@@ -1024,18 +1155,45 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                                        IOException,
                                                        YarnException {
     HoyaUtils.getCurrentUser();
-    String result;
-    //quick update
-    //query and json-ify
-    ClusterDescription cd;
-    cd = getCurrentClusterStatus();
-    result = cd.toJsonString();
-    String stat = result;
+    String stat = getClusterStatusSnapshot().getJson();
     return Messages.GetJSONClusterStatusResponseProto.newBuilder()
       .setClusterSpec(stat)
       .build();
   }
 
+  /**
+   * Get a snapshot of the cluster status. The cached snapshot is
+   * returned if the application state has not changed since it was built
+   * and it is younger than the maximum age; otherwise the status is
+   * refreshed and a new snapshot built.
+   * @return the current snapshot
+   * @throws IOException problems serializing the status
+   */
+  public ClusterStatusSnapshot getClusterStatusSnapshot() throws IOException {
+    ClusterStatusSnapshot snapshot = statusSnapshot;
+    if (snapshot != null &&
+        snapshot.isCurrent(appState.getStatusGeneration(),
+                           System.currentTimeMillis(),
+                           statusSnapshotMaxAge)) {
+      return snapshot;
+    }
+    synchronized (this) {
+      // read the generation before the refresh, so that any change
+      // made during it results in a rebuild next time
+      long generation = appState.getStatusGeneration();
+      long now = System.currentTimeMillis();
+      snapshot = statusSnapshot;
+      if (snapshot == null ||
+          !snapshot.isCurrent(generation, now, statusSnapshotMaxAge)) {
+        updateClusterStatus();
+        snapshot = new ClusterStatusSnapshot(generation, now,
+                                   getClusterDescription().toJsonString());
+        statusSnapshot = snapshot;
+      }
+      return snapshot;
+    }
+  }
+
   /**
    * Get the current cluster status, including any provider-specific info
    * @return a status document
@@ -1057,15 +1215,12 @@ public class HoyaAppMaster extends CompoundLaunchedService
                                                         YarnException {
 
     log.info("Received call to getInstanceDefinition()");
-    String internal;
-    String resources;
-    String app;
-    synchronized (appState) {
-      AggregateConf instanceDefinition = appState.getInstanceDefinition();
-      internal = instanceDefinition.getInternal().toJson();
-      resources = instanceDefinition.getResources().toJson();
-      app = instanceDefinition.getAppConf().toJson();
-    }
+    // the snapshot is replaced, never modified, so needs no lock
+    AggregateConf instanceDefinition =
+      appState.getInstanceDefinitionSnapshot();
+    String internal = instanceDefinition.getInternal().toJson();
+    String resources = instanceDefinition.getResources().toJson();
+    String app = instanceDefinition.getAppConf().toJson();
     assert internal != null;
     assert resources != null;
     assert app != null;
@@ -1185,6 +1340,32 @@ public class HoyaAppMaster extends CompoundLaunchedService
     Map<String, String> providerStatus = providerService.buildProviderStatus();
     assert providerStatus != null : "null provider status";
     appState.refreshClusterStatus(providerStatus);
+    Map<String, Integer> amStats =
+      appState.getClusterStatus().statistics.get(HoyaKeys.COMPONENT_AM);
+    amStats.putAll(providerService.buildProviderStatistics());
+    if (launchService != null) {
+      amStats.put(StatusKeys.STATISTICS_LAUNCHER_QUEUED,
+                  launchService.getQueueDepth());
+      amStats.put(StatusKeys.STATISTICS_LAUNCHER_ACTIVE,
+                  launchService.getActiveLaunchCount());
+    }
+    if (heartbeat != null) {
+      amStats.put(StatusKeys.STATISTICS_AM_HEARTBEAT_INTERVAL,
+                  heartbeat.getInterval());
+    }
+    if (reviewService != null) {
+      amStats.put(StatusKeys.STATISTICS_REVIEWS,
+                  (int) reviewService.getReviewCount());
+      amStats.put(StatusKeys.STATISTICS_REVIEW_EVENTS,
+                  (int) reviewService.getEventCount());
+      amStats.put(StatusKeys.STATISTICS_REVIEW_QUEUE_DEPTH,
+                  reviewService.getQueueDepth());
+      DurationHistogram durations = reviewService.getReviewDurations();
+      amStats.put(StatusKeys.STATISTICS_REVIEW_DURATION + ".mean",
+                  (int) durations.getMean());
+      amStats.put(StatusKeys.STATISTICS_REVIEW_DURATION + ".p99",
+                  (int) durations.getPercentile(99));
+    }
   }
 
   /**
@@ -1333,6 +1514,7 @@ public class HoyaAppMaster extends CompoundLaunchedService
   public void onStartContainerError(ContainerId containerId, Throwable t) {
     LOG_YARN.error("Failed to start Container " + containerId, t);
     appState.onNodeManagerContainerStartFailed(containerId, t);
+    reviewService.post(ReviewService.Event.CONTAINER_START_FAILED);
   }
 
   @Override //  NMClientAsync.CallbackHandler 
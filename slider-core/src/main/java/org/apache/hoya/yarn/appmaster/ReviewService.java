@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hadoop.service.AbstractService;
+import org.apache.hoya.tools.DurationHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the reviews of the cluster state on a single thread.
+ * <p>
+ * Anything which may change what the cluster needs -containers
+ * completing or failing to start, the resources being flexed, nodes
+ * changing- posts an event rather than reviewing inline. The thread
+ * waits for a short debounce window after the first event, then
+ * takes the pending events and runs one review for everything which
+ * arrived: a burst of completions leads to one review, not one per
+ * callback, and the callback threads never wait on the review.
+ * <p>
+ * Pending events are held as a set, so repeats of an event coalesce
+ * as they are posted and the backlog is bounded by the number of
+ * event types, however far the reviews fall behind.
+ * <p>
+ * When no event arrives within the idle interval, the reviewer is
+ * called with an empty set, so periodic checks can share the thread.
+ */
+public class ReviewService extends AbstractService implements Runnable {
+  protected static final Logger log =
+    LoggerFactory.getLogger(ReviewService.class);
+
+  /**
+   * The events which trigger a review
+   */
+  public enum Event {
+    CONTAINERS_COMPLETED,
+    CONTAINER_START_FAILED,
+    FLEX,
+    NODES_UPDATED
+  }
+
+  /**
+   * What the service calls to review the cluster
+   */
+  public interface Reviewer {
+
+    /**
+     * Review the cluster. Runtime exceptions are logged and swallowed.
+     * @param events the events since the last review; empty if this is
+     * a periodic call with nothing having happened
+     */
+    void review(Set<Event> events);
+  }
+
+  private final Reviewer reviewer;
+  private final int debounce;
+  private final int idleInterval;
+  private final Lock lock = new ReentrantLock();
+  private final Condition posted = lock.newCondition();
+  /**
+   * Events awaiting a review; guarded by {@link #lock}
+   */
+  private final Set<Event> pending = EnumSet.noneOf(Event.class);
+  private final AtomicLong reviews = new AtomicLong();
+  private final AtomicLong eventsPosted = new AtomicLong();
+  private final DurationHistogram reviewDurations = new DurationHistogram();
+  private volatile boolean stopping;
+  private Thread thread;
+
+  /**
+   * Create the service
+   * @param reviewer reviewer to call
+   * @param debounce time in millis to wait after an event for others
+   * @param idleInterval time in millis after which the reviewer is called
+   * even if no event has arrived
+   */
+  public ReviewService(Reviewer reviewer, int debounce, int idleInterval) {
+    super("ReviewService");
+    if (idleInterval <= 0) {
+      throw new IllegalArgumentException(
+        "Review idle interval must be positive: " + idleInterval);
+    }
+    this.reviewer = reviewer;
+    this.debounce = Math.max(0, debounce);
+    this.idleInterval = idleInterval;
+  }
+
+  @Override
+  protected void serviceStart() throws Exception {
+    super.serviceStart();
+    thread = new Thread(this, "review");
+    thread.setDaemon(true);
+    thread.start();
+    log.info("Review debounce window {} ms", debounce);
+  }
+
+  @Override
+  protected void serviceStop() throws Exception {
+    stopping = true;
+    if (thread != null) {
+      thread.interrupt();
+      thread.join(idleInterval);
+      thread = null;
+    }
+    super.serviceStop();
+  }
+
+  /**
+   * Post an event; the review it triggers runs on the review thread.
+   * Events posted before the service starts are reviewed once it does.
+   * @param event event
+   */
+  public void post(Event event) {
+    eventsPosted.incrementAndGet();
+    lock.lock();
+    try {
+      if (pending.add(event)) {
+        posted.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void run() {
+    while (!stopping) {
+      Set<Event> batch = EnumSet.noneOf(Event.class);
+      try {
+        if (awaitEvent() && debounce > 0) {
+          Thread.sleep(debounce);
+        }
+      } catch (InterruptedException e) {
+        if (stopping) {
+          break;
+        }
+      }
+      lock.lock();
+      try {
+        batch.addAll(pending);
+        pending.clear();
+      } finally {
+        lock.unlock();
+      }
+      review(batch);
+    }
+    log.debug("Review thread finished");
+  }
+
+  /**
+   * Wait up to the idle interval for an event to be pending
+   * @return true if there is an event pending
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private boolean awaitEvent() throws InterruptedException {
+    long deadline = System.nanoTime() +
+                    TimeUnit.MILLISECONDS.toNanos(idleInterval);
+    lock.lock();
+    try {
+      long remaining = deadline - System.nanoTime();
+      while (pending.isEmpty() && !stopping && remaining > 0) {
+        remaining = posted.awaitNanos(remaining);
+      }
+      return !pending.isEmpty();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Call the reviewer, timing it if there were events
+   * @param batch events
+   */
+  private void review(Set<Event> batch) {
+    long start = System.currentTimeMillis();
+    try {
+      reviewer.review(batch);
+    } catch (RuntimeException e) {
+      log.warn("Review of {} failed", batch, e);
+    }
+    if (!batch.isEmpty()) {
+      reviewDurations.add(System.currentTimeMillis() - start);
+      reviews.incrementAndGet();
+    }
+  }
+
+  /**
+   * Get the number of distinct events waiting for a review
+   * @return the queue depth; never more than the number of event types
+   */
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return pending.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Get the number of reviews triggered by events
+   * @return the count of reviews
+   */
+  public long getReviewCount() {
+    return reviews.get();
+  }
+
+  /**
+   * Get the number of events posted
+   * @return the count of events
+   */
+  public long getEventCount() {
+    return eventsPosted.get();
+  }
+
+  public DurationHistogram getReviewDurations() {
+    return reviewDurations;
+  }
+
+  public int getDebounce() {
+    return debounce;
+  }
+}
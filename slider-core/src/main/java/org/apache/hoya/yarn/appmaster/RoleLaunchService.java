@@ -18,6 +18,7 @@
 
 package org.apache.hoya.yarn.appmaster;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.service.AbstractService;
 import org.apache.hadoop.yarn.api.records.Container;
@@ -36,9 +37,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A service for launching containers
@@ -52,17 +59,33 @@ public class RoleLaunchService extends AbstractService {
    */
   public static final int LAUNCHER_THREAD_SHUTDOWN_TIME = 10000;
   /**
-   * Map of launched threads.
-   * These are retained so that at shutdown time the AM can signal
-   * all threads to stop.
-   *
-   * However, we don't want to run out of memory even if many containers
-   * get launched over time, so the AM tries to purge this
-   * of the latest launched thread when the RoleLauncher signals
-   * the AM that it has finished
+   * Executor running the launchers. It has a fixed number of threads;
+   * launches beyond that are queued.
    */
-  private final Map<RoleLauncher, Thread> launchThreads =
-    new HashMap<RoleLauncher, Thread>();
+  private ThreadPoolExecutor launcherPool;
+
+  /**
+   * Permits for queued + in-progress launches. When exhausted,
+   * {@link #launchRole(Container, RoleStatus, AggregateConf)} blocks the
+   * caller until a launch completes, pushing back on the allocation
+   * callback rather than growing the queue without limit.
+   */
+  private final Semaphore launchPermits;
+
+  /**
+   * Number of launchers actually executing (i.e. not queued)
+   */
+  private final AtomicInteger activeLaunches = new AtomicInteger();
+
+  /**
+   * Number of threads in the launcher pool
+   */
+  private final int launcherThreads;
+
+  /**
+   * Maximum number of launches which may be queued or in progress
+   */
+  private final int launcherQueueSize;
 
   /**
    * Callback to whatever has the task of actually running the container
@@ -94,6 +117,11 @@ public class RoleLaunchService extends AbstractService {
    */
   private final ThreadGroup launcherThreadGroup = new ThreadGroup("launcher");
 
+  /**
+   * How long to wait for the launchers on shutdown
+   */
+  private long shutdownTime = LAUNCHER_THREAD_SHUTDOWN_TIME;
+
   private Map<String, String> envVars;
 
   /**
@@ -102,15 +130,32 @@ public class RoleLaunchService extends AbstractService {
    * @param provider the provider
    * @param fs filesystem
    * @param generatedConfDirPath path in the FS for the generated dir
-   * @param envVars
-   * @param launcherTmpDirPath
+   * @param envVars environment variables to set in every container
+   * @param launcherTmpDirPath temp dir for launches
+   * @param launcherThreads number of launcher threads
+   * @param launcherQueueSize limit on queued + active launches
    */
   public RoleLaunchService(ContainerStartOperation startOperation,
                            ProviderService provider,
                            HoyaFileSystem fs,
                            Path generatedConfDirPath,
-                           Map<String, String> envVars, Path launcherTmpDirPath) {
+                           Map<String, String> envVars,
+                           Path launcherTmpDirPath,
+                           int launcherThreads,
+                           int launcherQueueSize) {
     super("RoleLaunchService");
+    if (launcherThreads < 1) {
+      throw new IllegalArgumentException(
+        "launcher thread count must be positive: " + launcherThreads);
+    }
+    if (launcherQueueSize < launcherThreads) {
+      throw new IllegalArgumentException(
+        "launcher queue size " + launcherQueueSize
+        + " is less than the thread count " + launcherThreads);
+    }
+    this.launcherThreads = launcherThreads;
+    this.launcherQueueSize = launcherQueueSize;
+    launchPermits = new Semaphore(launcherQueueSize, true);
     containerStarter = startOperation;
     this.fs = fs;
     this.generatedConfDirPath = generatedConfDirPath;
@@ -119,9 +164,22 @@ public class RoleLaunchService extends AbstractService {
     this.envVars = envVars;
   }
 
+  @Override
+  protected void serviceStart() throws Exception {
+    super.serviceStart();
+    // the queue itself is unbounded; the semaphore bounds it
+    launcherPool = new ThreadPoolExecutor(launcherThreads,
+                                          launcherThreads,
+                                          0L, TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(),
+                                          new LauncherThreadFactory());
+    log.info("Container launcher pool of {} threads, queue limit {}",
+             launcherThreads, launcherQueueSize);
+  }
+
   @Override
   protected void serviceStop() throws Exception {
-    joinAllLaunchedThreads();
+    shutdownLauncherPool();
     super.serviceStop();
   }
 
@@ -145,64 +203,146 @@ public class RoleLaunchService extends AbstractService {
                                                     .getOrAddComponent(roleName),
                                          clusterSpec.getAppConfOperations()
                                                     .getOrAddComponent(roleName) );
-    launchThread(launcher,
-                 String.format("%s-%s", roleName,
-                               container.getId().toString())
-                );
+    submit(launcher);
   }
 
-
-  public void launchThread(RoleLauncher launcher, String name) {
-    Thread launchThread = new Thread(launcherThreadGroup,
-                                     launcher,
-                                     name);
-
-    // launch and start the container on a separate thread to keep
-    // the main thread unblocked
-    // as all containers may not be allocated at one go.
-    synchronized (launchThreads) {
-      launchThreads.put(launcher, launchThread);
+  /**
+   * Queue a launcher for execution, blocking if the queue is full
+   * @param launcher launcher to run
+   */
+  private void submit(RoleLauncher launcher) {
+    if (launcherPool == null || launcherPool.isShutdown()) {
+      log.warn("Discarding launch of {}: launcher service is not live",
+               launcher);
+      return;
+    }
+    try {
+      if (!launchPermits.tryAcquire()) {
+        log.info("Launch queue full ({} pending); waiting to queue {}",
+                 launcherQueueSize, launcher);
+        launchPermits.acquire();
+      }
+    } catch (InterruptedException e) {
+      log.warn("Interrupted while waiting to queue {}", launcher);
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      launcherPool.execute(launcher);
+    } catch (RejectedExecutionException e) {
+      launchPermits.release();
+      log.warn("Launch of {} rejected: {}", launcher, e.toString());
     }
-    launchThread.start();
   }
 
   /**
-   * Method called by a launcher thread when it has completed;
-   * this removes the launcher of the map of active
-   * launching threads.
+   * Method called by a launcher when it has completed;
+   * this releases its slot in the launch queue.
    * @param launcher launcher that completed
    * @param ex any exception raised
    */
   public void launchedThreadCompleted(RoleLauncher launcher, Exception ex) {
     log.debug("Launched thread {} completed", launcher, ex);
-    synchronized (launchThreads) {
-      launchThreads.remove(launcher);
-    }
+    launchPermits.release();
   }
 
   /**
-   Join all launched threads
-   needed for when we time out
-   and we need to release containers
+   * Get the number of launches queued but not yet executing
+   * @return the queue depth
    */
-  private void joinAllLaunchedThreads() {
+  public int getQueueDepth() {
+    return launcherPool != null ? launcherPool.getQueue().size() : 0;
+  }
 
+  /**
+   * Get the number of launches currently executing
+   * @return the number of active launchers
+   */
+  public int getActiveLaunchCount() {
+    return activeLaunches.get();
+  }
+
+  /**
+   * Get the number of launches which may still be queued before
+   * {@link #launchRole(Container, RoleStatus, AggregateConf)} blocks
+   * @return the free slots in the launch queue
+   */
+  public int getAvailableLaunchSlots() {
+    return launchPermits.availablePermits();
+  }
+
+  /**
+   * Set how long to wait for the launchers on shutdown before
+   * interrupting them
+   * @param millis time in milliseconds
+   */
+  @VisibleForTesting
+  void setShutdownTime(long millis) {
+    shutdownTime = millis;
+  }
+
+  /**
+   * Stop accepting new launches, wait for the current ones to finish,
+   * then interrupt anything still running.
+   */
+  private void shutdownLauncherPool() {
+    if (launcherPool == null) {
+      return;
+    }
+    launcherPool.shutdown();
+    int outstanding = getQueueDepth() + getActiveLaunchCount();
+    if (outstanding > 0) {
+      log.info("Waiting for the completion of {} launches", outstanding);
+    }
+    try {
+      if (!launcherPool.awaitTermination(shutdownTime,
+                                         TimeUnit.MILLISECONDS)) {
+        log.info("Launcher threads still active after {} millis; interrupting",
+                 shutdownTime);
+        dropLaunches(launcherPool.shutdownNow());
+      }
+    } catch (InterruptedException e) {
+      log.info("Interrupted while waiting for launchers: " + e, e);
+      dropLaunches(launcherPool.shutdownNow());
+      Thread.currentThread().interrupt();
+    }
+  }
 
-    //first: take a snapshot of the thread list
-    List<Thread> liveThreads;
-    synchronized (launchThreads) {
-      liveThreads = new ArrayList<Thread>(launchThreads.values());
+  /**
+   * Handle the launches still queued when the pool was stopped: they
+   * will never run, so their containers are never started. Log them
+   * and release their slots, so nothing waiting to queue a launch
+   * stays blocked.
+   * @param dropped the runnables taken off the queue
+   */
+  private void dropLaunches(List<Runnable> dropped) {
+    if (dropped.isEmpty()) {
+      return;
     }
-    int size = liveThreads.size();
-    if (size > 0) {
-      log.info("Waiting for the completion of {} threads", size);
-      for (Thread launchThread : liveThreads) {
-        try {
-          launchThread.join(LAUNCHER_THREAD_SHUTDOWN_TIME);
-        } catch (InterruptedException e) {
-          log.info("Exception thrown in thread join: " + e, e);
-        }
+    List<String> containers = new ArrayList<String>(dropped.size());
+    for (Runnable runnable : dropped) {
+      if (runnable instanceof RoleLauncher) {
+        containers.add(((RoleLauncher) runnable).container.getId().toString());
       }
+      launchPermits.release();
+    }
+    log.warn("Dropped {} queued launches on shutdown;" +
+             " containers not started: {}", dropped.size(), containers);
+  }
+
+  /**
+   * Thread factory placing all launcher threads into the launcher
+   * thread group, with a numbered name
+   */
+  private class LauncherThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(launcherThreadGroup, r,
+                                 "launcher-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
     }
   }
 
@@ -248,6 +388,7 @@ public class RoleLaunchService extends AbstractService {
     @Override
     public void run() {
       Exception ex = null;
+      activeLaunches.incrementAndGet();
       try {
         ContainerLauncher containerLauncher = new ContainerLauncher(getConfig(),
                                                                     fs,
@@ -310,6 +451,7 @@ public class RoleLaunchService extends AbstractService {
           e);
         ex = e;
       } finally {
+        activeLaunches.decrementAndGet();
         launchedThreadCompleted(this, ex);
       }
     }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import org.apache.hadoop.yarn.api.records.ContainerId;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index of the active containers that can be released, by role and host.
+ * <p>
+ * Flexing down picks hosts from the role history and then needs a
+ * container of the role on each one; with this index that is a pair of
+ * hash lookups rather than a scan of every active container.
+ * Containers are added when their start is submitted and removed once
+ * they are queued for release, fail to start, or complete; on any host
+ * the oldest entry is returned first.
+ * <p>
+ * Thread safe: containers are submitted from the launcher threads.
+ */
+public class ActiveContainerIndex {
+
+  private final Map<Integer, Map<String, Map<ContainerId, RoleInstance>>>
+    roles = new HashMap<Integer, Map<String, Map<ContainerId, RoleInstance>>>();
+
+  private int size;
+
+  /**
+   * Add an instance, replacing any entry for the same container.
+   * Instances without a container on a node are not indexed.
+   * @param instance instance
+   */
+  public synchronized void add(RoleInstance instance) {
+    if (!isPlaced(instance)) {
+      return;
+    }
+    Map<String, Map<ContainerId, RoleInstance>> hosts =
+      roles.get(instance.roleId);
+    if (hosts == null) {
+      hosts = new HashMap<String, Map<ContainerId, RoleInstance>>();
+      roles.put(instance.roleId, hosts);
+    }
+    String hostname = RoleHistoryUtils.hostnameOf(instance.container);
+    Map<ContainerId, RoleInstance> containers = hosts.get(hostname);
+    if (containers == null) {
+      containers = new LinkedHashMap<ContainerId, RoleInstance>();
+      hosts.put(hostname, containers);
+    }
+    if (containers.put(instance.getId(), instance) == null) {
+      size++;
+    }
+  }
+
+  /**
+   * Remove an instance
+   * @param instance instance
+   * @return true if it was indexed
+   */
+  public synchronized boolean remove(RoleInstance instance) {
+    if (!isPlaced(instance)) {
+      return false;
+    }
+    Map<String, Map<ContainerId, RoleInstance>> hosts =
+      roles.get(instance.roleId);
+    if (hosts == null) {
+      return false;
+    }
+    String hostname = RoleHistoryUtils.hostnameOf(instance.container);
+    Map<ContainerId, RoleInstance> containers = hosts.get(hostname);
+    if (containers == null || containers.remove(instance.getId()) == null) {
+      return false;
+    }
+    if (containers.isEmpty()) {
+      hosts.remove(hostname);
+    }
+    size--;
+    return true;
+  }
+
+  /**
+   * Find a container of a role on a host
+   * @param hostname host
+   * @param roleId role
+   * @return an instance, or null if there is none
+   */
+  public synchronized RoleInstance find(String hostname, int roleId) {
+    Map<String, Map<ContainerId, RoleInstance>> hosts = roles.get(roleId);
+    if (hosts == null) {
+      return null;
+    }
+    Map<ContainerId, RoleInstance> containers = hosts.get(hostname);
+    if (containers == null) {
+      return null;
+    }
+    Iterator<RoleInstance> iterator = containers.values().iterator();
+    return iterator.hasNext() ? iterator.next() : null;
+  }
+
+  /**
+   * Count the containers of a role on a host
+   * @param hostname host
+   * @param roleId role
+   * @return the number indexed
+   */
+  public synchronized int count(String hostname, int roleId) {
+    Map<String, Map<ContainerId, RoleInstance>> hosts = roles.get(roleId);
+    if (hosts == null) {
+      return 0;
+    }
+    Map<ContainerId, RoleInstance> containers = hosts.get(hostname);
+    return containers != null ? containers.size() : 0;
+  }
+
+  private static boolean isPlaced(RoleInstance instance) {
+    return instance.container != null
+           && instance.container.getNodeId() != null;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+}
@@ -42,6 +42,7 @@ import org.apache.hoya.api.ResourceKeys;
 import org.apache.hoya.api.RoleKeys;
 import org.apache.hoya.api.StatusKeys;
 import org.apache.hoya.api.proto.Messages;
+import org.apache.hoya.avro.RoleHistoryWriter;
 import org.apache.hoya.core.conf.AggregateConf;
 import org.apache.hoya.core.conf.ConfTree;
 import org.apache.hoya.core.conf.ConfTreeOperations;
@@ -62,6 +63,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -70,7 +72,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static org.apache.hoya.api.ResourceKeys.COMPONENT_PLACEMENT_ESCALATE_DELAY;
+import static org.apache.hoya.api.ResourceKeys.DEF_COMPONENT_PLACEMENT_ESCALATE_DELAY;
 import static org.apache.hoya.api.ResourceKeys.DEF_YARN_CORES;
 import static org.apache.hoya.api.ResourceKeys.DEF_YARN_MEMORY;
 import static org.apache.hoya.api.RoleKeys.ROLE_FAILED_INSTANCES;
@@ -87,6 +92,15 @@ import static org.apache.hoya.api.ResourceKeys.YARN_MEMORY;
  * concurrency rules: any method which begins with <i>build</i>
  * is not synchronized and intended to be used during
  * initialization.
+ *
+ * State transitions -container events, flexing and reviews- are
+ * synchronized, so there is only ever one writer. The container maps are
+ * concurrent and the role counters atomic, so the methods which only
+ * read the state (listings, lookups, status building) do not lock:
+ * they see a weakly consistent view which may be mid-transition, but
+ * they never block, or are blocked by, the writer.
+ * The configuration snapshots are replaced, never modified, on an
+ * update; readers should use them rather than the live definition.
  */
 public class AppState implements StateAccessForProviders {
   protected static final Logger log =
@@ -98,7 +112,7 @@ public class AppState implements StateAccessForProviders {
    * Flag set to indicate the application is live -this only happens
    * after the buildInstance operation
    */
-  boolean applicationLive = false;
+  volatile boolean applicationLive = false;
 
   /**
    * The definition of the instance. Flexing updates the resources section
@@ -108,15 +122,21 @@ public class AppState implements StateAccessForProviders {
    */
   private AggregateConf instanceDefinition;
   
-  private long snapshotTime;
-  private AggregateConf instanceDefinitionSnapshot;
+  private volatile long snapshotTime;
+
+  /**
+   * Version of the instance definition; incremented on every update
+   */
+  private volatile long instanceDefinitionVersion;
+
+  private volatile AggregateConf instanceDefinitionSnapshot;
 
   /**
    * snapshot of resources as of last update time
    */
-  private ConfTreeOperations resourcesSnapshot;
-  private ConfTreeOperations appConfSnapshot;
-  private ConfTreeOperations internalsSnapshot;
+  private volatile ConfTreeOperations resourcesSnapshot;
+  private volatile ConfTreeOperations appConfSnapshot;
+  private volatile ConfTreeOperations internalsSnapshot;
   
   /**
    * This is the status, the live model
@@ -161,6 +181,17 @@ public class AppState implements StateAccessForProviders {
   private final ConcurrentMap<ContainerId, RoleInstance> activeContainers =
     new ConcurrentHashMap<ContainerId, RoleInstance>();
 
+  /**
+   * The active containers which can be released, by role and host
+   */
+  private final ActiveContainerIndex releasableContainers =
+    new ActiveContainerIndex();
+
+  /**
+   * The container requests submitted and not yet satisfied
+   */
+  private final ContainerAskTracker containerAsks = new ContainerAskTracker();
+
   /**
    * Hash map of the containers we have released, but we
    * are still awaiting acknowledgements on. Any failure of these
@@ -222,7 +253,8 @@ public class AppState implements StateAccessForProviders {
    * Nodes that came assigned to a role above that
    * which were asked for -this appears to happen
    */
-  private final Set<ContainerId> surplusNodes = new HashSet<ContainerId>();
+  private final Set<ContainerId> surplusNodes =
+    Collections.newSetFromMap(new ConcurrentHashMap<ContainerId, Boolean>());
 
   /**
    * Map of containerID -> cluster nodes, for status reports.
@@ -252,6 +284,18 @@ public class AppState implements StateAccessForProviders {
   
   private int failureThreshold = 10;
 
+  /**
+   * Generation of the state, incremented on every change that
+   * is visible in the cluster status
+   */
+  private final AtomicLong statusGeneration = new AtomicLong();
+
+  /**
+   * Lock held while the cluster status is refreshed. This is not the
+   * state lock, so status refreshes do not block state transitions.
+   */
+  private final Object statusLock = new Object();
+
   public AppState(AbstractRecordFactory recordFactory) {
     this.recordFactory = recordFactory;
   }
@@ -364,6 +408,7 @@ public class AppState implements StateAccessForProviders {
                                                                               IOException {
     this.instanceDefinition = definition;
     onInstanceDefinitionUpdated();
+    instanceDefinitionPublished();
   }
 
   public AggregateConf getInstanceDefinition() {
@@ -430,6 +475,30 @@ public class AppState implements StateAccessForProviders {
     return instanceDefinitionSnapshot;
   }
 
+  @Override
+  public long getInstanceDefinitionVersion() {
+    return instanceDefinitionVersion;
+  }
+
+  /**
+   * Get the generation of the state. Any change that will be visible in
+   * the next cluster status refresh increments this.
+   * @return the current generation
+   */
+  public long getStatusGeneration() {
+    return statusGeneration.get();
+  }
+
+  /**
+   * Note that the state has changed in a way which will be visible
+   * in the cluster status. Call this once the change is complete: a
+   * snapshot built before the increment is discarded, but one tagged
+   * with the new generation must already see the change.
+   */
+  protected void statusChanged() {
+    statusGeneration.incrementAndGet();
+  }
+
   /**
    * Build up the application state
    * @param instanceDefinition definition of the applicatin instance
@@ -510,6 +579,13 @@ public class AppState implements StateAccessForProviders {
 
     // add the roles
     roleHistory = new RoleHistory(providerRoles);
+    roleHistory.setHistoryWriter(new RoleHistoryWriter(
+      RoleHistoryWriter.Encoding.fromOption(globalInternalOpts.getOption(
+        OptionKeys.INTERNAL_HISTORY_ENCODING,
+        OptionKeys.DEFAULT_HISTORY_ENCODING))));
+    roleHistory.setJournalCompactionThreshold(globalInternalOpts.getOptionInt(
+      OptionKeys.INTERNAL_HISTORY_JOURNAL_COMPACTION,
+      OptionKeys.DEFAULT_HISTORY_JOURNAL_COMPACTION));
     roleHistory.onStart(fs, historyDir);
     
     //rebuild any live containers
@@ -546,6 +622,7 @@ public class AppState implements StateAccessForProviders {
 
       //set the app state to this status
     setClusterStatus(status);
+    instanceDefinitionPublished();
   }
 
   /**
@@ -607,6 +684,18 @@ public class AppState implements StateAccessForProviders {
     }
     
   }
+
+  /**
+   * Move the instance definition version on. This must only be called
+   * once the snapshots, the cluster spec and the cluster status roles
+   * derived from the definition are all published, so that anything
+   * read after seeing a version is at least as new as it: providers
+   * cache what they derive from the status under the version.
+   */
+  private void instanceDefinitionPublished() {
+    instanceDefinitionVersion++;
+    statusChanged();
+  }
   
   /**
    * The resource configuration is updated -review and update state
@@ -627,6 +716,7 @@ public class AppState implements StateAccessForProviders {
     getClusterStatus().roles = HoyaUtils.deepClone(updated);
     getClusterStatus().updateTime = now();
     buildRoleRequirementsFromResources();
+    instanceDefinitionPublished();
   }
 
   /**
@@ -721,6 +811,7 @@ public class AppState implements StateAccessForProviders {
    */
   public void noteAMLaunched() {
     getLiveNodes().put(appMasterNode.getContainerId(), appMasterNode);
+    statusChanged();
   }
 
   /**
@@ -730,6 +821,7 @@ public class AppState implements StateAccessForProviders {
    */
   public void noteAMLive() {
     appMasterNode.state = ClusterDescription.STATE_LIVE;
+    statusChanged();
   }
 
   public RoleInstance getAppMasterNode() {
@@ -761,7 +853,7 @@ public class AppState implements StateAccessForProviders {
   }
 
   @Override
-  public synchronized List<RoleInstance> cloneActiveContainerList() {
+  public List<RoleInstance> cloneActiveContainerList() {
     Collection<RoleInstance> values = activeContainers.values();
     return new ArrayList<RoleInstance>(values);
   }
@@ -777,7 +869,7 @@ public class AppState implements StateAccessForProviders {
   }
 
   @Override
-  public synchronized List<RoleInstance> cloneLiveContainerInfoList() {
+  public List<RoleInstance> cloneLiveContainerInfoList() {
     List<RoleInstance> allRoleInstances;
     Collection<RoleInstance> values = getLiveNodes().values();
     allRoleInstances = new ArrayList<RoleInstance>(values);
@@ -786,7 +878,7 @@ public class AppState implements StateAccessForProviders {
 
 
   @Override
-  public synchronized RoleInstance getLiveInstanceByContainerID(String containerId)
+  public RoleInstance getLiveInstanceByContainerID(String containerId)
     throws NoSuchNodeException {
     Collection<RoleInstance> nodes = getLiveNodes().values();
     for (RoleInstance node : nodes) {
@@ -799,7 +891,7 @@ public class AppState implements StateAccessForProviders {
   }
 
   @Override
-  public synchronized List<RoleInstance> getLiveInstancesByContainerIDs(
+  public List<RoleInstance> getLiveInstancesByContainerIDs(
     Collection<String> containerIDs) {
     //first, a hashmap of those containerIDs is built up
     Set<String> uuidSet = new HashSet<String>(containerIDs);
@@ -820,7 +912,7 @@ public class AppState implements StateAccessForProviders {
    * @param role role, or "" for all roles
    * @return a list of nodes, may be empty
    */
-  public synchronized List<RoleInstance> enumLiveNodesInRole(String role) {
+  public List<RoleInstance> enumLiveNodesInRole(String role) {
     List<RoleInstance> nodes = new ArrayList<RoleInstance>();
     Collection<RoleInstance> allRoleInstances = getLiveNodes().values();
     for (RoleInstance node : allRoleInstances) {
@@ -836,7 +928,7 @@ public class AppState implements StateAccessForProviders {
    * Build an instance map.
    * @return the map of Role name to list of role instances
    */
-  private synchronized Map<String, List<String>> createRoleToInstanceMap() {
+  private Map<String, List<String>> createRoleToInstanceMap() {
     Map<String, List<String>> map = new HashMap<String, List<String>>();
     for (RoleInstance node : getLiveNodes().values()) {
       List<String> containers = map.get(node.role);
@@ -852,7 +944,7 @@ public class AppState implements StateAccessForProviders {
    * Build an instance map to send over the wire
    * @return the map of Role name to list of Cluster Nodes, ready
    */
-  private synchronized Map<String, Map<String, ClusterNode>> createRoleToClusterNodeMap() {
+  private Map<String, Map<String, ClusterNode>> createRoleToClusterNodeMap() {
     Map<String, Map<String, ClusterNode>> map =
       new HashMap<String, Map<String, ClusterNode>>();
     for (RoleInstance node : getLiveNodes().values()) {
@@ -882,7 +974,9 @@ public class AppState implements StateAccessForProviders {
     instance.createTime = now();
     getStartingNodes().put(container.getId(), instance);
     activeContainers.put(container.getId(), instance);
+    releasableContainers.add(instance);
     roleHistory.onContainerStartSubmitted(container, instance);
+    statusChanged();
   }
 
   /**
@@ -910,9 +1004,11 @@ public class AppState implements StateAccessForProviders {
     }
     info.released = true;
     containersBeingReleased.put(id, info.container);
+    releasableContainers.remove(info);
     RoleStatus role = lookupRoleStatus(info.roleId);
     role.incReleasing();
     roleHistory.onContainerReleaseSubmitted(container);
+    statusChanged();
   }
 
 
@@ -949,6 +1045,7 @@ public class AppState implements StateAccessForProviders {
     int key = role.getKey();
     request = roleHistory.requestNode(role, resource);
     role.incRequested();
+    containerAsks.submitted(key, request, now());
 
     return request;
   }
@@ -1036,6 +1133,8 @@ public class AppState implements StateAccessForProviders {
                 containerId,
                 e);
       return null;
+    } finally {
+      statusChanged();
     }
   }
 
@@ -1085,7 +1184,10 @@ public class AppState implements StateAccessForProviders {
    */
   public synchronized void onNodeManagerContainerStartFailed(ContainerId containerId,
                                                              Throwable thrown) {
-    activeContainers.remove(containerId);
+    RoleInstance active = activeContainers.remove(containerId);
+    if (active != null) {
+      releasableContainers.remove(active);
+    }
     incFailedCountainerCount();
     incStartFailedCountainerCount();
     RoleInstance instance = getStartingNodes().remove(containerId);
@@ -1099,6 +1201,7 @@ public class AppState implements StateAccessForProviders {
       getFailedNodes().put(containerId, instance);
       roleHistory.onNodeManagerContainerStartFailed(instance.container);
     }
+    statusChanged();
   }
 
   /**
@@ -1193,6 +1296,7 @@ public class AppState implements StateAccessForProviders {
       roleInstance = activeContainers.remove(containerId);
       if (roleInstance != null) {
         //it was active, move it to failed 
+        releasableContainers.remove(roleInstance);
         incFailedCountainerCount();
         failedNodes.put(containerId, roleInstance);
       } else {
@@ -1255,6 +1359,7 @@ public class AppState implements StateAccessForProviders {
     
     if (result.surplusNode) {
       //a surplus node
+      statusChanged();
       return result;
     }
     
@@ -1273,6 +1378,7 @@ public class AppState implements StateAccessForProviders {
       getCompletedNodes().put(id, node);
       result.roleInstance = node;
     }
+    statusChanged();
     return result;
   }
 
@@ -1282,7 +1388,7 @@ public class AppState implements StateAccessForProviders {
    * Web UI
    * @return an number from 0 to 100
    */
-  public synchronized float getApplicationProgressPercentage() {
+  public float getApplicationProgressPercentage() {
     float percentage;
     int desired = 0;
     float actual = 0;
@@ -1308,6 +1414,12 @@ public class AppState implements StateAccessForProviders {
    * @param providerStatus status from the provider for the cluster info section
    */
   public void refreshClusterStatus(Map<String, String> providerStatus) {
+    synchronized (statusLock) {
+      innerRefreshClusterStatus(providerStatus);
+    }
+  }
+
+  private void innerRefreshClusterStatus(Map<String, String> providerStatus) {
     ClusterDescription cd = getClusterStatus();
     long now = now();
     cd.setInfoTime(StatusKeys.INFO_STATUS_TIME_HUMAN,
@@ -1376,9 +1488,75 @@ public class AppState implements StateAccessForProviders {
         allOperations.addAll(operations);
       }
     }
+    statusChanged();
     return allOperations;
   }
   
+  /**
+   * Reissue without a location every placed request which has been
+   * outstanding for longer than the escalation delay of its role
+   * @return the operations to cancel the old requests and make the new ones
+   */
+  public synchronized List<AbstractRMOperation> escalateOutstandingRequests() {
+    return escalateOutstandingRequests(now());
+  }
+
+  /**
+   * Reissue without a location every placed request which has been
+   * outstanding for longer than the escalation delay of its role.
+   * Roles which do not set a delay are never escalated.
+   * @param now the current time
+   * @return the operations to cancel the old requests and make the new ones
+   */
+  @VisibleForTesting
+  public synchronized List<AbstractRMOperation> escalateOutstandingRequests(
+      long now) {
+    List<AbstractRMOperation> operations = new ArrayList<AbstractRMOperation>();
+    ConfTreeOperations resources = getResourcesSnapshot();
+    for (RoleStatus role : getRoleStatusMap().values()) {
+      long delay = 1000L * resources.getComponentOptInt(role.getName(),
+                     COMPONENT_PLACEMENT_ESCALATE_DELAY,
+                     DEF_COMPONENT_PLACEMENT_ESCALATE_DELAY);
+      if (delay > 0) {
+        escalateOutstandingRequests(role, now - delay, operations);
+      }
+    }
+    return operations;
+  }
+
+  /**
+   * Reissue without a location the placed requests of a role made
+   * before a given time
+   * @param role role
+   * @param requestedBefore time
+   * @param operations list to add the operations to
+   */
+  private void escalateOutstandingRequests(RoleStatus role,
+                                           long requestedBefore,
+                                           List<AbstractRMOperation> operations) {
+    int roleId = role.getKey();
+    List<OutstandingRequest> expired =
+      roleHistory.escalateOutstandingRequests(roleId, requestedBefore);
+    for (OutstandingRequest outstanding : expired) {
+      ContainerAskTracker.Ask ask =
+        containerAsks.removeLocated(roleId, outstanding.hostname);
+      if (ask == null) {
+        // already satisfied elsewhere
+        continue;
+      }
+      log.info("{}: Request on {} outstanding since {}; relaxing placement",
+               role.getName(), outstanding.hostname,
+               outstanding.requestedTime);
+      operations.add(new CancelRequestOperation(ask.getRequest()));
+      AMRMClient.ContainerRequest relaxed =
+        roleHistory.requestInstanceOnNode(null, role,
+                                          ask.getRequest().getCapability());
+      containerAsks.submitted(roleId, relaxed, ask.getSubmitted());
+      operations.add(new ContainerRequestOperation(relaxed));
+      role.incPlacementEscalations();
+    }
+  }
+
   public void checkFailureThreshold(RoleStatus role) throws
                                                         TriggerClusterTeardownException {
     int failures = role.getFailed();
@@ -1412,6 +1590,8 @@ public class AppState implements StateAccessForProviders {
     String details;
     int expected;
     String name = role.getName();
+    // the counter mutators hold the role's monitor: holding it here
+    // gives a delta, description and target from the same state
     synchronized (role) {
       delta = role.getDelta();
       details = role.toString();
@@ -1424,11 +1604,14 @@ public class AppState implements StateAccessForProviders {
     if (delta > 0) {
       log.info("{}: Asking for {} more nodes(s) for a total of {} ", name,
                delta, expected);
-      //more workers needed than we have -ask for more
+      //more workers needed than we have -ask for more.
+      //The asks share one capability, so that the AMRM client
+      //aggregates them into as few resource requests as possible
+      Resource capability = recordFactory.newResource();
+      buildResourceRequirements(role, capability);
       for (int i = 0; i < delta; i++) {
-        Resource capability = recordFactory.newResource();
         AMRMClient.ContainerRequest containerAsk =
-          buildContainerResourceAndRequest(role, capability);
+          createContainerRequest(role, capability);
         log.info("Container ask is {}", containerAsk);
         if (containerAsk.getCapability().getMemory() >
             this.containerMaxMemory) {
@@ -1445,25 +1628,41 @@ public class AppState implements StateAccessForProviders {
                expected);
       //reduce the number expected (i.e. subtract the delta)
 
-      //then pick some containers to kill
       int excess = -delta;
-
-      // get the nodes to release
       int roleId = role.getKey();
-      List<NodeInstance> nodesForRelease =
-        roleHistory.findNodesForRelease(roleId, excess);
-      
-      for (NodeInstance node : nodesForRelease) {
-        RoleInstance possible = findRoleInstanceOnHost(node, roleId);
-        if (possible == null) {
-          throw new HoyaInternalStateException(
-            "Failed to find a container to release on node %s", node.hostname);
-        }
-        containerReleaseSubmitted(possible.container);
-        operations.add(new ContainerReleaseOperation(possible.getId()));
 
+      //cancel any outstanding requests first
+      List<AMRMClient.ContainerRequest> cancelled =
+        containerAsks.cancel(roleId, Math.min(excess, role.getRequested()));
+      for (AMRMClient.ContainerRequest request : cancelled) {
+        role.cancelRequested();
+        roleHistory.onRequestCancelled(roleId,
+                                       ContainerAskTracker.hostOf(request));
+        operations.add(new CancelRequestOperation(request));
+      }
+      if (!cancelled.isEmpty()) {
+        log.info("{}: Cancelled {} outstanding request(s)", name,
+                 cancelled.size());
+      }
+      excess -= cancelled.size();
+
+      //then pick some containers to kill
+      if (excess > 0) {
+        // get the nodes to release
+        List<NodeInstance> nodesForRelease =
+          roleHistory.findNodesForRelease(roleId, excess);
+
+        for (NodeInstance node : nodesForRelease) {
+          RoleInstance possible = findRoleInstanceOnHost(node, roleId);
+          if (possible == null) {
+            throw new HoyaInternalStateException(
+              "Failed to find a container to release on node %s",
+              node.hostname);
+          }
+          containerReleaseSubmitted(possible.container);
+          operations.add(new ContainerReleaseOperation(possible.getId()));
+        }
       }
-   
     }
 
     return operations;
@@ -1471,8 +1670,8 @@ public class AppState implements StateAccessForProviders {
 
 
   /**
-   * Find a container running on a specific host -looking
-   * into the node ID to determine this.
+   * Find a container running on a specific host, from the index
+   * of releasable containers.
    *
    * @param node node
    * @param roleId role the container must be in
@@ -1480,16 +1679,62 @@ public class AppState implements StateAccessForProviders {
    * that can be released.
    */
   private RoleInstance findRoleInstanceOnHost(NodeInstance node, int roleId) {
-    Collection<RoleInstance> targets = cloneActiveContainerList();
-    String hostname = node.hostname;
-    for (RoleInstance ri : targets) {
-      if (hostname.equals(RoleHistoryUtils.hostnameOf(ri.container))
-                         && ri.roleId == roleId
-        && containersBeingReleased.get(ri.getContainerId()) == null) {
-        return ri;
+    return releasableContainers.find(node.hostname, roleId);
+  }
+
+  /**
+   * Is there RM work outstanding: containers requested and not yet
+   * allocated, or released and not yet completed?
+   * This does not take the AppState lock.
+   * @return true if the AM is waiting on the RM
+   */
+  public boolean hasOutstandingWork() {
+    if (!containersBeingReleased.isEmpty()) {
+      return true;
+    }
+    for (RoleStatus role : getRoleStatusMap().values()) {
+      if (role.getRequested() > 0 || role.getReleasing() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Does any flexible role have containers to request or release?
+   * This is what a review would act on; like
+   * {@link #hasOutstandingWork()} it does not take the AppState lock.
+   * The answer is advisory: each role's delta is consistent, but
+   * callbacks and reviews may change the state before the next
+   * review runs.
+   * @return true if a review would issue operations
+   */
+  public boolean isFlexPending() {
+    for (RoleStatus role : getRoleStatusMap().values()) {
+      if (!role.getExcludeFromFlexing() && role.getDelta() != 0) {
+        return true;
       }
     }
-    return null;
+    return false;
+  }
+
+  /**
+   * Get the number of outstanding requests of a role
+   * @param roleId role
+   * @return the number of requests submitted and not yet satisfied
+   */
+  public int getOutstandingRequestCount(int roleId) {
+    return containerAsks.getOutstanding(roleId);
+  }
+
+  /**
+   * Get the number of active containers which have not been
+   * queued for release
+   * @return the size of the releasable container index
+   */
+  @VisibleForTesting
+  public int getReleasableContainerCount() {
+    return releasableContainers.size();
   }
   
   /**
@@ -1497,7 +1742,6 @@ public class AppState implements StateAccessForProviders {
    * @return a list of operations to execute
    */
   public synchronized List<AbstractRMOperation> releaseAllContainers() {
-
     Collection<RoleInstance> targets = cloneActiveContainerList();
     log.info("Releasing {} containers", targets.size());
     List<AbstractRMOperation> operations =
@@ -1514,9 +1758,27 @@ public class AppState implements StateAccessForProviders {
         operations.add(new ContainerReleaseOperation(id));
       }
     }
+    statusChanged();
     return operations;
   }
 
+  /**
+   * Event handler for allocated containers: builds up the lists
+   * of assignment actions (what to run where), and possibly
+   * a list of release operations. The requests the containers satisfied
+   * are dropped from the outstanding requests, but not from the AMRM
+   * client.
+   * @param allocatedContainers the containers allocated
+   * @param assignments the assignments of roles to containers
+   * @param releaseOperations any release operations
+   */
+  public void onContainersAllocated(List<Container> allocatedContainers,
+                                    List<ContainerAssignment> assignments,
+                                    List<AbstractRMOperation> releaseOperations) {
+    onContainersAllocated(allocatedContainers, assignments, releaseOperations,
+                          new ArrayList<AbstractRMOperation>());
+  }
+
   /**
    * Event handler for allocated containers: builds up the lists
    * of assignment actions (what to run where), and possibly
@@ -1524,10 +1786,13 @@ public class AppState implements StateAccessForProviders {
    * @param allocatedContainers the containers allocated
    * @param assignments the assignments of roles to containers
    * @param releaseOperations any release operations
+   * @param requestOperations operations to remove the requests which
+   * the containers satisfied from the AMRM client's table of asks
    */
   public synchronized void onContainersAllocated(List<Container> allocatedContainers,
                                     List<ContainerAssignment> assignments,
-                                    List<AbstractRMOperation> releaseOperations) {
+                                    List<AbstractRMOperation> releaseOperations,
+                                    List<AbstractRMOperation> requestOperations) {
     assignments.clear();
     releaseOperations.clear();
     List<Container> ordered = roleHistory.prepareAllocationList(allocatedContainers);
@@ -1540,7 +1805,13 @@ public class AppState implements StateAccessForProviders {
       //get the role
       ContainerId cid = container.getId();
       RoleStatus role = lookupRoleStatus(container);
-      
+      role.incAllocated();
+      ContainerAskTracker.Ask satisfied = containerAsks.allocated(container);
+      if (satisfied != null) {
+        requestOperations.add(
+          new CancelRequestOperation(satisfied.getRequest()));
+        role.noteAllocationLatency(now() - satisfied.getSubmitted());
+      }
 
       //dec requested count
       role.decRequested();
@@ -1579,6 +1850,7 @@ public class AppState implements StateAccessForProviders {
         roleHistory.onContainerAssigned(container);
       }
     }
+    statusChanged();
   }
 
   /**
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The nodes available for a role, most recently used first.
+ * <p>
+ * Each node is indexed under the last used time of its entry for the role
+ * <i>at the time it was added</i>; re-adding a node re-indexes it.
+ * Insertion, removal and taking the head are all O(log n), so the index
+ * can be maintained as containers start and finish rather than rebuilt
+ * and re-sorted.
+ * <p>
+ * A node is only present once.
+ * Not synchronized: the role history synchronizes access.
+ */
+public class AvailableNodeIndex {
+
+  private final int role;
+
+  private final TreeSet<Slot> ordered = new TreeSet<Slot>();
+
+  private final Map<String, Slot> slots = new HashMap<String, Slot>();
+
+  public AvailableNodeIndex(int role) {
+    this.role = role;
+  }
+
+  public int getRole() {
+    return role;
+  }
+
+  /**
+   * Add a node, or re-index it if it is already present
+   * @param node node to add
+   */
+  public void add(NodeInstance node) {
+    NodeEntry entry = node.get(role);
+    long lastUsed = entry != null ? entry.getLastUsed() : 0;
+    Slot slot = slots.get(node.hostname);
+    if (slot != null) {
+      if (slot.lastUsed == lastUsed) {
+        return;
+      }
+      ordered.remove(slot);
+    }
+    slot = new Slot(node, lastUsed);
+    slots.put(node.hostname, slot);
+    ordered.add(slot);
+  }
+
+  /**
+   * Remove a node
+   * @param node node to remove
+   * @return true if it was present
+   */
+  public boolean remove(NodeInstance node) {
+    Slot slot = slots.remove(node.hostname);
+    if (slot != null) {
+      ordered.remove(slot);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Remove and return the most recently used node
+   * @return the node or null if the index is empty
+   */
+  public NodeInstance poll() {
+    Slot slot = ordered.pollFirst();
+    if (slot == null) {
+      return null;
+    }
+    slots.remove(slot.node.hostname);
+    return slot.node;
+  }
+
+  public boolean contains(NodeInstance node) {
+    return slots.containsKey(node.hostname);
+  }
+
+  public int size() {
+    return slots.size();
+  }
+
+  public boolean isEmpty() {
+    return slots.isEmpty();
+  }
+
+  public void clear() {
+    ordered.clear();
+    slots.clear();
+  }
+
+  /**
+   * List the nodes, most recently used first
+   * @return a new list
+   */
+  public List<NodeInstance> toList() {
+    List<NodeInstance> nodes = new ArrayList<NodeInstance>(ordered.size());
+    for (Slot slot : ordered) {
+      nodes.add(slot.node);
+    }
+    return nodes;
+  }
+
+  /**
+   * A node in the index and the time under which it was indexed.
+   * Ordered newest first, then by hostname.
+   */
+  private static final class Slot implements Comparable<Slot> {
+    final NodeInstance node;
+    final long lastUsed;
+
+    private Slot(NodeInstance node, long lastUsed) {
+      this.node = node;
+      this.lastUsed = lastUsed;
+    }
+
+    @Override
+    public int compareTo(Slot that) {
+      if (lastUsed > that.lastUsed) {
+        return -1;
+      } else if (lastUsed < that.lastUsed) {
+        return 1;
+      }
+      return node.hostname.compareTo(that.node.hostname);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Slot && compareTo((Slot) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return node.hostname.hashCode();
+    }
+  }
+}
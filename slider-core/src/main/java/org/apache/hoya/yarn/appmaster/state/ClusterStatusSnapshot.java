@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+/**
+ * An immutable, serialized snapshot of the cluster status, tagged with
+ * the {@link AppState#getStatusGeneration()} it was built from.
+ * <p>
+ * Status queries are served from the current snapshot for as long
+ * as it is valid, so repeated polls do not rebuild and re-serialize
+ * the status.
+ */
+public final class ClusterStatusSnapshot {
+
+  private final long generation;
+  private final long created;
+  private final String json;
+
+  /**
+   * Create a snapshot
+   * @param generation state generation read <i>before</i> the status was
+   * refreshed, so that changes made during the refresh invalidate it
+   * @param created creation time in millis
+   * @param json JSON form of the status
+   */
+  public ClusterStatusSnapshot(long generation, long created, String json) {
+    this.generation = generation;
+    this.created = created;
+    this.json = json;
+  }
+
+  public long getGeneration() {
+    return generation;
+  }
+
+  public long getCreated() {
+    return created;
+  }
+
+  public String getJson() {
+    return json;
+  }
+
+  /**
+   * Is the snapshot still current?
+   * @param currentGeneration current state generation
+   * @param now current time in millis
+   * @param maxAge maximum age in millis; 0 means never current
+   * @return true if the snapshot can be used
+   */
+  public boolean isCurrent(long currentGeneration, long now, long maxAge) {
+    return generation == currentGeneration
+           && now >= created
+           && now - created < maxAge;
+  }
+
+  @Override
+  public String toString() {
+    return "ClusterStatusSnapshot{generation=" + generation
+           + ", created=" + created + '}';
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.state;
+
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.client.api.AMRMClient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the container requests which have been submitted to the RM
+ * and not yet satisfied, by role.
+ * <p>
+ * The AMRM client keeps a table of asks which it only decrements when
+ * told to; an allocation must be matched back to one of the requests
+ * so it can be removed from that table, or it is asked for again on
+ * the next update. Tracking the requests also lets a flex-down cancel
+ * asks before it releases any running container.
+ * <p>
+ * Each role has a queue of unlocated requests and, for the requests
+ * naming a host, a queue per host and a list of them all in submission
+ * order. Matching an allocation to a request and cancelling the newest
+ * requests are O(1), amortized: requests taken from a host queue are
+ * only marked in the submission list, which is compacted as they
+ * build up.
+ * <p>
+ * Thread safe.
+ */
+public class ContainerAskTracker {
+
+  private final Map<Integer, RoleAsks> roles =
+    new HashMap<Integer, RoleAsks>();
+
+  private RoleAsks getOrCreate(int role) {
+    RoleAsks asks = roles.get(role);
+    if (asks == null) {
+      asks = new RoleAsks();
+      roles.put(role, asks);
+    }
+    return asks;
+  }
+
+  /**
+   * Note that a request has been submitted
+   * @param role role
+   * @param request request
+   * @param submitted time the role first asked for the container; an
+   * escalated request keeps the time of the one it replaces
+   */
+  public synchronized void submitted(int role,
+                                     AMRMClient.ContainerRequest request,
+                                     long submitted) {
+    RoleAsks asks = getOrCreate(role);
+    Ask ask = new Ask(request, hostOf(request), submitted);
+    if (ask.host == null) {
+      asks.unlocated.add(ask);
+    } else {
+      asks.addLocated(ask);
+    }
+    asks.size++;
+  }
+
+  /**
+   * Match an allocated container to an outstanding request, and
+   * remove that request.
+   * A request for the container's host is preferred, then the oldest
+   * unlocated request, then the oldest request for any other host.
+   * @param container allocated container
+   * @return the ask satisfied, or null if there were none outstanding
+   */
+  public synchronized Ask allocated(Container container) {
+    RoleAsks asks = roles.get(ContainerPriority.extractRole(container));
+    if (asks == null || asks.size == 0) {
+      return null;
+    }
+    String host = RoleHistoryUtils.hostnameOf(container);
+    Ask ask = asks.pollLocated(host);
+    if (ask == null) {
+      ask = asks.unlocated.poll();
+    }
+    if (ask == null) {
+      ask = asks.pollOldestLocated();
+    }
+    if (ask != null) {
+      asks.size--;
+    }
+    return ask;
+  }
+
+  /**
+   * Remove the oldest outstanding request of a role for a host
+   * @param role role
+   * @param host host
+   * @return the ask removed, or null if there was none
+   */
+  public synchronized Ask removeLocated(int role, String host) {
+    RoleAsks asks = roles.get(role);
+    if (asks == null) {
+      return null;
+    }
+    Ask ask = asks.pollLocated(host);
+    if (ask != null) {
+      asks.size--;
+    }
+    return ask;
+  }
+
+  /**
+   * Cancel outstanding requests of a role: the unlocated ones first,
+   * then the located ones, newest first within each
+   * @param role role
+   * @param count maximum number to cancel
+   * @return the requests cancelled
+   */
+  public synchronized List<AMRMClient.ContainerRequest> cancel(int role,
+                                                               int count) {
+    List<AMRMClient.ContainerRequest> cancelled =
+      new ArrayList<AMRMClient.ContainerRequest>();
+    RoleAsks asks = roles.get(role);
+    if (asks == null) {
+      return cancelled;
+    }
+    while (cancelled.size() < count && !asks.unlocated.isEmpty()) {
+      cancelled.add(asks.unlocated.removeLast().request);
+    }
+    while (cancelled.size() < count && asks.size > cancelled.size()) {
+      Ask ask = asks.pollNewestLocated();
+      if (ask == null) {
+        break;
+      }
+      cancelled.add(ask.request);
+    }
+    asks.size -= cancelled.size();
+    return cancelled;
+  }
+
+  /**
+   * Get the number of outstanding requests of a role
+   * @param role role
+   * @return the count
+   */
+  public synchronized int getOutstanding(int role) {
+    RoleAsks asks = roles.get(role);
+    return asks != null ? asks.size : 0;
+  }
+
+  /**
+   * Get the host a request names
+   * @param request request
+   * @return the first host, or null if the request is unlocated
+   */
+  public static String hostOf(AMRMClient.ContainerRequest request) {
+    List<String> nodes = request.getNodes();
+    return nodes != null && !nodes.isEmpty() ? nodes.get(0) : null;
+  }
+
+  /**
+   * An outstanding request and the time the container was first asked for
+   */
+  public static final class Ask {
+    private final AMRMClient.ContainerRequest request;
+    private final String host;
+    private final long submitted;
+    /**
+     * Set once a located ask is taken from its host queue
+     */
+    private boolean removed;
+
+    private Ask(AMRMClient.ContainerRequest request,
+                String host,
+                long submitted) {
+      this.request = request;
+      this.host = host;
+      this.submitted = submitted;
+    }
+
+    public AMRMClient.ContainerRequest getRequest() {
+      return request;
+    }
+
+    public long getSubmitted() {
+      return submitted;
+    }
+  }
+
+  /**
+   * The outstanding requests of one role
+   */
+  private static final class RoleAsks {
+    private final LinkedList<Ask> unlocated = new LinkedList<Ask>();
+    private final Map<String, LinkedList<Ask>> located =
+      new HashMap<String, LinkedList<Ask>>();
+    /**
+     * Located asks, oldest first, including any already taken from
+     * their host queue
+     */
+    private final LinkedList<Ask> locatedOrder = new LinkedList<Ask>();
+    private int locatedCount;
+    private int size;
+
+    private void addLocated(Ask ask) {
+      LinkedList<Ask> queue = located.get(ask.host);
+      if (queue == null) {
+        queue = new LinkedList<Ask>();
+        located.put(ask.host, queue);
+      }
+      queue.add(ask);
+      locatedOrder.add(ask);
+      locatedCount++;
+    }
+
+    /**
+     * Take the oldest ask for a host
+     */
+    private Ask pollLocated(String host) {
+      LinkedList<Ask> queue = located.get(host);
+      if (queue == null) {
+        return null;
+      }
+      Ask ask = queue.poll();
+      if (queue.isEmpty()) {
+        located.remove(host);
+      }
+      ask.removed = true;
+      locatedCount--;
+      compact();
+      return ask;
+    }
+
+    /**
+     * Take the oldest located ask, whatever its host
+     */
+    private Ask pollOldestLocated() {
+      while (!locatedOrder.isEmpty()) {
+        Ask ask = locatedOrder.removeFirst();
+        if (!ask.removed) {
+          // the oldest ask for its host, so at the head of its queue
+          removeFromHost(ask, located.get(ask.host).removeFirst());
+          return ask;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Take the newest located ask, whatever its host
+     */
+    private Ask pollNewestLocated() {
+      while (!locatedOrder.isEmpty()) {
+        Ask ask = locatedOrder.removeLast();
+        if (!ask.removed) {
+          // the newest ask for its host, so at the tail of its queue
+          removeFromHost(ask, located.get(ask.host).removeLast());
+          return ask;
+        }
+      }
+      return null;
+    }
+
+    private void removeFromHost(Ask ask, Ask taken) {
+      assert ask == taken : "host queue out of order";
+      if (located.get(ask.host).isEmpty()) {
+        located.remove(ask.host);
+      }
+      ask.removed = true;
+      locatedCount--;
+    }
+
+    /**
+     * Drop the asks taken from their host queues from the submission
+     * list once they outnumber those still outstanding
+     */
+    private void compact() {
+      if (locatedOrder.size() <= 2 * locatedCount + 16) {
+        return;
+      }
+      Iterator<Ask> it = locatedOrder.iterator();
+      while (it.hasNext()) {
+        if (it.next().removed) {
+          it.remove();
+        }
+      }
+    }
+  }
+}
@@ -18,9 +18,11 @@
 
 package org.apache.hoya.yarn.appmaster.state;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Information about the state of a role on a specific node instance.
- * No fields are synchronized; sync on the instance to work with it
+ * No fields are synchronized.
  *
  The two fields `releasing` and `requested` are used to track the ongoing
  state of YARN requests; they do not need to be persisted across freeze/thaw
@@ -33,10 +35,27 @@ package org.apache.hoya.yarn.appmaster.state;
  The `active` counter is only decremented after a container release response
  has been received.
  
- Accesses are synchronized.
+ The counters are volatile and updated atomically, without locking:
+ there are many thousands of these in a large cluster's history.
+ Checks which read more than one counter, such as {@link #isAvailable()},
+ are not atomic; the role history serializes the updates
+ which must be seen together.
  */
 public class NodeEntry {
-  
+
+  private static final AtomicIntegerFieldUpdater<NodeEntry> REQUESTED =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "requested");
+  private static final AtomicIntegerFieldUpdater<NodeEntry> STARTING =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "starting");
+  private static final AtomicIntegerFieldUpdater<NodeEntry> START_FAILED =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "startFailed");
+  private static final AtomicIntegerFieldUpdater<NodeEntry> FAILED =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "failed");
+  private static final AtomicIntegerFieldUpdater<NodeEntry> LIVE =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "live");
+  private static final AtomicIntegerFieldUpdater<NodeEntry> RELEASING =
+    AtomicIntegerFieldUpdater.newUpdater(NodeEntry.class, "releasing");
+
   public final int index;
 
   public NodeEntry(int index) {
@@ -48,16 +67,28 @@ public class NodeEntry {
    * comes in that has not been (and when that happens, this count should 
    * not drop)
    */
-  private int requested;
-  private int starting;
-  private int startFailed;
-  private int failed;
+  private volatile int requested;
+  private volatile int starting;
+  private volatile int startFailed;
+  private volatile int failed;
   /**
    * Number of live nodes. 
    */
-  private int live;
-  private int releasing;
-  private long lastUsed;
+  private volatile int live;
+  private volatile int releasing;
+  private volatile long lastUsed;
+
+  /**
+   * Decrement a counter, stopping at zero
+   * @param counter counter to decrement
+   */
+  private void decToFloor(AtomicIntegerFieldUpdater<NodeEntry> counter) {
+    int current;
+    do {
+      current = counter.get(this);
+    } while (!counter.compareAndSet(this, current,
+                                    RoleHistoryUtils.decToFloor(current)));
+  }
   
   /**
    * Is the node available for assignments. This does not track
@@ -65,7 +96,7 @@ public class NodeEntry {
    * @return true if there are no role instances here
    * other than some being released.
    */
-  public synchronized boolean isAvailable() {
+  public boolean isAvailable() {
     return getActive() == 0 && (requested == 0) && starting == 0;
   }
 
@@ -74,7 +105,7 @@ public class NodeEntry {
    * are live and not already being released
    * @return a number, possibly 0
    */
-  public synchronized int getActive() {
+  public int getActive() {
     return (live - releasing);
   }
 
@@ -84,11 +115,11 @@ public class NodeEntry {
    * @param absoluteTime time
    * @return true if the node could be cleaned up
    */
-  public synchronized boolean notUsedSince(long absoluteTime) {
+  public boolean notUsedSince(long absoluteTime) {
     return isAvailable() && lastUsed < absoluteTime;
   }
 
-  public synchronized int getLive() {
+  public int getLive() {
     return live;
   }
 
@@ -100,27 +131,27 @@ public class NodeEntry {
    * Set the live value directly -used on AM restart
    * @param v value
    */
-  public synchronized void setLive(int v) {
+  public void setLive(int v) {
     live = v;
   }
   
   private void incLive() {
-    ++live;
+    LIVE.incrementAndGet(this);
   }
 
-  private synchronized void decLive() {
-    live = RoleHistoryUtils.decToFloor(live);
+  private void decLive() {
+    decToFloor(LIVE);
   }
   
-  public synchronized void onStarting() {
-    ++starting;
+  public void onStarting() {
+    STARTING.incrementAndGet(this);
   }
 
   private void decStarting() {
-    starting = RoleHistoryUtils.decToFloor(starting);
+    decToFloor(STARTING);
   }
 
-  public synchronized void onStartCompleted() {
+  public void onStartCompleted() {
     decStarting();
     incLive();
   }
@@ -129,10 +160,10 @@ public class NodeEntry {
    * start failed -decrement the starting flag.
    * @return true if the node is now available
    */
-  public synchronized boolean onStartFailed() {
+  public boolean onStartFailed() {
     decStarting();
-    ++startFailed;
-    ++failed;
+    START_FAILED.incrementAndGet(this);
+    FAILED.incrementAndGet(this);
     return isAvailable();
   }
   
@@ -140,37 +171,37 @@ public class NodeEntry {
    * no of requests made of this role of this node. If it goes above
    * 1 there's a problem
    */
-  public synchronized  int getRequested() {
+  public int getRequested() {
     return requested;
   }
 
   /**
    * request a node: 
    */
-  public synchronized void request() {
-    ++requested;
+  public void request() {
+    REQUESTED.incrementAndGet(this);
   }
 
   /**
    * A request made explicitly to this node has completed
    */
-  public synchronized void requestCompleted() {
-    requested = RoleHistoryUtils.decToFloor(requested);
+  public void requestCompleted() {
+    decToFloor(REQUESTED);
   }
 
   /**
    * No of instances in release state
    */
-  public synchronized int getReleasing() {
+  public int getReleasing() {
     return releasing;
   }
 
   /**
    * Release an instance -which is no longer marked as active
    */
-  public synchronized void release() {
+  public void release() {
     assert live > 0 : "no live nodes to release";
-    releasing++;
+    RELEASING.incrementAndGet(this);
   }
 
   /**
@@ -180,11 +211,11 @@ public class NodeEntry {
    * @param wasReleased true if this was planned
    * @return true if this node is now available
    */
-  public synchronized boolean containerCompleted(boolean wasReleased) {
+  public boolean containerCompleted(boolean wasReleased) {
     if (wasReleased) {
-      releasing = RoleHistoryUtils.decToFloor(releasing);
+      decToFloor(RELEASING);
     } else {
-      ++failed;
+      FAILED.incrementAndGet(this);
     }
     decLive();
     return isAvailable();
@@ -193,11 +224,11 @@ public class NodeEntry {
   /**
    * Time last used.
    */
-  public synchronized long getLastUsed() {
+  public long getLastUsed() {
     return lastUsed;
   }
 
-  public synchronized void setLastUsed(long lastUsed) {
+  public void setLastUsed(long lastUsed) {
     this.lastUsed = lastUsed;
   }
 
@@ -205,7 +236,7 @@ public class NodeEntry {
     return startFailed;
   }
 
-  public synchronized int getFailed() {
+  public int getFailed() {
     return failed;
   }
 
@@ -19,21 +19,28 @@
 package org.apache.hoya.yarn.appmaster.state;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.List;
-import java.util.ListIterator;
 
 /**
  * A node instance -stores information about a node in the cluster.
  * 
- * Operations on the array/set of roles are synchronized.
+ * The entries are held in an array indexed by role ID. Changes to the
+ * set of entries are synchronized and copy the array; as that only
+ * happens when a role is first seen on a node or an entry is purged,
+ * lookups can read the current array without locking.
  */
 public class NodeInstance {
 
   public final String hostname;
 
-  private final List<NodeEntry> nodeEntries;
+  private static final NodeEntry[] NO_ENTRIES = new NodeEntry[0];
+
+  /**
+   * Entries indexed by role. Never modified once published: changes
+   * replace the array
+   */
+  private volatile NodeEntry[] nodeEntries;
 
   /**
    * Create an instance and the (empty) array of nodes
@@ -41,7 +48,7 @@ public class NodeInstance {
    */
   public NodeInstance(String hostname, int roles) {
     this.hostname = hostname;
-    nodeEntries = new ArrayList<NodeEntry>(roles);
+    nodeEntries = roles > 0 ? new NodeEntry[roles] : NO_ENTRIES;
   }
 
   /**
@@ -50,13 +57,9 @@ public class NodeInstance {
    * @return the entry
    * null if the role is out of range
    */
-  public synchronized NodeEntry get(int role) {
-    for (NodeEntry nodeEntry : nodeEntries) {
-      if (nodeEntry.index == role) {
-        return nodeEntry;
-      }
-    }
-    return null;
+  public NodeEntry get(int role) {
+    NodeEntry[] entries = nodeEntries;
+    return (role >= 0 && role < entries.length) ? entries[role] : null;
   }
   
   /**
@@ -65,13 +68,19 @@ public class NodeInstance {
    * @return the entry
    * @throws ArrayIndexOutOfBoundsException if the role is out of range
    */
-  public synchronized NodeEntry getOrCreate(int role) {
+  public NodeEntry getOrCreate(int role) {
     NodeEntry entry = get(role);
-    if (entry == null) {
-      entry = new NodeEntry(role);
-      nodeEntries.add(entry);
+    if (entry != null) {
+      return entry;
+    }
+    synchronized (this) {
+      entry = get(role);
+      if (entry == null) {
+        entry = new NodeEntry(role);
+        update(role, entry);
+      }
+      return entry;
     }
-    return entry;
   }
 
   /**
@@ -93,14 +102,30 @@ public class NodeInstance {
   public synchronized NodeEntry remove(int role) {
     NodeEntry nodeEntry = get(role);
     if (nodeEntry != null) {
-      nodeEntries.remove(nodeEntry);
+      update(role, null);
     }
     return nodeEntry;
   }
 
   public synchronized void set(int role, NodeEntry nodeEntry) {
-    remove(role);
-    nodeEntries.add(nodeEntry);
+    update(role, nodeEntry);
+  }
+
+  /**
+   * Publish a copy of the entry array with the given slot changed,
+   * growing the array if needed. Caller must hold the lock.
+   * @param role role index
+   * @param nodeEntry new entry or null
+   */
+  private void update(int role, NodeEntry nodeEntry) {
+    if (role < 0) {
+      throw new ArrayIndexOutOfBoundsException(role);
+    }
+    NodeEntry[] entries = nodeEntries;
+    NodeEntry[] updated =
+      Arrays.copyOf(entries, Math.max(entries.length, role + 1));
+    updated[role] = nodeEntry;
+    nodeEntries = updated;
   }
 
   /**
@@ -110,15 +135,25 @@ public class NodeInstance {
    */
   public synchronized boolean purgeUnusedEntries(long absoluteTime) {
     boolean active = false;
-    ListIterator<NodeEntry> entries = nodeEntries.listIterator();
-    while (entries.hasNext()) {
-      NodeEntry entry = entries.next();
+    NodeEntry[] entries = nodeEntries;
+    NodeEntry[] updated = null;
+    for (int i = 0; i < entries.length; i++) {
+      NodeEntry entry = entries[i];
+      if (entry == null) {
+        continue;
+      }
       if (entry.notUsedSince(absoluteTime)) {
-        entries.remove();
+        if (updated == null) {
+          updated = entries.clone();
+        }
+        updated[i] = null;
       } else {
         active = true;
       }
     }
+    if (updated != null) {
+      nodeEntries = updated;
+    }
     return active;
   }
 
@@ -134,10 +169,12 @@ public class NodeInstance {
   public String toFullString() {
     final StringBuilder sb =
       new StringBuilder(toString());
-    int i = 0;
-    for (NodeEntry entry : nodeEntries) {
-      sb.append(String.format("\n  [%02d]  ", i++));
-        sb.append(entry.toString());
+    NodeEntry[] entries = nodeEntries;
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i] != null) {
+        sb.append(String.format("\n  [%02d]  ", i));
+        sb.append(entries[i].toString());
+      }
     }
     return sb.toString();
   }
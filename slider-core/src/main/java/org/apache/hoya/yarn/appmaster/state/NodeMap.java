@@ -26,16 +26,29 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Node map map -and methods to work with it. 
  * Not Synchronized: caller is expected to lock access.
+ * <p>
+ * For each role the map tracks the set of nodes with active instances
+ * of that role, so that listing and selecting nodes for release scales
+ * with the size of the role, not that of the cluster. Nodes are indexed
+ * as they are added to the map; after that the index relies on
+ * {@link #updateActiveNode(NodeInstance, int)} being called whenever
+ * the number of active instances of a role on a node changes.
+ * <p>
+ * The map of nodes is held rather than extended, and the views of it
+ * are read-only, so nodes can only be removed through methods which
+ * keep the index in step.
  */
-public class NodeMap extends HashMap<String, NodeInstance> {
+public class NodeMap {
   protected static final Logger log =
     LoggerFactory.getLogger(NodeMap.class);
 
@@ -44,12 +57,140 @@ public class NodeMap extends HashMap<String, NodeInstance> {
    */
   private final int roleSize;
 
+  /**
+   * The nodes, by hostname
+   */
+  private final Map<String, NodeInstance> instances =
+    new HashMap<String, NodeInstance>();
+
+  /**
+   * For each role, the nodes with active instances of that role
+   */
+  private final Map<Integer, Set<NodeInstance>> activeNodes;
+
   /**
    * Construct
    * @param roleSize number of roles
    */
   public NodeMap(int roleSize) {
     this.roleSize = roleSize;
+    activeNodes = new HashMap<Integer, Set<NodeInstance>>(roleSize);
+  }
+
+  /**
+   * Add a node, replacing any of the same name; the
+   * node is indexed by the roles it is active in.
+   * @param hostname hostname
+   * @param node node
+   * @return any previous node
+   */
+  public NodeInstance put(String hostname, NodeInstance node) {
+    NodeInstance previous = instances.put(hostname, node);
+    if (previous != null && previous != node) {
+      unindex(previous);
+    }
+    for (int role = 0; role < roleSize; role++) {
+      updateActiveNode(node, role);
+    }
+    return previous;
+  }
+
+  /**
+   * Remove a node
+   * @param hostname hostname
+   * @return the node removed, or null if there was none
+   */
+  public NodeInstance remove(String hostname) {
+    NodeInstance node = instances.remove(hostname);
+    if (node != null) {
+      unindex(node);
+    }
+    return node;
+  }
+
+  public void clear() {
+    instances.clear();
+    activeNodes.clear();
+  }
+
+  /**
+   * Get a node
+   * @param hostname hostname
+   * @return the node or null
+   */
+  public NodeInstance get(String hostname) {
+    return instances.get(hostname);
+  }
+
+  public boolean containsKey(String hostname) {
+    return instances.containsKey(hostname);
+  }
+
+  public int size() {
+    return instances.size();
+  }
+
+  public boolean isEmpty() {
+    return instances.isEmpty();
+  }
+
+  /**
+   * Get the nodes
+   * @return a read-only view of the nodes
+   */
+  public Collection<NodeInstance> values() {
+    return Collections.unmodifiableCollection(instances.values());
+  }
+
+  /**
+   * Get the hostnames
+   * @return a read-only view of the hostnames
+   */
+  public Set<String> keySet() {
+    return Collections.unmodifiableSet(instances.keySet());
+  }
+
+  /**
+   * Update the active node set of a role to reflect the current
+   * state of the node. This must be called after every change in the
+   * number of active instances of the role on the node.
+   * @param node node
+   * @param role role index
+   */
+  public void updateActiveNode(NodeInstance node, int role) {
+    if (node.getActiveRoleInstances(role) > 0) {
+      Set<NodeInstance> nodes = activeNodes.get(role);
+      if (nodes == null) {
+        nodes = new HashSet<NodeInstance>();
+        activeNodes.put(role, nodes);
+      }
+      nodes.add(node);
+    } else {
+      Set<NodeInstance> nodes = activeNodes.get(role);
+      if (nodes != null) {
+        nodes.remove(node);
+      }
+    }
+  }
+
+  /**
+   * Get the number of nodes with active instances of a role
+   * @param role role
+   * @return the number of nodes
+   */
+  public int getActiveNodeCount(int role) {
+    Set<NodeInstance> nodes = activeNodes.get(role);
+    return nodes != null ? nodes.size() : 0;
+  }
+
+  /**
+   * Remove a node from all the active node sets
+   * @param node node
+   */
+  private void unindex(NodeInstance node) {
+    for (Set<NodeInstance> nodes : activeNodes.values()) {
+      nodes.remove(node);
+    }
   }
 
   /**
@@ -73,8 +214,12 @@ public class NodeMap extends HashMap<String, NodeInstance> {
    * in that role
    */
   public List<NodeInstance> listActiveNodes(int role) {
-    List<NodeInstance> nodes = new ArrayList<NodeInstance>();
-    for (NodeInstance instance : values()) {
+    Set<NodeInstance> active = activeNodes.get(role);
+    if (active == null) {
+      return new ArrayList<NodeInstance>();
+    }
+    List<NodeInstance> nodes = new ArrayList<NodeInstance>(active.size());
+    for (NodeInstance instance : active) {
       if (instance.getActiveRoleInstances(role) > 0) {
         nodes.add(instance);
       }
@@ -91,12 +236,13 @@ public class NodeMap extends HashMap<String, NodeInstance> {
   public int purgeUnusedEntries(long absoluteTime) {
     int purged = 0;
     Iterator<Map.Entry<String, NodeInstance>> iterator =
-      entrySet().iterator();
+      instances.entrySet().iterator();
     while (iterator.hasNext()) {
       Map.Entry<String, NodeInstance> entry = iterator.next();
       NodeInstance ni = entry.getValue();
       if (!ni.purgeUnusedEntries(absoluteTime)) {
         iterator.remove();
+        unindex(ni);
         purged ++;
       }
     }
@@ -158,12 +304,19 @@ public class NodeMap extends HashMap<String, NodeInstance> {
 
 
   /**
-   * Clone point
-   * @return
+   * Clone point. The clone shares the node instances, but
+   * has its own map and active node sets.
+   * @return a clone of the map
    */
   @Override
-  public Object clone() {
-    return super.clone();
+  public NodeMap clone() {
+    NodeMap clone = new NodeMap(roleSize);
+    clone.instances.putAll(instances);
+    for (Map.Entry<Integer, Set<NodeInstance>> entry : activeNodes.entrySet()) {
+      clone.activeNodes.put(entry.getKey(),
+                            new HashSet<NodeInstance>(entry.getValue()));
+    }
+    return clone;
   }
 
   /**
@@ -177,6 +177,26 @@ public class OutstandingRequestTracker {
     return hosts;
   }
   
+  /**
+   * Remove the requests of a role made before a given time
+   * @param role role
+   * @param requestedBefore time
+   * @return the requests removed; they have not been marked as completed
+   */
+  public synchronized List<OutstandingRequest> removeRequestsOlderThan(
+      int role, long requestedBefore) {
+    List<OutstandingRequest> expired = new ArrayList<OutstandingRequest>();
+    Iterator<OutstandingRequest> iterator = requests.keySet().iterator();
+    while (iterator.hasNext()) {
+      OutstandingRequest request = iterator.next();
+      if (request.roleId == role && request.requestedTime < requestedBefore) {
+        iterator.remove();
+        expired.add(request);
+      }
+    }
+    return expired;
+  }
+
   public synchronized List<OutstandingRequest> listOutstandingRequests() {
     return new ArrayList<OutstandingRequest>(requests.values());
   }
@@ -30,6 +30,8 @@ public abstract class RMOperationHandler {
 
   public abstract void addContainerRequest(AMRMClient.ContainerRequest req);
 
+  public abstract void removeContainerRequest(AMRMClient.ContainerRequest req);
+
 
   /**
    * Execute an entire list of operations
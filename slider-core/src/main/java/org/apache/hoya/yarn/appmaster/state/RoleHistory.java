@@ -24,7 +24,9 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.yarn.api.records.Container;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.client.api.AMRMClient;
+import org.apache.hoya.api.OptionKeys;
 import org.apache.hoya.avro.RoleHistoryHeader;
+import org.apache.hoya.avro.RoleHistoryJournal;
 import org.apache.hoya.avro.RoleHistoryWriter;
 import org.apache.hoya.exceptions.BadConfigException;
 import org.apache.hoya.exceptions.HoyaIOException;
@@ -36,7 +38,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -80,14 +81,27 @@ public class RoleHistory {
   private Path historyPath;
   private RoleHistoryWriter historyWriter = new RoleHistoryWriter();
 
+  /**
+   * Journal of the changes since the last snapshot; null if there is
+   * no journal open
+   */
+  private RoleHistoryJournal journal;
+
+  /**
+   * Number of changes to journal before saving a new snapshot;
+   * 0 disables the journal
+   */
+  private int journalCompactionThreshold =
+    OptionKeys.DEFAULT_HISTORY_JOURNAL_COMPACTION;
+
   private OutstandingRequestTracker outstandingRequests =
     new OutstandingRequestTracker();
 
   /**
-   * For each role, lists nodes that are available for data-local allocation,
-   ordered by more recently released - To accelerate node selection
+   * For each role, indexes nodes that are available for data-local allocation,
+   * ordered by more recently released - To accelerate node selection
    */
-  private Map<Integer, LinkedList<NodeInstance>> availableNodes;
+  private Map<Integer, AvailableNodeIndex> availableNodes;
 
   public RoleHistory(List<ProviderRole> providerRoles) throws
                                                        BadConfigException {
@@ -105,9 +119,8 @@ public class RoleHistory {
    */
   protected synchronized void reset() throws BadConfigException {
 
+    closeJournal();
     nodemap = new NodeMap(roleSize);
-    resetAvailableNodeLists();
-
     resetAvailableNodeLists();
     outstandingRequests = new OutstandingRequestTracker();
     Map<Integer, RoleStatus> roleStats = new HashMap<Integer, RoleStatus>();
@@ -156,7 +169,7 @@ public class RoleHistory {
    * Clear the lists of available nodes
    */
   private synchronized void resetAvailableNodeLists() {
-    availableNodes = new HashMap<Integer, LinkedList<NodeInstance>>(roleSize);
+    availableNodes = new HashMap<Integer, AvailableNodeIndex>(roleSize);
   }
 
   /**
@@ -230,7 +243,7 @@ public class RoleHistory {
    * @return the map
    */
   public synchronized NodeMap cloneNodemap() {
-    return (NodeMap) nodemap.clone();
+    return nodemap.clone();
   }
 
   /**
@@ -285,6 +298,31 @@ public class RoleHistory {
     }
   }
 
+  /**
+   * Mark ourselves as dirty after a change to the node entry of a container.
+   * The change is appended to the journal if one is open and not full;
+   * otherwise a new snapshot is saved, which starts a new journal.
+   * @param container container whose node entry has changed
+   */
+  protected synchronized void touch(Container container) {
+    setDirty(true);
+    if (journal != null &&
+        journal.getRecordCount() < journalCompactionThreshold) {
+      try {
+        NodeInstance node = getOrCreateNodeInstance(container);
+        int roleId = ContainerPriority.extractRole(container);
+        journal.append(node.hostname, roleId, node.getOrCreate(roleId), now());
+        journal.flush();
+        setDirty(false);
+        return;
+      } catch (IOException e) {
+        log.warn("Failed to write to {}; saving a snapshot instead", journal, e);
+        closeJournal();
+      }
+    }
+    touch();
+  }
+
   /**
    * purge the history of
    * all nodes that have been inactive since the absolute time
@@ -292,6 +330,9 @@ public class RoleHistory {
    */
   public synchronized void purgeUnusedEntries(long absoluteTime) {
     nodemap.purgeUnusedEntries(absoluteTime);
+    // the journal cannot record removals, so the next change must
+    // be saved as a new snapshot
+    closeJournal();
   }
 
   /**
@@ -302,6 +343,18 @@ public class RoleHistory {
     return historyPath;
   }
 
+  /**
+   * Set the writer used to save and load the history
+   * @param historyWriter the new writer
+   */
+  public synchronized void setHistoryWriter(RoleHistoryWriter historyWriter) {
+    this.historyWriter = historyWriter;
+  }
+
+  public synchronized RoleHistoryWriter getHistoryWriter() {
+    return historyWriter;
+  }
+
   /**
    * Save the history to its location using the timestamp as part of
    * the filename. The saveTime and dirty fields are updated
@@ -314,9 +367,64 @@ public class RoleHistory {
     Path filename = historyWriter.createHistoryFilename(historyPath, time);
     historyWriter.write(filesystem, filename, true, this, time);
     saved(time);
+    startJournal(filename, time);
     return filename;
   }
 
+  /**
+   * Close any open journal and, if journalling is enabled, start a
+   * new one to follow the given snapshot. A failure to create the journal
+   * is logged; subsequent changes will be saved as snapshots.
+   * @param snapshot path of the snapshot
+   * @param time save time of the snapshot
+   */
+  private void startJournal(Path snapshot, long time) {
+    closeJournal();
+    if (journalCompactionThreshold > 0) {
+      try {
+        journal = historyWriter.createJournal(filesystem, snapshot, time,
+                                              roleSize);
+      } catch (IOException e) {
+        log.warn("Failed to create journal for {}", snapshot, e);
+      }
+    }
+  }
+
+  /**
+   * Close the journal if one is open. The next change will
+   * be saved as a new snapshot.
+   */
+  public synchronized void closeJournal() {
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        log.warn("Failed to close {}", journal, e);
+      }
+      journal = null;
+    }
+  }
+
+  /**
+   * Get the journal
+   * @return the current journal or null
+   */
+  @VisibleForTesting
+  public synchronized RoleHistoryJournal getJournal() {
+    return journal;
+  }
+
+  /**
+   * Set the number of changes to journal before saving a new snapshot
+   * @param threshold the new threshold; 0 disables the journal
+   */
+  public synchronized void setJournalCompactionThreshold(int threshold) {
+    journalCompactionThreshold = threshold;
+    if (threshold <= 0) {
+      closeJournal();
+    }
+  }
+
   /**
    * Save the history with the current timestamp if it is dirty;
    * return the path saved to if this is the case
@@ -400,9 +508,7 @@ public class RoleHistory {
   public synchronized void buildAvailableNodeLists() {
     resetAvailableNodeLists();
     // build the list of available nodes
-    for (Map.Entry<String, NodeInstance> entry : nodemap
-      .entrySet()) {
-      NodeInstance ni = entry.getValue();
+    for (NodeInstance ni : nodemap.values()) {
       for (int i = 0; i < roleSize; i++) {
         NodeEntry nodeEntry = ni.get(i);
         if (nodeEntry != null && nodeEntry.isAvailable()) {
@@ -410,46 +516,30 @@ public class RoleHistory {
         }
       }
     }
-    // sort the resulting arrays
-    for (int i = 0; i < roleSize; i++) {
-      sortAvailableNodeList(i);
-    }
   }
 
   /**
    * Get the nodes for an ID -may be null
    * @param id role ID
-   * @return list
+   * @return index
    */
-  private LinkedList<NodeInstance> getNodesForRoleId(int id) {
+  private AvailableNodeIndex getNodesForRoleId(int id) {
     return availableNodes.get(id);
   }
   
   /**
-   * Get the nodes for an ID -may be null
+   * Get the nodes for an ID, creating the index if needed
    * @param id role ID
-   * @return list
+   * @return index
    */
-  private LinkedList<NodeInstance> getOrCreateNodesForRoleId(int id) {
-    LinkedList<NodeInstance> instances = availableNodes.get(id);
+  private AvailableNodeIndex getOrCreateNodesForRoleId(int id) {
+    AvailableNodeIndex instances = availableNodes.get(id);
     if (instances==null) {
-      instances = new LinkedList<NodeInstance>();
+      instances = new AvailableNodeIndex(id);
       availableNodes.put(id, instances);
     }
     return instances;
   }
-  
-  
-  /**
-   * Sort an available node list
-   * @param role role to sort
-   */
-  private void sortAvailableNodeList(int role) {
-    List<NodeInstance> nodesForRoleId = getNodesForRoleId(role);
-    if (nodesForRoleId != null) {
-      Collections.sort(nodesForRoleId, new NodeInstance.newerThan(role));
-    }
-  }
 
   public synchronized void onAMRestart() {
     //TODO once AM restart is implemented and we know what to expect
@@ -468,9 +558,10 @@ public class RoleHistory {
     int roleKey = role.getKey();
     NodeInstance nodeInstance = null;
     
-    List<NodeInstance> targets = getNodesForRoleId(roleKey);
+    AvailableNodeIndex targets = getNodesForRoleId(roleKey);
     while (targets != null && !targets.isEmpty() && nodeInstance == null) {
-      NodeInstance head = targets.remove(0);
+      // nodes may have gone active since they were indexed; skip them
+      NodeInstance head = targets.poll();
       if (head.getActiveRoleInstances(roleKey) == 0) {
         nodeInstance = head;
       }
@@ -592,13 +683,58 @@ public class RoleHistory {
         hosts = outstandingRequests.cancelOutstandingRequests(role);
       if (!hosts.isEmpty()) {
         //add the list
-        getOrCreateNodesForRoleId(role).addAll(hosts);
-        sortAvailableNodeList(role);
+        AvailableNodeIndex index = getOrCreateNodesForRoleId(role);
+        for (NodeInstance host : hosts) {
+          index.add(host);
+        }
       }
     }
     return requestFound;
   }
 
+  /**
+   * An outstanding request has been cancelled: if it was for a specific
+   * node, that node is no longer in play and is available again
+   * @param role role index
+   * @param hostname host of the request, or null if it was unlocated
+   * @return true if an outstanding request was found and dropped
+   */
+  public synchronized boolean onRequestCancelled(int role, String hostname) {
+    if (hostname == null) {
+      return false;
+    }
+    OutstandingRequest request =
+      outstandingRequests.remove(new OutstandingRequest(role, hostname));
+    if (request == null) {
+      return false;
+    }
+    request.completed();
+    getOrCreateNodesForRoleId(role).add(request.node);
+    return true;
+  }
+
+  /**
+   * Give up on the placed requests of a role which have been outstanding
+   * since before a given time: the nodes are made available again,
+   * so that later requests may try them
+   * @param role role index
+   * @param requestedBefore time
+   * @return the requests given up on
+   */
+  public synchronized List<OutstandingRequest> escalateOutstandingRequests(
+      int role, long requestedBefore) {
+    List<OutstandingRequest> expired =
+      outstandingRequests.removeRequestsOlderThan(role, requestedBefore);
+    if (!expired.isEmpty()) {
+      AvailableNodeIndex index = getOrCreateNodesForRoleId(role);
+      for (OutstandingRequest request : expired) {
+        request.completed();
+        index.add(request.node);
+      }
+    }
+    return expired;
+  }
+
   /**
    * A container has been assigned to a role instance on a node -update the data structures
    * @param container container
@@ -627,7 +763,16 @@ public class RoleHistory {
   public void onContainerStarted(Container container) {
     NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     nodeEntry.onStartCompleted();
-    touch();
+    synchronized (this) {
+      int role = ContainerPriority.extractRole(container);
+      NodeInstance node = getOrCreateNodeInstance(container);
+      AvailableNodeIndex index = getNodesForRoleId(role);
+      if (index != null) {
+        index.remove(node);
+      }
+      nodemap.updateActiveNode(node, role);
+    }
+    touch(container);
   }
 
   /**
@@ -647,6 +792,7 @@ public class RoleHistory {
   public void onContainerReleaseSubmitted(Container container) {
     NodeEntry nodeEntry = getOrCreateNodeEntry(container);
     nodeEntry.release();
+    updateActiveNode(container);
   }
 
   /**
@@ -692,10 +838,21 @@ public class RoleHistory {
       available = nodeEntry.containerCompleted(wasReleased);
       maybeQueueNodeForWork(container, nodeEntry, available);
     }
-    touch();
+    updateActiveNode(container);
+    touch(container);
     return available;
   }
 
+  /**
+   * Update the active node set of the container's role after a change
+   * in the number of active instances on its node
+   * @param container container
+   */
+  private synchronized void updateActiveNode(Container container) {
+    nodemap.updateActiveNode(getOrCreateNodeInstance(container),
+                             ContainerPriority.extractRole(container));
+  }
+
   /**
    * If the node is marked as available; queue it for assignments.
    * Unsynced: expects caller to be in a sync block.
@@ -713,7 +870,7 @@ public class RoleHistory {
       NodeInstance ni = getOrCreateNodeInstance(container);
       int roleId = ContainerPriority.extractRole(container);
       log.debug("Node {} is now available for role id {}", ni, roleId);
-      getOrCreateNodesForRoleId(roleId).addFirst(ni);
+      getOrCreateNodesForRoleId(roleId).add(ni);
     }
     return available;
   }
@@ -725,7 +882,7 @@ public class RoleHistory {
     for (ProviderRole role : providerRoles) {
       log.info(role.toString());
       List<NodeInstance> instances =
-        getOrCreateNodesForRoleId(role.id);
+        getOrCreateNodesForRoleId(role.id).toList();
       log.info("  available: " + instances.size()
                + " " + HoyaUtils.joinWithInnerSeparator(", ", instances));
     }
@@ -742,8 +899,9 @@ public class RoleHistory {
    * @return a clone of the list
    */
   @VisibleForTesting
-  public List<NodeInstance> cloneAvailableList(int role) {
-    return new LinkedList<NodeInstance>(getOrCreateNodesForRoleId(role));
+  public synchronized List<NodeInstance> cloneAvailableList(int role) {
+    return new LinkedList<NodeInstance>(
+      getOrCreateNodesForRoleId(role).toList());
   }
 
   /**
@@ -21,14 +21,19 @@ package org.apache.hoya.yarn.appmaster.state;
 import org.apache.hoya.api.StatusKeys;
 import org.apache.hoya.providers.PlacementPolicy;
 import org.apache.hoya.providers.ProviderRole;
+import org.apache.hoya.tools.DurationHistogram;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
  * Models the ongoing status of all nodes in  
- * Nothing here is synchronized: grab the whole instance to update.
+ * The counters are atomic, so they can be read without locking.
+ * The four which make up the delta -desired, actual, requested and
+ * releasing- are only changed while holding the monitor of this
+ * object, so {@link #getDelta()} sees them consistently.
  */
 public final class RoleStatus implements Cloneable {
 
@@ -44,10 +49,28 @@ public final class RoleStatus implements Cloneable {
 
   private final ProviderRole providerRole;
 
-  private int desired, actual, requested, releasing;
-  private int failed, started, startFailed, completed, totalRequested;
+  private AtomicInteger desired = new AtomicInteger();
+  private AtomicInteger actual = new AtomicInteger();
+  private AtomicInteger requested = new AtomicInteger();
+  private AtomicInteger releasing = new AtomicInteger();
+  private AtomicInteger failed = new AtomicInteger();
+  private AtomicInteger started = new AtomicInteger();
+  private AtomicInteger startFailed = new AtomicInteger();
+  private AtomicInteger completed = new AtomicInteger();
+  private AtomicInteger totalRequested = new AtomicInteger();
+  private AtomicInteger healthy = new AtomicInteger();
+  private AtomicInteger unhealthy = new AtomicInteger();
+  private AtomicInteger totalAllocated = new AtomicInteger();
+  private AtomicInteger requestsCancelled = new AtomicInteger();
+  private AtomicInteger placementEscalations = new AtomicInteger();
 
-  private String failureMessage = "";
+  /**
+   * Time from first asking for a container to its allocation;
+   * shared with clones
+   */
+  private final DurationHistogram allocationLatency = new DurationHistogram();
+
+  private volatile String failureMessage = "";
 
   public RoleStatus(ProviderRole providerRole) {
     this.providerRole = providerRole;
@@ -55,6 +78,21 @@ public final class RoleStatus implements Cloneable {
     this.key = providerRole.id;
   }
 
+  /**
+   * Decrement a counter, stopping at zero
+   * @param counter counter
+   * @return the new value
+   */
+  private static int decToFloor(AtomicInteger counter) {
+    int current;
+    int next;
+    do {
+      current = counter.get();
+      next = Math.max(current - 1, 0);
+    } while (!counter.compareAndSet(current, next));
+    return next;
+  }
+
   public String getName() {
     return name;
   }
@@ -85,61 +123,99 @@ public final class RoleStatus implements Cloneable {
   }
 
   public int getDesired() {
-    return desired;
+    return desired.get();
   }
 
-  public void setDesired(int desired) {
-    this.desired = desired;
+  public synchronized void setDesired(int desired) {
+    this.desired.set(desired);
   }
 
   public int getActual() {
-    return actual;
+    return actual.get();
   }
 
-  public int incActual() {
-    return ++actual;
+  public synchronized int incActual() {
+    return actual.incrementAndGet();
   }
 
-  public int decActual() {
-    if (0 > --actual) {
-      actual = 0;
-    }
-    return actual;
+  public synchronized int decActual() {
+    return decToFloor(actual);
   }
 
-  public synchronized int getRequested() {
-    return requested;
+  public int getRequested() {
+    return requested.get();
   }
 
   public synchronized int incRequested() {
-    totalRequested++;
-    return ++requested;
+    totalRequested.incrementAndGet();
+    return requested.incrementAndGet();
   }
 
   public synchronized int decRequested() {
-    if (0 > --requested) {
-      requested = 0;
-    }
-    return requested;
+    return decToFloor(requested);
+  }
+
+  /**
+   * Note that a container has been allocated, whether or not it is kept
+   */
+  public void incAllocated() {
+    totalAllocated.incrementAndGet();
+  }
+
+  public int getTotalAllocated() {
+    return totalAllocated.get();
+  }
+
+  /**
+   * Note that an outstanding request has been cancelled
+   * @return the remaining number of outstanding requests
+   */
+  public synchronized int cancelRequested() {
+    requestsCancelled.incrementAndGet();
+    return decRequested();
+  }
+
+  public int getRequestsCancelled() {
+    return requestsCancelled.get();
+  }
+
+  /**
+   * Note that a placed request has been reissued without a location
+   */
+  public void incPlacementEscalations() {
+    placementEscalations.incrementAndGet();
+  }
+
+  public int getPlacementEscalations() {
+    return placementEscalations.get();
+  }
+
+  /**
+   * Record the time taken for a container to be allocated
+   * @param millis time from the request being made
+   */
+  public void noteAllocationLatency(long millis) {
+    allocationLatency.add(millis);
+  }
+
+  public DurationHistogram getAllocationLatency() {
+    return allocationLatency;
   }
 
   public int getReleasing() {
-    return releasing;
+    return releasing.get();
   }
 
-  public int incReleasing() {
-    return ++releasing;
+  public synchronized int incReleasing() {
+    return releasing.incrementAndGet();
   }
 
-  public int decReleasing() {
-    if (0 > --releasing) {
-      releasing = 0;
-    }
-    return releasing;
+  public synchronized int decReleasing() {
+    return decToFloor(releasing);
   }
 
   public int getFailed() {
-    return failed;
+    return failed.get();
   }
 
   /**
@@ -149,18 +225,18 @@ public final class RoleStatus implements Cloneable {
    * @param text text about the failure
    */
   public void noteFailed(String text) {
-    failed++;
+    failed.incrementAndGet();
     if (text != null) {
       failureMessage = text;
     }
   }
 
   public int getStartFailed() {
-    return startFailed;
+    return startFailed.get();
   }
 
   public void incStartFailed() {
-    startFailed++;
+    startFailed.incrementAndGet();
   }
 
   public String getFailureMessage() {
@@ -168,42 +244,84 @@ public final class RoleStatus implements Cloneable {
   }
 
   public int getCompleted() {
-    return completed;
+    return completed.get();
   }
 
   public void setCompleted(int completed) {
-    this.completed = completed;
+    this.completed.set(completed);
   }
 
   public void incCompleted() {
-    completed ++;
+    completed.incrementAndGet();
   }
   public int getStarted() {
-    return started;
+    return started.get();
   }
 
   public void incStarted() {
-    started++;
+    started.incrementAndGet();
+  }
+
+  public int getHealthy() {
+    return healthy.get();
+  }
+
+  public int getUnhealthy() {
+    return unhealthy.get();
+  }
+
+  /**
+   * Note a change in the health of an instance of this role. The
+   * counters are updated incrementally as reports come in, so reading
+   * them never needs the instances to be walked.
+   * @param previous previous health
+   * @param current current health
+   */
+  public void healthChanged(ComponentHealth previous, ComponentHealth current) {
+    if (previous == current) {
+      return;
+    }
+    AtomicInteger from = healthCounter(previous);
+    if (from != null) {
+      decToFloor(from);
+    }
+    AtomicInteger to = healthCounter(current);
+    if (to != null) {
+      to.incrementAndGet();
+    }
+  }
+
+  private AtomicInteger healthCounter(ComponentHealth health) {
+    switch (health) {
+      case HEALTHY:
+        return healthy;
+      case UNHEALTHY:
+        return unhealthy;
+      default:
+        return null;
+    }
   }
 
   public int getTotalRequested() {
-    return totalRequested;
+    return totalRequested.get();
   }
 
   /**
    * Get the number of roles we are short of.
    * nodes released are ignored.
+   * The counters are read under the monitor their mutators hold,
+   * so the delta is one which actually existed.
    * @return the positive or negative number of roles to add/release.
    * 0 means "do nothing".
    */
   public synchronized int getDelta() {
-    int inuse = actual + requested;
+    int inuse = getActual() + getRequested();
     //don't know how to view these. Are they in-use or not?
     //inuse += releasing;
-    int delta = desired - inuse;
+    int delta = getDesired() - inuse;
     if (delta < 0) {
       //if we are releasing, remove the number that are already released.
-      delta += releasing;
+      delta += getReleasing();
       //but never switch to a positive
       delta = Math.min(delta, 0);
     }
@@ -218,19 +336,43 @@ public final class RoleStatus implements Cloneable {
            ", desired=" + desired +
            ", actual=" + actual +
            ", requested=" + requested +
+           ", cancelled=" + requestsCancelled +
+           ", escalated=" + placementEscalations +
            ", releasing=" + releasing +
            ", failed=" + failed +
            ", started=" + started +
            ", startFailed=" + startFailed +
            ", completed=" + completed +
+           ", healthy=" + healthy +
+           ", unhealthy=" + unhealthy +
            ", failureMessage='" + failureMessage + '\'' +
            
            '}';
   }
 
+  /**
+   * Clone: the clone has its own counters, with the current values
+   * @return a clone
+   * @throws CloneNotSupportedException
+   */
   @Override
   public Object clone() throws CloneNotSupportedException {
-    return super.clone();
+    RoleStatus clone = (RoleStatus) super.clone();
+    clone.desired = new AtomicInteger(getDesired());
+    clone.actual = new AtomicInteger(getActual());
+    clone.requested = new AtomicInteger(getRequested());
+    clone.releasing = new AtomicInteger(getReleasing());
+    clone.failed = new AtomicInteger(getFailed());
+    clone.started = new AtomicInteger(getStarted());
+    clone.startFailed = new AtomicInteger(getStartFailed());
+    clone.completed = new AtomicInteger(getCompleted());
+    clone.totalRequested = new AtomicInteger(getTotalRequested());
+    clone.healthy = new AtomicInteger(getHealthy());
+    clone.unhealthy = new AtomicInteger(getUnhealthy());
+    clone.totalAllocated = new AtomicInteger(getTotalAllocated());
+    clone.requestsCancelled = new AtomicInteger(getRequestsCancelled());
+    clone.placementEscalations = new AtomicInteger(getPlacementEscalations());
+    return clone;
   }
 
   /**
@@ -255,6 +397,17 @@ public final class RoleStatus implements Cloneable {
     stats.put(StatusKeys.STATISTICS_CONTAINERS_REQUESTED, getTotalRequested());
     stats.put(StatusKeys.STATISTICS_CONTAINERS_STARTED, getStarted());
     stats.put(StatusKeys.STATISTICS_CONTAINERS_START_FAILED, getStartFailed());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_HEALTHY, getHealthy());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_UNHEALTHY, getUnhealthy());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_ALLOCATED, getTotalAllocated());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_REQUESTS_CANCELLED,
+              getRequestsCancelled());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_PLACEMENT_ESCALATED,
+              getPlacementEscalations());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_ALLOCATION_LATENCY + ".mean",
+              (int) allocationLatency.getMean());
+    stats.put(StatusKeys.STATISTICS_CONTAINERS_ALLOCATION_LATENCY + ".p99",
+              (int) allocationLatency.getPercentile(99));
     return stats;
   }
 }
@@ -79,6 +79,16 @@ public interface StateAccessForProviders {
 
   AggregateConf getInstanceDefinitionSnapshot();
 
+  /**
+   * Get the version of the instance definition. This is incremented
+   * every time the definition is updated, so can be used to
+   * check the validity of anything derived from it. It is only
+   * incremented once the snapshots and cluster status are updated, so
+   * anything read after the version is at least as new as it.
+   * @return the current version
+   */
+  long getInstanceDefinitionVersion();
+
   /**
    * Look up a role from its key -or fail 
    *
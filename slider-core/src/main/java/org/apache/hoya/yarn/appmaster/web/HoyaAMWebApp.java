@@ -17,6 +17,7 @@
 package org.apache.hoya.yarn.appmaster.web;
 
 import com.sun.jersey.api.container.filter.GZIPContentEncodingFilter;
+import com.sun.jersey.api.container.filter.LoggingFilter;
 import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.core.util.FeaturesAndProperties;
 import com.sun.jersey.guice.spi.container.servlet.GuiceContainer;
@@ -75,10 +76,15 @@ public class HoyaAMWebApp extends WebApp {
     params.put(ResourceConfig.FEATURE_IMPLICIT_VIEWABLES, "true");
     params.put(ServletContainer.FEATURE_FILTER_FORWARD_ON_404, "true");
     params.put(FeaturesAndProperties.FEATURE_XMLROOTELEMENT_PROCESSING, "true");
-    params.put(ResourceConfig.PROPERTY_CONTAINER_REQUEST_FILTERS, GZIPContentEncodingFilter.class.getName());
-    params.put(ResourceConfig.PROPERTY_CONTAINER_RESPONSE_FILTERS, GZIPContentEncodingFilter.class.getName());
-    params.put("com.sun.jersey.spi.container.ContainerRequestFilters", "com.sun.jersey.api.container.filter.LoggingFilter");
-    params.put("com.sun.jersey.spi.container.ContainerResponseFilters", "com.sun.jersey.api.container.filter.LoggingFilter");
+    // both filter lists go in the one property each; setting the property
+    // a second time would drop gzip content encoding. Requests are
+    // decompressed before being logged, responses logged before compression
+    params.put(ResourceConfig.PROPERTY_CONTAINER_REQUEST_FILTERS,
+               GZIPContentEncodingFilter.class.getName() + ";" +
+               LoggingFilter.class.getName());
+    params.put(ResourceConfig.PROPERTY_CONTAINER_RESPONSE_FILTERS,
+               LoggingFilter.class.getName() + ";" +
+               GZIPContentEncodingFilter.class.getName());
     params.put("com.sun.jersey.config.feature.Trace", "true");
     filter("/*").through(GuiceContainer.class, params);
   }
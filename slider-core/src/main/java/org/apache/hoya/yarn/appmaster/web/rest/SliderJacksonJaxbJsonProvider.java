@@ -21,14 +21,9 @@ package org.apache.hoya.yarn.appmaster.web.rest;
 import com.google.inject.Singleton;
 import org.apache.hadoop.classification.InterfaceAudience.Private;
 import org.apache.hadoop.classification.InterfaceStability.Unstable;
+import org.apache.hoya.core.persist.JsonMappers;
 import org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider;
-import org.codehaus.jackson.map.AnnotationIntrospector;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.annotate.JsonSerialize.Inclusion;
-import org.codehaus.jackson.map.introspect.JacksonAnnotationIntrospector;
-import org.codehaus.jackson.xc.JaxbAnnotationIntrospector;
 
-import javax.ws.rs.core.MediaType;
 import javax.ws.rs.ext.Provider;
 
 /**
@@ -42,19 +37,13 @@ import javax.ws.rs.ext.Provider;
 @Private
 public class SliderJacksonJaxbJsonProvider extends JacksonJaxbJsonProvider {
 
+  /**
+   * The default mapper is the shared one configured for JAXB and Jackson
+   * annotations; looking up a mapper never reconfigures it. A mapper
+   * from a <code>ContextResolver</code> still takes precedence.
+   */
   public SliderJacksonJaxbJsonProvider() {
     super();
+    setMapper(JsonMappers.getJaxbMapper());
   }
-
-  @Override
-  public ObjectMapper locateMapper(Class<?> type, MediaType mediaType) {
-    ObjectMapper mapper = super.locateMapper(type, mediaType);
-    AnnotationIntrospector introspector = new AnnotationIntrospector.Pair(
-        new JaxbAnnotationIntrospector(),
-        new JacksonAnnotationIntrospector()
-    );
-    mapper.setAnnotationIntrospector(introspector);
-    //mapper.setSerializationInclusion(Inclusion.NON_NULL);
-    return mapper;
-  }
-}
\ No newline at end of file
+}
@@ -18,8 +18,12 @@ package org.apache.hoya.yarn.appmaster.web.rest.agent;
 
 import org.apache.hoya.yarn.appmaster.web.WebAppApi;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.Register;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegisterBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationStatus;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
@@ -27,11 +31,14 @@ import org.codehaus.jackson.map.annotate.JsonSerialize;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -54,6 +61,19 @@ public class AgentResource {
     res.setContentType(null);
   }
 
+  /**
+   * Build the exception to reject a malformed request with
+   * @param message reason
+   * @return an exception whose response is a 400
+   */
+  private static WebApplicationException badRequest(String message) {
+    return new WebApplicationException(
+        Response.status(Response.Status.BAD_REQUEST)
+                .entity(message)
+                .type(MediaType.TEXT_PLAIN)
+                .build());
+  }
+
   @GET
   @Path("/agents/register")
   public Response endpointAgentRegister() {
@@ -99,4 +119,66 @@ public class AgentResource {
     AgentRestOperations ops = slider.getAgentRestOperations();
     return ops.handleHeartBeat(message);
   }
+
+  /**
+   * Register several component instances hosted by one agent
+   */
+  @POST
+  @Path("/{agent_name: [a-zA-Z][a-zA-Z_0-9]*}/register/batch")
+  @Consumes({MediaType.APPLICATION_JSON})
+  @Produces({MediaType.APPLICATION_JSON})
+  public RegistrationBatchResponse registerBatch(RegisterBatch registrations,
+                                                 @Context HttpServletResponse res,
+                                                 @PathParam("agent_name") String agent_name) {
+    init(res);
+    if (registrations == null || registrations.getRegistrations() == null) {
+      throw badRequest("No registrations in batch");
+    }
+    AgentRestOperations ops = slider.getAgentRestOperations();
+    try {
+      return ops.handleRegistrationBatch(registrations);
+    } catch (IllegalArgumentException e) {
+      throw badRequest(e.getMessage());
+    }
+  }
+
+  /**
+   * Heartbeat for several component instances hosted by one agent
+   */
+  @POST
+  @Path("/{agent_name: [a-zA-Z][a-zA-Z_0-9]*}/heartbeat/batch")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces({MediaType.APPLICATION_JSON})
+  public HeartBeatBatchResponse heartbeatBatch(HeartBeatBatch message,
+                                               @Context HttpServletResponse res,
+                                               @PathParam("agent_name") String agent_name) {
+    init(res);
+    if (message == null || message.getHeartBeats() == null) {
+      throw badRequest("No heartbeats in batch");
+    }
+    AgentRestOperations ops = slider.getAgentRestOperations();
+    try {
+      return ops.handleHeartBeatBatch(message);
+    } catch (IllegalArgumentException e) {
+      throw badRequest(e.getMessage());
+    }
+  }
+
+  /**
+   * Long-poll heartbeat: the response is held until there is a command
+   * for the agent or the timeout passes, so commands are delivered as
+   * soon as they are issued rather than on the next heartbeat
+   */
+  @POST
+  @Path("/{agent_name: [a-zA-Z][a-zA-Z_0-9]*}/heartbeat/poll")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces({MediaType.APPLICATION_JSON})
+  public HeartBeatResponse heartbeatLongPoll(HeartBeat message,
+                                             @Context HttpServletResponse res,
+                                             @PathParam("agent_name") String agent_name,
+                                             @QueryParam("timeout") @DefaultValue("0") long timeout) {
+    init(res);
+    AgentRestOperations ops = slider.getAgentRestOperations();
+    return ops.handleHeartBeat(message, timeout);
+  }
 }
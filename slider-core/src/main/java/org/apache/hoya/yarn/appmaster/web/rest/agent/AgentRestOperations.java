@@ -25,4 +25,32 @@ public interface AgentRestOperations {
   RegistrationResponse handleRegistration(Register registration);
 
   HeartBeatResponse handleHeartBeat(HeartBeat heartBeat);
+
+  /**
+   * Handle a heartbeat, holding it until there is a command for the
+   * agent or the timeout expires
+   * @param heartBeat heartbeat
+   * @param timeout how long to wait for a command, in milliseconds;
+   * 0 for no wait
+   * @return the response
+   */
+  HeartBeatResponse handleHeartBeat(HeartBeat heartBeat, long timeout);
+
+  /**
+   * Handle the registrations of several component instances
+   * @param registrations registrations
+   * @return the responses, keyed by label
+   * @throws IllegalArgumentException if there is no list of registrations,
+   * or an entry has no label or repeats one; nothing is processed
+   */
+  RegistrationBatchResponse handleRegistrationBatch(RegisterBatch registrations);
+
+  /**
+   * Handle the heartbeats of several component instances
+   * @param heartBeats heartbeats
+   * @return the responses, keyed by label
+   * @throws IllegalArgumentException if there is no list of heartbeats,
+   * or an entry has no label or repeats one; nothing is processed
+   */
+  HeartBeatBatchResponse handleHeartBeatBatch(HeartBeatBatch heartBeats);
 }
@@ -43,6 +43,7 @@ public class ExecutionCommand {
   private Map<String, String> roleParams = null;
   private String roleCommand;
   private Map<String, Map<String, String>> configurations;
+  private String configurationsHash;
   private Map<String, String> commandParams;
   private String serviceName;
   private String componentName;
@@ -151,6 +152,21 @@ public class ExecutionCommand {
     this.configurations = configurations;
   }
 
+  /**
+   * @return the hash of the configurations. Once an agent has been sent
+   * a set of configurations, later commands with the same configurations
+   * carry only the hash.
+   */
+  @JsonProperty("configurationsHash")
+  public String getConfigurationsHash() {
+    return configurationsHash;
+  }
+
+  @JsonProperty("configurationsHash")
+  public void setConfigurationsHash(String configurationsHash) {
+    this.configurationsHash = configurationsHash;
+  }
+
   @JsonProperty("commandParams")
   public Map<String, String> getCommandParams() {
     return commandParams;
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.web.rest.agent;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The heartbeats of several component instances, sent in one request
+ * by an agent hosting them all. Each heartbeat carries its own label,
+ * response ID and reports.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class HeartBeatBatch {
+
+  private List<HeartBeat> heartBeats = new ArrayList<HeartBeat>();
+
+  @JsonProperty("heartBeats")
+  public List<HeartBeat> getHeartBeats() {
+    return heartBeats;
+  }
+
+  @JsonProperty("heartBeats")
+  public void setHeartBeats(List<HeartBeat> heartBeats) {
+    this.heartBeats = heartBeats;
+  }
+
+  public void addHeartBeat(HeartBeat heartBeat) {
+    heartBeats.add(heartBeat);
+  }
+
+  @Override
+  public String toString() {
+    return "HeartBeatBatch{" +
+           "heartBeats=" + heartBeats +
+           '}';
+  }
+}
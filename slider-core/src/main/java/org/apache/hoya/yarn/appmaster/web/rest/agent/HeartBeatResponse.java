@@ -42,6 +42,12 @@ public class HeartBeatResponse {
   boolean restartAgent = false;
   boolean hasMappedComponents = false;
 
+  /**
+   * Delay in milliseconds before the agent's next heartbeat;
+   * 0 leaves it to the agent
+   */
+  long nextHeartbeatDelay = 0;
+
   @JsonProperty("responseId")
   public long getResponseId() {
     return responseId;
@@ -102,6 +108,16 @@ public class HeartBeatResponse {
     this.hasMappedComponents = hasMappedComponents;
   }
 
+  @JsonProperty("nextHeartbeatDelay")
+  public long getNextHeartbeatDelay() {
+    return nextHeartbeatDelay;
+  }
+
+  @JsonProperty("nextHeartbeatDelay")
+  public void setNextHeartbeatDelay(long nextHeartbeatDelay) {
+    this.nextHeartbeatDelay = nextHeartbeatDelay;
+  }
+
   public void addExecutionCommand(ExecutionCommand execCmd) {
     executionCommands.add(execCmd);
   }
@@ -118,6 +134,7 @@ public class HeartBeatResponse {
            ", statusCommands=" + statusCommands +
            ", registrationCommand=" + registrationCommand +
            ", restartAgent=" + restartAgent +
+           ", nextHeartbeatDelay=" + nextHeartbeatDelay +
            '}';
   }
 }
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.web.rest.agent;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The registrations of several component instances, sent in one
+ * request by an agent hosting them all.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class RegisterBatch {
+
+  private List<Register> registrations = new ArrayList<Register>();
+
+  @JsonProperty("registrations")
+  public List<Register> getRegistrations() {
+    return registrations;
+  }
+
+  @JsonProperty("registrations")
+  public void setRegistrations(List<Register> registrations) {
+    this.registrations = registrations;
+  }
+
+  public void addRegistration(Register registration) {
+    registrations.add(registration);
+  }
+
+  @Override
+  public String toString() {
+    return "RegisterBatch{" +
+           "registrations=" + registrations +
+           '}';
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster.web.rest.agent;
+
+import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The responses to a {@link RegisterBatch}, keyed by the label of
+ * each registration.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class RegistrationBatchResponse {
+
+  private Map<String, RegistrationResponse> responses =
+    new LinkedHashMap<String, RegistrationResponse>();
+
+  @JsonProperty("responses")
+  public Map<String, RegistrationResponse> getResponses() {
+    return responses;
+  }
+
+  @JsonProperty("responses")
+  public void setResponses(Map<String, RegistrationResponse> responses) {
+    this.responses = responses;
+  }
+
+  public void addResponse(String label, RegistrationResponse response) {
+    responses.put(label, response);
+  }
+
+  @Override
+  public String toString() {
+    return "RegistrationBatchResponse{" +
+           "responses=" + responses +
+           '}';
+  }
+}
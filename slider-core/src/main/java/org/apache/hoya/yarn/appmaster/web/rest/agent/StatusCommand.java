@@ -19,7 +19,6 @@ package org.apache.hoya.yarn.appmaster.web.rest.agent;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonIgnoreProperties;
 import org.codehaus.jackson.annotate.JsonProperty;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
@@ -36,6 +35,7 @@ public class StatusCommand {
   private String serviceName;
   private String componentName;
   private Map<String, Map<String, String>> configurations;
+  private String configurationsHash;
   private Map<String, String> commandParams = new HashMap<String, String>();
   private Map<String, String> hostLevelParams = new HashMap<String, String>();
 
@@ -83,6 +83,20 @@ public class StatusCommand {
     this.configurations = configurations;
   }
 
+  /**
+   * @return the hash of the configurations; as with execution commands,
+   * configurations the agent already has are sent as the hash alone
+   */
+  @JsonProperty("configurationsHash")
+  public String getConfigurationsHash() {
+    return configurationsHash;
+  }
+
+  @JsonProperty("configurationsHash")
+  public void setConfigurationsHash(String configurationsHash) {
+    this.configurationsHash = configurationsHash;
+  }
+
   @JsonProperty("hostLevelParams")
   public Map<String, String> getHostLevelParams() {
     return hostLevelParams;
@@ -103,12 +117,12 @@ public class StatusCommand {
     this.commandParams = commandParams;
   }
 
-  @JsonIgnore
+  @JsonProperty("commandType")
   public AgentCommandType getCommandType() {
     return agentCommandType;
   }
 
-  @JsonIgnore
+  @JsonProperty("commandType")
   public void setCommandType(AgentCommandType commandType) {
     this.agentCommandType = commandType;
   }
@@ -31,6 +31,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
+import java.util.Map;
 
 /**
  *
@@ -71,6 +72,14 @@ public class ManagementResource {
     return aggregateConf.getConfTree(config);
   }
 
+  @GET
+  @Path("/metrics")
+  @Produces({MediaType.APPLICATION_JSON})
+  public Map<String, Object> getMetrics(@Context HttpServletResponse res) {
+    init(res);
+    return slider.getProviderService().buildMetrics();
+  }
+
   protected AggregateConf getAggregateConf() {
     return slider.getAppState().getInstanceDefinitionSnapshot();
   }
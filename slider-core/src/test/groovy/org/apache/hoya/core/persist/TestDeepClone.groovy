@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.core.persist
+
+import groovy.util.logging.Slf4j
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.api.ClusterNode
+import org.apache.hoya.core.conf.AggregateConf
+import org.apache.hoya.core.conf.ConfTree
+import org.apache.hoya.core.conf.ExampleConfResources
+import org.junit.Assert
+import org.junit.Test
+
+/**
+ * Test the structural deep clones: they must match
+ * a round trip through JSON, and share no mutable state with the source
+ */
+@Slf4j
+class TestDeepClone extends Assert {
+
+  /**
+   * Build a status document with all fields populated
+   * @param hosts number of cluster nodes in the status
+   * @return a cluster description
+   */
+  static ClusterDescription buildClusterStatus(int hosts) {
+    ClusterDescription cd = new ClusterDescription()
+    cd.name = "test"
+    cd.state = ClusterDescription.STATE_LIVE
+    cd.createTime = 1000
+    cd.updateTime = 2000
+    cd.dataPath = "hdfs://nn/data"
+    cd.options["option"] = "value"
+    cd.info["info.key"] = "info.value"
+    cd.clientProperties["client.key"] = "client.value"
+    cd.statistics["am"] = ["containers.live": hosts]
+    cd.roles["worker"] = ["yarn.memory": "256"]
+    Map<String, ClusterNode> nodes = [:]
+    List<String> ids = []
+    for (int i = 0; i < hosts; i++) {
+      ClusterNode node = new ClusterNode()
+      node.name = "container_${i}".toString()
+      node.role = "worker"
+      node.host = "host-${i}".toString()
+      node.state = ClusterDescription.STATE_LIVE
+      nodes[node.name] = node
+      ids << node.name
+    }
+    cd.instances["worker"] = ids
+    cd.status = [live: [worker: nodes]] as Map<String, Object>
+    return cd
+  }
+
+  /**
+   * Assert that two JSON documents are equivalent, ignoring map ordering
+   */
+  static void assertJsonEquivalent(String expected, String actual) {
+    assert JsonMappers.mapper.readTree(expected) ==
+           JsonMappers.mapper.readTree(actual)
+  }
+
+  @Test
+  public void testClusterDescriptionCloneMatchesJson() throws Throwable {
+    ClusterDescription cd = buildClusterStatus(10)
+    ClusterDescription clone = cd.deepClone()
+    ClusterDescription viaJson = ClusterDescription.fromJson(cd.toJsonString())
+    assertJsonEquivalent(viaJson.toJsonString(), clone.toJsonString())
+    assertJsonEquivalent(cd.toJsonString(), clone.toJsonString())
+  }
+
+  @Test
+  public void testClusterDescriptionCloneIsDeep() throws Throwable {
+    ClusterDescription cd = buildClusterStatus(2)
+    ClusterDescription clone = cd.deepClone()
+    clone.options["option"] = "changed"
+    clone.statistics["am"]["containers.live"] = 0
+    clone.instances["worker"].clear()
+    clone.roles["worker"]["yarn.memory"] = "1"
+    Map live = (Map) clone.status["live"]
+    ((Map) live["worker"]).clear()
+
+    assert cd.options["option"] == "value"
+    assert cd.statistics["am"]["containers.live"] == 2
+    assert cd.instances["worker"].size() == 2
+    assert cd.roles["worker"]["yarn.memory"] == "256"
+    assert ((Map) ((Map) cd.status["live"])["worker"]).size() == 2
+  }
+
+  @Test
+  public void testCloneNullStatus() throws Throwable {
+    ClusterDescription cd = new ClusterDescription()
+    assert cd.status == null
+    assert cd.deepClone().status == null
+  }
+
+  @Test
+  public void testConfTreeClone() throws Throwable {
+    AggregateConf aggregateConf =
+        ExampleConfResources.loadExampleAggregateResource()
+    ConfTree tree = aggregateConf.appConf
+    ConfTree clone = tree.deepClone()
+    assertJsonEquivalent(tree.toJson(), clone.toJson())
+    clone.global["new.key"] = "value"
+    assert !tree.global.containsKey("new.key")
+    String component = tree.components.keySet().iterator().next()
+    clone.components[component]["new.key"] = "value"
+    assert !tree.components[component].containsKey("new.key")
+  }
+
+  @Test
+  public void testAggregateConfClone() throws Throwable {
+    AggregateConf aggregateConf =
+        ExampleConfResources.loadExampleAggregateResource()
+    aggregateConf.name = "example"
+    AggregateConf clone = aggregateConf.deepClone()
+    assert clone.name == "example"
+    assertJsonEquivalent(aggregateConf.resources.toJson(),
+                         clone.resources.toJson())
+    assertJsonEquivalent(aggregateConf.appConf.toJson(),
+                         clone.appConf.toJson())
+    assertJsonEquivalent(aggregateConf.internal.toJson(),
+                         clone.internal.toJson())
+    assert !clone.resources.is(aggregateConf.resources)
+    clone.internalOperations.set("new.key", "value")
+    assert !aggregateConf.internal.global.containsKey("new.key")
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.core.persist
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.api.ClusterDescription
+import org.apache.hoya.core.conf.AggregateConf
+import org.apache.hoya.core.conf.ExampleConfResources
+import org.codehaus.jackson.map.ObjectMapper
+import org.codehaus.jackson.map.SerializationConfig
+import org.junit.Assert
+import org.junit.Test
+
+/**
+ * Compare the status serialization and clone paths against
+ * what they replaced: a new object mapper per call, and copies made
+ * by a round trip through JSON text. Each pair must produce the same
+ * JSON.
+ * Each operation is warmed up before it is timed. The iteration count
+ * is small by default, so it runs as a unit test; set the system
+ * property {@code serialization.benchmark.iterations} to benchmark.
+ */
+@CompileStatic
+@Slf4j
+class TestSerializationPerformance extends Assert {
+
+  public static final int ITERATIONS =
+      Integer.getInteger("serialization.benchmark.iterations", 10)
+  public static final int WARMUP = ITERATIONS.intdiv(5)
+
+  ClusterDescription status = TestDeepClone.buildClusterStatus(100)
+  AggregateConf aggregateConf =
+      ExampleConfResources.loadExampleAggregateResource()
+
+  /**
+   * Run an operation and log the mean time of a timed run
+   * @param name name for the log
+   * @param operation operation to run
+   * @return the mean time in nanoseconds
+   */
+  long measure(String name, Closure operation) {
+    for (int i = 0; i < WARMUP; i++) {
+      operation.call()
+    }
+    long start = System.nanoTime()
+    for (int i = 0; i < ITERATIONS; i++) {
+      operation.call()
+    }
+    long mean = (long) ((System.nanoTime() - start) / ITERATIONS)
+    log.info(String.format("%-40s %8d ns/op", name, mean))
+    return mean
+  }
+
+  /**
+   * Assert that two JSON documents hold the same tree, whatever the
+   * order of their fields
+   */
+  void assertSameJson(String expected, String actual) {
+    ObjectMapper mapper = JsonMappers.mapper
+    assertEquals(mapper.readTree(expected), mapper.readTree(actual))
+  }
+
+  String toJsonWithNewMapper(Object instance) {
+    ObjectMapper mapper = new ObjectMapper()
+    mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true)
+    return mapper.writeValueAsString(instance)
+  }
+
+  @Test
+  public void testStatusSerialization() throws Throwable {
+    assertEquals(toJsonWithNewMapper(status), status.toJsonString())
+    measure("status toJson: new mapper") {
+      toJsonWithNewMapper(status)
+    }
+    measure("status toJson: shared mapper") {
+      status.toJsonString()
+    }
+  }
+
+  @Test
+  public void testStatusClone() throws Throwable {
+    ClusterDescription roundTrip = new ObjectMapper().readValue(
+        toJsonWithNewMapper(status), ClusterDescription)
+    assertSameJson(roundTrip.toJsonString(), status.deepClone().toJsonString())
+    measure("status clone: JSON round trip") {
+      new ObjectMapper().readValue(toJsonWithNewMapper(status),
+                                   ClusterDescription)
+    }
+    measure("status clone: structural") {
+      status.deepClone()
+    }
+  }
+
+  @Test
+  public void testAggregateConfClone() throws Throwable {
+    JsonSerDeser<AggregateConf> serDeser =
+        new JsonSerDeser<AggregateConf>(AggregateConf)
+    assertSameJson(serDeser.toJson(serDeser.fromInstance(aggregateConf)),
+                   serDeser.toJson(aggregateConf.deepClone()))
+    measure("aggregate conf clone: JSON round trip") {
+      serDeser.fromInstance(aggregateConf)
+    }
+    measure("aggregate conf clone: structural") {
+      aggregateConf.deepClone()
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.ActiveContainerIndex
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockNodeId
+import org.junit.Test
+
+/**
+ * Test the index of releasable containers by role and host
+ */
+@Slf4j
+@CompileStatic
+class TestActiveContainerIndex extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestActiveContainerIndex"
+  }
+
+  RoleInstance instance(String host, int roleId) {
+    MockContainer container = new MockContainer()
+    container.id = factory.newContainerId()
+    container.nodeId = new MockNodeId(host)
+    RoleInstance instance = new RoleInstance(container)
+    instance.roleId = roleId
+    return instance
+  }
+
+  @Test
+  public void testFindByHostAndRole() throws Throwable {
+    ActiveContainerIndex index = new ActiveContainerIndex()
+    RoleInstance h1r0a = instance("h1", 0)
+    RoleInstance h1r0b = instance("h1", 0)
+    RoleInstance h1r1 = instance("h1", 1)
+    RoleInstance h2r0 = instance("h2", 0)
+    [h1r0a, h1r0b, h1r1, h2r0].each { RoleInstance ri -> index.add(ri) }
+    assert 4 == index.size()
+    assert 2 == index.count("h1", 0)
+
+    // oldest first
+    assert h1r0a == index.find("h1", 0)
+    assert h1r1 == index.find("h1", 1)
+    assert h2r0 == index.find("h2", 0)
+    assert null == index.find("h2", 1)
+    assert null == index.find("h3", 0)
+
+    assert index.remove(h1r0a)
+    assert !index.remove(h1r0a)
+    assert h1r0b == index.find("h1", 0)
+    assert index.remove(h1r0b)
+    assert null == index.find("h1", 0)
+    assert 2 == index.size()
+  }
+
+  @Test
+  public void testAddIsIdempotent() throws Throwable {
+    ActiveContainerIndex index = new ActiveContainerIndex()
+    RoleInstance ri = instance("h1", 0)
+    index.add(ri)
+    index.add(ri)
+    assert 1 == index.size()
+    assert index.remove(ri)
+    assert 0 == index.size()
+  }
+
+  @Test
+  public void testUnplacedInstancesIgnored() throws Throwable {
+    ActiveContainerIndex index = new ActiveContainerIndex()
+    MockContainer container = new MockContainer()
+    container.id = factory.newContainerId()
+    RoleInstance ri = new RoleInstance(container)
+    index.add(ri)
+    assert 0 == index.size()
+    assert !index.remove(ri)
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.apache.hoya.yarn.model.mock.MockYarnEngine
+import org.junit.Test
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Read the application state from many threads while a single
+ * writer churns containers through it, the way the RPC and web
+ * threads read state while the AM callbacks update it.
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateConcurrency extends BaseMockAppStateTest
+    implements MockRoles {
+
+  public static final int READERS = 4
+  public static final int CYCLES = 100
+  public static final int CONTAINERS_PER_CYCLE = 10
+
+  @Override
+  String getTestName() {
+    return "TestAppStateConcurrency"
+  }
+
+  @Override
+  MockYarnEngine createYarnEngine() {
+    return new MockYarnEngine(16, 4)
+  }
+
+  @Test
+  public void testReadsDuringContainerChurn() throws Throwable {
+    int initialLive = appState.cloneLiveContainerInfoList().size()
+    AtomicBoolean finished = new AtomicBoolean(false)
+    AtomicLong reads = new AtomicLong()
+    Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>()
+    List<Thread> readers = []
+    READERS.times { int i ->
+      Thread reader = new Thread({
+        try {
+          while (!finished.get()) {
+            appState.cloneLiveContainerInfoList()
+            appState.enumLiveNodesInRole("")
+            appState.refreshClusterStatus()
+            assert appState.applicationProgressPercentage >= 0
+            assert role0Status.actual >= 0
+            reads.incrementAndGet()
+          }
+        } catch (Throwable t) {
+          failures.add(t)
+        }
+      } as Runnable, "reader-$i")
+      readers << reader
+    }
+    readers.each { Thread t -> t.start() }
+
+    long start = System.currentTimeMillis()
+    int churned = 0
+    try {
+      CYCLES.times {
+        role0Status.desired = CONTAINERS_PER_CYCLE
+        List<RoleInstance> instances = createAndStartNodes()
+        assert instances.size() == CONTAINERS_PER_CYCLE
+        churned += instances.size()
+
+        role0Status.desired = 0
+        List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+        List<ContainerId> released = []
+        engine.execute(ops, released)
+        released.each { ContainerId cid ->
+          assert appState.onCompletedNode(containerStatus(cid)).roleInstance
+        }
+      }
+    } finally {
+      finished.set(true)
+      readers.each { Thread t -> t.join() }
+    }
+    long duration = System.currentTimeMillis() - start
+
+    log.info("Churned $churned containers in $duration ms;" +
+             " $READERS readers made ${reads.get()} passes")
+    if (!failures.empty) {
+      throw failures.peek()
+    }
+    assert churned == CYCLES * CONTAINERS_PER_CYCLE
+    assert role0Status.actual == 0
+    assert initialLive == appState.cloneLiveContainerInfoList().size()
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.client.api.AMRMClient
+import org.apache.hoya.api.ResourceKeys
+import org.apache.hoya.core.conf.ConfTree
+import org.apache.hoya.core.conf.ConfTreeOperations
+import org.apache.hoya.yarn.appmaster.state.*
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test that a placed request which is outstanding for too long is
+ * reissued without a location
+ */
+@CompileStatic
+@Slf4j
+class TestAppStatePlacementEscalation extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStatePlacementEscalation"
+  }
+
+  public static final int ESCALATE_DELAY = 30
+
+  /**
+   * Set the escalation delay of role 0
+   * @param seconds delay
+   */
+  void setEscalateDelay(int seconds) {
+    ConfTree clusterSpec = factory.newConfTree(0, 0, 0)
+    ConfTreeOperations cto = new ConfTreeOperations(clusterSpec)
+    cto.setRoleOpt(ROLE0, ResourceKeys.COMPONENT_PLACEMENT_ESCALATE_DELAY,
+        seconds)
+    appState.updateResourceDefinitions(clusterSpec)
+  }
+
+  /**
+   * Run an instance of role 0 and release it, then ask for it again
+   * @return the request, placed on the node the instance ran on
+   */
+  AMRMClient.ContainerRequest issuePlacedRequest() {
+    //run an instance, then release it so the history has a node for it
+    role0Status.desired = 1
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    AMRMClient.ContainerRequest request =
+        ((ContainerRequestOperation) ops[0]).request
+    Container allocated = engine.allocateContainer(request)
+    List<ContainerAssignment> assignments = [];
+    List<AbstractRMOperation> releases = []
+    appState.onContainersAllocated([allocated], assignments, releases)
+    Container container = assignments[0].container
+    String hostname = RoleHistoryUtils.hostnameOf(container)
+    appState.containerStartSubmitted(container, roleInstance(assignments[0]))
+    appState.innerOnNodeManagerContainerStarted(container.id)
+    role0Status.desired = 0
+    engine.execute(appState.reviewRequestAndReleaseNodes())
+    appState.onCompletedNode(containerStatus(container))
+
+    //the next request is placed on that node
+    role0Status.desired = 1
+    ops = appState.reviewRequestAndReleaseNodes()
+    AMRMClient.ContainerRequest placed =
+        ((ContainerRequestOperation) ops[0]).request
+    assert placed.nodes[0] == hostname
+    assert appState.roleHistory.outstandingRequestList.size() == 1
+    return placed
+  }
+
+  @Test
+  public void testEscalationOffByDefault() throws Throwable {
+    assert ResourceKeys.DEF_COMPONENT_PLACEMENT_ESCALATE_DELAY == 0
+    issuePlacedRequest()
+    long now = System.currentTimeMillis() + 3600 * 1000L
+    assert appState.escalateOutstandingRequests(now).empty
+    assert role0Status.placementEscalations == 0
+    assert appState.roleHistory.outstandingRequestList.size() == 1
+  }
+
+  @Test
+  public void testPlacedRequestEscalated() throws Throwable {
+    setEscalateDelay(ESCALATE_DELAY)
+    AMRMClient.ContainerRequest placed = issuePlacedRequest()
+
+    //not yet due
+    long now = System.currentTimeMillis()
+    assert appState.escalateOutstandingRequests(now).empty
+
+    //once the delay has passed it is replaced by an unlocated request
+    now += 1000L * ESCALATE_DELAY + 1000
+    List<AbstractRMOperation> ops = appState.escalateOutstandingRequests(now)
+    assert ops.size() == 2
+    assert ((CancelRequestOperation) ops[0]).request.is(placed)
+    AMRMClient.ContainerRequest relaxed =
+        ((ContainerRequestOperation) ops[1]).request
+    assert !relaxed.nodes
+    assert relaxed.priority.priority == placed.priority.priority
+    assert role0Status.placementEscalations == 1
+    assert role0Status.requested == 1
+    assert appState.getOutstandingRequestCount(role0Status.key) == 1
+    assert appState.roleHistory.outstandingRequestList.empty
+
+    //nothing more to escalate
+    assert appState.escalateOutstandingRequests(now).empty
+
+    //the relaxed request is satisfied, and its latency recorded
+    Container second = engine.allocateContainer(relaxed)
+    List<AbstractRMOperation> satisfied = []
+    List<ContainerAssignment> assignments = []
+    List<AbstractRMOperation> releases = []
+    appState.onContainersAllocated([second], assignments, releases, satisfied)
+    assert ((CancelRequestOperation) satisfied[0]).request.is(relaxed)
+    assert role0Status.allocationLatency.count == 1
+  }
+}
@@ -95,7 +95,7 @@ class TestAppStateRebuildOnAMRestart extends BaseMockAppStateTest
 
     for (NodeInstance nodeInstance : newNodemap.values()) {
       String hostname = nodeInstance.hostname
-      NodeInstance orig = nodemap[hostname]
+      NodeInstance orig = nodemap.get(hostname)
       assertNotNull("Null entry in original nodemap for " + hostname, orig)
 
       for (int i = 0; i < ROLE_COUNT; i++) {
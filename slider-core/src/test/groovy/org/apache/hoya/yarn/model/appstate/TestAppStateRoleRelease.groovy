@@ -69,11 +69,26 @@ class TestAppStateRoleRelease extends BaseMockAppStateTest
     List<ContainerId> released = []
     engine.execute(ops, released)
     List<ContainerId> ids = extractContainerIds(instances, 0)
+    assert released.size() == 6
+    assert appState.releasableContainerCount == 9
     released.each { ContainerId cid ->
       assert appState.onCompletedNode(containerStatus(cid)).roleInstance
       assert ids.contains(cid)
     }
 
+    //shrinking another role must not pick any container already released
+    role1Status.desired = 2
+    ops = appState.reviewRequestAndReleaseNodes()
+    List<ContainerId> released1 = []
+    engine.execute(ops, released1)
+    assert released1.size() == 3
+    List<ContainerId> ids1 = extractContainerIds(instances, 1)
+    released1.each { ContainerId cid ->
+      assert ids1.contains(cid)
+      assert !released.contains(cid)
+    }
+    assert appState.releasableContainerCount == 6
+
     //view the world
     appState.getRoleHistory().dump();
     
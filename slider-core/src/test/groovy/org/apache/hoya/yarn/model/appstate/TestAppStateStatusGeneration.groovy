@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.api.records.ContainerId
+import org.apache.hoya.core.conf.ConfTreeOperations
+import org.apache.hoya.yarn.appmaster.state.AppState
+import org.apache.hoya.yarn.appmaster.state.ClusterStatusSnapshot
+import org.apache.hoya.yarn.appmaster.state.RoleInstance
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockRecordFactory
+import org.apache.hoya.yarn.model.mock.MockRoles
+import org.junit.Test
+
+/**
+ * Test that state changes move the status generation on, and
+ * so invalidate status snapshots
+ */
+@CompileStatic
+@Slf4j
+class TestAppStateStatusGeneration extends BaseMockAppStateTest
+    implements MockRoles {
+
+  @Override
+  String getTestName() {
+    return "TestAppStateStatusGeneration"
+  }
+
+  /**
+   * The snapshot taken as the generation last moved on
+   */
+  ClusterStatusSnapshot snapshotAtChange
+
+  /**
+   * Only snapshot on changes once the state is built
+   */
+  boolean snapshotOnChange
+
+  /**
+   * The instance definition version and role options seen as the
+   * generation last moved on
+   */
+  long versionAtChange
+  String roleOptionAtChange
+
+  /**
+   * An app state which builds a status snapshot each time it notes a
+   * change, as a status query racing the change could
+   */
+  class SnapshottingAppState extends AppState {
+
+    SnapshottingAppState() {
+      super(new MockRecordFactory())
+    }
+
+    @Override
+    protected void statusChanged() {
+      super.statusChanged()
+      if (snapshotOnChange) {
+        snapshotAtChange = snapshot(this)
+        versionAtChange = instanceDefinitionVersion
+        roleOptionAtChange = clusterStatus.getRoleOpt(MockRoles.ROLE0, "option", null)
+      }
+    }
+  }
+
+  @Override
+  AppState createAppState() {
+    return new SnapshottingAppState()
+  }
+
+  /**
+   * Build a snapshot the way the AM does: generation first, then
+   * refresh and serialize the status
+   * @param state state to snapshot
+   * @return the snapshot
+   */
+  ClusterStatusSnapshot snapshot(AppState state) {
+    long generation = state.statusGeneration
+    state.refreshClusterStatus()
+    return new ClusterStatusSnapshot(generation,
+                                     System.currentTimeMillis(),
+                                     state.clusterStatus.toJsonString())
+  }
+
+  @Test
+  public void testRefreshDoesNotChangeGeneration() throws Throwable {
+    long generation = appState.statusGeneration
+    appState.refreshClusterStatus()
+    assert generation == appState.statusGeneration
+  }
+
+  @Test
+  public void testContainerEventsChangeGeneration() throws Throwable {
+    long generation = appState.statusGeneration
+    role0Status.desired = 1
+    List<RoleInstance> instances = createAndStartNodes()
+    assert instances.size() == 1
+    long started = appState.statusGeneration
+    assert started > generation
+
+    List<ContainerId> ids = extractContainerIds(instances, 0)
+    appState.onCompletedNode(containerStatus(ids[0], 1))
+    assert appState.statusGeneration > started
+  }
+
+  @Test
+  public void testSnapshotAfterChangeShowsIt() throws Throwable {
+    role0Status.desired = 1
+    List<RoleInstance> instances = createAndSubmitNodes()
+    assert instances.size() == 1
+    ClusterStatusSnapshot before = snapshot(appState)
+    String id = instances[0].id
+    assert !before.json.contains(id)
+
+    appState.onNodeManagerContainerStarted(instances[0].containerId)
+    assert !before.isCurrent(appState.statusGeneration,
+                             before.created, 5000)
+    assert snapshot(appState).json.contains(id)
+  }
+
+  @Test
+  public void testGenerationMovesOnAfterTheChange() throws Throwable {
+    role0Status.desired = 1
+    List<RoleInstance> instances = createAndSubmitNodes()
+    snapshotOnChange = true
+    appState.onNodeManagerContainerStarted(instances[0].containerId)
+    // a snapshot built at the moment of the change, under the new
+    // generation, already holds the started instance
+    assert snapshotAtChange.generation == appState.statusGeneration
+    assert snapshotAtChange.json.contains(instances[0].id)
+
+    appState.onCompletedNode(containerStatus(instances[0].containerId, 1))
+    assert snapshotAtChange.generation == appState.statusGeneration
+    assert !snapshotAtChange.json.contains(instances[0].id)
+  }
+
+  @Test
+  public void testVersionMovesOnAfterRolesPublished() throws Throwable {
+    long version = appState.instanceDefinitionVersion
+    ConfTreeOperations resources =
+        new ConfTreeOperations(appState.instanceDefinition.resources)
+    resources.getOrAddComponent(ROLE0).put("option", "updated")
+    snapshotOnChange = true
+    appState.updateResourceDefinitions(resources.confTree)
+    assert appState.instanceDefinitionVersion > version
+    // anything which read the new version also sees the new roles
+    assert versionAtChange == appState.instanceDefinitionVersion
+    assert roleOptionAtChange == "updated"
+  }
+
+  @Test
+  public void testSnapshotCurrency() throws Throwable {
+    ClusterStatusSnapshot snapshot = new ClusterStatusSnapshot(3, 1000, "{}")
+    assert snapshot.isCurrent(3, 1000, 100)
+    assert snapshot.isCurrent(3, 1099, 100)
+    assert !snapshot.isCurrent(3, 1100, 100)
+    assert !snapshot.isCurrent(4, 1000, 100)
+    // clock going backwards
+    assert !snapshot.isCurrent(3, 999, 100)
+    // caching disabled
+    assert !snapshot.isCurrent(3, 1000, 0)
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.appstate
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.yarn.client.api.AMRMClient
+import org.apache.hoya.yarn.appmaster.state.ContainerAskTracker
+import org.apache.hoya.yarn.appmaster.state.ContainerPriority
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockNodeId
+import org.apache.hoya.yarn.model.mock.MockResource
+import org.junit.Test
+
+/**
+ * Test the tracking of outstanding container requests
+ */
+@Slf4j
+@CompileStatic
+class TestContainerAskTracker extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestContainerAskTracker"
+  }
+
+  AMRMClient.ContainerRequest request(int role, String host) {
+    String[] hosts = host != null ? [host] as String[] : null
+    return new AMRMClient.ContainerRequest(new MockResource(),
+        hosts,
+        null,
+        ContainerPriority.createPriority(role, host != null),
+        true)
+  }
+
+  MockContainer container(int role, String host) {
+    MockContainer container = new MockContainer()
+    container.id = factory.newContainerId()
+    container.nodeId = new MockNodeId(host)
+    container.priority = ContainerPriority.createPriority(role, false)
+    return container
+  }
+
+  @Test
+  public void testAllocationMatchesHostFirst() throws Throwable {
+    ContainerAskTracker tracker = new ContainerAskTracker()
+    AMRMClient.ContainerRequest anywhere = request(0, null)
+    AMRMClient.ContainerRequest onH1 = request(0, "h1")
+    AMRMClient.ContainerRequest onH2 = request(0, "h2")
+    tracker.submitted(0, anywhere, 0)
+    tracker.submitted(0, onH1, 0)
+    tracker.submitted(0, onH2, 0)
+    assert 3 == tracker.getOutstanding(0)
+
+    assert onH2.is(tracker.allocated(container(0, "h2")).request)
+    assert anywhere.is(tracker.allocated(container(0, "h3")).request)
+    assert onH1.is(tracker.allocated(container(0, "h3")).request)
+    assert null == tracker.allocated(container(0, "h1"))
+    assert 0 == tracker.getOutstanding(0)
+  }
+
+  @Test
+  public void testCancelNewestUnlocatedFirst() throws Throwable {
+    ContainerAskTracker tracker = new ContainerAskTracker()
+    AMRMClient.ContainerRequest onH1 = request(1, "h1")
+    AMRMClient.ContainerRequest first = request(1, null)
+    AMRMClient.ContainerRequest second = request(1, null)
+    tracker.submitted(1, onH1, 0)
+    tracker.submitted(1, first, 0)
+    tracker.submitted(1, second, 0)
+    tracker.submitted(2, request(2, null), 0)
+
+    List<AMRMClient.ContainerRequest> cancelled = tracker.cancel(1, 2)
+    assert cancelled.size() == 2
+    assert second.is(cancelled[0])
+    assert first.is(cancelled[1])
+    assert 1 == tracker.getOutstanding(1)
+
+    cancelled = tracker.cancel(1, 5)
+    assert cancelled.size() == 1
+    assert onH1.is(cancelled[0])
+    assert 0 == tracker.getOutstanding(1)
+    assert 1 == tracker.getOutstanding(2)
+    assert tracker.cancel(3, 1).empty
+  }
+
+  @Test
+  public void testCancelNewestLocatedAcrossHosts() throws Throwable {
+    ContainerAskTracker tracker = new ContainerAskTracker()
+    AMRMClient.ContainerRequest h1First = request(0, "h1")
+    AMRMClient.ContainerRequest onH2 = request(0, "h2")
+    AMRMClient.ContainerRequest h1Second = request(0, "h1")
+    tracker.submitted(0, h1First, 0)
+    tracker.submitted(0, onH2, 0)
+    tracker.submitted(0, h1Second, 0)
+
+    // h1 already had a queue, but its second ask is still the newest
+    List<AMRMClient.ContainerRequest> cancelled = tracker.cancel(0, 2)
+    assert cancelled.size() == 2
+    assert h1Second.is(cancelled[0])
+    assert onH2.is(cancelled[1])
+    assert 1 == tracker.getOutstanding(0)
+    assert h1First.is(tracker.allocated(container(0, "h3")).request)
+  }
+
+  @Test
+  public void testAllocatedAsksSkippedWhenCancelling() throws Throwable {
+    ContainerAskTracker tracker = new ContainerAskTracker()
+    List<AMRMClient.ContainerRequest> requests =
+        new ArrayList<AMRMClient.ContainerRequest>()
+    for (int i = 0; i < 50; i++) {
+      AMRMClient.ContainerRequest req = request(0, "h" + (i % 5))
+      requests.add(req)
+      tracker.submitted(0, req, i)
+    }
+    // allocate the oldest ask on each host: they stay in the
+    // submission list, marked as taken
+    for (int i = 0; i < 5; i++) {
+      assert requests[i].is(tracker.allocated(container(0, "h" + i)).request)
+    }
+    assert 45 == tracker.getOutstanding(0)
+    List<AMRMClient.ContainerRequest> cancelled = tracker.cancel(0, 3)
+    assert requests[49].is(cancelled[0])
+    assert requests[48].is(cancelled[1])
+    assert requests[47].is(cancelled[2])
+    // the oldest outstanding is matched for a host with no asks of its own
+    assert requests[5].is(tracker.allocated(container(0, "h9")).request)
+    assert 41 == tracker.getOutstanding(0)
+
+    // the newest ask taken from its host queue is skipped on cancel
+    tracker = new ContainerAskTracker()
+    AMRMClient.ContainerRequest onH1 = request(0, "h1")
+    AMRMClient.ContainerRequest onH2 = request(0, "h2")
+    tracker.submitted(0, onH1, 0)
+    tracker.submitted(0, onH2, 0)
+    assert onH2.is(tracker.allocated(container(0, "h2")).request)
+    cancelled = tracker.cancel(0, 2)
+    assert cancelled.size() == 1
+    assert onH1.is(cancelled[0])
+    assert 0 == tracker.getOutstanding(0)
+  }
+
+  @Test
+  public void testRemoveLocatedKeepsSubmissionTime() throws Throwable {
+    ContainerAskTracker tracker = new ContainerAskTracker()
+    AMRMClient.ContainerRequest onH1 = request(0, "h1")
+    tracker.submitted(0, onH1, 1000)
+    assert null == tracker.removeLocated(0, "h2")
+    ContainerAskTracker.Ask ask = tracker.removeLocated(0, "h1")
+    assert onH1.is(ask.request)
+    assert 1000 == ask.submitted
+    assert 0 == tracker.getOutstanding(0)
+  }
+}
@@ -211,4 +211,62 @@ class TestMockRMOperations extends BaseMockAppStateTest implements MockRoles {
     assert ops2.empty
   }
 
+  @Test
+  public void testFlexDownCancelsRequests() throws Throwable {
+    role0Status.desired = 4
+    assert appState.flexPending
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    assert ops.size() == 4
+    assert role0Status.requested == 4
+    assert !appState.flexPending
+    assert appState.getOutstandingRequestCount(role0Status.key) == 4
+    assert appState.hasOutstandingWork()
+    //the asks share one capability
+    Set<Object> capabilities = new HashSet<Object>()
+    ops.each { AbstractRMOperation op ->
+      capabilities.add(
+          System.identityHashCode(((ContainerRequestOperation) op).request.capability))
+    }
+    assert capabilities.size() == 1
+
+    //flex down before anything is allocated: the asks are cancelled,
+    //newest first, rather than any container being released
+    role0Status.desired = 1
+    List<AbstractRMOperation> cancels = appState.reviewRequestAndReleaseNodes()
+    assert cancels.size() == 3
+    cancels.each { AbstractRMOperation op ->
+      assert op instanceof CancelRequestOperation
+    }
+    assert ((CancelRequestOperation) cancels[0]).request.is(
+        ((ContainerRequestOperation) ops[3]).request)
+    assert role0Status.requested == 1
+    assert role0Status.requestsCancelled == 3
+    assert appState.getOutstandingRequestCount(role0Status.key) == 1
+    assert appState.reviewRequestAndReleaseNodes().empty
+  }
+
+  @Test
+  public void testAllocationRemovesSatisfiedRequest() throws Throwable {
+    role0Status.desired = 1
+    List<AbstractRMOperation> ops = appState.reviewRequestAndReleaseNodes()
+    AMRMClient.ContainerRequest request =
+        ((ContainerRequestOperation) ops[0]).request
+    Container cont = engine.allocateContainer(request)
+    List<ContainerAssignment> assignments = []
+    List<AbstractRMOperation> releases = []
+    List<AbstractRMOperation> satisfied = []
+    appState.onContainersAllocated([cont], assignments, releases, satisfied)
+    assert releases.empty
+    assert assignments.size() == 1
+    assert satisfied.size() == 1
+    assert ((CancelRequestOperation) satisfied[0]).request.is(request)
+    assert role0Status.totalAllocated == 1
+    assert appState.getOutstandingRequestCount(role0Status.key) == 0
+    assert !appState.hasOutstandingWork()
+
+    MockRMOperationHandler handler = new MockRMOperationHandler()
+    handler.execute(satisfied)
+    assert handler.operations[0] instanceof CancelRequestOperation
+  }
+
 }
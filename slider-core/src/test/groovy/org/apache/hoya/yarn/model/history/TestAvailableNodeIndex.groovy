@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.AvailableNodeIndex
+import org.apache.hoya.yarn.appmaster.state.ContainerPriority
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.apache.hoya.yarn.model.mock.MockNodeId
+import org.junit.Test
+
+/**
+ * Test the per-role index of available nodes
+ */
+@Slf4j
+@CompileStatic
+class TestAvailableNodeIndex extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestAvailableNodeIndex"
+  }
+
+  NodeInstance age1Active0 = nodeInstance(1, 0, 0, 0)
+  NodeInstance age2Active0 = nodeInstance(2, 0, 0, 0)
+  NodeInstance age3Active0 = nodeInstance(3, 0, 0, 0)
+  NodeInstance empty = new NodeInstance("empty", MockFactory.ROLE_COUNT)
+
+  @Test
+  public void testOrderedNewestFirst() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.add(age2Active0)
+    index.add(age1Active0)
+    index.add(age3Active0)
+    assertListEquals([age3Active0, age2Active0, age1Active0], index.toList())
+    assert age3Active0 == index.poll()
+    assert age2Active0 == index.poll()
+    assert age1Active0 == index.poll()
+    assert null == index.poll()
+    assert index.empty
+  }
+
+  @Test
+  public void testNoEntryIsOldest() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.add(empty)
+    index.add(age1Active0)
+    assertListEquals([age1Active0, empty], index.toList())
+  }
+
+  @Test
+  public void testAddIsIdempotent() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.add(age1Active0)
+    index.add(age1Active0)
+    assert 1 == index.size()
+  }
+
+  @Test
+  public void testReAddReindexes() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.add(age1Active0)
+    index.add(age2Active0)
+    age1Active0.get(0).lastUsed = 10
+    index.add(age1Active0)
+    assert 2 == index.size()
+    assertListEquals([age1Active0, age2Active0], index.toList())
+  }
+
+  @Test
+  public void testRemove() throws Throwable {
+    AvailableNodeIndex index = new AvailableNodeIndex(0)
+    index.add(age1Active0)
+    index.add(age2Active0)
+    assert index.remove(age2Active0)
+    assert !index.remove(age2Active0)
+    assert !index.contains(age2Active0)
+    assertListEquals([age1Active0], index.toList())
+  }
+
+  @Test
+  public void testStartedNodeLeavesIndex() throws Throwable {
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.insert([age1Active0, age2Active0])
+    roleHistory.buildAvailableNodeLists()
+    assertListEquals([age2Active0, age1Active0],
+                     roleHistory.cloneAvailableList(0))
+
+    MockContainer container = factory.newContainer()
+    container.nodeId = new MockNodeId(age2Active0.hostname, 0)
+    container.priority = ContainerPriority.createPriority(0, false)
+    roleHistory.onContainerAssigned(container)
+    roleHistory.onContainerStarted(container)
+    assertListEquals([age1Active0], roleHistory.cloneAvailableList(0))
+
+    // release it: back at the head of the index
+    roleHistory.onContainerReleaseSubmitted(container)
+    roleHistory.onReleaseCompleted(container)
+    assertListEquals([age2Active0, age1Active0],
+                     roleHistory.cloneAvailableList(0))
+  }
+}
@@ -129,6 +129,31 @@ class TestFindNodesForRelease extends BaseMockAppStateTest {
                age1Active4, age2Active2])
   }
 
+  @Test
+  public void testActiveNodeCount() throws Throwable {
+    assert 3 == nodeMap.getActiveNodeCount(0)
+    assert 0 == nodeMap.getActiveNodeCount(1)
+  }
+
+  @Test
+  public void testActiveNodeUpdates() throws Throwable {
+    age3Active0.get(0).onStartCompleted()
+    nodeMap.updateActiveNode(age3Active0, 0)
+    assert 4 == nodeMap.getActiveNodeCount(0)
+    age4Active1.get(0).release()
+    nodeMap.updateActiveNode(age4Active1, 0)
+    assert 3 == nodeMap.getActiveNodeCount(0)
+    assertListEquals(nodeMap.listActiveNodes(0),
+                     [age1Active4, age2Active2, age3Active0])
+  }
+
+  @Test
+  public void testRemovedNodeNotActive() throws Throwable {
+    nodeMap.remove(age1Active4.hostname)
+    assert 2 == nodeMap.getActiveNodeCount(0)
+    assertListEquals(nodeMap.listActiveNodes(0), [age2Active2, age4Active1])
+  }
+
   @Test
   public void testPurgeInactiveTime3() throws Throwable {
     assert nodeMap.purgeUnusedEntries(3) == 0;
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.fs.Path
+import org.apache.hoya.avro.RoleHistoryWriter
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.junit.Test
+
+/**
+ * Compare the save and load times and file sizes of the history encodings.
+ * The 100K entry run only takes place if the system property
+ * {@link #LARGE_RUN_PROPERTY} is set to true.
+ */
+@Slf4j
+@CompileStatic
+class TestHistoryEncodingPerformance extends BaseMockAppStateTest {
+
+  public static final String LARGE_RUN_PROPERTY = "hoya.test.history.large"
+
+  @Override
+  String getTestName() {
+    return "TestHistoryEncodingPerformance"
+  }
+
+  /**
+   * Build a history with the given number of entries, spread across
+   * all the mock roles
+   * @param entries entry count
+   * @return the history
+   */
+  RoleHistory buildHistory(int entries) {
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.onStart(fs, historyPath)
+    int hosts = (int) (entries / MockFactory.ROLE_COUNT)
+    for (int h = 0; h < hosts; h++) {
+      NodeInstance instance =
+          roleHistory.getOrCreateNodeInstance("host-${h}.example.org")
+      for (int r = 0; r < MockFactory.ROLE_COUNT; r++) {
+        instance.getOrCreate(r).lastUsed = 1000000L + h * 100 + r
+      }
+    }
+    return roleHistory
+  }
+
+  void compareEncodings(int entries) {
+    RoleHistory roleHistory = buildHistory(entries)
+    long savetime = 1
+    for (RoleHistoryWriter.Encoding encoding :
+        RoleHistoryWriter.Encoding.values()) {
+      RoleHistoryWriter writer = new RoleHistoryWriter(encoding)
+      Path path = writer.createHistoryFilename(historyPath, savetime++)
+      long start = System.nanoTime()
+      long written = writer.write(fs, path, true, roleHistory, savetime)
+      long saveNanos = System.nanoTime() - start
+      long size = fs.getFileStatus(path).len
+
+      RoleHistory loaded = new RoleHistory(MockFactory.ROLES)
+      start = System.nanoTime()
+      int read = writer.read(fs, path, loaded)
+      long loadNanos = System.nanoTime() - start
+      assert read == written
+      assert loaded.clusterSize == roleHistory.clusterSize
+      log.info(String.format(
+          "%-10s entries=%7d size=%10d bytes save=%6d ms load=%6d ms",
+          encoding, written, size,
+          (long) (saveNanos / 1000000), (long) (loadNanos / 1000000)))
+    }
+  }
+
+  @Test
+  public void testCompare1K() throws Throwable {
+    compareEncodings(1000)
+  }
+
+  @Test
+  public void testCompare10K() throws Throwable {
+    compareEncodings(10000)
+  }
+
+  @Test
+  public void testCompare100K() throws Throwable {
+    assume(Boolean.getBoolean(LARGE_RUN_PROPERTY),
+           "100K entry history comparison disabled")
+    compareEncodings(100000)
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.fs.FSDataInputStream
+import org.apache.hadoop.fs.Path
+import org.apache.hoya.avro.RoleHistoryWriter
+import org.apache.hoya.exceptions.BadConfigException
+import org.apache.hoya.yarn.appmaster.state.NodeEntry
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.junit.Test
+
+import static org.apache.hoya.avro.RoleHistoryWriter.Encoding.BINARY
+import static org.apache.hoya.avro.RoleHistoryWriter.Encoding.COMPRESSED
+import static org.apache.hoya.avro.RoleHistoryWriter.Encoding.JSON
+
+/**
+ * Test saving and loading the history in all the encodings
+ */
+@Slf4j
+@CompileStatic
+class TestHistoryRWEncodings extends BaseMockAppStateTest {
+
+  static long time = System.currentTimeMillis();
+
+  @Override
+  String getTestName() {
+    return "TestHistoryRWEncodings"
+  }
+
+  /**
+   * Save a history with two hosts in the given encoding, then read it back
+   * @param encoding encoding
+   * @return the path of the saved file
+   */
+  Path roundTrip(RoleHistoryWriter.Encoding encoding) {
+    RoleHistory roleHistory = new RoleHistory(MockFactory.ROLES)
+    roleHistory.historyWriter = new RoleHistoryWriter(encoding)
+    roleHistory.onStart(fs, historyPath)
+    NodeInstance localhost = roleHistory.getOrCreateNodeInstance("localhost")
+    NodeEntry ne1 = localhost.getOrCreate(0)
+    ne1.lastUsed = 0xf00d
+    NodeInstance server = roleHistory.getOrCreateNodeInstance("rack1server5")
+    NodeEntry ne2 = server.getOrCreate(1)
+    ne2.live = 1
+    long savetime = time++
+    Path history = roleHistory.saveHistory(savetime)
+    assert fs.isFile(history)
+
+    FSDataInputStream instream = fs.open(history)
+    try {
+      assert encoding == RoleHistoryWriter.detectEncoding(
+          new BufferedInputStream(instream))
+    } finally {
+      instream.close()
+    }
+
+    // read with a writer of a different encoding
+    RoleHistoryWriter reader = new RoleHistoryWriter(
+        encoding == JSON ? BINARY : JSON)
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert 2 == reader.read(fs, history, rh2)
+    assert rh2.clusterSize == 2
+    assert rh2.getExistingNodeInstance("localhost").get(0).lastUsed == 0xf00d
+    assert rh2.getExistingNodeInstance("rack1server5").get(1).lastUsed ==
+           savetime
+    return history
+  }
+
+  @Test
+  public void testJsonRoundTrip() throws Throwable {
+    roundTrip(JSON)
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws Throwable {
+    roundTrip(BINARY)
+  }
+
+  @Test
+  public void testCompressedRoundTrip() throws Throwable {
+    roundTrip(COMPRESSED)
+  }
+
+  @Test
+  public void testThawFromBinary() throws Throwable {
+    roundTrip(BINARY)
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.getExistingNodeInstance("localhost") != null
+  }
+
+  @Test
+  public void testBrokenBinaryFileSkipped() throws Throwable {
+    Path good = roundTrip(COMPRESSED)
+    RoleHistoryWriter historyWriter = new RoleHistoryWriter(BINARY)
+    Path badfile = historyWriter.createHistoryFilename(historyPath, time++)
+    def out = fs.create(badfile)
+    out.write([0x7f, 0x01, 0x02] as byte[])
+    out.close()
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    describe("IGNORE STACK TRACE BELOW")
+    assert rh2.onStart(fs, historyPath)
+    describe("IGNORE STACK TRACE ABOVE")
+    assert rh2.getExistingNodeInstance("localhost") != null
+    assert fs.exists(good)
+  }
+
+  @Test
+  public void testEncodingOptions() throws Throwable {
+    assert JSON == RoleHistoryWriter.Encoding.fromOption("json")
+    assert BINARY == RoleHistoryWriter.Encoding.fromOption("Binary")
+    assert COMPRESSED == RoleHistoryWriter.Encoding.fromOption(" compressed ")
+    try {
+      RoleHistoryWriter.Encoding.fromOption("xml")
+      assert false: "expected a failure"
+    } catch (BadConfigException expected) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.NodeEntry
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.NodeMap
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.junit.Test
+
+/**
+ * Test the storage of node entries in a node instance, and time
+ * a scan of a large history
+ */
+@Slf4j
+@CompileStatic
+class TestNodeInstanceEntries extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestNodeInstanceEntries"
+  }
+
+  @Test
+  public void testGetOutOfRange() throws Throwable {
+    NodeInstance ni = new NodeInstance("host", 2)
+    assert ni.get(-1) == null
+    assert ni.get(0) == null
+    assert ni.get(5) == null
+    assert ni.getActiveRoleInstances(5) == 0
+  }
+
+  @Test
+  public void testGetOrCreateGrows() throws Throwable {
+    NodeInstance ni = new NodeInstance("host", 2)
+    NodeEntry entry = ni.getOrCreate(5)
+    assert entry.index == 5
+    assert entry.is(ni.get(5))
+    assert entry.is(ni.getOrCreate(5))
+    assert ni.get(1) == null
+  }
+
+  @Test
+  public void testSetAndRemove() throws Throwable {
+    NodeInstance ni = new NodeInstance("host", 2)
+    NodeEntry entry = new NodeEntry(1)
+    ni.set(1, entry)
+    assert entry.is(ni.get(1))
+    assert entry.is(ni.remove(1))
+    assert ni.get(1) == null
+    assert ni.remove(1) == null
+  }
+
+  @Test
+  public void testPurgeKeepsActiveEntries() throws Throwable {
+    NodeInstance ni = new NodeInstance("host", 3)
+    ni.getOrCreate(0).lastUsed = 10
+    ni.getOrCreate(1).live = 1
+    ni.getOrCreate(2).lastUsed = 30
+    assert ni.purgeUnusedEntries(20)
+    assert ni.get(0) == null
+    assert ni.get(1) != null
+    assert ni.get(2) != null
+    ni.get(1).live = 0
+    assert !ni.purgeUnusedEntries(40)
+  }
+
+  @Test
+  public void testCountersFloorAtZero() throws Throwable {
+    NodeEntry entry = new NodeEntry(0)
+    entry.requestCompleted()
+    assert entry.requested == 0
+    entry.onStartCompleted()
+    assert entry.starting == 0
+    assert entry.live == 1
+    assert entry.containerCompleted(false)
+    assert entry.live == 0
+    assert entry.failed == 1
+  }
+
+  /**
+   * Time a pass over a 5K host, 10 role history of the kind made
+   * when reviewing the cluster
+   */
+  @Test
+  public void testScanLargeHistory() throws Throwable {
+    int hosts = 5000
+    int roles = 10
+    Runtime runtime = Runtime.runtime
+    System.gc()
+    long heapBefore = runtime.totalMemory() - runtime.freeMemory()
+    NodeMap nodeMap = new NodeMap(roles)
+    for (int h = 0; h < hosts; h++) {
+      NodeInstance ni = nodeMap.getOrCreate("host-${h}.example.org")
+      for (int r = 0; r < roles; r++) {
+        NodeEntry entry = ni.getOrCreate(r)
+        entry.lastUsed = h
+        if ((h + r) % 3 == 0) {
+          entry.live = 1
+        }
+      }
+    }
+    System.gc()
+    long heapAfter = runtime.totalMemory() - runtime.freeMemory()
+
+    int passes = 20
+    int available = 0
+    long start = System.nanoTime()
+    for (int p = 0; p < passes; p++) {
+      available = 0
+      for (NodeInstance ni : nodeMap.values()) {
+        for (int r = 0; r < roles; r++) {
+          NodeEntry entry = ni.get(r)
+          if (entry != null && entry.available) {
+            available++
+          }
+        }
+      }
+    }
+    long nanos = System.nanoTime() - start
+    assert available > 0
+    log.info(String.format(
+        "%d hosts x %d roles: approx heap %d KB; scan %d us",
+        hosts, roles, (long) ((heapAfter - heapBefore) / 1024),
+        (long) (nanos / passes / 1000)))
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hoya.yarn.appmaster.state.NodeInstance
+import org.apache.hoya.yarn.appmaster.state.NodeMap
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.junit.Test
+
+/**
+ * Time the active node listing and release selection of a large
+ * node map against a full scan of the map.
+ * Role <i>r</i> is active on one host in 2<sup>r</sup>, so the
+ * roles' footprints range from the whole cluster down to a few percent
+ * of it.
+ */
+@Slf4j
+@CompileStatic
+class TestNodeMapPerformance extends BaseMockAppStateTest {
+
+  public static final int HOSTS = 10000
+  public static final int ROLES = 8
+  public static final int ITERATIONS = 20
+
+  @Override
+  String getTestName() {
+    return "TestNodeMapPerformance"
+  }
+
+  NodeMap buildNodeMap() {
+    NodeMap nodeMap = new NodeMap(ROLES)
+    for (int h = 0; h < HOSTS; h++) {
+      NodeInstance ni = new NodeInstance("host-${h}.example.org", ROLES)
+      for (int r = 0; r < ROLES; r++) {
+        if (h % (1 << r) == 0) {
+          // vary the load so that the release selection has work to do
+          ni.getOrCreate(r).live = 1 + (h >> r) % 3
+        }
+      }
+      nodeMap.put(ni.hostname, ni)
+    }
+    return nodeMap
+  }
+
+  /**
+   * The listing as it was before the active node sets: a scan of
+   * every node in the map
+   */
+  List<NodeInstance> scanActiveNodes(NodeMap nodeMap, int role) {
+    List<NodeInstance> nodes = []
+    for (NodeInstance instance : nodeMap.values()) {
+      if (instance.getActiveRoleInstances(role) > 0) {
+        nodes.add(instance)
+      }
+    }
+    Collections.sort(nodes, new NodeInstance.moreActiveThan(role))
+    return nodes
+  }
+
+  @Test
+  public void testListActiveNodes() throws Throwable {
+    NodeMap nodeMap = buildNodeMap()
+    for (int r = 0; r < ROLES; r++) {
+      List<NodeInstance> scanned = scanActiveNodes(nodeMap, r)
+      List<NodeInstance> listed = nodeMap.listActiveNodes(r)
+      assert listed.size() == scanned.size()
+      assert listed.size() == nodeMap.getActiveNodeCount(r)
+      assert new HashSet<NodeInstance>(listed) ==
+             new HashSet<NodeInstance>(scanned)
+
+      long start = System.nanoTime()
+      for (int i = 0; i < ITERATIONS; i++) {
+        scanActiveNodes(nodeMap, r)
+      }
+      long scanNanos = System.nanoTime() - start
+      start = System.nanoTime()
+      for (int i = 0; i < ITERATIONS; i++) {
+        nodeMap.listActiveNodes(r)
+      }
+      long listNanos = System.nanoTime() - start
+      log.info(String.format(
+          "role %d active nodes=%5d scan=%8d us indexed=%8d us",
+          r, listed.size(),
+          (long) (scanNanos / ITERATIONS / 1000),
+          (long) (listNanos / ITERATIONS / 1000)))
+    }
+  }
+
+  @Test
+  public void testFindNodesForRelease() throws Throwable {
+    NodeMap nodeMap = buildNodeMap()
+    for (int r = 0; r < ROLES; r++) {
+      int count = nodeMap.getActiveNodeCount(r)
+      long start = System.nanoTime()
+      List<NodeInstance> released = null
+      for (int i = 0; i < ITERATIONS; i++) {
+        released = nodeMap.findNodesForRelease(r, count)
+      }
+      long nanos = System.nanoTime() - start
+      assert released.size() == count
+      log.info(String.format(
+          "role %d release %5d nodes=%8d us",
+          r, count, (long) (nanos / ITERATIONS / 1000)))
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.model.history
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Slf4j
+import org.apache.hadoop.fs.FSDataOutputStream
+import org.apache.hadoop.fs.Path
+import org.apache.hoya.avro.RoleHistoryWriter
+import org.apache.hoya.yarn.appmaster.state.ContainerPriority
+import org.apache.hoya.yarn.appmaster.state.RoleHistory
+import org.apache.hoya.yarn.model.mock.BaseMockAppStateTest
+import org.apache.hoya.yarn.model.mock.MockContainer
+import org.apache.hoya.yarn.model.mock.MockFactory
+import org.apache.hoya.yarn.model.mock.MockNodeId
+import org.junit.Test
+
+/**
+ * Test the journalling of role history changes between snapshots
+ */
+@Slf4j
+@CompileStatic
+class TestRoleHistoryJournal extends BaseMockAppStateTest {
+
+  @Override
+  String getTestName() {
+    return "TestRoleHistoryJournal"
+  }
+
+  /**
+   * Role history whose clock ticks on every call, so that every
+   * snapshot gets a different filename
+   */
+  static class TickingRoleHistory extends RoleHistory {
+    long time = 1000
+
+    TickingRoleHistory() {
+      super(MockFactory.ROLES)
+    }
+
+    @Override
+    protected long now() {
+      return time++
+    }
+  }
+
+  MockContainer container(String hostname, int role) {
+    MockContainer container = factory.newContainer()
+    container.nodeId = new MockNodeId(hostname, 0)
+    container.priority = ContainerPriority.createPriority(role, false)
+    return container
+  }
+
+  /**
+   * Start a container and then release it
+   * @param roleHistory history
+   * @param container container
+   */
+  void startAndRelease(RoleHistory roleHistory, MockContainer container) {
+    roleHistory.onContainerAssigned(container)
+    roleHistory.onContainerStarted(container)
+    roleHistory.onContainerReleaseSubmitted(container)
+    roleHistory.onReleaseCompleted(container)
+  }
+
+  int countSnapshots() {
+    return new RoleHistoryWriter().findAllHistoryEntries(fs, historyPath,
+                                                         true).size()
+  }
+
+  @Test
+  public void testChangesAreJournalled() throws Throwable {
+    RoleHistory roleHistory = new TickingRoleHistory()
+    assert !roleHistory.onStart(fs, historyPath)
+    MockContainer c1 = container("host1", 0)
+    // the first change saves a snapshot, and opens the journal
+    roleHistory.onContainerAssigned(c1)
+    roleHistory.onContainerStarted(c1)
+    assert roleHistory.journal != null
+    assert countSnapshots() == 1
+    assert !roleHistory.dirty
+
+    startAndRelease(roleHistory, container("host2", 1))
+    startAndRelease(roleHistory, container("host3", 2))
+    assert countSnapshots() == 1
+    assert roleHistory.journal.recordCount == 4
+    roleHistory.closeJournal()
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize == 3
+    assert rh2.getExistingNodeInstance("host1").get(0) != null
+    long lastUsed =
+        roleHistory.getExistingNodeInstance("host2").get(1).lastUsed
+    assert lastUsed > 0
+    assert rh2.getExistingNodeInstance("host2").get(1).lastUsed == lastUsed
+    assert rh2.getExistingNodeInstance("host3").get(2) != null
+  }
+
+  @Test
+  public void testCompaction() throws Throwable {
+    RoleHistory roleHistory = new TickingRoleHistory()
+    roleHistory.journalCompactionThreshold = 2
+    roleHistory.onStart(fs, historyPath)
+    startAndRelease(roleHistory, container("host1", 0))
+    // snapshot + one journalled change
+    assert countSnapshots() == 1
+    startAndRelease(roleHistory, container("host2", 0))
+    // one more journalled change, then a snapshot
+    assert countSnapshots() == 2
+    assert roleHistory.journal.recordCount == 0
+    roleHistory.closeJournal()
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.clusterSize == 2
+    // older snapshot and its journal were purged on the thaw
+    assert countSnapshots() == 1
+  }
+
+  @Test
+  public void testJournalDisabled() throws Throwable {
+    RoleHistory roleHistory = new TickingRoleHistory()
+    roleHistory.journalCompactionThreshold = 0
+    roleHistory.onStart(fs, historyPath)
+    startAndRelease(roleHistory, container("host1", 0))
+    assert roleHistory.journal == null
+    assert countSnapshots() == 2
+  }
+
+  @Test
+  public void testTruncatedJournal() throws Throwable {
+    RoleHistory roleHistory = new TickingRoleHistory()
+    roleHistory.onStart(fs, historyPath)
+    startAndRelease(roleHistory, container("host1", 0))
+    startAndRelease(roleHistory, container("host2", 0))
+    Path journal = roleHistory.journal.path
+    roleHistory.closeJournal()
+
+    // chop the last byte off the journal
+    byte[] data = new byte[(int) fs.getFileStatus(journal).len]
+    def instream = fs.open(journal)
+    instream.readFully(data)
+    instream.close()
+    FSDataOutputStream out = fs.create(journal, true)
+    out.write(data, 0, data.length - 1)
+    out.close()
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.getExistingNodeInstance("host1") != null
+  }
+
+  @Test
+  public void testMismatchedJournalIgnored() throws Throwable {
+    RoleHistory roleHistory = new TickingRoleHistory()
+    roleHistory.onStart(fs, historyPath)
+    startAndRelease(roleHistory, container("host1", 0))
+    startAndRelease(roleHistory, container("host2", 0))
+    Path journal = roleHistory.journal.path
+    roleHistory.closeJournal()
+
+    // a journal which claims to follow a different snapshot
+    RoleHistoryWriter writer = new RoleHistoryWriter()
+    writer.createJournal(fs, new Path(journal.parent, "ignored.json"),
+                         12345, MockFactory.ROLE_COUNT).close()
+    fs.delete(journal, false)
+    assert fs.rename(new Path(journal.parent, "ignored.journal"), journal)
+
+    RoleHistory rh2 = new RoleHistory(MockFactory.ROLES)
+    assert rh2.onStart(fs, historyPath)
+    assert rh2.getExistingNodeInstance("host2") == null
+  }
+}
@@ -71,6 +71,14 @@ abstract class BaseMockAppStateTest extends HoyaTestBase implements MockRoles {
     return new MockYarnEngine(64, 1)
   }
 
+  /**
+   * Override point: called in initApp() to create the application state
+   * @return the (unbuilt) application state
+   */
+  public AppState createAppState() {
+    return new AppState(new MockRecordFactory())
+  }
+
   @Before
   void initApp(){
 
@@ -83,7 +91,7 @@ abstract class BaseMockAppStateTest extends HoyaTestBase implements MockRoles {
     historyWorkDir = new File("target/history", historyDirName)
     historyPath = new Path(historyWorkDir.toURI())
     fs.delete(historyPath, true)
-    appState = new AppState(new MockRecordFactory())
+    appState = createAppState()
     appState.setContainerLimits(RM_MAX_RAM, RM_MAX_CORES)
     appState.buildInstance(
         factory.newInstanceDefinition(0, 0, 0),
@@ -24,6 +24,7 @@ import org.apache.hadoop.service.LifecycleEvent
 import org.apache.hadoop.service.ServiceStateChangeListener
 import org.apache.hadoop.service.Service.STATE
 import org.apache.hadoop.yarn.api.records.Container
+import org.apache.hadoop.yarn.api.records.ContainerId
 import org.apache.hadoop.yarn.api.records.ContainerLaunchContext
 import org.apache.hoya.api.ClusterDescription
 import org.apache.hoya.core.conf.AggregateConf
@@ -36,8 +37,12 @@ import org.apache.hoya.tools.HoyaFileSystem
 import org.apache.hoya.yarn.appmaster.state.StateAccessForProviders
 import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentRestOperations
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatch
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatchResponse
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse
 import org.apache.hoya.yarn.appmaster.web.rest.agent.Register
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegisterBatch
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationBatchResponse
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationResponse
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationStatus
 import org.apache.hoya.yarn.service.EventCallback
@@ -175,6 +180,16 @@ class MockProviderService implements ProviderService {
     return null;
   }
 
+  @Override
+  public Map<String, Integer> buildProviderStatistics() {
+    return [:]
+  }
+
+  @Override
+  public Map<String, Object> buildMetrics() {
+    return [:]
+  }
+
   @Override
   void buildContainerLaunchContext(
       ContainerLaunchContext ctx,
@@ -215,7 +230,28 @@ class MockProviderService implements ProviderService {
                 // dummy impl
                 return new HeartBeatResponse();
             }
+
+            @Override
+            public HeartBeatResponse handleHeartBeat(HeartBeat heartBeat, long timeout) {
+                // dummy impl
+                return new HeartBeatResponse();
+            }
+
+            @Override
+            public RegistrationBatchResponse handleRegistrationBatch(RegisterBatch registrations) {
+                // dummy impl
+                return new RegistrationBatchResponse();
+            }
+
+            @Override
+            public HeartBeatBatchResponse handleHeartBeatBatch(HeartBeatBatch heartBeats) {
+                // dummy impl
+                return new HeartBeatBatchResponse();
+            }
         }
     }
 
+  @Override
+  void notifyContainerCompleted(ContainerId containerId) {
+  }
 }
@@ -20,6 +20,7 @@ package org.apache.hoya.yarn.model.mock
 
 import groovy.util.logging.Slf4j
 import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.CancelRequestOperation
 import org.apache.hoya.yarn.appmaster.state.ContainerReleaseOperation
 import org.apache.hoya.yarn.appmaster.state.ContainerRequestOperation
 import org.apache.hoya.yarn.appmaster.state.RMOperationHandler
@@ -43,6 +44,12 @@ class MockRMOperationHandler extends RMOperationHandler {
     log.info("Requesting container role #" + req.priority);
   }
 
+  @Override
+  public void removeContainerRequest(AMRMClient.ContainerRequest req) {
+    operations.add(new CancelRequestOperation(req))
+    log.info("Cancelling request for container role #" + req.priority);
+  }
+
   /**
    * clear the history
    */
@@ -21,6 +21,7 @@ package org.apache.hoya.yarn.model.mock
 import groovy.transform.CompileStatic
 import groovy.util.logging.Slf4j
 import org.apache.hoya.yarn.appmaster.state.AbstractRMOperation
+import org.apache.hoya.yarn.appmaster.state.CancelRequestOperation
 import org.apache.hoya.yarn.appmaster.state.ContainerReleaseOperation
 import org.apache.hoya.yarn.appmaster.state.ContainerRequestOperation
 import org.apache.hadoop.yarn.api.records.ApplicationAttemptId
@@ -95,7 +96,8 @@ class MockYarnEngine {
   /**
    * Process a list of operations -release containers to be released,
    * allocate those for which there is space (but don't rescan the list after
-   * the scan). Unsatisifed entries are appended to the "pending" list
+   * the scan). Unsatisifed entries are appended to the "pending" list;
+   * cancelled requests are removed from it
    * @param ops operations
    * @return the list of all satisfied operations
    */
@@ -108,6 +110,12 @@ class MockYarnEngine {
         ContainerId cid = cro.containerId
         releaseContainer(cid);
         released.add(cid)
+      } else if (op instanceof CancelRequestOperation) {
+        AMRMClient.ContainerRequest request =
+            ((CancelRequestOperation) op).request
+        pending.removeAll { ContainerRequestOperation pendingOp ->
+          pendingOp.request.is(request)
+        }
       } else {
         ContainerRequestOperation req = (ContainerRequestOperation) op
         Container container = allocateContainer(req.request)
@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.yarn.api.records.LocalResource;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class LaunchTemplateCacheTest {
+
+  private Map<String, String> env(String value) {
+    Map<String, String> env = new HashMap<String, String>();
+    env.put("KEY", value);
+    return env;
+  }
+
+  private Map<String, LocalResource> resources() {
+    return new HashMap<String, LocalResource>();
+  }
+
+  @Test
+  public void testLookupAfterPut() {
+    LaunchTemplateCache cache = new LaunchTemplateCache();
+    TestCase.assertNull(cache.lookup("worker", 1));
+    cache.put("worker", 1, resources(), env("1"));
+    LaunchTemplateCache.Template template = cache.lookup("worker", 1);
+    TestCase.assertNotNull(template);
+    TestCase.assertEquals("1", template.getEnvironment().get("KEY"));
+    TestCase.assertNull(cache.lookup("master", 1));
+  }
+
+  @Test
+  public void testNewVersionInvalidates() {
+    LaunchTemplateCache cache = new LaunchTemplateCache();
+    cache.lookup("worker", 1);
+    cache.put("worker", 1, resources(), env("1"));
+    TestCase.assertNull(cache.lookup("worker", 2));
+    TestCase.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testStalePutNotCached() {
+    LaunchTemplateCache cache = new LaunchTemplateCache();
+    cache.lookup("worker", 2);
+    TestCase.assertNotNull(cache.put("worker", 1, resources(), env("1")));
+    TestCase.assertNull(cache.lookup("worker", 2));
+  }
+
+  @Test
+  public void testUnversionedNeverCached() {
+    LaunchTemplateCache cache = new LaunchTemplateCache();
+    cache.lookup("worker", LaunchTemplateCache.UNVERSIONED);
+    cache.put("worker", LaunchTemplateCache.UNVERSIONED, resources(), env("1"));
+    TestCase.assertNull(cache.lookup("worker", LaunchTemplateCache.UNVERSIONED));
+  }
+
+  @Test
+  public void testTemplateCopiesAreIsolated() {
+    LaunchTemplateCache cache = new LaunchTemplateCache();
+    cache.lookup("worker", 1);
+    cache.put("worker", 1, resources(), env("1"));
+    cache.lookup("worker", 1).getEnvironment().put("KEY", "changed");
+    TestCase.assertEquals("1",
+        cache.lookup("worker", 1).getEnvironment().get("KEY"));
+  }
+}
@@ -0,0 +1,443 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentRestOperations;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.CommandReport;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.ExecutionCommand;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HostStatus;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.Register;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationResponse;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationStatus;
+import org.apache.hoya.yarn.model.mock.MockContainerId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates a fleet of agents registering and heartbeating against an
+ * agent provider, to measure how many agents an AM can sustain.
+ * <p>
+ * Each agent runs the agent protocol: it registers, heartbeats at a
+ * fixed interval and reports the outcome of every command it is sent,
+ * failing a configurable fraction of them. With churn enabled, agents'
+ * containers complete at random and are replaced by new ones.
+ * <p>
+ * The agents talk to the provider through {@link AgentRestOperations};
+ * the in-process provider can be called directly, or a client of the
+ * REST API substituted to include the web tier.
+ */
+public class AgentFleetSimulator {
+  protected static final Logger log =
+      LoggerFactory.getLogger(AgentFleetSimulator.class);
+
+  private final AgentProviderService provider;
+  private final AgentRestOperations agentOps;
+  private final List<String> roles;
+
+  private int agents = 100;
+  private int threads = 8;
+  private long heartbeatInterval = 100;
+  private double failureRate = 0;
+  private double churnRate = 0;
+  private int latencySamples = 1 << 20;
+
+  private final AtomicInteger containerIds = new AtomicInteger();
+  private final AtomicLong heartbeats = new AtomicLong();
+  private final AtomicLong registrations = new AtomicLong();
+  private final AtomicLong commands = new AtomicLong();
+  private final AtomicLong failedCommands = new AtomicLong();
+  private final AtomicLong churned = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicInteger sampleCount = new AtomicInteger();
+  private final AtomicLong workerCpu = new AtomicLong();
+  private final List<Thread> workers = new ArrayList<Thread>();
+  private long[] latencies;
+
+  /**
+   * Create a simulator
+   * @param provider provider whose component instances the agents run
+   * @param agentOps the agent operations to call
+   * @param roles roles to spread the agents over
+   */
+  public AgentFleetSimulator(AgentProviderService provider,
+                             AgentRestOperations agentOps,
+                             List<String> roles) {
+    this.provider = provider;
+    this.agentOps = agentOps;
+    this.roles = roles;
+  }
+
+  public void setAgents(int agents) {
+    this.agents = agents;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  public void setHeartbeatInterval(long heartbeatInterval) {
+    this.heartbeatInterval = heartbeatInterval;
+  }
+
+  /**
+   * @param failureRate fraction of commands whose outcome is FAILED
+   */
+  public void setFailureRate(double failureRate) {
+    this.failureRate = failureRate;
+  }
+
+  /**
+   * @param churnRate chance, on each heartbeat, of the agent's container
+   * completing and being replaced
+   */
+  public void setChurnRate(double churnRate) {
+    this.churnRate = churnRate;
+  }
+
+  public void setLatencySamples(int latencySamples) {
+    this.latencySamples = latencySamples;
+  }
+
+  /**
+   * Run the fleet
+   * @param duration how long to run for, in milliseconds
+   * @return the report
+   * @throws InterruptedException if interrupted
+   */
+  public Report run(long duration) throws InterruptedException {
+    return run(duration, duration, null);
+  }
+
+  /**
+   * Run the fleet for at least the minimum duration, then until the
+   * component instance of every agent is in the target state or the
+   * maximum duration is reached. This lets tests wait for the fleet to
+   * settle rather than rely on it doing so in a fixed time.
+   * @param minDuration minimum time to run for, in milliseconds
+   * @param maxDuration maximum time to run for, in milliseconds
+   * @param target state to wait for; null to run for the minimum
+   * @return the report
+   * @throws InterruptedException if interrupted
+   */
+  public Report run(long minDuration, long maxDuration, State target)
+      throws InterruptedException {
+    latencies = new long[latencySamples];
+    sampleCount.set(0);
+    workerCpu.set(0);
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    System.gc();
+    long heapBefore = memory.getHeapMemoryUsage().getUsed();
+
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(threads, new WorkerFactory());
+    List<SimulatedAgent> fleet = new ArrayList<SimulatedAgent>(agents);
+    Random random = new Random();
+    for (int i = 0; i < agents; i++) {
+      SimulatedAgent agent =
+          new SimulatedAgent(roles.get(i % roles.size()), new Random(i));
+      fleet.add(agent);
+      // spread the first heartbeats over the interval
+      executor.scheduleAtFixedRate(agent,
+          (long) (random.nextDouble() * heartbeatInterval),
+          heartbeatInterval, TimeUnit.MILLISECONDS);
+    }
+    long start = System.nanoTime();
+    Thread.sleep(minDuration);
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxDuration);
+    while (target != null && !allInState(fleet, target)
+           && System.nanoTime() < deadline) {
+      Thread.sleep(50);
+    }
+    executor.shutdownNow();
+    executor.awaitTermination(maxDuration, TimeUnit.MILLISECONDS);
+    long elapsed = System.nanoTime() - start;
+    // the workers add their CPU time on the way out
+    synchronized (workers) {
+      for (Thread worker : workers) {
+        worker.join(maxDuration);
+      }
+      workers.clear();
+    }
+
+    long heapAfter = memory.getHeapMemoryUsage().getUsed();
+    Report report = new Report();
+    report.agents = agents;
+    report.elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+    report.heartbeats = heartbeats.get();
+    report.registrations = registrations.get();
+    report.commands = commands.get();
+    report.failedCommands = failedCommands.get();
+    report.churned = churned.get();
+    report.errors = errors.get();
+    report.cpuMillis = TimeUnit.NANOSECONDS.toMillis(workerCpu.get());
+    report.heapUsedBefore = heapBefore;
+    report.heapUsedAfter = heapAfter;
+    int samples = Math.min(sampleCount.get(), latencies.length);
+    long[] sorted = Arrays.copyOf(latencies, samples);
+    Arrays.sort(sorted);
+    report.p50Micros = percentile(sorted, 50);
+    report.p99Micros = percentile(sorted, 99);
+    report.maxMicros = samples > 0 ? sorted[samples - 1] / 1000 : 0;
+    for (SimulatedAgent agent : fleet) {
+      ComponentInstanceState instance =
+          provider.getComponentInstance(agent.containerId.toString());
+      if (instance != null) {
+        report.addState(instance.getState());
+      }
+    }
+    return report;
+  }
+
+  /**
+   * Are the component instances of all the agents in a state?
+   * @param fleet agents
+   * @param state state
+   * @return true if every agent's instance is in the state
+   */
+  private boolean allInState(List<SimulatedAgent> fleet, State state) {
+    for (SimulatedAgent agent : fleet) {
+      ComponentInstanceState instance =
+          provider.getComponentInstance(agent.containerId.toString());
+      if (instance == null || instance.getState() != state) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+    return sorted[Math.max(rank, 0)] / 1000;
+  }
+
+  private void recordLatency(long nanos) {
+    int index = sampleCount.getAndIncrement();
+    if (index < latencies.length) {
+      latencies[index] = nanos;
+    }
+  }
+
+  /**
+   * Creates the worker threads. Each adds the CPU time it has used to
+   * the total as it exits; this is the time spent in the provider plus
+   * the simulation's own small overhead. The threads are kept so the
+   * run can wait for them to exit.
+   */
+  private class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable r) {
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            r.run();
+          } finally {
+            long cpu = ManagementFactory.getThreadMXBean()
+                                        .getCurrentThreadCpuTime();
+            if (cpu > 0) {
+              workerCpu.addAndGet(cpu);
+            }
+          }
+        }
+      }, "agent-simulator-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      synchronized (workers) {
+        workers.add(thread);
+      }
+      return thread;
+    }
+  }
+
+  /**
+   * One agent. Its heartbeats are serialized by the executor, as it is
+   * scheduled at a fixed rate.
+   */
+  private class SimulatedAgent implements Runnable {
+    private final String role;
+    private final Random random;
+    /**
+     * The agent's container; read by the thread running the fleet
+     */
+    private volatile ContainerId containerId;
+    private String label;
+    private boolean registered;
+    private long responseId;
+    private ExecutionCommand pending;
+
+    private SimulatedAgent(String role, Random random) {
+      this.role = role;
+      this.random = random;
+      launch();
+    }
+
+    /**
+     * Launch the agent in a new container
+     */
+    private void launch() {
+      containerId = new MockContainerId(containerIds.incrementAndGet());
+      label = containerId + "___" + role;
+      provider.registerComponentInstance(label, role, containerId.toString());
+      registered = false;
+      pending = null;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (churnRate > 0 && random.nextDouble() < churnRate) {
+          provider.notifyContainerCompleted(containerId);
+          churned.incrementAndGet();
+          launch();
+        }
+        long start = System.nanoTime();
+        if (!registered) {
+          register();
+        } else {
+          heartbeat();
+        }
+        recordLatency(System.nanoTime() - start);
+      } catch (RuntimeException e) {
+        errors.incrementAndGet();
+        log.warn("Agent {} failed: {}", label, e.toString());
+      }
+    }
+
+    private void register() {
+      Register registration = new Register();
+      registration.setResponseId(-1);
+      registration.setTimestamp(System.currentTimeMillis());
+      registration.setHostname(label);
+      RegistrationResponse response = agentOps.handleRegistration(registration);
+      registrations.incrementAndGet();
+      if (response.getResponseStatus() == RegistrationStatus.OK) {
+        registered = true;
+        responseId = response.getResponseId();
+      }
+    }
+
+    private void heartbeat() {
+      HeartBeat heartBeat = new HeartBeat();
+      heartBeat.setResponseId(responseId);
+      heartBeat.setTimestamp(System.currentTimeMillis());
+      heartBeat.setHostname(label);
+      heartBeat.setNodeStatus(
+          new HostStatus(HostStatus.Status.HEALTHY, "NONE"));
+      if (pending != null) {
+        boolean failed = random.nextDouble() < failureRate;
+        if (failed) {
+          failedCommands.incrementAndGet();
+        }
+        CommandReport report = new CommandReport();
+        report.setTaskId(pending.getTaskId());
+        report.setRole(role);
+        report.setRoleCommand(pending.getRoleCommand());
+        report.setStatus(failed ? CommandResult.FAILED.toString()
+                                : CommandResult.COMPLETED.toString());
+        report.setExitCode(failed ? 1 : 0);
+        heartBeat.getReports().add(report);
+        pending = null;
+      }
+      HeartBeatResponse response = agentOps.handleHeartBeat(heartBeat);
+      heartbeats.incrementAndGet();
+      responseId = response.getResponseId();
+      List<ExecutionCommand> issued = response.getExecutionCommands();
+      if (issued != null && !issued.isEmpty()) {
+        commands.addAndGet(issued.size());
+        pending = issued.get(issued.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * The outcome of a run
+   */
+  public static class Report {
+    public int agents;
+    public long elapsedMillis;
+    public long heartbeats;
+    public long registrations;
+    public long commands;
+    public long failedCommands;
+    public long churned;
+    public long errors;
+    public long p50Micros;
+    public long p99Micros;
+    public long maxMicros;
+    public long cpuMillis;
+    public long heapUsedBefore;
+    public long heapUsedAfter;
+    public final Map<State, Integer> instanceStates =
+        new EnumMap<State, Integer>(State.class);
+
+    void addState(State state) {
+      Integer count = instanceStates.get(state);
+      instanceStates.put(state, count == null ? 1 : count + 1);
+    }
+
+    public int getInstanceCount(State state) {
+      Integer count = instanceStates.get(state);
+      return count == null ? 0 : count;
+    }
+
+    /**
+     * Get the throughput of agent requests
+     * @return requests per second
+     */
+    public double getThroughput() {
+      return elapsedMillis > 0
+             ? (heartbeats + registrations) * 1000.0 / elapsedMillis
+             : 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d agents for %d ms: %d heartbeats, %d registrations," +
+          " %.0f requests/s; latency p50 %d us, p99 %d us, max %d us;" +
+          " %d commands, %d failed; %d churned; %d errors;" +
+          " CPU %d ms; heap %d MB -> %d MB; instances %s",
+          agents, elapsedMillis, heartbeats, registrations, getThroughput(),
+          p50Micros, p99Micros, maxMicros, commands, failedCommands, churned,
+          errors, cpuMillis, heapUsedBefore >> 20, heapUsedAfter >> 20,
+          instanceStates);
+    }
+  }
+}
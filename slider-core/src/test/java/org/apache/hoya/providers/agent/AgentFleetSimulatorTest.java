@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.apache.hoya.core.conf.AggregateConf;
+import org.apache.hoya.core.conf.ConfTreeOperations;
+import org.apache.hoya.yarn.model.mock.MockRoles;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the agent fleet simulator against an agent provider bound to a
+ * mock application state. The fleet size and timings are small by
+ * default, so it runs as a unit test; set the system properties
+ * {@code agent.simulator.agents}, {@code agent.simulator.interval} and
+ * {@code agent.simulator.duration} to run a capacity benchmark.
+ */
+public class AgentFleetSimulatorTest {
+  protected static final Logger log =
+      LoggerFactory.getLogger(AgentFleetSimulatorTest.class);
+
+  private static final List<String> ROLES = Arrays.asList(
+      MockRoles.ROLE0, MockRoles.ROLE1, MockRoles.ROLE2);
+
+  private AgentProviderService provider;
+
+  @Before
+  public void setup() throws Exception {
+    provider = bind(newInstanceDefinition());
+  }
+
+  /**
+   * Create the instance definition the fleet runs, with a larger
+   * set of configurations than the default
+   * @return a new instance definition
+   */
+  private AggregateConf newInstanceDefinition() {
+    AggregateConf instanceDefinition =
+        AgentProviderTestUtils.newInstanceDefinition(ROLES);
+    ConfTreeOperations appConf = instanceDefinition.getAppConfOperations();
+    for (int i = 0; i < 20; i++) {
+      appConf.set("site.hbase-site.property." + i, "value-" + i);
+    }
+    return instanceDefinition;
+  }
+
+  private AgentProviderService bind(AggregateConf instanceDefinition)
+      throws Exception {
+    return AgentProviderTestUtils.bind(instanceDefinition, "fleet");
+  }
+
+  private AgentFleetSimulator simulator(int agents) {
+    AgentFleetSimulator simulator =
+        new AgentFleetSimulator(provider, provider, ROLES);
+    simulator.setAgents(Integer.getInteger("agent.simulator.agents", agents));
+    simulator.setHeartbeatInterval(
+        Long.getLong("agent.simulator.interval", 20));
+    return simulator;
+  }
+
+  private long duration() {
+    return Long.getLong("agent.simulator.duration", 2000);
+  }
+
+  /**
+   * Run the fleet for the duration, then until every instance has
+   * started, so a slow host does not fail the test
+   * @param simulator simulator
+   * @return the report
+   */
+  private AgentFleetSimulator.Report runUntilStarted(
+      AgentFleetSimulator simulator) throws InterruptedException {
+    return simulator.run(duration(), duration() + 60000, State.STARTED);
+  }
+
+  @Test
+  public void testFleetStarts() throws Throwable {
+    AgentFleetSimulator simulator = simulator(300);
+    AgentFleetSimulator.Report report = runUntilStarted(simulator);
+    log.info("{}", report);
+    TestCase.assertEquals(0, report.errors);
+    TestCase.assertTrue(report.heartbeats > 0);
+    // every agent is installed and started
+    TestCase.assertEquals(report.agents, report.getInstanceCount(State.STARTED));
+    TestCase.assertEquals(2 * report.agents, report.commands);
+    TestCase.assertEquals(report.heartbeats,
+                          provider.getHeartbeatMetrics().getHeartbeatCount());
+  }
+
+  @Test
+  public void testRateLimitedFleetStarts() throws Throwable {
+    AggregateConf instanceDefinition = newInstanceDefinition();
+    ConfTreeOperations appConf = instanceDefinition.getAppConfOperations();
+    for (String role : ROLES) {
+      appConf.getOrAddComponent(role).put(AgentKeys.COMMAND_RATE, "100");
+      appConf.getOrAddComponent(role).put(AgentKeys.COMMAND_BURST, "5");
+    }
+    provider = bind(instanceDefinition);
+    AgentFleetSimulator simulator = simulator(90);
+    AgentFleetSimulator.Report report = runUntilStarted(simulator);
+    log.info("{}", report);
+    TestCase.assertEquals(0, report.errors);
+    TestCase.assertTrue(
+        provider.getHeartbeatMetrics().getThrottledCommandCount() > 0);
+    TestCase.assertEquals(report.agents, report.getInstanceCount(State.STARTED));
+  }
+
+  @Test
+  public void testFleetWithFailuresAndChurn() throws Throwable {
+    AgentFleetSimulator simulator = simulator(300);
+    simulator.setFailureRate(0.2);
+    simulator.setChurnRate(0.01);
+    AgentFleetSimulator.Report report = simulator.run(duration());
+    log.info("{}", report);
+    TestCase.assertEquals(0, report.errors);
+    TestCase.assertTrue(report.failedCommands > 0);
+    TestCase.assertTrue(report.churned > 0);
+    // every agent has a live component instance, whatever its state
+    int instances = 0;
+    for (int count : report.instanceStates.values()) {
+      instances += count;
+    }
+    TestCase.assertEquals(report.agents, instances);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class AgentHeartbeatMetricsTest {
+
+  @Test
+  public void testRecentRateWindow() {
+    AgentHeartbeatMetrics metrics = new AgentHeartbeatMetrics();
+    long now = 1000000L;
+    metrics.heartbeatReceived(now);
+    metrics.heartbeatReceived(now + 500);
+    metrics.heartbeatReceived(now + 30000);
+    TestCase.assertEquals(3, metrics.getRecentHeartbeatCount(now + 30000));
+    // the first two fall out of the window
+    TestCase.assertEquals(1, metrics.getRecentHeartbeatCount(now + 61000));
+    // a slot reused a window later starts from zero
+    metrics.heartbeatReceived(now + 60000);
+    TestCase.assertEquals(2, metrics.getRecentHeartbeatCount(now + 60000));
+    TestCase.assertEquals(4, metrics.getHeartbeatCount());
+  }
+
+  @Test
+  public void testConcurrentArrivalsAcrossSlotChange() throws Throwable {
+    final AgentHeartbeatMetrics metrics = new AgentHeartbeatMetrics();
+    final long now = 1000000L;
+    final int threads = 8;
+    final int perThread = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          // the second half of the arrivals move every slot on a window
+          for (int i = 0; i < perThread; i++) {
+            long second = i < perThread / 2 ? 0 : 60;
+            metrics.heartbeatReceived(now + (second + i % 60) * 1000);
+          }
+        }
+      };
+      workers.add(worker);
+      worker.start();
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    TestCase.assertEquals(threads * perThread / 2,
+        metrics.getRecentHeartbeatCount(now + 119000));
+    TestCase.assertEquals(threads * perThread, metrics.getHeartbeatCount());
+  }
+
+  @Test
+  public void testStatistics() {
+    AgentHeartbeatMetrics metrics = new AgentHeartbeatMetrics();
+    metrics.unknownHeartbeat();
+    metrics.registration(true);
+    metrics.registration(false);
+    metrics.commandCompleted(Command.INSTALL, 200);
+    metrics.commandCompleted(Command.NOP, 200);
+    Map<String, Integer> stats = metrics.buildStatistics(0);
+    TestCase.assertEquals(Integer.valueOf(1),
+        stats.get(AgentHeartbeatMetrics.HEARTBEATS_UNKNOWN));
+    TestCase.assertEquals(Integer.valueOf(2),
+        stats.get(AgentHeartbeatMetrics.REGISTRATIONS));
+    TestCase.assertEquals(Integer.valueOf(1),
+        stats.get(AgentHeartbeatMetrics.REGISTRATIONS_FAILED));
+    TestCase.assertEquals(Integer.valueOf(200),
+        stats.get(AgentHeartbeatMetrics.COMMAND_LATENCY + ".INSTALL.mean"));
+    TestCase.assertNull(
+        stats.get(AgentHeartbeatMetrics.COMMAND_LATENCY + ".NOP.mean"));
+  }
+
+  @Test
+  public void testPerAgentGaps() {
+    AgentHeartbeatMetrics metrics = new AgentHeartbeatMetrics();
+    ComponentInstanceState state =
+        new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    TestCase.assertEquals(-1, state.heartbeatReceived(1000));
+    TestCase.assertEquals(10000, state.heartbeatReceived(11000));
+    TestCase.assertEquals(5000, state.heartbeatReceived(16000));
+    List<ComponentInstanceState> instances =
+        new ArrayList<ComponentInstanceState>();
+    instances.add(state);
+    Map<String, Object> all = metrics.buildMetrics(17000, instances);
+    Map<?, ?> agent = (Map<?, ?>) ((Map<?, ?>) all.get("agents")).get("CID_001");
+    TestCase.assertEquals(5000L, agent.get("last.gap.ms"));
+    TestCase.assertEquals(10000L, agent.get("max.gap.ms"));
+    TestCase.assertEquals(1000L, agent.get("since.last.heartbeat.ms"));
+  }
+}
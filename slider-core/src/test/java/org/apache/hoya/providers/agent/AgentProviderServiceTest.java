@@ -34,18 +34,25 @@ import org.apache.hoya.core.conf.MapOperations;
 import org.apache.hoya.exceptions.HoyaException;
 import org.apache.hoya.tools.HoyaFileSystem;
 import org.apache.hoya.yarn.appmaster.state.StateAccessForProviders;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.CommandReport;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.Register;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegisterBatch;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationBatchResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationResponse;
 import org.apache.hoya.yarn.appmaster.web.rest.agent.RegistrationStatus;
 import org.apache.hoya.yarn.model.mock.MockContainerId;
+import org.apache.hoya.yarn.model.mock.MockRoles;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createNiceMock;
@@ -97,6 +104,10 @@ public class AgentProviderServiceTest {
           eq("HBASE_MASTER"),
           any(HeartBeatResponse.class),
           eq("scripts/hbase_master.py"));
+      doNothing().when(mockAps).addStartCommand(
+          eq("HBASE_MASTER"),
+          any(HeartBeatResponse.class),
+          eq("scripts/hbase_master.py"));
     } catch (HoyaException e) {
     }
 
@@ -111,7 +122,8 @@ public class AgentProviderServiceTest {
     AggregateConf aggConf = new AggregateConf();
     ConfTreeOperations treeOps = aggConf.getAppConfOperations();
     treeOps.getOrAddComponent("HBASE_MASTER").put(AgentKeys.WAIT_HEARTBEAT, "0");
-    expect(access.getInstanceDefinitionSnapshot()).andReturn(aggConf);
+    expect(access.getInstanceDefinitionSnapshot()).andReturn(aggConf).anyTimes();
+    expect(access.getAppConfSnapshot()).andReturn(treeOps).anyTimes();
     replay(access, ctx, container, hoyaFileSystem);
 
     try {
@@ -142,5 +154,208 @@ public class AgentProviderServiceTest {
     hb.setHostname("mockcontainer_1___HBASE_MASTER");
     HeartBeatResponse hbr = mockAps.handleHeartBeat(hb);
     TestCase.assertEquals(2, hbr.getResponseId());
+
+    // batched registration
+    RegisterBatch registrations = new RegisterBatch();
+    registrations.addRegistration(reg);
+    Register unknownReg = new Register();
+    unknownReg.setHostname("mockcontainer_2___HBASE_MASTER");
+    registrations.addRegistration(unknownReg);
+    RegistrationBatchResponse regResponses =
+        mockAps.handleRegistrationBatch(registrations);
+    TestCase.assertEquals(RegistrationStatus.OK, regResponses.getResponses()
+        .get("mockcontainer_1___HBASE_MASTER").getResponseStatus());
+    TestCase.assertEquals(RegistrationStatus.FAILED, regResponses.getResponses()
+        .get("mockcontainer_2___HBASE_MASTER").getResponseStatus());
+
+    // batched heartbeat; every report is applied, so the install
+    // completes and the start is issued
+    HeartBeatBatch batch = new HeartBeatBatch();
+    HeartBeat known = new HeartBeat();
+    known.setResponseId(2);
+    known.setHostname("mockcontainer_1___HBASE_MASTER");
+    known.getReports().add(report(Command.INSTALL, CommandResult.IN_PROGRESS));
+    known.getReports().add(report(Command.INSTALL, CommandResult.COMPLETED));
+    batch.addHeartBeat(known);
+    HeartBeat unknown = new HeartBeat();
+    unknown.setResponseId(5);
+    unknown.setHostname("mockcontainer_2___HBASE_MASTER");
+    batch.addHeartBeat(unknown);
+    HeartBeatBatchResponse responses = mockAps.handleHeartBeatBatch(batch);
+    TestCase.assertEquals(2, responses.getResponses().size());
+    TestCase.assertEquals(3, responses.getResponses()
+        .get("mockcontainer_1___HBASE_MASTER").getResponseId());
+    TestCase.assertEquals(6, responses.getResponses()
+        .get("mockcontainer_2___HBASE_MASTER").getResponseId());
+    try {
+      Mockito.verify(mockAps).addStartCommand(
+          eq("HBASE_MASTER"),
+          any(HeartBeatResponse.class),
+          eq("scripts/hbase_master.py"));
+    } catch (HoyaException e) {
+      TestCase.fail(e.toString());
+    }
+
+    // once the container completes the agent is no longer recognized
+    mockAps.notifyContainerCompleted(new MockContainerId(1));
+    resp = mockAps.handleRegistration(reg);
+    TestCase.assertEquals(RegistrationStatus.FAILED, resp.getResponseStatus());
+  }
+
+  @Test
+  public void testRecommendHeartbeatDelay() {
+    ConfTreeOperations appConf = new AggregateConf().getAppConfOperations();
+    StateAccessForProviders access = createNiceMock(StateAccessForProviders.class);
+    expect(access.getAppConfSnapshot()).andReturn(appConf).anyTimes();
+    replay(access);
+    AgentProviderService aps = new AgentProviderService();
+    aps.bind(access);
+
+    ComponentInstanceState instance =
+        new ComponentInstanceState("HBASE_MASTER", "cid", "aid");
+    // INSTALL pending, then in progress
+    TestCase.assertEquals(AgentKeys.DEFAULT_HEARTBEAT_INTERVAL_ACTIVE,
+                          aps.recommendHeartbeatDelay(instance));
+    instance.issueNextCommand();
+    TestCase.assertEquals(AgentKeys.DEFAULT_HEARTBEAT_INTERVAL_ACTIVE,
+                          aps.recommendHeartbeatDelay(instance));
+    instance.applyCommandResult(CommandResult.COMPLETED, Command.INSTALL);
+    instance.issueNextCommand();
+    instance.applyCommandResult(CommandResult.COMPLETED, Command.START);
+
+    // started: idle, within the jitter
+    for (int i = 0; i < 100; i++) {
+      long delay = aps.recommendHeartbeatDelay(instance);
+      TestCase.assertTrue("delay " + delay,
+          delay >= AgentKeys.DEFAULT_HEARTBEAT_INTERVAL_IDLE * 9 / 10
+          && delay <= AgentKeys.DEFAULT_HEARTBEAT_INTERVAL_IDLE * 11 / 10);
+    }
+
+    appConf.set(AgentKeys.HEARTBEAT_INTERVAL_IDLE, 0);
+    TestCase.assertEquals(0, aps.recommendHeartbeatDelay(instance));
+    appConf.set(AgentKeys.HEARTBEAT_INTERVAL_ACTIVE, 500);
+    TestCase.assertEquals(500, aps.recommendHeartbeatDelay(
+        new ComponentInstanceState("HBASE_MASTER", "cid2", "aid")));
+  }
+
+  @Test
+  public void testDueStatusCommandIsNotHeld() throws Throwable {
+    AgentProviderService aps = bindToMockAppState();
+    ConfTreeOperations appConf = aps.getStateAccessor().getAppConfSnapshot();
+    String label = "mockcontainer_1___" + MockRoles.ROLE0;
+    aps.registerComponentInstance(label, MockRoles.ROLE0, "mockcontainer_1");
+
+    // install and start the component
+    HeartBeat hb = new HeartBeat();
+    hb.setResponseId(0);
+    hb.setHostname(label);
+    TestCase.assertEquals(1, aps.handleHeartBeat(hb).getExecutionCommands().size());
+    hb.setResponseId(1);
+    hb.getReports().add(report(Command.INSTALL, CommandResult.COMPLETED));
+    TestCase.assertEquals(1, aps.handleHeartBeat(hb).getExecutionCommands().size());
+
+    // a status command is due on every heartbeat: it must be
+    // returned at once rather than held for the long-poll wait
+    appConf.set(AgentKeys.STATUS_COMMAND_INTERVAL, 1);
+    hb.setResponseId(2);
+    hb.getReports().clear();
+    hb.getReports().add(report(Command.START, CommandResult.COMPLETED));
+    long start = System.currentTimeMillis();
+    HeartBeatResponse response = aps.handleHeartBeat(hb, 10000);
+    long elapsed = System.currentTimeMillis() - start;
+    TestCase.assertEquals(1, response.getStatusCommands().size());
+    TestCase.assertTrue("held for " + elapsed, elapsed < 5000);
+
+    // with status commands disabled there is nothing to send, and no
+    // command can become pending for a started instance: it is
+    // answered at once with the idle delay rather than held
+    appConf.set(AgentKeys.STATUS_COMMAND_INTERVAL, 0);
+    hb.setResponseId(3);
+    hb.getReports().clear();
+    start = System.currentTimeMillis();
+    response = aps.handleHeartBeat(hb, 10000);
+    elapsed = System.currentTimeMillis() - start;
+    TestCase.assertTrue("held for " + elapsed, elapsed < 5000);
+    TestCase.assertTrue(response.getStatusCommands().isEmpty());
+    TestCase.assertTrue(response.getExecutionCommands().isEmpty());
+    TestCase.assertTrue(response.getNextHeartbeatDelay() > 0);
+    TestCase.assertEquals(0, aps.getHeldHeartBeatCount());
+  }
+
+  @Test
+  public void testMalformedBatchesRejected() throws Throwable {
+    AgentProviderService aps = bindToMockAppState();
+    String label = "mockcontainer_1___" + MockRoles.ROLE0;
+    aps.registerComponentInstance(label, MockRoles.ROLE0, "mockcontainer_1");
+
+    try {
+      aps.handleHeartBeatBatch(null);
+      TestCase.fail("null heartbeat batch accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+    HeartBeatBatch noList = new HeartBeatBatch();
+    noList.setHeartBeats(null);
+    try {
+      aps.handleHeartBeatBatch(noList);
+      TestCase.fail("heartbeat batch without a list accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      aps.handleRegistrationBatch(null);
+      TestCase.fail("null registration batch accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    // an empty batch gets an empty response
+    TestCase.assertTrue(aps.handleHeartBeatBatch(new HeartBeatBatch())
+                           .getResponses().isEmpty());
+    TestCase.assertTrue(aps.handleRegistrationBatch(new RegisterBatch())
+                           .getResponses().isEmpty());
+
+    // a repeated label is rejected before any of the batch is processed
+    HeartBeatBatch duplicates = new HeartBeatBatch();
+    for (int i = 0; i < 2; i++) {
+      HeartBeat hb = new HeartBeat();
+      hb.setResponseId(i);
+      hb.setHostname(label);
+      duplicates.addHeartBeat(hb);
+    }
+    try {
+      aps.handleHeartBeatBatch(duplicates);
+      TestCase.fail("duplicate labels accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+    TestCase.assertEquals(0, aps.getHeartbeatMetrics().getHeartbeatCount());
+
+    RegisterBatch duplicateRegistrations = new RegisterBatch();
+    for (int i = 0; i < 2; i++) {
+      Register reg = new Register();
+      reg.setHostname(label);
+      duplicateRegistrations.addRegistration(reg);
+    }
+    try {
+      aps.handleRegistrationBatch(duplicateRegistrations);
+      TestCase.fail("duplicate labels accepted");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /**
+   * Create an agent provider bound to an app state built from the
+   * mock instance definition
+   * @return the provider
+   */
+  private AgentProviderService bindToMockAppState() throws Exception {
+    return AgentProviderTestUtils.bind(
+        AgentProviderTestUtils.newInstanceDefinition(
+            Collections.singletonList(MockRoles.ROLE0)),
+        "AgentProviderServiceTest");
+  }
+
+  private CommandReport report(Command command, CommandResult result) {
+    CommandReport report = new CommandReport();
+    report.setRoleCommand(command.toString());
+    report.setStatus(result.toString());
+    return report;
   }
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hoya.providers.agent;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hoya.api.OptionKeys;
+import org.apache.hoya.api.StatusKeys;
+import org.apache.hoya.core.conf.AggregateConf;
+import org.apache.hoya.core.conf.ConfTreeOperations;
+import org.apache.hoya.tools.HoyaUtils;
+import org.apache.hoya.yarn.appmaster.state.AppState;
+import org.apache.hoya.yarn.model.mock.MockFactory;
+import org.apache.hoya.yarn.model.mock.MockRecordFactory;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds agent providers bound to an application state built from the
+ * mock instance definition, for tests which drive the agent protocol
+ * without an AM.
+ */
+public final class AgentProviderTestUtils {
+
+  private AgentProviderTestUtils() {
+  }
+
+  /**
+   * Create an instance definition with the application options the
+   * agent commands need, and a script for each role
+   * @param roles roles to give scripts
+   * @return a new instance definition
+   */
+  public static AggregateConf newInstanceDefinition(List<String> roles) {
+    MockFactory factory = new MockFactory();
+    AggregateConf instanceDefinition = factory.newInstanceDefinition(0, 0, 0);
+    ConfTreeOperations appConf = instanceDefinition.getAppConfOperations();
+    appConf.set(AgentKeys.JAVA_HOME, "/usr/jdk64/jdk1.7.0_45");
+    appConf.set(AgentKeys.PACKAGE_LIST, "files/hbase-0.98.1-bin.tar.gz");
+    appConf.set("site.fs.defaultFS", "hdfs://namenode:8020");
+    appConf.set("zookeeper.hosts", "zk1,zk2,zk3");
+    appConf.set("config_types", "hbase-site");
+    for (String role : roles) {
+      appConf.getOrAddComponent(role)
+             .put(AgentKeys.COMPONENT_SCRIPT, "scripts/" + role + ".py");
+    }
+    return instanceDefinition;
+  }
+
+  /**
+   * Create an agent provider bound to an app state built from an
+   * instance definition
+   * @param instanceDefinition instance definition
+   * @param name name of the application, and of its history directory
+   * @return the provider
+   * @throws Exception on any failure to build the state
+   */
+  public static AgentProviderService bind(AggregateConf instanceDefinition,
+                                          String name) throws Exception {
+    Configuration conf = HoyaUtils.createConfiguration();
+    FileSystem fs = FileSystem.get(new URI("file:///"), conf);
+    Path historyPath = new Path(new File("target/history", name).toURI());
+    fs.delete(historyPath, true);
+    Map<String, String> applicationInfo = new HashMap<String, String>();
+    applicationInfo.put(StatusKeys.INFO_AM_HOSTNAME, "am-host");
+    applicationInfo.put(OptionKeys.APPLICATION_NAME, name);
+    AppState appState = new AppState(new MockRecordFactory());
+    appState.setContainerLimits(4096, 64);
+    appState.buildInstance(instanceDefinition,
+                           new Configuration(false),
+                           MockFactory.ROLES,
+                           fs,
+                           historyPath,
+                           null,
+                           applicationInfo);
+    AgentProviderService aps = new AgentProviderService();
+    aps.bind(appState);
+    return aps;
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.apache.hoya.yarn.appmaster.web.rest.SliderJacksonJaxbJsonProvider;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.CommandReport;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.ExecutionCommand;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeat;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HeartBeatResponse;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.HostStatus;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the bytes and the encoding CPU time of agent heartbeats and
+ * their responses on the wire: plain JSON, gzipped, and with the
+ * configurations of a command referred to by hash.
+ */
+public class AgentWireEncodingTest {
+  protected static final Logger log =
+      LoggerFactory.getLogger(AgentWireEncodingTest.class);
+
+  private static final int ITERATIONS = 2000;
+
+  private final ObjectMapper mapper = new SliderJacksonJaxbJsonProvider()
+      .locateMapper(HeartBeat.class, MediaType.APPLICATION_JSON_TYPE);
+
+  private HeartBeat heartBeat(boolean withReport) {
+    HeartBeat heartBeat = new HeartBeat();
+    heartBeat.setResponseId(42);
+    heartBeat.setTimestamp(System.currentTimeMillis());
+    heartBeat.setHostname("HBASE_REGIONSERVER_container_1401234567890_0001_01_000002");
+    heartBeat.setNodeStatus(new HostStatus(HostStatus.Status.HEALTHY, "NONE"));
+    if (withReport) {
+      CommandReport report = new CommandReport();
+      report.setTaskId(7);
+      report.setRole("HBASE_REGIONSERVER");
+      report.setRoleCommand("START");
+      report.setStatus("IN_PROGRESS");
+      report.setClusterName("cl1");
+      report.setServiceName("cl1");
+      StringBuilder stdout = new StringBuilder();
+      for (int i = 0; i < 40; i++) {
+        stdout.append("2014-05-01 12:00:0").append(i % 10)
+              .append(" - Execute['hbase-daemon.sh start regionserver']\n");
+      }
+      report.setStdOut(stdout.toString());
+      report.setStdErr("");
+      heartBeat.getReports().add(report);
+    }
+    return heartBeat;
+  }
+
+  private CommandTemplateCache.Template startTemplate() {
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("script", "scripts/hbase_regionserver.py");
+    params.put("schema_version", "2.0");
+    params.put("command_timeout", "300");
+    Map<String, Map<String, String>> configurations =
+        new HashMap<String, Map<String, String>>();
+    for (String type : new String[]{"global", "hbase-site", "hbase-env"}) {
+      Map<String, String> config = new HashMap<String, String>();
+      for (int i = 0; i < 40; i++) {
+        config.put(type + ".property." + i,
+                   "${AGENT_WORK_ROOT}/app/install/hbase-0.98.1/value-" + i);
+      }
+      configurations.put(type, config);
+    }
+    Map<String, String> hostLevelParams = new HashMap<String, String>();
+    hostLevelParams.put("java_home", "/usr/jdk64/jdk1.7.0_45");
+    return new CommandTemplateCache.Template(Command.START,
+        "HBASE_REGIONSERVER", "cl1", hostLevelParams, params, configurations);
+  }
+
+  private HeartBeatResponse response(ExecutionCommand command) {
+    HeartBeatResponse response = new HeartBeatResponse();
+    response.setResponseId(43);
+    if (command != null) {
+      response.addExecutionCommand(command);
+    }
+    return response;
+  }
+
+  private byte[] gzip(byte[] json) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream out = new GZIPOutputStream(bytes);
+    out.write(json);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Encode a message repeatedly, logging its sizes and the mean time
+   * to encode it
+   * @return the JSON and gzipped sizes
+   */
+  private int[] measure(String name, Object message) throws IOException {
+    byte[] json = mapper.writeValueAsBytes(message);
+    byte[] gzipped = gzip(json);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      mapper.writeValueAsBytes(message);
+    }
+    long jsonNanos = (System.nanoTime() - start) / ITERATIONS;
+    start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      gzip(mapper.writeValueAsBytes(message));
+    }
+    long gzipNanos = (System.nanoTime() - start) / ITERATIONS;
+    log.info("{}: {} bytes JSON in {} us; {} bytes gzipped in {} us",
+             name, json.length, jsonNanos / 1000,
+             gzipped.length, gzipNanos / 1000);
+    return new int[]{json.length, gzipped.length};
+  }
+
+  @Test
+  public void testHeartbeatEncoding() throws IOException {
+    int[] idle = measure("idle heartbeat", heartBeat(false));
+    int[] reporting = measure("heartbeat with report", heartBeat(true));
+    TestCase.assertTrue(idle[0] < reporting[0]);
+    // a report carrying command output compresses well
+    TestCase.assertTrue(reporting[1] * 2 < reporting[0]);
+    measure("empty response", response(null));
+  }
+
+  @Test
+  public void testCommandEncoding() throws IOException {
+    CommandTemplateCache.Template template = startTemplate();
+    ComponentInstanceState componentStatus =
+        new ComponentInstanceState("HBASE_REGIONSERVER", "cid", "aid");
+
+    ExecutionCommand first = template.newCommand(1, "am-host");
+    TestCase.assertFalse(
+        componentStatus.configurationsSent(first.getConfigurationsHash(), 1));
+    int[] full = measure("response with command", response(first));
+
+    componentStatus.responseAcknowledged(1);
+    ExecutionCommand second = template.newCommand(2, "am-host");
+    TestCase.assertTrue(
+        componentStatus.configurationsSent(second.getConfigurationsHash(), 2));
+    second.setConfigurations(null);
+    int[] byHash = measure("response with command, configurations by hash",
+                           response(second));
+
+    TestCase.assertTrue(full[1] < full[0]);
+    TestCase.assertTrue(byHash[0] * 4 < full[0]);
+    TestCase.assertTrue(
+        new String(mapper.writeValueAsBytes(second), "UTF-8")
+            .contains(template.getConfigurationsHash()));
+  }
+}
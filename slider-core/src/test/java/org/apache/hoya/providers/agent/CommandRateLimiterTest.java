@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class CommandRateLimiterTest {
+
+  @Test
+  public void testUnlimited() {
+    CommandRateLimiter limiter = new CommandRateLimiter();
+    for (int i = 0; i < 1000; i++) {
+      TestCase.assertEquals(0, limiter.acquire("role", 0, 0, 1000));
+    }
+  }
+
+  @Test
+  public void testBurstThenRate() {
+    CommandRateLimiter limiter = new CommandRateLimiter();
+    for (int i = 0; i < 5; i++) {
+      TestCase.assertEquals(0, limiter.acquire("role", 10, 5, 1000));
+    }
+    // empty: the next token is due in 1/10 s
+    TestCase.assertEquals(100, limiter.acquire("role", 10, 5, 1000));
+    TestCase.assertEquals(50, limiter.acquire("role", 10, 5, 1050));
+    TestCase.assertEquals(0, limiter.acquire("role", 10, 5, 1100));
+    TestCase.assertTrue(limiter.acquire("role", 10, 5, 1100) > 0);
+    // refills no further than the burst size
+    for (int i = 0; i < 5; i++) {
+      TestCase.assertEquals(0, limiter.acquire("role", 10, 5, 60000));
+    }
+    TestCase.assertTrue(limiter.acquire("role", 10, 5, 60000) > 0);
+  }
+
+  @Test
+  public void testRolesAreIndependent() {
+    CommandRateLimiter limiter = new CommandRateLimiter();
+    TestCase.assertEquals(0, limiter.acquire("master", 1, 1, 1000));
+    TestCase.assertTrue(limiter.acquire("master", 1, 1, 1000) > 0);
+    TestCase.assertEquals(0, limiter.acquire("worker", 1, 1, 1000));
+    limiter.reset("master");
+    TestCase.assertEquals(0, limiter.acquire("master", 1, 1, 1000));
+  }
+
+  @Test
+  public void testBurstDefaultsToRate() {
+    CommandRateLimiter limiter = new CommandRateLimiter();
+    for (int i = 0; i < 3; i++) {
+      TestCase.assertEquals(0, limiter.acquire("role", 3, 0, 1000));
+    }
+    TestCase.assertTrue(limiter.acquire("role", 3, 0, 1000) > 0);
+  }
+}
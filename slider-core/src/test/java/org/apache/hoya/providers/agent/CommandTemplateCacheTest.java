@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.AgentCommandType;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.ExecutionCommand;
+import org.apache.hoya.yarn.appmaster.web.rest.agent.StatusCommand;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class CommandTemplateCacheTest {
+
+  private CommandTemplateCache.Template template(Command command) {
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("script", "scripts/hbase_master.py");
+    Map<String, Map<String, String>> configurations =
+        new HashMap<String, Map<String, String>>();
+    configurations.put("global", new HashMap<String, String>());
+    return new CommandTemplateCache.Template(command, "HBASE_MASTER", "cl1",
+        new HashMap<String, String>(), params, configurations);
+  }
+
+  @Test
+  public void testLookupAfterPut() {
+    CommandTemplateCache cache = new CommandTemplateCache();
+    TestCase.assertNull(cache.lookup("HBASE_MASTER", Command.INSTALL, 1));
+    cache.put(template(Command.INSTALL), 1);
+    TestCase.assertNotNull(cache.lookup("HBASE_MASTER", Command.INSTALL, 1));
+    TestCase.assertNull(cache.lookup("HBASE_MASTER", Command.START, 1));
+  }
+
+  @Test
+  public void testNewVersionInvalidates() {
+    CommandTemplateCache cache = new CommandTemplateCache();
+    cache.lookup("HBASE_MASTER", Command.INSTALL, 1);
+    cache.put(template(Command.INSTALL), 1);
+    cache.putScript("HBASE_MASTER", 1, "scripts/hbase_master.py");
+    TestCase.assertEquals("scripts/hbase_master.py",
+        cache.lookupScript("HBASE_MASTER", 1));
+    TestCase.assertNull(cache.lookup("HBASE_MASTER", Command.INSTALL, 2));
+    TestCase.assertNull(cache.lookupScript("HBASE_MASTER", 2));
+    TestCase.assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testStalePutNotCached() {
+    CommandTemplateCache cache = new CommandTemplateCache();
+    cache.lookup("HBASE_MASTER", Command.INSTALL, 2);
+    TestCase.assertNotNull(cache.put(template(Command.INSTALL), 1));
+    TestCase.assertNull(cache.lookup("HBASE_MASTER", Command.INSTALL, 2));
+  }
+
+  @Test
+  public void testIssuedCommandsAreStamped() {
+    CommandTemplateCache.Template template = template(Command.START);
+    ExecutionCommand first = template.newCommand(1, "host1");
+    ExecutionCommand second = template.newCommand(2, "host1");
+    TestCase.assertEquals(1, first.getTaskId());
+    TestCase.assertEquals("1-1", first.getCommandId());
+    TestCase.assertEquals("2-1", second.getCommandId());
+    TestCase.assertEquals("host1", second.getHostname());
+    TestCase.assertEquals("START", second.getRoleCommand());
+    TestCase.assertEquals("HBASE_MASTER", second.getRole());
+    TestCase.assertEquals("cl1", second.getServiceName());
+    TestCase.assertSame(first.getCommandParams(), second.getCommandParams());
+  }
+
+  @Test
+  public void testConfigurationsHash() {
+    Map<String, Map<String, String>> configurations =
+        new HashMap<String, Map<String, String>>();
+    Map<String, String> global = new HashMap<String, String>();
+    global.put("a", "1");
+    global.put("b", "2");
+    configurations.put("global", global);
+    String hash = CommandTemplateCache.hashOf(configurations);
+    TestCase.assertEquals(32, hash.length());
+
+    Map<String, Map<String, String>> reordered =
+        new TreeMap<String, Map<String, String>>();
+    Map<String, String> sorted = new TreeMap<String, String>(global);
+    reordered.put("global", sorted);
+    TestCase.assertEquals(hash, CommandTemplateCache.hashOf(reordered));
+
+    sorted.put("b", "3");
+    TestCase.assertFalse(hash.equals(CommandTemplateCache.hashOf(reordered)));
+
+    CommandTemplateCache.Template template = template(Command.START);
+    TestCase.assertEquals(template.getConfigurationsHash(),
+        template.newCommand(1, "host1").getConfigurationsHash());
+  }
+
+  @Test
+  public void testNewStatusCommand() {
+    CommandTemplateCache.Template template = template(Command.START);
+    StatusCommand status = template.newStatusCommand();
+    TestCase.assertEquals(AgentCommandType.STATUS_COMMAND,
+        status.getCommandType());
+    TestCase.assertEquals(template.getRole(), status.getComponentName());
+    TestCase.assertEquals(template.getConfigurationsHash(),
+        status.getConfigurationsHash());
+    TestCase.assertSame(template.newCommand(1, "host1").getConfigurations(),
+        status.getConfigurations());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testTemplateIsImmutable() {
+    template(Command.INSTALL).newCommand(1, "host1")
+        .getConfigurations().get("global").put("key", "value");
+  }
+}
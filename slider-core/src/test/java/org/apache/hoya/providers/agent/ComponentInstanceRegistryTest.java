@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.providers.agent;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ComponentInstanceRegistryTest {
+
+  private static final String LABEL = "CID_001___HBASE_MASTER";
+
+  @Test
+  public void testRegisterLookupRemove() {
+    ComponentInstanceRegistry registry = new ComponentInstanceRegistry();
+    ComponentInstanceState state =
+        new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    registry.register(LABEL, state);
+    TestCase.assertEquals(1, registry.size());
+    TestCase.assertSame(state, registry.lookup(LABEL));
+    TestCase.assertSame(state, registry.get("CID_001"));
+    TestCase.assertEquals("HBASE_MASTER", registry.lookup(LABEL).getCompName());
+
+    TestCase.assertSame(state, registry.remove("CID_001"));
+    TestCase.assertNull(registry.lookup(LABEL));
+    TestCase.assertFalse(registry.containsLabel(LABEL));
+    TestCase.assertNull(registry.remove("CID_001"));
+    TestCase.assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void testReRegisterReplacesLabel() {
+    ComponentInstanceRegistry registry = new ComponentInstanceRegistry();
+    registry.register(LABEL,
+        new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001"));
+    ComponentInstanceState state =
+        new ComponentInstanceState("HBASE_REGIONSERVER", "CID_001", "AID_001");
+    registry.register("CID_001___HBASE_REGIONSERVER", state);
+    TestCase.assertEquals(1, registry.size());
+    TestCase.assertNull(registry.lookup(LABEL));
+    TestCase.assertSame(state, registry.lookup("CID_001___HBASE_REGIONSERVER"));
+  }
+
+  @Test
+  public void testCommandIssuedOnce() throws Throwable {
+    final ComponentInstanceState state =
+        new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    final AtomicInteger installs = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; i++) {
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          if (state.issueNextCommand() == Command.INSTALL) {
+            installs.incrementAndGet();
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    TestCase.assertEquals(1, installs.get());
+    TestCase.assertEquals(State.INSTALLING, state.getState());
+  }
+}
@@ -19,6 +19,9 @@
 package org.apache.hoya.providers.agent;
 
 import junit.framework.TestCase;
+import org.apache.hoya.providers.ProviderRole;
+import org.apache.hoya.yarn.appmaster.state.ComponentHealth;
+import org.apache.hoya.yarn.appmaster.state.RoleStatus;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -261,6 +264,77 @@ public class ComponentInstanceStateTest {
     }
   }
 
+  @Test
+  public void testAwaitPendingCommand() throws Throwable {
+    ComponentInstanceState componentInstanceState = new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    TestCase.assertTrue(componentInstanceState.awaitPendingCommand(10000));
+
+    componentInstanceState.setState(State.STARTED);
+    long start = System.currentTimeMillis();
+    TestCase.assertFalse(componentInstanceState.awaitPendingCommand(100));
+    TestCase.assertTrue(System.currentTimeMillis() - start >= 100);
+  }
+
+  @Test
+  public void testCanAwaitCommand() throws Throwable {
+    ComponentInstanceState componentInstanceState = new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    TestCase.assertTrue(componentInstanceState.canAwaitCommand());
+    componentInstanceState.setState(State.INSTALLING);
+    TestCase.assertTrue(componentInstanceState.canAwaitCommand());
+    componentInstanceState.setState(State.STARTED);
+    TestCase.assertFalse(componentInstanceState.canAwaitCommand());
+
+    // an instance which has failed too often gets no more commands
+    componentInstanceState.setState(State.INSTALLING);
+    for (int i = 0; i < 3; i++) {
+      componentInstanceState.applyCommandResult(CommandResult.FAILED, Command.INSTALL);
+      if (i < 2) {
+        componentInstanceState.issueNextCommand();
+      }
+    }
+    TestCase.assertFalse(componentInstanceState.canAwaitCommand());
+  }
+
+  @Test
+  public void testAwaitReleasedOnStateChange() throws Throwable {
+    final ComponentInstanceState componentInstanceState = new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    componentInstanceState.setState(State.STARTED);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ignored) {
+        }
+        componentInstanceState.setState(State.INSTALLED);
+      }
+    });
+    thread.start();
+    TestCase.assertTrue(componentInstanceState.awaitPendingCommand(30000));
+    thread.join();
+  }
+
+  @Test
+  public void testAwaitReleasedOnWakeUp() throws Throwable {
+    final ComponentInstanceState componentInstanceState = new ComponentInstanceState("HBASE_MASTER", "CID_001", "AID_001");
+    componentInstanceState.setState(State.STARTED);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ignored) {
+        }
+        componentInstanceState.wakeUp();
+      }
+    });
+    thread.start();
+    long start = System.currentTimeMillis();
+    TestCase.assertFalse(componentInstanceState.awaitPendingCommand(30000));
+    TestCase.assertTrue(System.currentTimeMillis() - start < 30000);
+    thread.join();
+  }
+
   private <T extends Throwable> void expectExceptionOnGetNextForResult(
       Class<T> expected, State state, CommandResult result) {
     try {
@@ -273,6 +347,78 @@ public class ComponentInstanceStateTest {
     }
   }
 
+  @Test
+  public void testSentConfigurations() {
+    ComponentInstanceState componentStatus =
+        new ComponentInstanceState("HBASE_MASTER", "cid", "aid");
+    // within a response, only the first command carries them in full
+    TestCase.assertFalse(componentStatus.configurationsSent("h1", 1));
+    TestCase.assertTrue(componentStatus.configurationsSent("h1", 1));
+    TestCase.assertFalse(componentStatus.configurationsSent("h2", 1));
+    // not yet acknowledged: sent in full again
+    TestCase.assertFalse(componentStatus.configurationsSent("h1", 2));
+    // the agent received response 1
+    componentStatus.responseAcknowledged(1);
+    TestCase.assertTrue(componentStatus.configurationsSent("h1", 3));
+    TestCase.assertTrue(componentStatus.configurationsSent("h2", 3));
+    componentStatus.resetSentConfigurations();
+    TestCase.assertFalse(componentStatus.configurationsSent("h1", 4));
+  }
+
+  @Test
+  public void testLostResponseConfigurationsResent() {
+    ComponentInstanceState componentStatus =
+        new ComponentInstanceState("HBASE_MASTER", "cid", "aid");
+    TestCase.assertFalse(componentStatus.configurationsSent("h1", 5));
+    // response 5 was lost: the agent heartbeats again from 4
+    componentStatus.responseAcknowledged(4);
+    TestCase.assertFalse(componentStatus.configurationsSent("h1", 5));
+    componentStatus.responseAcknowledged(5);
+    TestCase.assertTrue(componentStatus.configurationsSent("h1", 6));
+  }
+
+  @Test
+  public void testIssueStatusCommand() {
+    ComponentInstanceState componentStatus =
+        new ComponentInstanceState("HBASE_MASTER", "cid", "aid");
+    TestCase.assertFalse(componentStatus.issueStatusCommand(100000, 1000));
+    componentStatus.setState(State.STARTED);
+    TestCase.assertFalse(componentStatus.issueStatusCommand(100000, 0));
+    TestCase.assertTrue(componentStatus.issueStatusCommand(100000, 1000));
+    TestCase.assertFalse(componentStatus.issueStatusCommand(100500, 1000));
+    TestCase.assertTrue(componentStatus.issueStatusCommand(101000, 1000));
+  }
+
+  @Test
+  public void testReportHealth() {
+    RoleStatus roleStatus = new RoleStatus(new ProviderRole("HBASE_MASTER", 1));
+    ComponentInstanceState first =
+        new ComponentInstanceState("HBASE_MASTER", "cid1", "aid");
+    ComponentInstanceState second =
+        new ComponentInstanceState("HBASE_MASTER", "cid2", "aid");
+
+    TestCase.assertEquals(ComponentHealth.UNKNOWN,
+        first.reportHealth(ComponentHealth.HEALTHY, roleStatus));
+    second.reportHealth(ComponentHealth.HEALTHY, roleStatus);
+    TestCase.assertEquals(2, roleStatus.getHealthy());
+    TestCase.assertEquals(0, roleStatus.getUnhealthy());
+
+    // repeated reports do not count twice
+    second.reportHealth(ComponentHealth.UNHEALTHY, roleStatus);
+    second.reportHealth(ComponentHealth.UNHEALTHY, roleStatus);
+    TestCase.assertEquals(1, roleStatus.getHealthy());
+    TestCase.assertEquals(1, roleStatus.getUnhealthy());
+
+    // once removed, an instance no longer counts, and late reports
+    // are ignored
+    second.markRemoved(roleStatus);
+    second.markRemoved(roleStatus);
+    second.reportHealth(ComponentHealth.HEALTHY, roleStatus);
+    TestCase.assertEquals(ComponentHealth.UNKNOWN, second.getHealth());
+    TestCase.assertEquals(1, roleStatus.getHealthy());
+    TestCase.assertEquals(0, roleStatus.getUnhealthy());
+  }
+
   private <T extends Throwable> void expectExceptionOnGetNextForCommand(
       Class<T> expected, State state, Command command) {
     try {
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.tools;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DurationHistogramTest {
+
+  @Test
+  public void testEmpty() {
+    DurationHistogram histogram = new DurationHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMean());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+  @Test
+  public void testSummaries() {
+    DurationHistogram histogram = new DurationHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.add(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getTotal());
+    assertEquals(50, histogram.getMean());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50, histogram.getPercentile(50));
+    assertEquals(100, histogram.getPercentile(90));
+    assertEquals(1, histogram.getPercentile(1));
+  }
+
+  @Test
+  public void testOverflowBucket() {
+    DurationHistogram histogram = new DurationHistogram();
+    histogram.add(250000);
+    histogram.add(-5);
+    assertEquals(250000, histogram.getPercentile(100));
+    Map<String, Long> map = histogram.toMap();
+    assertEquals(Long.valueOf(1), map.get("gt.100000"));
+    assertEquals(Long.valueOf(1), map.get("le.1"));
+    assertEquals(Long.valueOf(2), map.get("count"));
+  }
+}
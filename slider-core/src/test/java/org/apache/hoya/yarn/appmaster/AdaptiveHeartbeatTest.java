@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hoya.api.OptionKeys;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveHeartbeatTest {
+
+  @Test
+  public void testStartsAtMinimum() {
+    AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(200, 10000);
+    assertEquals(200, heartbeat.getInterval());
+  }
+
+  @Test
+  public void testBacksOffWhenIdle() {
+    AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(200, 1000);
+    assertEquals(400, heartbeat.update(false));
+    assertEquals(800, heartbeat.update(false));
+    assertEquals(1000, heartbeat.update(false));
+    assertEquals(1000, heartbeat.update(false));
+  }
+
+  @Test
+  public void testWorkResetsToMinimum() {
+    AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(200, 1000);
+    heartbeat.update(false);
+    heartbeat.update(false);
+    assertEquals(200, heartbeat.update(true));
+    assertEquals(200, heartbeat.update(true));
+    assertEquals(200, heartbeat.getInterval());
+  }
+
+  @Test
+  public void testMaximumRaisedToMinimum() {
+    AdaptiveHeartbeat heartbeat = new AdaptiveHeartbeat(500, 100);
+    assertEquals(500, heartbeat.getMaxInterval());
+    assertEquals(500, heartbeat.update(false));
+  }
+
+  @Test
+  public void testDefaultMaximumIsTheFixedInterval() {
+    // backing off beyond the old fixed interval is opt-in
+    assertEquals(HoyaAppMaster.HEARTBEAT_INTERVAL,
+                 OptionKeys.DEFAULT_AM_HEARTBEAT_INTERVAL_MAX);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMinimumMustBePositive() {
+    new AdaptiveHeartbeat(0, 1000);
+  }
+}
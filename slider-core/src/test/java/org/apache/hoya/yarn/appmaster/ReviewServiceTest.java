@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReviewServiceTest {
+
+  private final BlockingQueue<Set<ReviewService.Event>> reviews =
+    new LinkedBlockingQueue<Set<ReviewService.Event>>();
+
+  private final ReviewService.Reviewer recorder =
+    new ReviewService.Reviewer() {
+      @Override
+      public void review(Set<ReviewService.Event> events) {
+        if (!events.isEmpty()) {
+          reviews.add(events);
+        }
+      }
+    };
+
+  private ReviewService service;
+
+  @After
+  public void teardown() {
+    if (service != null) {
+      service.stop();
+    }
+  }
+
+  private ReviewService start(ReviewService.Reviewer reviewer,
+                              int debounce,
+                              int idleInterval) {
+    service = new ReviewService(reviewer, debounce, idleInterval);
+    service.init(new Configuration());
+    service.start();
+    return service;
+  }
+
+  @Test
+  public void testBurstCoalescedIntoOneReview() throws Throwable {
+    start(recorder, 200, 10000);
+    service.post(ReviewService.Event.CONTAINERS_COMPLETED);
+    service.post(ReviewService.Event.CONTAINERS_COMPLETED);
+    service.post(ReviewService.Event.FLEX);
+    service.post(ReviewService.Event.CONTAINER_START_FAILED);
+    Set<ReviewService.Event> events = reviews.poll(5, TimeUnit.SECONDS);
+    assertNotNull("no review", events);
+    assertEquals(EnumSet.of(ReviewService.Event.CONTAINERS_COMPLETED,
+                            ReviewService.Event.FLEX,
+                            ReviewService.Event.CONTAINER_START_FAILED),
+                 events);
+    assertNull(reviews.poll(500, TimeUnit.MILLISECONDS));
+    assertEquals(1, service.getReviewCount());
+    assertEquals(4, service.getEventCount());
+    assertEquals(0, service.getQueueDepth());
+    assertEquals(1, service.getReviewDurations().getCount());
+  }
+
+  @Test
+  public void testEventsPostedBeforeStartAreReviewed() throws Throwable {
+    service = new ReviewService(recorder, 0, 10000);
+    service.post(ReviewService.Event.NODES_UPDATED);
+    assertEquals(1, service.getQueueDepth());
+    service.init(new Configuration());
+    service.start();
+    Set<ReviewService.Event> events = reviews.poll(5, TimeUnit.SECONDS);
+    assertEquals(EnumSet.of(ReviewService.Event.NODES_UPDATED), events);
+  }
+
+  @Test
+  public void testRepeatedEventsCoalesceWhilePending() throws Throwable {
+    service = new ReviewService(recorder, 0, 10000);
+    for (int i = 0; i < 1000; i++) {
+      service.post(ReviewService.Event.CONTAINERS_COMPLETED);
+      service.post(ReviewService.Event.NODES_UPDATED);
+    }
+    assertEquals(2, service.getQueueDepth());
+    assertEquals(2000, service.getEventCount());
+    service.init(new Configuration());
+    service.start();
+    Set<ReviewService.Event> events = reviews.poll(5, TimeUnit.SECONDS);
+    assertEquals(EnumSet.of(ReviewService.Event.CONTAINERS_COMPLETED,
+                            ReviewService.Event.NODES_UPDATED),
+                 events);
+    assertNull(reviews.poll(500, TimeUnit.MILLISECONDS));
+    assertEquals(0, service.getQueueDepth());
+  }
+
+  @Test
+  public void testIdleCallsHaveNoEvents() throws Throwable {
+    final List<Set<ReviewService.Event>> calls =
+      new ArrayList<Set<ReviewService.Event>>();
+    final Object lock = new Object();
+    start(new ReviewService.Reviewer() {
+      @Override
+      public void review(Set<ReviewService.Event> events) {
+        synchronized (lock) {
+          calls.add(events);
+          lock.notifyAll();
+        }
+      }
+    }, 0, 50);
+    synchronized (lock) {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (calls.size() < 2 && System.currentTimeMillis() < deadline) {
+        lock.wait(100);
+      }
+      assertTrue("idle calls " + calls.size(), calls.size() >= 2);
+      assertTrue(calls.get(0).isEmpty());
+    }
+    assertEquals(0, service.getReviewCount());
+  }
+
+  @Test
+  public void testFailingReviewerDoesNotStopTheLoop() throws Throwable {
+    start(new ReviewService.Reviewer() {
+      @Override
+      public void review(Set<ReviewService.Event> events) {
+        recorder.review(events);
+        throw new IllegalStateException("review failed");
+      }
+    }, 0, 10000);
+    service.post(ReviewService.Event.FLEX);
+    assertNotNull(reviews.poll(5, TimeUnit.SECONDS));
+    service.post(ReviewService.Event.FLEX);
+    assertNotNull(reviews.poll(5, TimeUnit.SECONDS));
+    assertEquals(2, service.getReviewCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIdleIntervalMustBePositive() {
+    new ReviewService(recorder, 100, 0);
+  }
+}
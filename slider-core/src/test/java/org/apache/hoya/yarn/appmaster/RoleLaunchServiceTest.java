@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hoya.yarn.appmaster;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerLaunchContext;
+import org.apache.hoya.core.conf.AggregateConf;
+import org.apache.hoya.core.conf.MapOperations;
+import org.apache.hoya.exceptions.HoyaException;
+import org.apache.hoya.providers.ProviderRole;
+import org.apache.hoya.tools.HoyaFileSystem;
+import org.apache.hoya.yarn.appmaster.state.RoleInstance;
+import org.apache.hoya.yarn.appmaster.state.RoleStatus;
+import org.apache.hoya.yarn.model.mock.MockContainer;
+import org.apache.hoya.yarn.model.mock.MockContainerId;
+import org.apache.hoya.yarn.model.mock.MockNodeId;
+import org.apache.hoya.yarn.model.mock.MockProviderService;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoleLaunchServiceTest {
+
+  /**
+   * Released once per launch reaching the provider
+   */
+  private final Semaphore launchesStarted = new Semaphore(0);
+
+  /**
+   * Launches block in the provider until this is counted down
+   */
+  private final CountDownLatch proceed = new CountDownLatch(1);
+
+  private final RoleStatus role = new RoleStatus(new ProviderRole("role0", 1));
+
+  private final AggregateConf instanceDefinition = new AggregateConf();
+
+  private RoleLaunchService service;
+
+  private int containerCount;
+
+  /**
+   * A provider whose launch context building blocks until the
+   * test lets it proceed
+   */
+  private class BlockingProvider extends MockProviderService {
+    @Override
+    public boolean isSupportedRole(String role) {
+      return true;
+    }
+
+    @Override
+    public void buildContainerLaunchContext(ContainerLaunchContext ctx,
+                                            AggregateConf instanceDefinition,
+                                            Container container,
+                                            String role,
+                                            HoyaFileSystem hoyaFileSystem,
+                                            Path generatedConfPath,
+                                            MapOperations resourceComponent,
+                                            MapOperations appComponent,
+                                            Path containerTmpDirPath)
+        throws IOException, HoyaException {
+      launchesStarted.release();
+      try {
+        proceed.await();
+      } catch (InterruptedException e) {
+        throw new IOException("interrupted");
+      }
+    }
+  }
+
+  @After
+  public void teardown() {
+    proceed.countDown();
+    if (service != null) {
+      service.stop();
+    }
+  }
+
+  private RoleLaunchService start(int threads, int queueSize) {
+    service = new RoleLaunchService(new ContainerStartOperation() {
+      @Override
+      public void startContainer(Container container,
+                                 ContainerLaunchContext ctx,
+                                 RoleInstance instance) {
+      }
+    }, new BlockingProvider(), null, new Path("conf"),
+        new HashMap<String, String>(), new Path("tmp"), threads, queueSize);
+    service.init(new Configuration());
+    service.start();
+    return service;
+  }
+
+  private Container container() {
+    MockContainer container = new MockContainer();
+    container.setId(new MockContainerId(++containerCount));
+    container.setNodeId(new MockNodeId("host", 1234));
+    return container;
+  }
+
+  /**
+   * Launch in a new thread, as the launch may block
+   * @return the thread
+   */
+  private Thread launchInBackground() {
+    final Container container = container();
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        service.launchRole(container, role, instanceDefinition);
+      }
+    });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void testLaunchBlocksWhenQueueIsFull() throws Throwable {
+    start(1, 2);
+    // one running, one queued: the queue is full
+    service.launchRole(container(), role, instanceDefinition);
+    service.launchRole(container(), role, instanceDefinition);
+    assertTrue(launchesStarted.tryAcquire(5, TimeUnit.SECONDS));
+    assertEquals(0, service.getAvailableLaunchSlots());
+    assertEquals(1, service.getQueueDepth());
+
+    Thread blocked = launchInBackground();
+    blocked.join(500);
+    assertTrue("launch did not block", blocked.isAlive());
+
+    // once the launches proceed, the blocked one is queued and run
+    proceed.countDown();
+    blocked.join(5000);
+    assertFalse("launch still blocked", blocked.isAlive());
+    assertTrue(launchesStarted.tryAcquire(2, 5, TimeUnit.SECONDS));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (service.getAvailableLaunchSlots() < 2
+           && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(2, service.getAvailableLaunchSlots());
+  }
+
+  @Test
+  public void testStopReleasesDroppedLaunches() throws Throwable {
+    start(1, 3);
+    service.setShutdownTime(100);
+    service.launchRole(container(), role, instanceDefinition);
+    service.launchRole(container(), role, instanceDefinition);
+    service.launchRole(container(), role, instanceDefinition);
+    assertTrue(launchesStarted.tryAcquire(5, TimeUnit.SECONDS));
+    assertEquals(2, service.getQueueDepth());
+    Thread blocked = launchInBackground();
+    blocked.join(500);
+    assertTrue("launch did not block", blocked.isAlive());
+
+    // the running launch is interrupted and the queued ones dropped;
+    // their slots are released, so the blocked caller gets one and
+    // then finds the service stopped
+    service.stop();
+    blocked.join(5000);
+    assertFalse("launch still blocked", blocked.isAlive());
+    assertEquals(0, launchesStarted.availablePermits());
+    long deadline = System.currentTimeMillis() + 5000;
+    while (service.getAvailableLaunchSlots() < 3
+           && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, service.getAvailableLaunchSlots());
+  }
+}
@@ -194,6 +194,17 @@ public class TestAMAgentWebServices extends JerseyTest {
     assertEquals(response.getResponseId(), 0L);
   }
 
+  @Test
+  public void testNullBatchIsBadRequest() throws JSONException, Exception {
+    Client client = createTestClient();
+    JSONObject json = new JSONObject();
+    json.put("heartBeats", JSONObject.NULL);
+    ClientResponse response = client.resource(AGENT_URL + "test/heartbeat/batch")
+        .type(MediaType.APPLICATION_JSON)
+        .post(ClientResponse.class, json);
+    assertEquals(400, response.getStatus());
+  }
+
   @Test
   public void testHeadURL() throws JSONException, Exception {
     Client client = createTestClient();
@@ -277,4 +277,17 @@ public class TestAMManagementWebServices extends JerseyTest {
     assertEquals("incorrect number of components", 2, json.length());
     assertNotNull("wrong component", json.getJSONObject("worker"));
   }
+
+  @Test
+  public void testMetrics() throws JSONException, Exception {
+    WebResource r = resource();
+    ClientResponse response =
+        r.path("ws").path("v1").path("slider").path("mgmt").path("metrics")
+            .accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+    assertEquals(200, response.getStatus());
+    assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+    JSONObject json = response.getEntity(JSONObject.class);
+    // the mock provider has no metrics
+    assertEquals("incorrect number of elements", 0, json.length());
+  }
 }